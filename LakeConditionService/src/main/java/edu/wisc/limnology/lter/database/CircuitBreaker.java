@@ -0,0 +1,81 @@
+package edu.wisc.limnology.lter.database;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stops calling a backend that keeps failing. After failureThreshold
+ * consecutive failures the breaker opens and calls are refused at once;
+ * once openMillis have passed it lets a single probe through (half open).
+ * The probe succeeding closes the breaker, failing opens it for another
+ * openMillis. Thread-safe.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+
+	private final AtomicLong opens = new AtomicLong();
+	private final AtomicLong refused = new AtomicLong();
+
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * @return whether the call may go ahead; every call allowed must be
+	 *         followed by recordSuccess or recordFailure
+	 */
+	public synchronized boolean allowRequest() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+			state = State.HALF_OPEN;
+			return true;
+		}
+		refused.incrementAndGet();
+		return false;
+	}
+
+	public synchronized void recordSuccess() {
+		state = State.CLOSED;
+		consecutiveFailures = 0;
+	}
+
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+			opens.incrementAndGet();
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * @return milliseconds until a probe is let through, 0 unless open
+	 */
+	public synchronized long getRemainingOpenMillis() {
+		return state == State.OPEN ? Math.max(0, openedAt + openMillis - System.currentTimeMillis()) : 0;
+	}
+
+	public long getOpens() {
+		return opens.get();
+	}
+
+	public long getRefused() {
+		return refused.get();
+	}
+}
@@ -0,0 +1,100 @@
+package edu.wisc.limnology.lter.database;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * Reads lake conditions through the delegate (LakeConditionDAOImpl) until
+ * MySQL keeps failing, then throws CircuitOpenException without waiting on
+ * connect or query timeouts until a probe gets through again (see
+ * CircuitBreaker). Only DataAccessExceptions count as failures.
+ * LakeConditionService keeps serving its last snapshot meanwhile.
+ */
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=CircuitBreaker,name=lakeConditionDAO")
+public class CircuitBreakingLakeConditionDAO implements LakeConditionDAO {
+
+	private LakeConditionDAO delegate;
+	private final CircuitBreaker circuitBreaker;
+
+	public CircuitBreakingLakeConditionDAO(int failureThreshold, long openMillis) {
+		this.circuitBreaker = new CircuitBreaker(failureThreshold, openMillis);
+	}
+
+	public void setDelegate(LakeConditionDAO delegate) {
+		this.delegate = delegate;
+	}
+
+	public List<LakeCondition> getLakeConditions() {
+		return call(new Call<List<LakeCondition>>() {
+			List<LakeCondition> call() {
+				return delegate.getLakeConditions();
+			}
+		});
+	}
+
+	public LakeCondition getLakeCondition(final String lakeId) {
+		return call(new Call<LakeCondition>() {
+			LakeCondition call() {
+				return delegate.getLakeCondition(lakeId);
+			}
+		});
+	}
+
+	public Map<String, String> getChangeSignatures() {
+		return call(new Call<Map<String, String>>() {
+			Map<String, String> call() {
+				return delegate.getChangeSignatures();
+			}
+		});
+	}
+
+	/* any other exception means MySQL answered, so it counts as a success */
+	private <T> T call(Call<T> call) {
+		if (!circuitBreaker.allowRequest()) {
+			throw new CircuitOpenException("MySQL calls suspended after repeated failures; next attempt in "
+					+ circuitBreaker.getRemainingOpenMillis() + " ms");
+		}
+		boolean failed = false;
+		try {
+			return call.call();
+		} catch (DataAccessException e) {
+			failed = true;
+			throw e;
+		} finally {
+			if (failed) {
+				circuitBreaker.recordFailure();
+			} else {
+				circuitBreaker.recordSuccess();
+			}
+		}
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	@ManagedAttribute(description = "CLOSED, OPEN (calls refused) or HALF_OPEN (probing)")
+	public String getState() {
+		return circuitBreaker.getState().name();
+	}
+
+	@ManagedAttribute(description = "Times the breaker opened")
+	public long getOpens() {
+		return circuitBreaker.getOpens();
+	}
+
+	@ManagedAttribute(description = "Calls refused while open")
+	public long getRefused() {
+		return circuitBreaker.getRefused();
+	}
+
+	private abstract static class Call<T> {
+		abstract T call();
+	}
+}
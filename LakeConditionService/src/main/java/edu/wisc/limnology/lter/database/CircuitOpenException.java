@@ -0,0 +1,15 @@
+package edu.wisc.limnology.lter.database;
+
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Thrown instead of calling MySQL while a CircuitBreaker is open.
+ */
+public class CircuitOpenException extends TransientDataAccessResourceException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CircuitOpenException(String msg) {
+		super(msg);
+	}
+}
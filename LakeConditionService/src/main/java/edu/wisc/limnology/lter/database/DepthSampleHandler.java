@@ -0,0 +1,14 @@
+package edu.wisc.limnology.lter.database;
+
+import java.io.IOException;
+
+/**
+ * Receives the samples of every depth of a series from
+ * SeriesDAO.streamAllDepths, in sampledate order. depth is 0 for sources not
+ * recorded by depth.
+ */
+public interface DepthSampleHandler {
+
+	public void sample(double depth, long sampleDate, double value) throws IOException;
+
+}
@@ -0,0 +1,25 @@
+package edu.wisc.limnology.lter.database;
+
+import edu.wisc.limnology.lter.ingest.PrnBatch;
+
+/**
+ * Writes ingested logger rows to the hi-res sensor tables, in the columns
+ * the process_latest_*.R scripts fill: sampledate, year4, month, daynum,
+ * sampletime, the layout's value columns and the flag columns of checked
+ * fields, as PrnRangeChecks flagged them. Rows already in the table are
+ * skipped, or replaced if the implementation is set to, so a batch read
+ * again after a crash is harmless.
+ */
+public interface HiResDAO {
+
+	/**
+	 * Writes every row of the batch (one row per depth for profiles) in one
+	 * transaction.
+	 *
+	 * @return table rows written; the rest of the batch's
+	 *         (PrnLayout.getTableRowsPerLine() per line) were skipped as
+	 *         already there
+	 */
+	public int insert(PrnBatch batch);
+
+}
@@ -0,0 +1,334 @@
+package edu.wisc.limnology.lter.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import edu.wisc.limnology.lter.ingest.PrnBatch;
+import edu.wisc.limnology.lter.ingest.PrnLayout;
+import edu.wisc.limnology.lter.qc.RangeCheck;
+
+/**
+ * Writes a batch as multi-row upserts of at most rowsPerStatement table rows
+ * each, so a backfill costs one round trip per few hundred rows rather than
+ * one per row. The keys the table already holds in the batch's time range
+ * are read first, and those rows are skipped unless replaceDuplicates is
+ * set; the upsert then only matters for rows written concurrently, e.g. by
+ * an R job still running.
+ */
+public class HiResDAOImpl implements HiResDAO {
+
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate transactionTemplate;
+
+	/* MySQL allows 65535 placeholders a statement; a met row has about 30 */
+	private int rowsPerStatement = 500;
+	private boolean replaceDuplicates;
+
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	public void setRowsPerStatement(int rowsPerStatement) {
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	public void setReplaceDuplicates(boolean replaceDuplicates) {
+		this.replaceDuplicates = replaceDuplicates;
+	}
+
+	public int insert(PrnBatch batch) {
+		if (batch.size() == 0) {
+			return 0;
+		}
+		final TableRows rows = batch.getLayout().isProfile() ? new ProfileRows(batch) : new MetRows(batch);
+		return transactionTemplate.execute(new TransactionCallback<Integer>() {
+			public Integer doInTransaction(TransactionStatus status) {
+				if (!replaceDuplicates) {
+					rows.skip(existingKeys(rows));
+				}
+				for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+					jdbcTemplate.update(new Upsert(rows, from, Math.min(rowsPerStatement, rows.size() - from)));
+				}
+				return rows.size();
+			}
+		});
+	}
+
+	private Set<Long> existingKeys(final TableRows rows) {
+		final Set<Long> keys = new HashSet<Long>();
+		jdbcTemplate.query("select " + rows.keyColumns() + " from " + rows.layout.getTable()
+				+ " where sampledate between ? and ?", new RowCallbackHandler() {
+					public void processRow(ResultSet rs) throws SQLException {
+						long key = rows.key(rs);
+						if (key != Long.MIN_VALUE) {
+							keys.add(key);
+						}
+					}
+				}, new Timestamp(rows.firstTime), new Timestamp(rows.lastTime));
+		return keys;
+	}
+
+	/*
+	 * The table rows of a batch still to be written; the date columns are
+	 * written from the logger's local time.
+	 */
+	private abstract static class TableRows {
+
+		final PrnLayout layout;
+		final PrnBatch batch;
+		final List<PrnLayout.Field> fields;
+		final Calendar calendar = Calendar.getInstance();
+		final long firstTime;
+		final long lastTime;
+		/* table rows to write, as batch row * depths + field for profiles */
+		int[] selected;
+		int size;
+
+		TableRows(PrnBatch batch) {
+			this.layout = batch.getLayout();
+			this.batch = batch;
+			this.fields = layout.getFields();
+			long first = Long.MAX_VALUE;
+			long last = Long.MIN_VALUE;
+			for (int row = 0; row < batch.size(); row++) {
+				first = Math.min(first, batch.getTime(row));
+				last = Math.max(last, batch.getTime(row));
+			}
+			this.firstTime = first;
+			this.lastTime = last;
+			this.size = batch.size() * layout.getTableRowsPerLine();
+			this.selected = new int[size];
+			for (int i = 0; i < size; i++) {
+				selected[i] = i;
+			}
+		}
+
+		int size() {
+			return size;
+		}
+
+		/* drops the rows whose keys are in existing */
+		void skip(Set<Long> existing) {
+			if (existing.isEmpty()) {
+				return;
+			}
+			int kept = 0;
+			for (int i = 0; i < size; i++) {
+				if (!existing.contains(key(selected[i]))) {
+					selected[kept++] = selected[i];
+				}
+			}
+			size = kept;
+		}
+
+		abstract String keyColumns();
+
+		/* the key of a table row in the batch */
+		abstract long key(int tableRow);
+
+		/* the key of a row read by keyColumns(), Long.MIN_VALUE if no batch row could have it */
+		abstract long key(ResultSet rs) throws SQLException;
+
+		/* every column, sampledate first */
+		abstract List<String> columns();
+
+		abstract int setValues(PreparedStatement ps, int index, int tableRow) throws SQLException;
+
+		int setDate(PreparedStatement ps, int index, long time) throws SQLException {
+			calendar.setTimeInMillis(time);
+			ps.setTimestamp(index++, new Timestamp(time));
+			ps.setInt(index++, calendar.get(Calendar.YEAR));
+			ps.setInt(index++, calendar.get(Calendar.MONTH) + 1);
+			ps.setInt(index++, calendar.get(Calendar.DAY_OF_YEAR));
+			ps.setString(index++, String.format("%02d:%02d:%02d", calendar.get(Calendar.HOUR_OF_DAY),
+					calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND)));
+			return index;
+		}
+	}
+
+	private static class MetRows extends TableRows {
+
+		MetRows(PrnBatch batch) {
+			super(batch);
+		}
+
+		String keyColumns() {
+			return "sampledate";
+		}
+
+		long key(int tableRow) {
+			return batch.getTime(tableRow);
+		}
+
+		long key(ResultSet rs) throws SQLException {
+			return rs.getTimestamp(1).getTime();
+		}
+
+		List<String> columns() {
+			List<String> columns = new ArrayList<String>();
+			columns.add("sampledate");
+			columns.add("year4");
+			columns.add("month");
+			columns.add("daynum");
+			columns.add("sampletime");
+			for (PrnLayout.Field field : fields) {
+				columns.add(field.getColumn());
+				if (field.isChecked()) {
+					columns.add(field.getFlagColumn());
+				}
+			}
+			return columns;
+		}
+
+		int setValues(PreparedStatement ps, int index, int row) throws SQLException {
+			index = setDate(ps, index, batch.getTime(row));
+			for (int field = 0; field < fields.size(); field++) {
+				setValue(ps, index++, batch.getValue(field, row));
+				if (fields.get(field).isChecked()) {
+					setFlag(ps, index++, batch.getFlag(field, row));
+				}
+			}
+			return index;
+		}
+	}
+
+	/* one table row per depth, with the flag its range check set */
+	private static class ProfileRows extends TableRows {
+
+		/* depth in cm to field, to match depths read back from decimal(5,2) */
+		private final Map<Long, Integer> fieldsByDepth = new HashMap<Long, Integer>();
+
+		ProfileRows(PrnBatch batch) {
+			super(batch);
+			for (int field = 0; field < fields.size(); field++) {
+				fieldsByDepth.put(Math.round(fields.get(field).getDepth() * 100), field);
+			}
+		}
+
+		String keyColumns() {
+			return "sampledate, depth";
+		}
+
+		long key(int tableRow) {
+			return batch.getTime(tableRow / fields.size()) * fields.size() + tableRow % fields.size();
+		}
+
+		long key(ResultSet rs) throws SQLException {
+			Integer field = fieldsByDepth.get(Math.round(rs.getDouble(2) * 100));
+			return field != null ? rs.getTimestamp(1).getTime() * fields.size() + field : Long.MIN_VALUE;
+		}
+
+		List<String> columns() {
+			List<String> columns = new ArrayList<String>();
+			columns.add("sampledate");
+			columns.add("year4");
+			columns.add("month");
+			columns.add("daynum");
+			columns.add("sampletime");
+			columns.add("depth");
+			columns.add("wtemp");
+			columns.add("flag_wtemp");
+			return columns;
+		}
+
+		int setValues(PreparedStatement ps, int index, int tableRow) throws SQLException {
+			int row = tableRow / fields.size();
+			int field = tableRow % fields.size();
+			index = setDate(ps, index, batch.getTime(row));
+			ps.setDouble(index++, fields.get(field).getDepth());
+			setValue(ps, index++, batch.getValue(field, row));
+			setFlag(ps, index++, batch.getFlag(field, row));
+			return index;
+		}
+	}
+
+	private static void setValue(PreparedStatement ps, int index, double value) throws SQLException {
+		if (Double.isNaN(value)) {
+			ps.setNull(index, Types.DOUBLE);
+		} else {
+			ps.setDouble(index, value);
+		}
+	}
+
+	private static void setFlag(PreparedStatement ps, int index, char flag) throws SQLException {
+		if (flag == RangeCheck.NO_FLAG) {
+			ps.setNull(index, Types.VARCHAR);
+		} else {
+			ps.setString(index, String.valueOf(flag));
+		}
+	}
+
+	/*
+	 * insert into t (...) values (...), (...) on duplicate key update c =
+	 * values(c), ...; the multi-row insert rewriteBatchedStatements would
+	 * make of a batch, built here so it does not depend on the driver
+	 */
+	private static class Upsert implements PreparedStatementCreator {
+
+		private final TableRows rows;
+		private final int from;
+		private final int count;
+
+		Upsert(TableRows rows, int from, int count) {
+			this.rows = rows;
+			this.from = from;
+			this.count = count;
+		}
+
+		public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+			List<String> columns = rows.columns();
+			StringBuilder sql = new StringBuilder("insert into ").append(rows.layout.getTable()).append(" (");
+			StringBuilder group = new StringBuilder("(");
+			StringBuilder update = new StringBuilder();
+			for (int i = 0; i < columns.size(); i++) {
+				String column = columns.get(i);
+				sql.append(i > 0 ? ", " : "").append(column);
+				group.append(i > 0 ? ", ?" : "?");
+				if (!column.equals("sampledate") && !column.equals("depth")) {
+					update.append(update.length() > 0 ? ", " : "").append(column).append(" = values(").append(column)
+							.append(')');
+				}
+			}
+			group.append(')');
+			sql.append(") values ");
+			for (int i = 0; i < count; i++) {
+				sql.append(i > 0 ? ", " : "").append(group);
+			}
+			sql.append(" on duplicate key update ").append(update);
+
+			PreparedStatement ps = con.prepareStatement(sql.toString());
+			try {
+				int index = 1;
+				for (int i = from; i < from + count; i++) {
+					index = rows.setValues(ps, index, rows.selected[i]);
+				}
+			} catch (SQLException | RuntimeException e) {
+				ps.close();
+				throw e;
+			}
+			return ps;
+		}
+	}
+}
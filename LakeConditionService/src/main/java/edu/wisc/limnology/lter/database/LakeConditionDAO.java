@@ -1,6 +1,7 @@
 package edu.wisc.limnology.lter.database;
 
 import java.util.List;
+import java.util.Map;
 
 import edu.wisc.limnology.lter.model.LakeCondition;
 
@@ -10,4 +11,13 @@ public interface LakeConditionDAO {
 	
 	public LakeCondition getLakeCondition(String lakeId);
 	
+	/**
+	 * A cheap probe used to decide whether the cached conditions need to be
+	 * reloaded: for each lakeid, a string over the columns the update jobs
+	 * write (sampledate, and the secchi, phycocyanin and thermocline columns
+	 * get_phyco.R and the thermocline job update in place). A lake's
+	 * signature changes whenever one of those does.
+	 */
+	public Map<String, String> getChangeSignatures();
+	
 }
@@ -1,122 +1,71 @@
 package edu.wisc.limnology.lter.database;
 
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
 import edu.wisc.limnology.lter.model.LakeCondition;
-import edu.wisc.limnology.lter.utils.DbUtil;
 
 public class LakeConditionDAOImpl implements LakeConditionDAO {
 
-		public List<LakeCondition> getLakeConditions() {
+	static final String SELECT_LAKE_CONDITIONS = "select " + LakeConditionMapper.COLUMNS
+			+ " from buoy_current_conditions";
+	static final String SELECT_LAKE_CONDITION = SELECT_LAKE_CONDITIONS + " where lakeid = ?";
+	static final String SELECT_CHANGE_SIGNATURES = "select lakeid, sampledate, secchi_timestamp, secchi_est,"
+			+ " phyco_median, thermocline_depth from buoy_current_conditions";
 
-		String sql = "select * from buoy_current_conditions";
-		List<LakeCondition> lakeConditions = new ArrayList<LakeCondition>();
+	private static final Object[] NO_ARGS = new Object[0];
 
-		Connection conn = null;
-		Statement stmt = null;
-		ResultSet rs = null;
-		
-		try {
-			conn = DbUtil.getConnection();
-			stmt = conn.createStatement();
-			rs = stmt.executeQuery(sql);
-			if (rs != null) {
+	private final LakeConditionMapper lakeConditionMapper = new LakeConditionMapper();
 
-				while (rs.next()) {
-					
-					LakeCondition lakeCondition = new LakeCondition();
-					
-					lakeCondition.setSampleDate(DbUtil.toDate(rs.getTimestamp("sampledate")));
-					lakeCondition.setLakeName(rs.getString("Lakename"));
-					lakeCondition.setLakeId(rs.getString("lakeid"));
-					lakeCondition.setAirTemp(DbUtil.toDouble(rs.getBigDecimal("airtemp")));
-					lakeCondition.setWaterTemp(DbUtil.toDouble(rs.getBigDecimal("watertemp")));
-					lakeCondition.setWindSpeed(DbUtil.toDouble(rs.getBigDecimal("windspeed")));
-					lakeCondition.setWindDir((Integer)rs.getObject("winddir"));
-					lakeCondition.setThermoclineDepth(DbUtil.toDouble(rs.getBigDecimal("thermocline_depth")));
-					if ("ME".equals(DbUtil.trim(rs.getString("lakeid")))){
-					lakeCondition.setSecchiEst(DbUtil.toDouble(rs.getBigDecimal("secchi_est")));
-					lakeCondition.setSecchiEstTimestamp(DbUtil.toDate(rs.getTimestamp("secchi_timestamp")));
-					lakeCondition.setWindGust(DbUtil.toDouble(rs.getBigDecimal("windgust")));	
-					lakeCondition.setPhycoMedian(DbUtil.toDouble(rs.getBigDecimal("phyco_median")));
-					}
-					lakeConditions.add(lakeCondition);
-				}
-			}
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
-		} finally {
-			try {
-				if (rs != null)
-					rs.close();
-				if (stmt != null)
-					stmt.close();
-				if (conn != null)
-					conn.close();
-			} catch (SQLException e) {
-				System.err.println("ERROR while closing connection.");
-			}
+	private JdbcTemplate jdbcTemplate;
+	private int queryTimeoutSeconds = -1;
+
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+	}
+
+	/**
+	 * @param queryTimeoutSeconds seconds a statement may run before it is
+	 *        cancelled with a QueryTimeoutException, -1 for no limit
+	 */
+	public void setQueryTimeoutSeconds(int queryTimeoutSeconds) {
+		this.queryTimeoutSeconds = queryTimeoutSeconds;
+		if (jdbcTemplate != null) {
+			jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
 		}
-		return lakeConditions;
 	}
 
-	public LakeCondition getLakeCondition(String lakeId) {
-		String sql = "select * from buoy_current_conditions where lakeid = '"+lakeId+"' " ;
-		
-		LakeCondition lakeCondition = new LakeCondition();
+	public List<LakeCondition> getLakeConditions() {
+		return jdbcTemplate.query(SELECT_LAKE_CONDITIONS, NO_ARGS, lakeConditionMapper);
+	}
 
-		Connection conn = null;
-		Statement stmt = null;
-		ResultSet rs = null;
-		
-		try {
-			conn = DbUtil.getConnection();
-			
-			stmt = conn.createStatement();
-			rs = stmt.executeQuery(sql);
+	public LakeCondition getLakeCondition(String lakeId) {
+		List<LakeCondition> lakeConditions = jdbcTemplate.query(SELECT_LAKE_CONDITION, new Object[] { lakeId },
+				lakeConditionMapper);
+		return lakeConditions.isEmpty() ? LakeCondition.EMPTY : lakeConditions.get(lakeConditions.size() - 1);
+	}
 
-			if (rs != null) {
-				while (rs.next()) {
-					
-					
-					lakeCondition.setSampleDate(DbUtil.toDate(rs.getTimestamp("sampledate")));
-					lakeCondition.setLakeName(rs.getString("Lakename"));
-					lakeCondition.setLakeId(rs.getString("lakeid"));
-					lakeCondition.setAirTemp(DbUtil.toDouble(rs.getBigDecimal("airtemp")));
-					lakeCondition.setWaterTemp(DbUtil.toDouble(rs.getBigDecimal("watertemp")));
-					lakeCondition.setWindSpeed(DbUtil.toDouble(rs.getBigDecimal("windspeed")));
-					lakeCondition.setThermoclineDepth(DbUtil.toDouble(rs.getBigDecimal("thermocline_depth")));
-					lakeCondition.setWindDir((Integer)rs.getObject("winddir"));
-					if ("ME".equals(DbUtil.trim(rs.getString("lakeid")))){
-					lakeCondition.setSecchiEst(DbUtil.toDouble(rs.getBigDecimal("secchi_est")));
-					lakeCondition.setSecchiEstTimestamp(DbUtil.toDate(rs.getTimestamp("secchi_timestamp")));
-					lakeCondition.setPhycoMedian(DbUtil.toDouble(rs.getBigDecimal("phyco_median")));
-					lakeCondition.setWindGust(DbUtil.toDouble(rs.getBigDecimal("windgust")));
-					lakeCondition.setPhycoMedian(DbUtil.toDouble(rs.getBigDecimal("phyco_median")));
-					}
+	public Map<String, String> getChangeSignatures() {
+		final Map<String, String> signatures = new HashMap<String, String>();
+		jdbcTemplate.query(SELECT_CHANGE_SIGNATURES, NO_ARGS, new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				StringBuilder signature = new StringBuilder(64).append(rs.getString(2));
+				for (int column = 3; column <= 6; column++) {
+					signature.append('|').append(rs.getString(column));
 				}
+				signatures.put(rs.getString(1), signature.toString());
 			}
-		} catch (SQLException e) {
-			throw new RuntimeException(e);
-		} finally {
-			try {
-
-				if (rs != null)
-					rs.close();
-				if (stmt != null)
-					stmt.close();
-				if (conn != null)
-					conn.close();
-			} catch (SQLException e) {
-				System.err.println("ERROR while closing connection.");
-			}
-		}
-		return lakeCondition;
+		});
+		return signatures;
 	}
-	
+
 }
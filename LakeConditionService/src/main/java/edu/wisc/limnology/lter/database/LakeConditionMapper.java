@@ -6,13 +6,52 @@ import java.sql.SQLException;
 import org.springframework.jdbc.core.RowMapper;
 
 import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.utils.DbUtil;
 
+/**
+ * Maps a buoy_current_conditions row selected with {@link #COLUMNS}. The
+ * select list is fixed, so columns are read by position instead of being
+ * looked up by name on every row. Stateless; one instance is shared.
+ */
 public class LakeConditionMapper implements RowMapper<LakeCondition> {
-	public LakeCondition mapRow(ResultSet rs, int rowNum) throws SQLException {
-		LakeCondition lakeCondition = new LakeCondition();
-		lakeCondition.setLakeId(rs.getString("lakeid"));
-	      return lakeCondition;
-	   }
-}
 
+	public static final String COLUMNS = "sampledate, lakename, lakeid, airtemp, watertemp, windspeed, winddir, "
+			+ "thermocline_depth, secchi_est, secchi_timestamp, windgust, phyco_median";
+
+	static final int SAMPLEDATE = 1;
+	static final int LAKENAME = 2;
+	static final int LAKEID = 3;
+	static final int AIRTEMP = 4;
+	static final int WATERTEMP = 5;
+	static final int WINDSPEED = 6;
+	static final int WINDDIR = 7;
+	static final int THERMOCLINE_DEPTH = 8;
+	static final int SECCHI_EST = 9;
+	static final int SECCHI_TIMESTAMP = 10;
+	static final int WINDGUST = 11;
+	static final int PHYCO_MEDIAN = 12;
+
+	/* Secchi, phycocyanin and gust are only maintained for Mendota */
+	static final String MENDOTA = "ME";
 
+	public LakeCondition mapRow(ResultSet rs, int rowNum) throws SQLException {
+		LakeCondition.Builder lakeCondition = new LakeCondition.Builder();
+		String lakeId = rs.getString(LAKEID);
+
+		lakeCondition.sampleDate(DbUtil.toDate(rs.getTimestamp(SAMPLEDATE)))
+				.lakeName(rs.getString(LAKENAME))
+				.lakeId(lakeId)
+				.airTemp(DbUtil.getDouble(rs, AIRTEMP))
+				.waterTemp(DbUtil.getDouble(rs, WATERTEMP))
+				.windSpeed(DbUtil.getDouble(rs, WINDSPEED))
+				.windDir(DbUtil.getInteger(rs, WINDDIR))
+				.thermoclineDepth(DbUtil.getDouble(rs, THERMOCLINE_DEPTH));
+		if (lakeId != null && MENDOTA.equals(lakeId.trim())) {
+			lakeCondition.secchiEst(DbUtil.getDouble(rs, SECCHI_EST))
+					.secchiEstTimestamp(DbUtil.toDate(rs.getTimestamp(SECCHI_TIMESTAMP)))
+					.windGust(DbUtil.getDouble(rs, WINDGUST))
+					.phycoMedian(DbUtil.getDouble(rs, PHYCO_MEDIAN));
+		}
+		return lakeCondition.build();
+	}
+}
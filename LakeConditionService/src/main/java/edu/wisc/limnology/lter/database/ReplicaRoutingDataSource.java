@@ -0,0 +1,350 @@
+package edu.wisc.limnology.lter.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Spreads reads over the primary pool and any replicas, MySQL replicas of
+ * dbmaker holding copies of its tables. Each borrow picks two healthy
+ * databases at random and takes the one with the lower average latency, so
+ * faster databases get more of the load without all of it going to one.
+ * When a database cannot hand out a connection it is marked down and the
+ * next one is tried; databases marked down are tried last, and are marked
+ * up again by the next health check that reaches them.
+ * <p>
+ * Latency is an exponentially weighted moving average of borrow times
+ * (which include the pool's validation query) and health check round trips.
+ * Replicas get their own pools with the primary pool's settings and
+ * credentials; they are listed as comma-separated JDBC URLs in
+ * replicas.urls, so they are configured in db.properties, the file named by
+ * -Dlakecondition.config or -D system properties.
+ * <p>
+ * Replicas lag the primary by different amounts, so reads that must agree
+ * with each other (a refresh's signature probe and the rows it reloads)
+ * run inside pin(): the first borrow on the thread picks a database as
+ * above, and every later one takes the same database, failing rather than
+ * moving to another, until the pin is closed.
+ */
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=ReplicaRouting,name=readDataSource")
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+	private static final Log log = LogFactory.getLog(ReplicaRoutingDataSource.class);
+
+	/* weight of the newest latency sample in the moving average */
+	static final double LATENCY_DECAY = 0.2;
+
+	private BasicDataSource primary;
+	private String replicaUrls = "";
+
+	private volatile List<Replica> replicas = Collections.emptyList();
+
+	private final AtomicLong failovers = new AtomicLong();
+
+	private final ThreadLocal<Pin> pins = new ThreadLocal<Pin>();
+
+	public void setPrimary(BasicDataSource primary) {
+		this.primary = primary;
+	}
+
+	/**
+	 * @param replicaUrls comma-separated JDBC URLs, empty for the primary only
+	 */
+	public void setReplicaUrls(String replicaUrls) {
+		this.replicaUrls = replicaUrls;
+	}
+
+	public void init() {
+		List<Replica> created = new ArrayList<Replica>();
+		created.add(new Replica("primary", primary, false));
+		for (String url : replicaUrls.split(",")) {
+			if (!url.trim().isEmpty()) {
+				created.add(new Replica(name(url.trim()), createPool(url.trim()), true));
+			}
+		}
+		replicas = Collections.unmodifiableList(created);
+		log.info("Reading lake conditions from " + created);
+	}
+
+	/** Closes the replica pools; the primary pool is closed by its own bean. */
+	public void close() throws SQLException {
+		for (Replica replica : replicas) {
+			if (replica.owned) {
+				replica.dataSource.close();
+			}
+		}
+	}
+
+	/**
+	 * Sends the borrows on this thread to one database until the pin is
+	 * closed. Pins nest; only the outermost one chooses and releases.
+	 */
+	public Pin pin() {
+		Pin pin = pins.get();
+		if (pin != null) {
+			return new Pin(null);
+		}
+		pin = new Pin(pins);
+		pins.set(pin);
+		return pin;
+	}
+
+	public Connection getConnection() throws SQLException {
+		Pin pin = pins.get();
+		if (pin != null && pin.replica != null) {
+			return borrow(pin.replica);
+		}
+		SQLException failure = null;
+		for (Replica replica : candidates()) {
+			long start = System.nanoTime();
+			try {
+				Connection connection = replica.dataSource.getConnection();
+				replica.observe(System.nanoTime() - start);
+				replica.markUp();
+				if (pin != null) {
+					pin.replica = replica;
+				}
+				return connection;
+			} catch (SQLException e) {
+				if (replica.markDown()) {
+					log.warn("Database " + replica.name + " is down, failing over: " + e.getMessage());
+				}
+				failovers.incrementAndGet();
+				failure = e;
+			}
+		}
+		throw failure;
+	}
+
+	/* the pinned database only, so reads in one pin never mix databases */
+	private Connection borrow(Replica replica) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			Connection connection = replica.dataSource.getConnection();
+			replica.observe(System.nanoTime() - start);
+			return connection;
+		} catch (SQLException e) {
+			if (replica.markDown()) {
+				log.warn("Database " + replica.name + " is down: " + e.getMessage());
+			}
+			throw e;
+		}
+	}
+
+	public Connection getConnection(String username, String password) throws SQLException {
+		throw new SQLFeatureNotSupportedException("Replicas share the primary pool's credentials");
+	}
+
+	/*
+	 * The databases in the order to try them: the better of two random
+	 * healthy ones, the other healthy ones by latency, then the ones marked
+	 * down.
+	 */
+	List<Replica> candidates() {
+		List<Replica> healthy = new ArrayList<Replica>();
+		List<Replica> down = new ArrayList<Replica>();
+		for (Replica replica : replicas) {
+			(replica.healthy ? healthy : down).add(replica);
+		}
+		Collections.sort(healthy, BY_LATENCY);
+		if (healthy.size() > 1) {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int a = random.nextInt(healthy.size());
+			int b = random.nextInt(healthy.size() - 1);
+			if (b >= a) {
+				b++;
+			}
+			/* sorted, so the lower index is the lower latency */
+			Collections.swap(healthy, 0, Math.min(a, b));
+		}
+		healthy.addAll(down);
+		return healthy;
+	}
+
+	/**
+	 * Runs the validation query on every database, marking it up or down
+	 * and feeding the round trip into its latency.
+	 */
+	@Scheduled(fixedDelayString = "${replicas.healthCheckMillis}")
+	public void checkHealth() {
+		for (Replica replica : replicas) {
+			long start = System.nanoTime();
+			try {
+				Connection connection = replica.dataSource.getConnection();
+				try {
+					Statement stmt = connection.createStatement();
+					try {
+						stmt.setQueryTimeout(Math.max(primary.getValidationQueryTimeout(), 0));
+						stmt.execute(primary.getValidationQuery());
+					} finally {
+						stmt.close();
+					}
+				} finally {
+					connection.close();
+				}
+				replica.observe(System.nanoTime() - start);
+				if (replica.markUp()) {
+					log.info("Database " + replica.name + " is up again");
+				}
+			} catch (SQLException e) {
+				if (replica.markDown()) {
+					log.warn("Database " + replica.name + " failed its health check: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private BasicDataSource createPool(String url) {
+		BasicDataSource pool = new BasicDataSource();
+		pool.setDriverClassName(primary.getDriverClassName());
+		pool.setUrl(url);
+		pool.setUsername(primary.getUsername());
+		pool.setPassword(primary.getPassword());
+		pool.setInitialSize(primary.getInitialSize());
+		pool.setMaxTotal(primary.getMaxTotal());
+		pool.setMaxIdle(primary.getMaxIdle());
+		pool.setMinIdle(primary.getMinIdle());
+		pool.setMaxWaitMillis(primary.getMaxWaitMillis());
+		pool.setValidationQuery(primary.getValidationQuery());
+		pool.setValidationQueryTimeout(primary.getValidationQueryTimeout());
+		pool.setTestOnBorrow(primary.getTestOnBorrow());
+		pool.setTestWhileIdle(primary.getTestWhileIdle());
+		pool.setTimeBetweenEvictionRunsMillis(primary.getTimeBetweenEvictionRunsMillis());
+		pool.setMinEvictableIdleTimeMillis(primary.getMinEvictableIdleTimeMillis());
+		pool.setMaxConnLifetimeMillis(primary.getMaxConnLifetimeMillis());
+		pool.setPoolPreparedStatements(primary.isPoolPreparedStatements());
+		pool.setMaxOpenPreparedStatements(primary.getMaxOpenPreparedStatements());
+		return pool;
+	}
+
+	/* the URL without its parameters, e.g. jdbc:mysql://dbmaker-replica...:3306/dbmaker */
+	static String name(String url) {
+		int query = url.indexOf('?');
+		return query < 0 ? url : url.substring(0, query);
+	}
+
+	public List<Replica> getReplicas() {
+		return replicas;
+	}
+
+	@ManagedAttribute(description = "Each database with whether it is up and its average latency")
+	public String[] getDatabases() {
+		List<String> databases = new ArrayList<String>();
+		for (Replica replica : replicas) {
+			databases.add(replica.toString());
+		}
+		return databases.toArray(new String[databases.size()]);
+	}
+
+	@ManagedAttribute(description = "Borrows that failed over to another database")
+	public long getFailovers() {
+		return failovers.get();
+	}
+
+	@ManagedOperation(description = "Check every database now")
+	public void checkHealthNow() {
+		checkHealth();
+	}
+
+	static final Comparator<Replica> BY_LATENCY = new Comparator<Replica>() {
+		public int compare(Replica a, Replica b) {
+			return Double.compare(a.latencyNanos, b.latencyNanos);
+		}
+	};
+
+	/** Ends a pin(); closing a nested pin does nothing. */
+	public static final class Pin implements AutoCloseable {
+
+		/* null for a nested pin */
+		private final ThreadLocal<Pin> pins;
+		/* chosen by the first borrow */
+		Replica replica;
+
+		Pin(ThreadLocal<Pin> pins) {
+			this.pins = pins;
+		}
+
+		/**
+		 * @return the database the borrows went to, null before the first
+		 *         and for a nested pin
+		 */
+		public String getDatabase() {
+			return replica != null ? replica.name : null;
+		}
+
+		public void close() {
+			if (pins != null) {
+				pins.remove();
+			}
+		}
+	}
+
+	/** One database: its pool, whether it is up and its average latency. */
+	public static class Replica {
+
+		final String name;
+		final BasicDataSource dataSource;
+		/* created here rather than by its own bean */
+		final boolean owned;
+
+		volatile boolean healthy = true;
+		volatile double latencyNanos;
+
+		Replica(String name, BasicDataSource dataSource, boolean owned) {
+			this.name = name;
+			this.dataSource = dataSource;
+			this.owned = owned;
+		}
+
+		synchronized void observe(long nanos) {
+			latencyNanos = latencyNanos == 0 ? nanos : LATENCY_DECAY * nanos + (1 - LATENCY_DECAY) * latencyNanos;
+		}
+
+		/* @return whether it was down */
+		boolean markUp() {
+			boolean wasDown = !healthy;
+			healthy = true;
+			return wasDown;
+		}
+
+		/* @return whether it was up */
+		boolean markDown() {
+			boolean wasUp = healthy;
+			healthy = false;
+			return wasUp;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isHealthy() {
+			return healthy;
+		}
+
+		public double getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		@Override
+		public String toString() {
+			return name + (healthy ? " up " : " down ") + String.format("%.1f ms", latencyNanos / 1e6);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package edu.wisc.limnology.lter.database;
+
+import java.util.Date;
+
+/**
+ * Hourly and daily min/max/sum/count of each series, kept in
+ * sensor_rollup_hourly and sensor_rollup_daily (sql/sensor_rollups.sql).
+ * Samples are folded in once, in sampledate order; a per-series watermark
+ * records how far. Null and flagged values are skipped, as in SeriesDAO.
+ */
+public interface RollupDAO {
+
+	/**
+	 * @return the sampledate below which every sample of source is in the
+	 *         rollups, or null if source has not been rolled up
+	 */
+	public Date getRolledUntil(SeriesSource source);
+
+	/**
+	 * Adds the samples with from &lt;= sampledate &lt; until to the hourly
+	 * and daily rollups and moves the watermark from rolledUntil to until, in
+	 * one transaction.
+	 *
+	 * @param rolledUntil the current watermark, or null on the first run
+	 * @return the number of samples added
+	 * @throws org.springframework.dao.ConcurrencyFailureException if the
+	 *         watermark is no longer rolledUntil; nothing is written
+	 */
+	public int rollUp(SeriesSource source, Date rolledUntil, Date from, Date until);
+
+	/**
+	 * Hands the rollups of the periods starting at from &lt;= period_start
+	 * &lt; to to buckets, in order.
+	 */
+	public void addRollups(RollupPeriod period, SeriesSource source, Double depth, Date from, Date to,
+			SeriesBuckets buckets);
+
+	/**
+	 * Drops the rollups and watermark of source, so that the next run
+	 * rebuilds them, e.g. after samples were flagged or back-filled.
+	 */
+	public void clear(SeriesSource source);
+
+	/**
+	 * Drops the rollups of source from the day holding from on and moves
+	 * the watermark back to the start of that day, if from is at or behind
+	 * the watermark, so the next run folds those samples in again, e.g.
+	 * after a backfill wrote samples behind the watermark.
+	 *
+	 * @return whether the watermark moved
+	 */
+	public boolean rewind(SeriesSource source, Date from);
+
+}
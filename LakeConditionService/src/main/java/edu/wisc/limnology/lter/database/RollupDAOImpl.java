@@ -0,0 +1,231 @@
+package edu.wisc.limnology.lter.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class RollupDAOImpl implements RollupDAO {
+
+	/* Adding to an existing period merges rather than replaces it, so a period
+	   split across two runs (or two chunks of one run) ends up complete. */
+	private static final String UPSERT = "insert into %s"
+			+ " (lakeid, variable, depth, period_start, min_value, max_value, sum_value, sample_count)"
+			+ " values (?, ?, ?, ?, ?, ?, ?, ?) on duplicate key update"
+			+ " min_value = least(min_value, values(min_value)),"
+			+ " max_value = greatest(max_value, values(max_value)),"
+			+ " sum_value = sum_value + values(sum_value),"
+			+ " sample_count = sample_count + values(sample_count)";
+
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate transactionTemplate;
+
+	/* as in SeriesDAOImpl; a month of 1-minute water temperatures is over a million rows */
+	private int fetchSize = Integer.MIN_VALUE;
+
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public Date getRolledUntil(SeriesSource source) {
+		List<Timestamp> rolledUntil = jdbcTemplate.queryForList(
+				"select rolled_until from sensor_rollup_watermark where lakeid = ? and variable = ?",
+				Timestamp.class, source.getLakeId(), source.getVariable());
+		return rolledUntil.isEmpty() ? null : toDate(rolledUntil.get(0));
+	}
+
+	public int rollUp(final SeriesSource source, final Date rolledUntil, final Date from, final Date until) {
+		return transactionTemplate.execute(new TransactionCallback<Integer>() {
+			public Integer doInTransaction(TransactionStatus status) {
+				moveWatermark(source, rolledUntil, until);
+				Map<Double, TreeMap<Long, Aggregate>> hours = aggregateSamples(source, from, until);
+				int samples = 0;
+				List<Object[]> hourRows = new ArrayList<Object[]>();
+				List<Object[]> dayRows = new ArrayList<Object[]>();
+				for (Map.Entry<Double, TreeMap<Long, Aggregate>> depth : hours.entrySet()) {
+					TreeMap<Long, Aggregate> days = new TreeMap<Long, Aggregate>();
+					for (Map.Entry<Long, Aggregate> hour : depth.getValue().entrySet()) {
+						Aggregate aggregate = hour.getValue();
+						samples += aggregate.count;
+						hourRows.add(row(source, depth.getKey(), hour.getKey(), aggregate));
+						long day = RollupPeriod.DAY.align(hour.getKey());
+						Aggregate dayAggregate = days.get(day);
+						if (dayAggregate == null) {
+							days.put(day, new Aggregate(aggregate));
+						} else {
+							dayAggregate.merge(aggregate);
+						}
+					}
+					for (Map.Entry<Long, Aggregate> day : days.entrySet()) {
+						dayRows.add(row(source, depth.getKey(), day.getKey(), day.getValue()));
+					}
+				}
+				jdbcTemplate.batchUpdate(String.format(UPSERT, RollupPeriod.HOUR.getTable()), hourRows);
+				jdbcTemplate.batchUpdate(String.format(UPSERT, RollupPeriod.DAY.getTable()), dayRows);
+				return samples;
+			}
+		});
+	}
+
+	/* Taken first, so that the row lock serializes concurrent runs for a series. */
+	private void moveWatermark(SeriesSource source, Date rolledUntil, Date until) {
+		if (rolledUntil == null) {
+			try {
+				jdbcTemplate.update(
+						"insert into sensor_rollup_watermark (lakeid, variable, rolled_until) values (?, ?, ?)",
+						source.getLakeId(), source.getVariable(), new Timestamp(until.getTime()));
+			} catch (DuplicateKeyException e) {
+				throw new ConcurrencyFailureException(source.getLakeId() + " " + source.getVariable()
+						+ " was rolled up concurrently", e);
+			}
+		} else if (jdbcTemplate.update("update sensor_rollup_watermark set rolled_until = ?"
+				+ " where lakeid = ? and variable = ? and rolled_until = ?", new Timestamp(until.getTime()),
+				source.getLakeId(), source.getVariable(), new Timestamp(rolledUntil.getTime())) != 1) {
+			throw new ConcurrencyFailureException(source.getLakeId() + " " + source.getVariable()
+					+ " was rolled up concurrently");
+		}
+	}
+
+	/* Hourly aggregates by depth and hour. Rows of a by-depth table are
+	   interleaved in sampledate order, hence maps rather than a running bucket. */
+	private Map<Double, TreeMap<Long, Aggregate>> aggregateSamples(final SeriesSource source, Date from, Date until) {
+		final Map<Double, TreeMap<Long, Aggregate>> hours = new HashMap<Double, TreeMap<Long, Aggregate>>();
+		List<Object> args = new ArrayList<Object>(2);
+		args.add(new Timestamp(from.getTime()));
+		args.add(new Timestamp(until.getTime()));
+		String sql = "select sampledate, " + (source.isByDepth() ? "depth" : "0") + ", " + source.getColumn()
+				+ " from " + source.getTable() + " where sampledate >= ? and sampledate < ?"
+				+ " and " + source.getColumn() + " is not null and " + source.getFlagColumn() + " is null";
+		jdbcTemplate.query(new StreamingStatement(sql, args, fetchSize), new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				Double depth = rs.getDouble(2);
+				TreeMap<Long, Aggregate> byHour = hours.get(depth);
+				if (byHour == null) {
+					byHour = new TreeMap<Long, Aggregate>();
+					hours.put(depth, byHour);
+				}
+				long hour = RollupPeriod.HOUR.align(rs.getTimestamp(1).getTime());
+				double value = rs.getDouble(3);
+				Aggregate aggregate = byHour.get(hour);
+				if (aggregate == null) {
+					byHour.put(hour, new Aggregate(value));
+				} else {
+					aggregate.add(value);
+				}
+			}
+		});
+		return hours;
+	}
+
+	public void addRollups(RollupPeriod period, SeriesSource source, Double depth, Date from, Date to,
+			final SeriesBuckets buckets) {
+		jdbcTemplate.query("select period_start, min_value, max_value, sum_value, sample_count from "
+				+ period.getTable() + " where lakeid = ? and variable = ? and depth = ?"
+				+ " and period_start >= ? and period_start < ? order by period_start", new RowCallbackHandler() {
+			public void processRow(ResultSet rs) throws SQLException {
+				buckets.add(rs.getTimestamp(1).getTime(), rs.getDouble(2), rs.getDouble(3), rs.getDouble(4),
+						rs.getInt(5));
+			}
+		}, source.getLakeId(), source.getVariable(), source.isByDepth() ? depth : 0.0,
+				new Timestamp(from.getTime()), new Timestamp(to.getTime()));
+	}
+
+	public void clear(final SeriesSource source) {
+		transactionTemplate.execute(new TransactionCallback<Void>() {
+			public Void doInTransaction(TransactionStatus status) {
+				for (String table : new String[] { "sensor_rollup_watermark", RollupPeriod.HOUR.getTable(),
+						RollupPeriod.DAY.getTable() }) {
+					jdbcTemplate.update("delete from " + table + " where lakeid = ? and variable = ?",
+							source.getLakeId(), source.getVariable());
+				}
+				return null;
+			}
+		});
+	}
+
+	public boolean rewind(final SeriesSource source, Date from) {
+		final Timestamp first = new Timestamp(from.getTime());
+		final Timestamp day = new Timestamp(RollupPeriod.DAY.align(from.getTime()));
+		return transactionTemplate.execute(new TransactionCallback<Boolean>() {
+			public Boolean doInTransaction(TransactionStatus status) {
+				/* taken first, as in rollUp; rows after the watermark are folded in anyway */
+				if (jdbcTemplate.update("update sensor_rollup_watermark set rolled_until = ?"
+						+ " where lakeid = ? and variable = ? and rolled_until >= ?", day, source.getLakeId(),
+						source.getVariable(), first) == 0) {
+					return false;
+				}
+				for (RollupPeriod period : RollupPeriod.values()) {
+					jdbcTemplate.update("delete from " + period.getTable()
+							+ " where lakeid = ? and variable = ? and period_start >= ?", source.getLakeId(),
+							source.getVariable(), day);
+				}
+				return true;
+			}
+		});
+	}
+
+	private static Object[] row(SeriesSource source, double depth, long periodStart, Aggregate aggregate) {
+		return new Object[] { source.getLakeId(), source.getVariable(), depth, new Timestamp(periodStart),
+				aggregate.min, aggregate.max, aggregate.sum, aggregate.count };
+	}
+
+	private static Date toDate(Timestamp timestamp) {
+		return timestamp != null ? new Date(timestamp.getTime()) : null;
+	}
+
+	private static class Aggregate {
+		double min;
+		double max;
+		double sum;
+		int count;
+
+		Aggregate(double value) {
+			min = value;
+			max = value;
+			sum = value;
+			count = 1;
+		}
+
+		Aggregate(Aggregate other) {
+			min = other.min;
+			max = other.max;
+			sum = other.sum;
+			count = other.count;
+		}
+
+		void add(double value) {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			sum += value;
+			count++;
+		}
+
+		void merge(Aggregate other) {
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			sum += other.sum;
+			count += other.count;
+		}
+	}
+}
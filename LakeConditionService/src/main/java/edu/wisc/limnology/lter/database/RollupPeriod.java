@@ -0,0 +1,57 @@
+package edu.wisc.limnology.lter.database;
+
+/**
+ * The rollup tables and the periods they aggregate. Periods are aligned
+ * like series buckets (SeriesBuckets.align), so a bucket that is a whole
+ * number of periods is exactly the union of its periods.
+ */
+public enum RollupPeriod {
+
+	HOUR("sensor_rollup_hourly", 3600000L), DAY("sensor_rollup_daily", 86400000L);
+
+	private final String table;
+	private final long millis;
+
+	private RollupPeriod(String table, long millis) {
+		this.table = table;
+		this.millis = millis;
+	}
+
+	/**
+	 * @return the coarsest period that divides bucketMillis, or null if
+	 *         buckets of that size need raw samples
+	 */
+	public static RollupPeriod coarsestFor(long bucketMillis) {
+		if (bucketMillis % DAY.millis == 0) {
+			return DAY;
+		} else if (bucketMillis % HOUR.millis == 0) {
+			return HOUR;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the start of the period holding time
+	 */
+	public long align(long time) {
+		return SeriesBuckets.align(time, millis);
+	}
+
+	/**
+	 * @return the first period start at or after time. Local days are 23
+	 *         or 25 hours long on daylight saving changes (see
+	 *         SeriesBuckets.advance).
+	 */
+	public long ceil(long time) {
+		long start = align(time);
+		return start == time ? time : SeriesBuckets.advance(start, 1, millis);
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public long getMillis() {
+		return millis;
+	}
+}
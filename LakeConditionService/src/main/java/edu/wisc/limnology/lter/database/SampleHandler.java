@@ -0,0 +1,14 @@
+package edu.wisc.limnology.lter.database;
+
+import java.io.IOException;
+
+/**
+ * Receives samples one at a time from SeriesDAO.streamSamples while the
+ * cursor is open. An IOException (typically the client going away) stops
+ * the query and is rethrown to the caller.
+ */
+public interface SampleHandler {
+
+	public void sample(long sampleDate, double value) throws IOException;
+
+}
@@ -0,0 +1,107 @@
+package edu.wisc.limnology.lter.database;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+/**
+ * Folds samples into min/max/mean buckets as they are read, so downsampling
+ * a range costs one pass and memory per bucket rather than per sample.
+ * Samples must arrive in sampledate order.
+ */
+public class SeriesBuckets implements SampleHandler {
+
+	private final long bucketMillis;
+	private final List<SeriesPoint> points = new ArrayList<SeriesPoint>();
+
+	private long bucketStart;
+	private double min;
+	private double max;
+	private double sum;
+	private int count;
+
+	public SeriesBuckets(long bucketMillis) {
+		this.bucketMillis = bucketMillis;
+	}
+
+	/**
+	 * Start of the bucket holding time. Buckets are aligned in the server's
+	 * time zone (sampledate is stored as Central time), so daily buckets
+	 * start at local midnight, and a daylight saving change makes the
+	 * bucket it falls in an hour shorter or longer.
+	 */
+	public static long align(long time, long bucketMillis) {
+		TimeZone timeZone = TimeZone.getDefault();
+		long offset = timeZone.getOffset(time);
+		long local = time + offset;
+		long localStart = local - floorMod(local, bucketMillis);
+		/* the offset at the start differs when a change falls between it and time */
+		return localStart - timeZone.getOffset(localStart - offset);
+	}
+
+	/**
+	 * @param start a bucket start
+	 * @return the start of the bucket count buckets on, or the aligned time
+	 *         before it if count buckets of wall-clock time do not end on one
+	 */
+	public static long advance(long start, int count, long bucketMillis) {
+		long end = start + count * bucketMillis;
+		if (align(end, bucketMillis) == end) {
+			return end;
+		}
+		/* daily buckets, which daylight saving changes make 23 or 25 hours long */
+		TimeZone timeZone = TimeZone.getDefault();
+		long wallClock = end + timeZone.getOffset(start) - timeZone.getOffset(end);
+		if (align(wallClock, bucketMillis) == wallClock) {
+			return wallClock;
+		}
+		long aligned = align(end, bucketMillis);
+		return aligned > start ? aligned : end;
+	}
+
+	public void sample(long time, double value) {
+		add(time, value, value, value, 1);
+	}
+
+	/**
+	 * Folds in an aggregate of samples (a rollup period) starting at time.
+	 * The period must not span a bucket boundary.
+	 */
+	public void add(long time, double min, double max, double sum, int count) {
+		long start = align(time, bucketMillis);
+		if (this.count > 0 && start != bucketStart) {
+			flush();
+		}
+		if (this.count == 0) {
+			bucketStart = start;
+			this.min = min;
+			this.max = max;
+			this.sum = 0;
+		} else {
+			this.min = Math.min(this.min, min);
+			this.max = Math.max(this.max, max);
+		}
+		this.sum += sum;
+		this.count += count;
+	}
+
+	public List<SeriesPoint> getPoints() {
+		if (count > 0) {
+			flush();
+		}
+		return points;
+	}
+
+	private void flush() {
+		points.add(new SeriesPoint(new Date(bucketStart), min, max, sum / count, count));
+		count = 0;
+	}
+
+	private static long floorMod(long x, long y) {
+		long mod = x % y;
+		return mod < 0 ? mod + y : mod;
+	}
+}
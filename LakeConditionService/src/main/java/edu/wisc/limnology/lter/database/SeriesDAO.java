@@ -0,0 +1,54 @@
+package edu.wisc.limnology.lter.database;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+/**
+ * Reads hi-res sensor history in sampledate order. Null and flagged values
+ * are skipped, as on the d3 plots. depth is only used for sources recorded
+ * by depth.
+ */
+public interface SeriesDAO {
+
+	/**
+	 * Up to limit samples with after &lt; sampledate &lt; to, or from &lt;=
+	 * sampledate when after is null. Seeking past the last sampledate of a
+	 * page (keyset pagination) costs the same for every page.
+	 */
+	public List<SeriesPoint> getSamples(SeriesSource source, Double depth, Date from, Date after, Date to, int limit);
+
+	/**
+	 * min, max and mean of the samples with from &lt;= sampledate &lt; to,
+	 * in buckets of bucketMillis aligned by SeriesBuckets.align. Empty
+	 * buckets are left out.
+	 */
+	public List<SeriesPoint> getBuckets(SeriesSource source, Double depth, Date from, Date to, long bucketMillis);
+
+	/**
+	 * Hands every sample with from &lt;= sampledate &lt; to to handler as it
+	 * is read from a forward-only cursor, so memory use does not grow with
+	 * the range. The connection is held until the last row is handled.
+	 */
+	public void streamSamples(SeriesSource source, Double depth, Date from, Date to, SampleHandler handler)
+			throws IOException;
+
+	/**
+	 * As streamSamples, for every depth at once.
+	 */
+	public void streamAllDepths(SeriesSource source, Date from, Date to, DepthSampleHandler handler)
+			throws IOException;
+
+	/**
+	 * @return the oldest sampledate in the source's table, or null if empty
+	 */
+	public Date getFirstSampleDate(SeriesSource source);
+
+	/**
+	 * @return the newest sampledate in the source's table, or null if empty
+	 */
+	public Date getLatestSampleDate(SeriesSource source);
+
+}
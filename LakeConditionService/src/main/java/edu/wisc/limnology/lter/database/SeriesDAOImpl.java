@@ -0,0 +1,147 @@
+package edu.wisc.limnology.lter.database;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+public class SeriesDAOImpl implements SeriesDAO {
+
+	private static final RowMapper<SeriesPoint> SAMPLE_MAPPER = new RowMapper<SeriesPoint>() {
+		public SeriesPoint mapRow(ResultSet rs, int rowNum) throws SQLException {
+			return new SeriesPoint(new Date(rs.getTimestamp(1).getTime()), rs.getDouble(2));
+		}
+	};
+
+	private JdbcTemplate jdbcTemplate;
+
+	/* Integer.MIN_VALUE makes Connector/J stream rows one at a time instead
+	   of reading the whole result into memory; other drivers take a row count. */
+	private int fetchSize = Integer.MIN_VALUE;
+
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	public List<SeriesPoint> getSamples(SeriesSource source, Double depth, Date from, Date after, Date to, int limit) {
+		String lowerBound = after != null ? "sampledate > ?" : "sampledate >= ?";
+		List<Object> args = new ArrayList<Object>(4);
+		args.add(new Timestamp((after != null ? after : from).getTime()));
+		args.add(new Timestamp(to.getTime()));
+		String sql = select(source, depth, lowerBound, args) + " order by sampledate limit ?";
+		args.add(limit);
+		return jdbcTemplate.query(sql, args.toArray(), SAMPLE_MAPPER);
+	}
+
+	public List<SeriesPoint> getBuckets(SeriesSource source, Double depth, Date from, Date to, long bucketMillis) {
+		SeriesBuckets buckets = new SeriesBuckets(bucketMillis);
+		try {
+			streamSamples(source, depth, from, to, buckets);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // SeriesBuckets does no I/O
+		}
+		return buckets.getPoints();
+	}
+
+	public void streamSamples(SeriesSource source, Double depth, Date from, Date to, final SampleHandler handler)
+			throws IOException {
+		List<Object> args = new ArrayList<Object>(3);
+		args.add(new Timestamp(from.getTime()));
+		args.add(new Timestamp(to.getTime()));
+		String sql = select(source, depth, "sampledate >= ?", args) + " order by sampledate";
+		try {
+			jdbcTemplate.query(new StreamingStatement(sql, args, fetchSize), new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					try {
+						handler.sample(rs.getTimestamp(1).getTime(), rs.getDouble(2));
+					} catch (IOException e) {
+						throw new HandlerException(e);
+					}
+				}
+			});
+		} catch (HandlerException e) {
+			throw e.getCause();
+		}
+	}
+
+	public void streamAllDepths(SeriesSource source, Date from, Date to, final DepthSampleHandler handler)
+			throws IOException {
+		List<Object> args = new ArrayList<Object>(2);
+		args.add(new Timestamp(from.getTime()));
+		args.add(new Timestamp(to.getTime()));
+		String sql = "select sampledate, " + (source.isByDepth() ? "depth" : "0") + ", " + source.getColumn()
+				+ " from " + source.getTable() + " where sampledate >= ? and sampledate < ?"
+				+ " and " + source.getColumn() + " is not null and " + source.getFlagColumn() + " is null"
+				+ " order by sampledate";
+		try {
+			jdbcTemplate.query(new StreamingStatement(sql, args, fetchSize), new RowCallbackHandler() {
+				public void processRow(ResultSet rs) throws SQLException {
+					try {
+						handler.sample(rs.getDouble(2), rs.getTimestamp(1).getTime(), rs.getDouble(3));
+					} catch (IOException e) {
+						throw new HandlerException(e);
+					}
+				}
+			});
+		} catch (HandlerException e) {
+			throw e.getCause();
+		}
+	}
+
+	public Date getFirstSampleDate(SeriesSource source) {
+		return toDate(jdbcTemplate.queryForObject("select min(sampledate) from " + source.getTable(),
+				Timestamp.class));
+	}
+
+	public Date getLatestSampleDate(SeriesSource source) {
+		return toDate(jdbcTemplate.queryForObject("select max(sampledate) from " + source.getTable(),
+				Timestamp.class));
+	}
+
+	private static Date toDate(Timestamp timestamp) {
+		return timestamp != null ? new Date(timestamp.getTime()) : null;
+	}
+
+	/* Carries a SampleHandler's IOException out through JdbcTemplate, which closes the cursor. */
+	private static class HandlerException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		HandlerException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	/* Table and column names come from SeriesSource, never from the request. */
+	static String select(SeriesSource source, Double depth, String lowerBound, List<Object> args) {
+		StringBuilder sql = new StringBuilder("select sampledate, ").append(source.getColumn())
+				.append(" from ").append(source.getTable())
+				.append(" where ").append(lowerBound).append(" and sampledate < ?");
+		if (source.isByDepth()) {
+			sql.append(" and depth = ?");
+			args.add(depth);
+		}
+		sql.append(" and ").append(source.getColumn()).append(" is not null")
+				.append(" and ").append(source.getFlagColumn()).append(" is null");
+		return sql.toString();
+	}
+}
@@ -0,0 +1,151 @@
+package edu.wisc.limnology.lter.database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where a series variable lives in the hi-res sensor tables the R update
+ * jobs write: the table, the value column and its QC flag column. Water
+ * temperature tables hold one row per sample per depth.
+ */
+public final class SeriesSource {
+
+	public static final String AIR_TEMP = "airTemp";
+	public static final String REL_HUM = "relHum";
+	public static final String WIND_SPEED = "windSpeed";
+	public static final String WIND_DIR = "windDir";
+	public static final String PAR = "par";
+	public static final String WATER_TEMP = "waterTemp";
+	public static final String DO_SAT = "doSat";
+	public static final String DO_CONC = "doConc";
+	public static final String CHLOROPHYLL = "chlorophyll";
+	public static final String PHYCOCYANIN = "phycocyanin";
+
+	private static final Map<String, Map<String, SeriesSource>> SOURCES = new LinkedHashMap<String, Map<String, SeriesSource>>();
+
+	static {
+		String mendota = "sensor_mendota_lake_met_hi_res";
+		met("ME", mendota, AIR_TEMP, "air_temp");
+		met("ME", mendota, REL_HUM, "rel_hum");
+		met("ME", mendota, WIND_SPEED, "wind_speed");
+		met("ME", mendota, WIND_DIR, "wind_dir");
+		met("ME", mendota, PAR, "par");
+		met("ME", mendota, DO_SAT, "opt_dosat_raw");
+		met("ME", mendota, DO_CONC, "opt_do_raw");
+		met("ME", mendota, CHLOROPHYLL, "chlor");
+		met("ME", mendota, PHYCOCYANIN, "phycocyanin");
+		waterTemp("ME", "sensor_mendota_lake_watertemp_hi_res");
+
+		String sparkling = "sensor_sparkling_lake_met_hi_res";
+		met("SP", sparkling, AIR_TEMP, "air_temp");
+		met("SP", sparkling, REL_HUM, "rel_hum");
+		met("SP", sparkling, WIND_SPEED, "wind_speed_2m");
+		met("SP", sparkling, WIND_DIR, "wind_dir");
+		met("SP", sparkling, PAR, "par");
+		met("SP", sparkling, DO_SAT, "opt_dosat_raw");
+		met("SP", sparkling, DO_CONC, "opt_do_raw");
+		waterTemp("SP", "sensor_sparkling_lake_watertemp_hi_res");
+
+		String trout = "sensor_trout_lake_russ_met_hi_res";
+		met("TR", trout, AIR_TEMP, "air_temp");
+		met("TR", trout, REL_HUM, "rel_hum");
+		met("TR", trout, WIND_SPEED, "wind_speed");
+		met("TR", trout, WIND_DIR, "wind_dir");
+		met("TR", trout, PAR, "par");
+		met("TR", trout, DO_SAT, "ysi_dosat");
+		met("TR", trout, DO_CONC, "ysi_do");
+		waterTemp("TR", "sensor_trout_lake_russ_watertemp_hi_res");
+	}
+
+	private final String lakeId;
+	private final String variable;
+	private final String table;
+	private final String column;
+	private final String flagColumn;
+	private final boolean byDepth;
+
+	private SeriesSource(String lakeId, String variable, String table, String column, boolean byDepth) {
+		this.lakeId = lakeId;
+		this.variable = variable;
+		this.table = table;
+		this.column = column;
+		this.flagColumn = "flag_" + column;
+		this.byDepth = byDepth;
+	}
+
+	/**
+	 * @return the source of variable for lakeId, or null if the lake has no such series
+	 */
+	public static SeriesSource lookup(String lakeId, String variable) {
+		Map<String, SeriesSource> variables = lakeId != null ? SOURCES.get(lakeId.trim().toUpperCase()) : null;
+		return variables != null ? variables.get(variable) : null;
+	}
+
+	/**
+	 * @return the variables recorded for lakeId, empty for an unknown lake
+	 */
+	public static Set<String> variables(String lakeId) {
+		Map<String, SeriesSource> variables = lakeId != null ? SOURCES.get(lakeId.trim().toUpperCase()) : null;
+		return variables != null ? Collections.unmodifiableSet(variables.keySet())
+				: Collections.<String> emptySet();
+	}
+
+	/**
+	 * @return every registered source, grouped by lake
+	 */
+	public static List<SeriesSource> all() {
+		List<SeriesSource> all = new ArrayList<SeriesSource>();
+		for (Map<String, SeriesSource> variables : SOURCES.values()) {
+			all.addAll(variables.values());
+		}
+		return all;
+	}
+
+	public String getLakeId() {
+		return lakeId;
+	}
+
+	public String getVariable() {
+		return variable;
+	}
+
+	public String getTable() {
+		return table;
+	}
+
+	public String getColumn() {
+		return column;
+	}
+
+	public String getFlagColumn() {
+		return flagColumn;
+	}
+
+	/**
+	 * @return true if samples are recorded per depth and a depth must be given
+	 */
+	public boolean isByDepth() {
+		return byDepth;
+	}
+
+	private static void met(String lakeId, String table, String variable, String column) {
+		add(new SeriesSource(lakeId, variable, table, column, false));
+	}
+
+	private static void waterTemp(String lakeId, String table) {
+		add(new SeriesSource(lakeId, WATER_TEMP, table, "wtemp", true));
+	}
+
+	private static void add(SeriesSource source) {
+		Map<String, SeriesSource> variables = SOURCES.get(source.lakeId);
+		if (variables == null) {
+			variables = new LinkedHashMap<String, SeriesSource>();
+			SOURCES.put(source.lakeId, variables);
+		}
+		variables.put(source.variable, source);
+	}
+}
@@ -0,0 +1,35 @@
+package edu.wisc.limnology.lter.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.springframework.jdbc.core.PreparedStatementCreator;
+
+/**
+ * A forward-only, read-only query with the given fetch size, for reading
+ * more rows than should be held in memory at once.
+ */
+class StreamingStatement implements PreparedStatementCreator {
+
+	private final String sql;
+	private final List<Object> args;
+	private final int fetchSize;
+
+	StreamingStatement(String sql, List<Object> args, int fetchSize) {
+		this.sql = sql;
+		this.args = args;
+		this.fetchSize = fetchSize;
+	}
+
+	public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+		PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(fetchSize);
+		for (int i = 0; i < args.size(); i++) {
+			ps.setObject(i + 1, args.get(i));
+		}
+		return ps;
+	}
+}
@@ -0,0 +1,105 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+
+/**
+ * Derives the current conditions from the ingested rows as they arrive,
+ * in place of the get_current_*.R and get_phyco.R scripts: each lake's
+ * LakeState takes the latest unflagged value of every field a layout marks
+ * with a LakeCondition property, and keeps the phycocyanin readings of the
+ * last ingest.phycoWindowMillis for the median and the secchi estimate,
+ * and the wind speeds of the last ingest.gustWindowMillis for the gust.
+ * The state is laid over the lake's condition in the snapshot on each
+ * batch, so a published condition is never older than the one it
+ * replaces. A lake's phycocyanin window is filled from the hi-res table
+ * when its first batch arrives, so a restart does not empty it.
+ */
+@Component
+public class CurrentConditionsFeed {
+
+	private static final Log log = LogFactory.getLog(CurrentConditionsFeed.class);
+
+	@Autowired
+	private LakeConditionService lakeConditionService;
+
+	@Autowired(required = false)
+	private SeriesDAO seriesDAO;
+
+	@Value("${ingest.phycoWindowMillis}")
+	private long phycoWindowMillis;
+
+	@Value("${ingest.gustWindowMillis}")
+	private long gustWindowMillis;
+
+	private final Map<String, LakeState> states = new HashMap<String, LakeState>();
+
+	/**
+	 * @return whether a newer condition was published
+	 */
+	public synchronized boolean update(PrnBatch batch) {
+		if (batch.size() == 0) {
+			return false;
+		}
+		String lakeId = batch.getLayout().getLakeId();
+		LakeState state = states.get(lakeId);
+		if (state == null) {
+			state = new LakeState(lakeId, phycoWindowMillis, gustWindowMillis);
+			prime(state, lakeId, batch.getTime(0));
+			states.put(lakeId, state);
+		}
+		return state.update(batch) && lakeConditionService.publish(lakeId, state);
+	}
+
+	/* the phycocyanin readings of the window before the first ingested row */
+	private void prime(final LakeState state, String lakeId, long firstTime) {
+		SeriesSource source = SeriesSource.lookup(lakeId, SeriesSource.PHYCOCYANIN);
+		if (seriesDAO == null || source == null) {
+			return;
+		}
+		try {
+			seriesDAO.streamSamples(source, null, new Date(firstTime - phycoWindowMillis), new Date(firstTime),
+					new SampleHandler() {
+						public void sample(long sampleDate, double value) {
+							state.addPhyco(sampleDate, value);
+						}
+					});
+			log.info("Read " + state.getPhycoReadings() + " phycocyanin readings of " + lakeId);
+		} catch (DataAccessException | IOException e) {
+			log.warn("Could not read the phycocyanin readings of " + lakeId
+					+ "; the median covers the ingested rows only", e);
+		}
+	}
+
+	public void setLakeConditionService(LakeConditionService lakeConditionService) {
+		this.lakeConditionService = lakeConditionService;
+	}
+
+	public void setSeriesDAO(SeriesDAO seriesDAO) {
+		this.seriesDAO = seriesDAO;
+	}
+
+	public synchronized void setPhycoWindowMillis(long phycoWindowMillis) {
+		this.phycoWindowMillis = phycoWindowMillis;
+		states.clear();
+	}
+
+	public synchronized void setGustWindowMillis(long gustWindowMillis) {
+		this.gustWindowMillis = gustWindowMillis;
+		states.clear();
+	}
+}
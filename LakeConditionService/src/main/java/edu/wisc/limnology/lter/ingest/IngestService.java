@@ -0,0 +1,386 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.HiResDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.qc.RangeCheckTable;
+import edu.wisc.limnology.lter.services.RollupService;
+import edu.wisc.limnology.lter.services.SeriesStoreService;
+
+/**
+ * Tails the PRN files listed in ingest.files (LAYOUT=path, comma-separated,
+ * e.g. SP_MET=C:/BuoyData/SP/SP_LATEST_0.PRN; see PrnLayout) and takes each
+ * batch of new rows through both consumers in one pass: the hi-res table,
+ * then the current conditions (CurrentConditionsFeed). Rows are range
+ * checked on the way (PrnRangeChecks), against ingest.rangeChecksFile when
+ * it is set, and written with their flags. A file's checkpoint
+ * only moves once both have its rows, so a failed batch is read again on
+ * the next run. Nothing is ingested while ingest.files is empty.
+ * <p>
+ * A path may hold SimpleDateFormat patterns in braces, formatted in the
+ * layout's time zone on every run, for loggers that start a file a day,
+ * e.g. ME_LIMNO=/data/{yyyy}/{DDD}/MendotaBuoy_limnodata_{yyyyMMdd}.dat.
+ * Once the date moves on, the rest of the old file is read before the new
+ * one. Layouts without a table only feed the current conditions.
+ * <p>
+ * Rows written behind the rollup watermark or the store's synced-until,
+ * by a backfill or with hires.replaceDuplicates, would never reach them,
+ * so those are moved back to the batch's first row (RollupService.rewind,
+ * SeriesStoreService.rewind) before the checkpoint moves.
+ */
+@Component
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=IngestService,name=prnIngest")
+public class IngestService {
+
+	private static final Log log = LogFactory.getLog(IngestService.class);
+
+	@Autowired
+	private HiResDAO hiResDAO;
+
+	@Autowired
+	private CurrentConditionsFeed currentConditionsFeed;
+
+	@Autowired
+	private RollupService rollupService;
+
+	@Autowired
+	private SeriesStoreService seriesStoreService;
+
+	@Value("${ingest.files}")
+	private String files;
+
+	@Value("${ingest.checkpointDirectory}")
+	private String checkpointDirectory;
+
+	@Value("${ingest.batchRows}")
+	private int batchRows;
+
+	@Value("${ingest.maxChunkBytes}")
+	private int maxChunkBytes;
+
+	@Value("${ingest.rangeChecksFile}")
+	private String rangeChecksFile;
+
+	private List<Source> sources;
+
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong rowsIngested = new AtomicLong();
+	private final AtomicLong bytesIngested = new AtomicLong();
+	private final AtomicLong valuesFlagged = new AtomicLong();
+	private final AtomicLong tableRowsWritten = new AtomicLong();
+	private final AtomicLong duplicatesSkipped = new AtomicLong();
+	private final AtomicLong writeNanos = new AtomicLong();
+	private final AtomicLong rewinds = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong ingestNanos = new AtomicLong();
+	private volatile double lastRowsPerSecond;
+
+	@Scheduled(fixedDelayString = "${ingest.intervalMillis}", initialDelayString = "${ingest.initialDelayMillis}")
+	public synchronized void ingest() {
+		for (Source source : getSources()) {
+			try {
+				ingest(source);
+				if (source.roll()) {
+					ingest(source);
+				}
+			} catch (IOException | RuntimeException e) {
+				source.tailer.rollback();
+				failures.incrementAndGet();
+				log.error("Could not ingest " + source.tailer.getFile(), e);
+			}
+		}
+		runs.incrementAndGet();
+	}
+
+	/**
+	 * Reads a whole PRN file into the hi-res tables, e.g. a month of
+	 * SP_LATEST_0.PRN collected by hand after an outage, without touching
+	 * the checkpoints of the tailed files. Rows the tables hold already are
+	 * skipped (see HiResDAOImpl); the rollups and the store copy the rest
+	 * again from the file's first day and month on their next runs.
+	 *
+	 * @return rows read
+	 */
+	@ManagedOperation(description = "Read a whole PRN file (layout, path) into the hi-res tables")
+	public synchronized long backfill(String layoutName, String path) throws IOException {
+		PrnLayout layout = PrnLayout.lookup(layoutName);
+		if (layout == null) {
+			throw new IllegalArgumentException("No layout " + layoutName + "; one of " + PrnLayout.all());
+		}
+		Path checkpoint = Paths.get(checkpointDirectory, layout.getName() + ".backfill");
+		Files.deleteIfExists(checkpoint);
+		Source source = new Source(layout, path, checkpoint, new PrnRangeChecks(layout, readRangeChecks()));
+		return ingest(source);
+	}
+
+	/**
+	 * @return rows ingested from the source's file
+	 */
+	private long ingest(Source source) throws IOException {
+		long rows = 0;
+		long start = System.nanoTime();
+		long consumed;
+		while ((consumed = source.tailer.read(source.batch)) > 0) {
+			int flagged = source.rangeChecks.apply(source.batch);
+			long writeStart = System.nanoTime();
+			int written = source.batch.getLayout().hasTable() ? hiResDAO.insert(source.batch) : 0;
+			writeNanos.addAndGet(System.nanoTime() - writeStart);
+			if (written > 0) {
+				rewindHistory(source.batch);
+			}
+			currentConditionsFeed.update(source.batch);
+			source.tailer.commit();
+			rows += source.batch.size();
+			rowsIngested.addAndGet(source.batch.size());
+			valuesFlagged.addAndGet(flagged);
+			tableRowsWritten.addAndGet(written);
+			if (source.batch.getLayout().hasTable()) {
+				duplicatesSkipped.addAndGet(source.batch.size() * source.batch.getLayout().getTableRowsPerLine()
+						- written);
+			}
+			bytesIngested.addAndGet(consumed);
+		}
+		if (rows > 0) {
+			long nanos = System.nanoTime() - start;
+			ingestNanos.addAndGet(nanos);
+			lastRowsPerSecond = rows * 1e9 / nanos;
+			log.info("Ingested " + rows + " rows from " + source.tailer.getFile());
+		}
+		return rows;
+	}
+
+	/* the rollups and store copies of the batch's table, back to its first row where that is behind them */
+	private void rewindHistory(PrnBatch batch) throws IOException {
+		long first = Long.MAX_VALUE;
+		for (int row = 0; row < batch.size(); row++) {
+			first = Math.min(first, batch.getTime(row));
+		}
+		Date from = new Date(first);
+		for (SeriesSource series : SeriesSource.all()) {
+			if (series.getTable().equals(batch.getLayout().getTable())) {
+				if (rollupService.rewind(series, from)) {
+					rewinds.incrementAndGet();
+				}
+				if (seriesStoreService.rewind(series, from)) {
+					rewinds.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	private List<Source> getSources() {
+		if (sources == null) {
+			RangeCheckTable table = readRangeChecks();
+			List<Source> created = new ArrayList<Source>();
+			for (String entry : files.split(",")) {
+				if (entry.trim().isEmpty()) {
+					continue;
+				}
+				String[] layoutAndPath = entry.split("=", 2);
+				PrnLayout layout = PrnLayout.lookup(layoutAndPath[0]);
+				if (layout == null || layoutAndPath.length < 2) {
+					throw new IllegalArgumentException("ingest.files entry " + entry
+							+ " is not LAYOUT=path with LAYOUT one of " + PrnLayout.all());
+				}
+				Path checkpoint = Paths.get(checkpointDirectory, layout.getName() + ".offset");
+				try {
+					created.add(new Source(layout, layoutAndPath[1].trim(), checkpoint, new PrnRangeChecks(layout, table)));
+				} catch (IOException e) {
+					throw new IllegalStateException("Could not read the checkpoint " + checkpoint, e);
+				}
+			}
+			sources = Collections.unmodifiableList(created);
+		}
+		return sources;
+	}
+
+	/* compiled into each source's checks, so a changed file is read when the sources are next created */
+	private RangeCheckTable readRangeChecks() {
+		if (rangeChecksFile == null || rangeChecksFile.trim().isEmpty()) {
+			return null;
+		}
+		Path file = Paths.get(rangeChecksFile.trim());
+		try {
+			return RangeCheckTable.read(file);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the range checks " + file, e);
+		}
+	}
+
+	@ManagedAttribute(description = "Ingest runs completed")
+	public long getRuns() {
+		return runs.get();
+	}
+
+	@ManagedAttribute(description = "Rows ingested from the PRN files")
+	public long getRowsIngested() {
+		return rowsIngested.get();
+	}
+
+	@ManagedAttribute(description = "Bytes of PRN files ingested")
+	public long getBytesIngested() {
+		return bytesIngested.get();
+	}
+
+	@ManagedAttribute(description = "Values flagged by the range checks")
+	public long getValuesFlagged() {
+		return valuesFlagged.get();
+	}
+
+	@ManagedAttribute(description = "Hi-res table rows written")
+	public long getTableRowsWritten() {
+		return tableRowsWritten.get();
+	}
+
+	@ManagedAttribute(description = "Hi-res table rows skipped as already there")
+	public long getDuplicatesSkipped() {
+		return duplicatesSkipped.get();
+	}
+
+	@ManagedAttribute(description = "Seconds spent writing the hi-res tables")
+	public double getWriteSeconds() {
+		return writeNanos.get() / 1e9;
+	}
+
+	@ManagedAttribute(description = "Rollups and store copies moved back for rows written behind them")
+	public long getRewinds() {
+		return rewinds.get();
+	}
+
+	@ManagedAttribute(description = "Lines skipped because they could not be parsed")
+	public synchronized long getSkippedLines() {
+		long skipped = 0;
+		for (Source source : getSources()) {
+			skipped += source.tailer.getParser().getSkippedLines();
+		}
+		return skipped;
+	}
+
+	@ManagedAttribute(description = "File ingests that failed and will be retried")
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@ManagedAttribute(description = "Seconds spent reading, storing and publishing rows")
+	public double getIngestSeconds() {
+		return ingestNanos.get() / 1e9;
+	}
+
+	@ManagedAttribute(description = "Rows per second of the last file ingest that found rows")
+	public double getLastRowsPerSecond() {
+		return lastRowsPerSecond;
+	}
+
+	public void setHiResDAO(HiResDAO hiResDAO) {
+		this.hiResDAO = hiResDAO;
+	}
+
+	public void setRollupService(RollupService rollupService) {
+		this.rollupService = rollupService;
+	}
+
+	public void setSeriesStoreService(SeriesStoreService seriesStoreService) {
+		this.seriesStoreService = seriesStoreService;
+	}
+
+	public void setCurrentConditionsFeed(CurrentConditionsFeed currentConditionsFeed) {
+		this.currentConditionsFeed = currentConditionsFeed;
+	}
+
+	public void setFiles(String files) {
+		this.files = files;
+		this.sources = null;
+	}
+
+	public void setCheckpointDirectory(String checkpointDirectory) {
+		this.checkpointDirectory = checkpointDirectory;
+	}
+
+	public void setBatchRows(int batchRows) {
+		this.batchRows = batchRows;
+	}
+
+	public void setMaxChunkBytes(int maxChunkBytes) {
+		this.maxChunkBytes = maxChunkBytes;
+	}
+
+	public void setRangeChecksFile(String rangeChecksFile) {
+		this.rangeChecksFile = rangeChecksFile;
+		this.sources = null;
+	}
+
+	private class Source {
+		final String path;
+		final Path checkpoint;
+		final PrnRangeChecks rangeChecks;
+		final PrnBatch batch;
+		PrnTailer tailer;
+
+		Source(PrnLayout layout, String path, Path checkpoint, PrnRangeChecks rangeChecks) throws IOException {
+			this.path = path;
+			this.checkpoint = checkpoint;
+			this.rangeChecks = rangeChecks;
+			this.batch = new PrnBatch(layout, batchRows);
+			this.tailer = new PrnTailer(resolve(), checkpoint, new PrnParser(layout), maxChunkBytes);
+		}
+
+		/*
+		 * Moves to the file the path names now, keeping the checkpoint: the
+		 * new file's first line differs, so it is read from the start.
+		 */
+		boolean roll() throws IOException {
+			Path file = resolve();
+			if (file.equals(tailer.getFile())) {
+				return false;
+			}
+			log.info("Moving on from " + tailer.getFile() + " to " + file);
+			tailer = new PrnTailer(file, checkpoint, tailer.getParser(), maxChunkBytes);
+			return true;
+		}
+
+		Path resolve() {
+			return Paths.get(formatDates(path, batch.getLayout(), new Date()));
+		}
+	}
+
+	private static final Pattern DATE_TOKEN = Pattern.compile("\\{([^}]+)\\}");
+
+	/**
+	 * @return path with each {pattern} replaced by date formatted in the
+	 *         layout's time zone
+	 */
+	static String formatDates(String path, PrnLayout layout, Date date) {
+		Matcher matcher = DATE_TOKEN.matcher(path);
+		StringBuffer formatted = new StringBuffer();
+		while (matcher.find()) {
+			SimpleDateFormat format = new SimpleDateFormat(matcher.group(1));
+			if (layout.getTimeZone() != null) {
+				format.setTimeZone(layout.getTimeZone());
+			}
+			matcher.appendReplacement(formatted, Matcher.quoteReplacement(format.format(date)));
+		}
+		return matcher.appendTail(formatted).toString();
+	}
+}
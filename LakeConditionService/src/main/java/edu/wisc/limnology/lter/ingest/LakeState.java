@@ -0,0 +1,171 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.qc.RangeCheck;
+import edu.wisc.limnology.lter.services.LakeConditionUpdate;
+import edu.wisc.limnology.lter.stats.RollingExtreme;
+import edu.wisc.limnology.lter.stats.RollingMedian;
+
+/**
+ * What the ingested files have said about one lake: the latest unflagged
+ * reading of each condition property, the median of the phycocyanin
+ * readings of the last phycoWindowMillis, and the top wind speed of the
+ * last gustWindowMillis (update_current_ME_2017.R's gust). It is brought
+ * up to date batch by batch, so the current conditions never need a day of
+ * data read again as update_current_*.R and get_phyco.R read it. As a
+ * LakeConditionUpdate it lays what is newer than MySQL's row over it on
+ * every publish and reload; the properties no file feeds (lakename,
+ * thermocline depth) keep MySQL's values. Locked on itself, as ingestion
+ * updates it while reloads apply it.
+ */
+final class LakeState implements LakeConditionUpdate {
+
+	/* get_phyco.R drops readings outside (0, 5000) and gives no estimate above 1750 */
+	static final double PHYCO_MAX = 5000;
+	static final double SECCHI_PHYCO_MAX = 1750;
+
+	private final String lakeId;
+	private final Map<String, Reading> latest = new LinkedHashMap<String, Reading>();
+	private final RollingMedian phyco;
+	private final RollingExtreme gust;
+
+	LakeState(String lakeId, long phycoWindowMillis, long gustWindowMillis) {
+		this.lakeId = lakeId;
+		this.phyco = new RollingMedian(phycoWindowMillis);
+		this.gust = RollingExtreme.max(gustWindowMillis);
+	}
+
+	/**
+	 * @return whether any reading was taken from the batch
+	 */
+	synchronized boolean update(PrnBatch batch) {
+		boolean updated = false;
+		List<PrnLayout.Field> fields = batch.getLayout().getFields();
+		for (int field = 0; field < fields.size(); field++) {
+			String condition = fields.get(field).getCondition();
+			if (PrnLayout.PHYCOCYANIN.equals(condition)) {
+				for (int row = 0; row < batch.size(); row++) {
+					if (batch.getFlag(field, row) == RangeCheck.NO_FLAG) {
+						updated |= addPhyco(batch.getTime(row), batch.getValue(field, row));
+					}
+				}
+			} else if (condition != null) {
+				if (PrnLayout.WIND_SPEED.equals(condition)) {
+					for (int row = 0; row < batch.size(); row++) {
+						if (batch.getFlag(field, row) == RangeCheck.NO_FLAG) {
+							gust.add(batch.getTime(row), batch.getValue(field, row));
+						}
+					}
+				}
+				for (int row = batch.size() - 1; row >= 0; row--) {
+					double value = batch.getValue(field, row);
+					if (!Double.isNaN(value) && batch.getFlag(field, row) == RangeCheck.NO_FLAG) {
+						updated |= setLatest(condition, batch.getTime(row), value);
+						break;
+					}
+				}
+			}
+		}
+		return updated;
+	}
+
+	/**
+	 * @return false if the reading is out of range or older than the latest
+	 */
+	synchronized boolean addPhyco(long time, double value) {
+		return value > 0 && value < PHYCO_MAX && phyco.add(time, value);
+	}
+
+	private boolean setLatest(String condition, long time, double value) {
+		Reading reading = latest.get(condition);
+		if (reading != null && reading.time > time) {
+			return false;
+		}
+		latest.put(condition, new Reading(time, value));
+		return true;
+	}
+
+	/**
+	 * MySQL's row with the readings newer than it in place: condition
+	 * readings and the gust at or after its sampledate, which moves to the
+	 * latest of them, and the phycocyanin median when its latest reading is
+	 * at or after the secchi timestamp, which it moves as in get_phyco.R.
+	 *
+	 * @return null if no reading is newer than the row
+	 */
+	public synchronized LakeCondition apply(LakeCondition row) {
+		LakeCondition.Builder builder = row != null ? new LakeCondition.Builder(row)
+				: new LakeCondition.Builder().lakeId(lakeId);
+		long rowDate = row != null && row.getSampleDate() != null ? row.getSampleDate().getTime() : Long.MIN_VALUE;
+		long secchiDate = row != null && row.getSecchiEstTimestamp() != null ? row.getSecchiEstTimestamp().getTime()
+				: Long.MIN_VALUE;
+		long sampleDate = rowDate;
+		boolean newer = false;
+		for (Map.Entry<String, Reading> entry : latest.entrySet()) {
+			if (entry.getValue().time >= rowDate) {
+				set(builder, entry.getKey(), entry.getValue().value);
+				sampleDate = Math.max(sampleDate, entry.getValue().time);
+				newer = true;
+			}
+		}
+		if (!gust.isEmpty() && gust.getLatestTime() >= rowDate) {
+			builder.windGust(gust.get());
+			newer = true;
+		}
+		if (!phyco.isEmpty() && phyco.getLatestTime() >= secchiDate) {
+			double median = phyco.median();
+			builder.phycoMedian(median);
+			builder.secchiEst(median <= SECCHI_PHYCO_MAX ? secchiEstimate(median) : null);
+			builder.secchiEstTimestamp(new Date(phyco.getLatestTime()));
+			if (sampleDate == Long.MIN_VALUE) {
+				sampleDate = phyco.getLatestTime();
+			}
+			newer = true;
+		}
+		return newer ? builder.sampleDate(new Date(sampleDate)).build() : null;
+	}
+
+	/**
+	 * @return secchi depth in meters estimated from the phycocyanin median,
+	 *         the model in get_phyco.R
+	 */
+	static double secchiEstimate(double phycoMedian) {
+		return 1 / (0.282 + 0.0004275 * phycoMedian);
+	}
+
+	/**
+	 * @return phycocyanin readings in the window
+	 */
+	synchronized int getPhycoReadings() {
+		return phyco.size();
+	}
+
+	private static void set(LakeCondition.Builder builder, String condition, double value) {
+		if (PrnLayout.AIR_TEMP.equals(condition)) {
+			builder.airTemp(value);
+		} else if (PrnLayout.WATER_TEMP.equals(condition)) {
+			builder.waterTemp(value);
+		} else if (PrnLayout.WIND_SPEED.equals(condition)) {
+			builder.windSpeed(value);
+		} else if (PrnLayout.WIND_DIR.equals(condition)) {
+			builder.windDir((int) Math.round(value));
+		} else {
+			throw new IllegalArgumentException("No LakeCondition property " + condition);
+		}
+	}
+
+	private static final class Reading {
+		final long time;
+		final double value;
+
+		Reading(long time, double value) {
+			this.time = time;
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package edu.wisc.limnology.lter.ingest;
+
+import edu.wisc.limnology.lter.qc.RangeCheck;
+
+/**
+ * Rows parsed from a PRN file, held as primitive columns: the sample time,
+ * and for each layout field a double (NaN where the logger wrote NAN or
+ * nothing) and its QC flag, set by PrnRangeChecks. The batch is reused from
+ * read to read; clear() keeps the arrays.
+ */
+public final class PrnBatch {
+
+	private final PrnLayout layout;
+	private final long[] times;
+	private final double[][] values;
+	private final char[][] flags;
+	private int size;
+
+	public PrnBatch(PrnLayout layout, int capacity) {
+		this.layout = layout;
+		this.times = new long[capacity];
+		this.values = new double[layout.getFields().size()][capacity];
+		this.flags = new char[layout.getFields().size()][capacity];
+	}
+
+	public PrnLayout getLayout() {
+		return layout;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size == times.length;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return sampledate of the row in milliseconds, in the logger's local time
+	 */
+	public long getTime(int row) {
+		checkRow(row);
+		return times[row];
+	}
+
+	/**
+	 * @param field index into the layout's fields, not the PRN field index
+	 */
+	public double getValue(int field, int row) {
+		checkRow(row);
+		return values[field][row];
+	}
+
+	/**
+	 * @param field index into the layout's fields, not the PRN field index
+	 * @return the value's flag, RangeCheck.NO_FLAG if it has none
+	 */
+	public char getFlag(int field, int row) {
+		checkRow(row);
+		return flags[field][row];
+	}
+
+	/**
+	 * @return the row appended; its values are NaN and unflagged until set
+	 */
+	int addRow(long time) {
+		if (size == times.length) {
+			throw new IllegalStateException("Batch is full");
+		}
+		times[size] = time;
+		for (double[] column : values) {
+			column[size] = Double.NaN;
+		}
+		for (char[] column : flags) {
+			column[size] = RangeCheck.NO_FLAG;
+		}
+		return size++;
+	}
+
+	void setValue(int field, int row, double value) {
+		values[field][row] = value;
+	}
+
+	/* the columns themselves, valid up to size(), for PrnRangeChecks */
+	long[] times() {
+		return times;
+	}
+
+	double[] values(int field) {
+		return values[field];
+	}
+
+	char[] flags(int field) {
+		return flags[field];
+	}
+
+	/* drops the last row, for a line that turned out to be malformed */
+	void removeLastRow() {
+		size--;
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return layout + " " + size + " rows";
+	}
+}
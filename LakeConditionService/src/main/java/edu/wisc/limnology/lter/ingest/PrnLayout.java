@@ -0,0 +1,277 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import edu.wisc.limnology.lter.qc.RangeCheck;
+import edu.wisc.limnology.lter.qc.RangeCheckTable;
+
+/**
+ * The fields of one kind of PRN file cut from the logger's .DAT by a
+ * split_*.PAR definition, and the hi-res table they go to. Field indexes
+ * are 0-based and count the quoted timestamp as field 0, so field n is
+ * column n + 1 of df.A in the process_latest_*.R script that reads the same
+ * file. Met files hold one table row per line; profile files hold one
+ * value per depth per line, written as one row per depth. Range checks are
+ * those of the same script: fixed bounds, or rows of range_checks_new.csv
+ * (see RangeCheckTable) numbered as the script numbers them. A value the
+ * script drops before storing, such as a cumulative precipitation at or
+ * above the logger's 7999 overflow, is read as missing. A layout
+ * without a table only feeds the current conditions, for files whose rows
+ * an R job still loads.
+ */
+public final class PrnLayout {
+
+	/** LakeCondition properties a field can feed, see CurrentConditionsFeed */
+	public static final String AIR_TEMP = "airTemp";
+	public static final String WATER_TEMP = "waterTemp";
+	public static final String WIND_SPEED = "windSpeed";
+	public static final String WIND_DIR = "windDir";
+	/** each reading goes into the rolling phycocyanin median, see LakeState */
+	public static final String PHYCOCYANIN = "phycocyanin";
+
+	private static final Map<String, PrnLayout> LAYOUTS = new LinkedHashMap<String, PrnLayout>();
+
+	static {
+		/* process_latest_SP.R */
+		PrnLayout spMet = met("SP_MET", "SP", "sensor_sparkling_lake_met_hi_res");
+		spMet.field(2, "air_temp").condition(AIR_TEMP);
+		spMet.field(3, "rel_hum");
+		spMet.field(32, "opt_wtemp").rangeRows(257, 256);
+		spMet.field(33, "opt_dosat_raw").rangeRows(253, 252);
+		spMet.field(34, "opt_do_raw").rangeRows(251, 250);
+		spMet.field(35, "wind_speed_2m").condition(WIND_SPEED).range(RangeCheck.between(0, 20));
+		spMet.field(36, "wind_dir").condition(WIND_DIR).range(RangeCheck.between(0, 360));
+		spMet.field(37, "barom_pres_mbar").range(RangeCheck.between(900, 1000));
+		spMet.field(38, "par");
+		spMet.field(39, "sat_vapor_pres").rangeRows(259, 258);
+		spMet.field(40, "vapor_pres");
+		spMet.field(41, "cumulative_precipitation").missingFrom(7999);
+
+		/* process_latest_limno_SP.R; get_current_met_SP.R takes water temp from 0.25 m */
+		PrnLayout spWtemp = profile("SP_WTEMP", "SP", "sensor_sparkling_lake_watertemp_hi_res", 2, 0, 0.25, 0.5,
+				0.75, 1, 1.25, 1.5, 2, 2.5, 3, 3.5, 4, 4.5, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 16, 18);
+		spWtemp.fields.get(1).condition(WATER_TEMP);
+		for (Field field : spWtemp.fields) {
+			field.range(RangeCheck.between(0, 50).flaggingMissing());
+		}
+
+		/* get_phyco.R; MendotaBuoy_limnodata_yyyyMMdd.dat is in UTC, and update_ME_limno_hires_byday.R loads it */
+		PrnLayout meLimno = met("ME_LIMNO", "ME", null);
+		meLimno.timeZone = TimeZone.getTimeZone("UTC");
+		meLimno.field(31, "phycocyanin").condition(PHYCOCYANIN);
+	}
+
+	private final String name;
+	private final String lakeId;
+	private final String table;
+	private final boolean profile;
+	private final List<Field> fields = new ArrayList<Field>();
+	/* null for the JVM's, which is the loggers' */
+	private TimeZone timeZone;
+
+	private PrnLayout(String name, String lakeId, String table, boolean profile) {
+		this.name = name;
+		this.lakeId = lakeId;
+		this.table = table;
+		this.profile = profile;
+	}
+
+	/**
+	 * @return the layout called name, e.g. SP_MET, or null if there is none
+	 */
+	public static PrnLayout lookup(String name) {
+		return name != null ? LAYOUTS.get(name.trim().toUpperCase()) : null;
+	}
+
+	public static List<PrnLayout> all() {
+		return Collections.unmodifiableList(new ArrayList<PrnLayout>(LAYOUTS.values()));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getLakeId() {
+		return lakeId;
+	}
+
+	/**
+	 * @return the hi-res table, or null if rows only feed the current
+	 *         conditions
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	public boolean hasTable() {
+		return table != null;
+	}
+
+	/**
+	 * @return the time zone of the file's timestamps
+	 */
+	public TimeZone getTimeZone() {
+		return timeZone != null ? timeZone : TimeZone.getDefault();
+	}
+
+	/**
+	 * @return true if each field is one depth of wtemp rather than a column
+	 */
+	public boolean isProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return hi-res table rows written per line: one per depth for profiles
+	 */
+	public int getTableRowsPerLine() {
+		return profile ? fields.size() : 1;
+	}
+
+	public List<Field> getFields() {
+		return Collections.unmodifiableList(fields);
+	}
+
+	/**
+	 * @return the highest field index read, so shorter lines can be skipped
+	 */
+	public int getLastIndex() {
+		int last = 0;
+		for (Field field : fields) {
+			last = Math.max(last, field.index);
+		}
+		return last;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private Field field(int index, String column) {
+		Field field = new Field(index, column, Double.NaN);
+		fields.add(field);
+		return field;
+	}
+
+	private static PrnLayout met(String name, String lakeId, String table) {
+		PrnLayout layout = new PrnLayout(name, lakeId, table, false);
+		LAYOUTS.put(name, layout);
+		return layout;
+	}
+
+	private static PrnLayout profile(String name, String lakeId, String table, int firstIndex, double... depths) {
+		PrnLayout layout = new PrnLayout(name, lakeId, table, true);
+		for (int i = 0; i < depths.length; i++) {
+			layout.fields.add(new Field(firstIndex + i, "wtemp", depths[i]));
+		}
+		LAYOUTS.put(name, layout);
+		return layout;
+	}
+
+	/** One value per line: a met column, or wtemp at one depth. */
+	public static final class Field {
+
+		private final int index;
+		private final String column;
+		private final double depth;
+		private String condition;
+		private double missingFrom = Double.POSITIVE_INFINITY;
+		private RangeCheck range;
+		private int minRow;
+		private int maxRow;
+
+		Field(int index, String column, double depth) {
+			this.index = index;
+			this.column = column;
+			this.depth = depth;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getColumn() {
+			return column;
+		}
+
+		public String getFlagColumn() {
+			return "flag_" + column;
+		}
+
+		/**
+		 * @return the depth in meters for profile fields, NaN otherwise
+		 */
+		public double getDepth() {
+			return depth;
+		}
+
+		/**
+		 * @return the LakeCondition property the latest value updates, or null
+		 */
+		public String getCondition() {
+			return condition;
+		}
+
+		/**
+		 * @return the value from which on a reading is missing, or +Infinity
+		 */
+		public double getMissingFrom() {
+			return missingFrom;
+		}
+
+		/**
+		 * @return true if the field has a range check and its flag column is
+		 *         written
+		 */
+		public boolean isChecked() {
+			return range != null || minRow > 0;
+		}
+
+		/**
+		 * @param table range_checks_new.csv, or null if there is none
+		 * @return the field's range check, or null if it has none or its
+		 *         bounds are rows of a missing table
+		 */
+		public RangeCheck getRangeCheck(RangeCheckTable table) {
+			if (minRow > 0) {
+				return table != null ? RangeCheck.monthly(table.getBounds(minRow), table.getBounds(maxRow)) : null;
+			}
+			return range;
+		}
+
+		/**
+		 * @return true if the field's bounds are rows of range_checks_new.csv
+		 */
+		public boolean isCheckedByTable() {
+			return minRow > 0;
+		}
+
+		Field condition(String condition) {
+			this.condition = condition;
+			return this;
+		}
+
+		Field missingFrom(double missingFrom) {
+			this.missingFrom = missingFrom;
+			return this;
+		}
+
+		Field range(RangeCheck range) {
+			this.range = range;
+			return this;
+		}
+
+		/* 1-based rows of range_checks_new.csv, as in df.B[row, month + 1] */
+		Field rangeRows(int minRow, int maxRow) {
+			this.minRow = minRow;
+			this.maxRow = maxRow;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Parses PRN lines straight from bytes into a PrnBatch, without a String
+ * per line or field:
+ * <pre>
+ * "2015-08-26 13:03:00",48954,17.900,55.1,19.020,...
+ * </pre>
+ * The timestamp is read in the layout's time zone: the logger's local time,
+ * which is the JVM's, as LakeConditionDAOImpl reads sampledate back. Fields the layout
+ * does not use are skipped; NAN, INF, an empty field or anything else that
+ * is not a number is NaN, as is a value at or above its field's
+ * missingFrom. A line whose timestamp cannot be read, or that
+ * stops before the layout's last field, is skipped and counted. Not
+ * thread-safe; one parser per file.
+ */
+public class PrnParser {
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final PrnLayout layout;
+	/* for each PRN field index, the layout field it fills or -1 */
+	private final int[] fieldsByIndex;
+	/* for each layout field, the value from which on it is NaN */
+	private final double[] missingFrom;
+
+	private final Calendar calendar;
+	private int cachedDay = -1;
+	private long cachedDayStart;
+	/* false when the cached day has a DST change, so its hours are not all 60 minutes */
+	private boolean cachedDayRegular;
+
+	private long skippedLines;
+
+	public PrnParser(PrnLayout layout) {
+		this.layout = layout;
+		this.calendar = Calendar.getInstance(layout.getTimeZone());
+		this.fieldsByIndex = new int[layout.getLastIndex() + 1];
+		Arrays.fill(fieldsByIndex, -1);
+		List<PrnLayout.Field> fields = layout.getFields();
+		this.missingFrom = new double[fields.size()];
+		for (int i = 0; i < fields.size(); i++) {
+			fieldsByIndex[fields.get(i).getIndex()] = i;
+			missingFrom[i] = fields.get(i).getMissingFrom();
+		}
+	}
+
+	public PrnLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Parses whole lines from the buffer's position up to its limit, or until
+	 * the batch is full, into the batch. A last line without its newline is
+	 * left for the next call, when the logger has finished writing it.
+	 *
+	 * @return bytes consumed from the position, up to the end of the last
+	 *         line parsed or skipped
+	 */
+	public int parse(ByteBuffer buffer, PrnBatch batch) {
+		int start = buffer.position();
+		int limit = buffer.limit();
+		int lineStart = start;
+		while (lineStart < limit && !batch.isFull()) {
+			int lineEnd = indexOf(buffer, (byte) '\n', lineStart, limit);
+			if (lineEnd < 0) {
+				break;
+			}
+			parseLine(buffer, lineStart, lineEnd, batch);
+			lineStart = lineEnd + 1;
+		}
+		return lineStart - start;
+	}
+
+	/**
+	 * @return lines skipped because they could not be read
+	 */
+	public long getSkippedLines() {
+		return skippedLines;
+	}
+
+	private void parseLine(ByteBuffer buffer, int start, int end, PrnBatch batch) {
+		if (end > start && buffer.get(end - 1) == '\r') {
+			end--;
+		}
+		if (end == start) {
+			return;
+		}
+		int fieldEnd = indexOf(buffer, (byte) ',', start, end);
+		long time = parseTime(buffer, start, fieldEnd < 0 ? end : fieldEnd);
+		if (time == Long.MIN_VALUE) {
+			skippedLines++;
+			return;
+		}
+		int row = batch.addRow(time);
+		int fieldStart = fieldEnd + 1;
+		for (int index = 1; index < fieldsByIndex.length; index++) {
+			if (fieldEnd < 0) {
+				batch.removeLastRow();
+				skippedLines++;
+				return;
+			}
+			fieldEnd = indexOf(buffer, (byte) ',', fieldStart, end);
+			int field = fieldsByIndex[index];
+			if (field >= 0) {
+				double value = parseDouble(buffer, fieldStart, fieldEnd < 0 ? end : fieldEnd);
+				batch.setValue(field, row, value >= missingFrom[field] ? Double.NaN : value);
+			}
+			fieldStart = fieldEnd + 1;
+		}
+	}
+
+	/*
+	 * yyyy-MM-dd HH:mm:ss, quoted or not, anything after the seconds ignored
+	 *
+	 * @return Long.MIN_VALUE if it is not a timestamp
+	 */
+	long parseTime(ByteBuffer buffer, int start, int end) {
+		if (start < end && buffer.get(start) == '"') {
+			start++;
+		}
+		if (end - start < 19 || buffer.get(start + 4) != '-' || buffer.get(start + 7) != '-'
+				|| buffer.get(start + 13) != ':' || buffer.get(start + 16) != ':') {
+			return Long.MIN_VALUE;
+		}
+		int year = digits(buffer, start, 4);
+		int month = digits(buffer, start + 5, 2);
+		int day = digits(buffer, start + 8, 2);
+		int hour = digits(buffer, start + 11, 2);
+		int minute = digits(buffer, start + 14, 2);
+		int second = digits(buffer, start + 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0
+				|| minute > 59 || second < 0 || second > 59) {
+			return Long.MIN_VALUE;
+		}
+		int dayKey = (year * 100 + month) * 100 + day;
+		if (dayKey != cachedDay) {
+			calendar.clear();
+			calendar.set(year, month - 1, day);
+			cachedDayStart = calendar.getTimeInMillis();
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+			cachedDayRegular = calendar.getTimeInMillis() - cachedDayStart == 86400000L;
+			cachedDay = dayKey;
+		}
+		if (cachedDayRegular) {
+			return cachedDayStart + ((hour * 60L + minute) * 60 + second) * 1000;
+		}
+		calendar.clear();
+		calendar.set(year, month - 1, day, hour, minute, second);
+		return calendar.getTimeInMillis();
+	}
+
+	/* @return the number, or -1 if a byte is not a digit */
+	private static int digits(ByteBuffer buffer, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/*
+	 * Plain decimals (-12.345) are read as a long mantissa over a power of
+	 * ten, which rounds correctly while the mantissa has at most 15 digits;
+	 * exponents and longer numbers go through Double.parseDouble.
+	 */
+	static double parseDouble(ByteBuffer buffer, int start, int end) {
+		while (start < end && (buffer.get(start) == ' ' || buffer.get(start) == '"')) {
+			start++;
+		}
+		while (end > start && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '"')) {
+			end--;
+		}
+		if (start == end) {
+			return Double.NaN;
+		}
+		int i = start;
+		boolean negative = false;
+		byte b = buffer.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fractionDigits = -1;
+		for (; i < end; i++) {
+			b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+			} else if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == end && digits > 0 && digits <= 15) {
+			double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+			return negative ? -value : value;
+		}
+		return parseSlowly(buffer, start, end);
+	}
+
+	private static double parseSlowly(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		try {
+			double value = Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+			return Double.isInfinite(value) ? Double.NaN : value;
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,69 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import edu.wisc.limnology.lter.qc.MonthIndex;
+import edu.wisc.limnology.lter.qc.RangeCheck;
+import edu.wisc.limnology.lter.qc.RangeCheckTable;
+
+/**
+ * A layout's range checks, compiled once, flagging whole batches a field
+ * at a time. Each row is checked against the bounds of its own month;
+ * process_latest_*.R uses the month of a file's first row for all of it.
+ * Not thread-safe; one per file, like the parser.
+ */
+public class PrnRangeChecks {
+
+	private static final Log log = LogFactory.getLog(PrnRangeChecks.class);
+
+	private final PrnLayout layout;
+	/* for each layout field, its check or null */
+	private final RangeCheck[] checks;
+	private final MonthIndex monthIndex;
+	private int[] months = new int[0];
+
+	/**
+	 * @param table range_checks_new.csv, or null to check only the fixed
+	 *            bounds
+	 */
+	public PrnRangeChecks(PrnLayout layout, RangeCheckTable table) {
+		this.layout = layout;
+		this.monthIndex = new MonthIndex(layout.getTimeZone());
+		List<PrnLayout.Field> fields = layout.getFields();
+		this.checks = new RangeCheck[fields.size()];
+		for (int i = 0; i < checks.length; i++) {
+			PrnLayout.Field field = fields.get(i);
+			checks[i] = field.getRangeCheck(table);
+			if (checks[i] == null && field.isCheckedByTable()) {
+				log.warn("No range checks file; " + field.getColumn() + " of " + layout + " is not checked");
+			}
+		}
+	}
+
+	public PrnLayout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Sets the flag of every checked value in the batch.
+	 *
+	 * @return values flagged
+	 */
+	public int apply(PrnBatch batch) {
+		int size = batch.size();
+		if (months.length < size) {
+			months = new int[batch.times().length];
+		}
+		monthIndex.monthsOf(batch.times(), months, size);
+		int flagged = 0;
+		for (int field = 0; field < checks.length; field++) {
+			if (checks[field] != null) {
+				flagged += checks[field].apply(batch.values(field), months, batch.flags(field), size);
+			}
+		}
+		return flagged;
+	}
+}
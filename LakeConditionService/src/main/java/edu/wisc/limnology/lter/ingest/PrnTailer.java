@@ -0,0 +1,155 @@
+package edu.wisc.limnology.lter.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Follows one PRN file as split appends to it, reading only the bytes past
+ * the checkpointed offset through a memory-mapped window of at most
+ * maxChunkBytes. The offset only moves on commit(), once the rows read have
+ * been stored, so rows are read again rather than lost after a crash.
+ * <p>
+ * process_latest_*.R deletes the PRN files it has read and split creates
+ * them again, so a file shorter than the offset, or whose first line is not
+ * the one checkpointed, is read again from the start. The checkpoint is a
+ * one-line text file, "offset first-line-crc", replaced atomically.
+ */
+public class PrnTailer {
+
+	private static final Log log = LogFactory.getLog(PrnTailer.class);
+
+	/* enough for the timestamp and record number that make a first line unique */
+	static final int FINGERPRINT_BYTES = 256;
+
+	private final Path file;
+	private final Path checkpoint;
+	private final PrnParser parser;
+	private final int maxChunkBytes;
+
+	private long offset;
+	private long fingerprint;
+	private long pendingOffset;
+	private long pendingFingerprint;
+
+	public PrnTailer(Path file, Path checkpoint, PrnParser parser, int maxChunkBytes) throws IOException {
+		this.file = file;
+		this.checkpoint = checkpoint;
+		this.parser = parser;
+		this.maxChunkBytes = maxChunkBytes;
+		if (Files.exists(checkpoint)) {
+			String[] saved = new String(Files.readAllBytes(checkpoint), StandardCharsets.US_ASCII).trim().split(" ");
+			offset = Long.parseLong(saved[0]);
+			fingerprint = Long.parseLong(saved[1]);
+		}
+		pendingOffset = offset;
+		pendingFingerprint = fingerprint;
+	}
+
+	/**
+	 * Clears the batch and parses the lines appended since the last commit
+	 * into it, up to maxChunkBytes or a full batch. Call commit() once they
+	 * are stored, then read again until nothing is consumed.
+	 *
+	 * @return bytes consumed, 0 when the file is missing or has nothing new
+	 */
+	public long read(PrnBatch batch) throws IOException {
+		batch.clear();
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			long firstLine = fingerprint(channel, size);
+			if (size < pendingOffset || (pendingOffset > 0 && firstLine != pendingFingerprint)) {
+				log.info(file + " was replaced; reading it from the start");
+				pendingOffset = 0;
+			}
+			pendingFingerprint = firstLine;
+			long length = Math.min(size - pendingOffset, maxChunkBytes);
+			if (length <= 0) {
+				return 0;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pendingOffset, length);
+			int consumed = parser.parse(buffer, batch);
+			if (consumed == 0 && length == maxChunkBytes) {
+				throw new IOException("A line in " + file + " at " + pendingOffset + " is longer than "
+						+ maxChunkBytes + " bytes");
+			}
+			pendingOffset += consumed;
+			return consumed;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Saves the offset past the lines read so far.
+	 */
+	public void commit() throws IOException {
+		if (pendingOffset == offset && Files.exists(checkpoint)) {
+			return;
+		}
+		Files.createDirectories(checkpoint.getParent());
+		Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+		Files.write(temp, (pendingOffset + " " + pendingFingerprint).getBytes(StandardCharsets.US_ASCII));
+		Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		offset = pendingOffset;
+		fingerprint = pendingFingerprint;
+	}
+
+	/**
+	 * Drops what was read since the last commit, to read it again.
+	 */
+	public void rollback() {
+		pendingOffset = offset;
+		pendingFingerprint = fingerprint;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public PrnParser getParser() {
+		return parser;
+	}
+
+	/**
+	 * @return the committed offset
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/* CRC of the first line, 0 until it has been written out */
+	private static long fingerprint(FileChannel channel, long size) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate((int) Math.min(size, FINGERPRINT_BYTES));
+		while (head.hasRemaining() && channel.read(head, head.position()) > 0) {
+		}
+		head.flip();
+		int end = head.limit();
+		for (int i = 0; i < head.limit(); i++) {
+			if (head.get(i) == '\n') {
+				end = i;
+				break;
+			}
+		}
+		if (end == head.limit() && size <= FINGERPRINT_BYTES) {
+			return 0;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(head.array(), 0, end);
+		return crc.getValue();
+	}
+}
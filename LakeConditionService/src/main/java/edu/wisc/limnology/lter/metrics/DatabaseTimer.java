@@ -0,0 +1,39 @@
+package edu.wisc.limnology.lter.metrics;
+
+import java.lang.reflect.Method;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Times calls into the MySQL DAOs and counts the ones that throw, labelled
+ * with the interface method (LakeConditionDAO.getLakeConditions). Applied
+ * to the DAO beans by the auto-proxy creator in applicationContext.xml.
+ * For streaming calls the time includes handling every row.
+ */
+public class DatabaseTimer implements MethodInterceptor {
+
+	private Metrics metrics;
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		Method method = invocation.getMethod();
+		if (method.getDeclaringClass() == Object.class) {
+			return invocation.proceed();
+		}
+		String labels = PrometheusText.labels("operation",
+				method.getDeclaringClass().getSimpleName() + "." + method.getName());
+		long start = System.nanoTime();
+		try {
+			return invocation.proceed();
+		} catch (Throwable e) {
+			metrics.increment(Metrics.DB_ERRORS, labels);
+			throw e;
+		} finally {
+			metrics.observe(Metrics.DB_CALL_DURATION, labels, System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package edu.wisc.limnology.lter.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Durations counted into fixed buckets of 1 ms to 10 s, written as a
+ * Prometheus histogram in seconds. Recording is lock-free, so a scrape
+ * may find a sample in its bucket before it reaches the count; the
+ * written _count is never less than the buckets add up to.
+ */
+public class Histogram {
+
+	static final double[] BUCKET_SECONDS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5,
+			10 };
+
+	private static final long[] BUCKET_NANOS = new long[BUCKET_SECONDS.length];
+
+	static {
+		for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+			BUCKET_NANOS[i] = (long) (BUCKET_SECONDS[i] * 1e9);
+		}
+	}
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_NANOS.length);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	public void observe(long nanos) {
+		for (int i = 0; i < BUCKET_NANOS.length; i++) {
+			if (nanos <= BUCKET_NANOS[i]) {
+				buckets.incrementAndGet(i);
+				break;
+			}
+		}
+		sumNanos.addAndGet(nanos);
+		count.incrementAndGet();
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	void write(PrometheusText out, String name, String labels) {
+		long total = count.get();
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_SECONDS.length; i++) {
+			cumulative += buckets.get(i);
+			out.sample(name + "_bucket", PrometheusText.withLabel(labels, "le", Double.toString(BUCKET_SECONDS[i])),
+					cumulative);
+		}
+		total = Math.max(total, cumulative);
+		out.sample(name + "_bucket", PrometheusText.withLabel(labels, "le", "+Inf"), total);
+		out.sample(name + "_sum", labels, sumNanos.get() / 1e9);
+		out.sample(name + "_count", labels, total);
+	}
+}
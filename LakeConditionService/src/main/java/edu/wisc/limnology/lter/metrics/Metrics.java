@@ -0,0 +1,97 @@
+package edu.wisc.limnology.lter.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * The counters and histograms recorded while serving requests: requests
+ * and their latency per endpoint (RequestMetrics), time spent writing
+ * entities, calls into MySQL per DAO method (DatabaseTimer) and the wait
+ * for a pooled connection (TimedDataSource). Series are created on first
+ * use and kept for the life of the webapp; labels are limited to endpoint
+ * templates, methods and status codes, so their number stays small.
+ * Written at /metrics by MetricsResource.
+ */
+@Component
+public class Metrics {
+
+	public static final String REQUEST_DURATION = "lakecondition_http_request_duration_seconds";
+	public static final String RESPONSES = "lakecondition_http_responses_total";
+	public static final String SERIALIZATION_DURATION = "lakecondition_http_serialization_duration_seconds";
+	public static final String EXCEPTIONS = "lakecondition_http_exceptions_total";
+	public static final String DB_CALL_DURATION = "lakecondition_db_call_duration_seconds";
+	public static final String DB_ERRORS = "lakecondition_db_errors_total";
+	public static final String POOL_WAIT = "lakecondition_db_pool_wait_seconds";
+
+	private final Map<String, Family> families = new ConcurrentSkipListMap<String, Family>();
+
+	public Metrics() {
+		histogram(REQUEST_DURATION, "Time from a request arriving to its response being written, by endpoint");
+		counter(RESPONSES, "Responses by endpoint and status code");
+		histogram(SERIALIZATION_DURATION, "Time spent writing response entities, by endpoint");
+		counter(EXCEPTIONS, "Exceptions thrown while handling requests, by type");
+		histogram(DB_CALL_DURATION, "Time spent in MySQL calls, by DAO method");
+		counter(DB_ERRORS, "MySQL calls that failed, by DAO method");
+		histogram(POOL_WAIT, "Time spent waiting for a pooled connection");
+	}
+
+	/**
+	 * @param labels rendered by PrometheusText.labels, or empty
+	 */
+	public void observe(String name, String labels, long nanos) {
+		Histogram histogram = (Histogram) families.get(name).series(labels);
+		histogram.observe(nanos);
+	}
+
+	public void increment(String name, String labels) {
+		((AtomicLong) families.get(name).series(labels)).incrementAndGet();
+	}
+
+	public void write(PrometheusText out) {
+		for (Map.Entry<String, Family> entry : families.entrySet()) {
+			String name = entry.getKey();
+			Family family = entry.getValue();
+			out.family(name, family.histogram ? "histogram" : "counter", family.help);
+			for (Map.Entry<String, Object> series : family.series.entrySet()) {
+				if (family.histogram) {
+					((Histogram) series.getValue()).write(out, name, series.getKey());
+				} else {
+					out.sample(name, series.getKey(), ((AtomicLong) series.getValue()).get());
+				}
+			}
+		}
+	}
+
+	private void histogram(String name, String help) {
+		families.put(name, new Family(help, true));
+	}
+
+	private void counter(String name, String help) {
+		families.put(name, new Family(help, false));
+	}
+
+	private static class Family {
+		final String help;
+		final boolean histogram;
+		final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<String, Object>();
+
+		Family(String help, boolean histogram) {
+			this.help = help;
+			this.histogram = histogram;
+		}
+
+		Object series(String labels) {
+			Object existing = series.get(labels);
+			if (existing != null) {
+				return existing;
+			}
+			Object created = histogram ? new Histogram() : new AtomicLong();
+			existing = series.putIfAbsent(labels, created);
+			return existing != null ? existing : created;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package edu.wisc.limnology.lter.metrics;
+
+/**
+ * Builds the Prometheus text exposition format (version 0.0.4): a HELP and
+ * TYPE line per metric family followed by its samples, one per line.
+ */
+public class PrometheusText {
+
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final StringBuilder sb = new StringBuilder(4096);
+
+	/**
+	 * @param type counter, gauge or histogram
+	 */
+	public PrometheusText family(String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		return this;
+	}
+
+	/**
+	 * @param labels rendered by {@link #labels(String...)}, or empty
+	 */
+	public PrometheusText sample(String name, String labels, double value) {
+		sb.append(name);
+		if (!labels.isEmpty()) {
+			sb.append('{').append(labels).append('}');
+		}
+		sb.append(' ');
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			sb.append((long) value);
+		} else if (Double.isNaN(value)) {
+			sb.append("NaN");
+		} else if (Double.isInfinite(value)) {
+			sb.append(value > 0 ? "+Inf" : "-Inf");
+		} else {
+			sb.append(value);
+		}
+		sb.append('\n');
+		return this;
+	}
+
+	@Override
+	public String toString() {
+		return sb.toString();
+	}
+
+	/**
+	 * @param namesAndValues label name, value, name, value, ...
+	 * @return the labels as written between braces, values escaped
+	 */
+	public static String labels(String... namesAndValues) {
+		StringBuilder labels = new StringBuilder(64);
+		for (int i = 0; i < namesAndValues.length; i += 2) {
+			if (i > 0) {
+				labels.append(',');
+			}
+			labels.append(namesAndValues[i]).append("=\"");
+			String value = namesAndValues[i + 1];
+			for (int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if (c == '\\' || c == '"') {
+					labels.append('\\').append(c);
+				} else if (c == '\n') {
+					labels.append("\\n");
+				} else {
+					labels.append(c);
+				}
+			}
+			labels.append('"');
+		}
+		return labels.toString();
+	}
+
+	/**
+	 * @return labels with one more label appended
+	 */
+	static String withLabel(String labels, String name, String value) {
+		String label = labels(name, value);
+		return labels.isEmpty() ? label : labels + ',' + label;
+	}
+}
@@ -0,0 +1,116 @@
+package edu.wisc.limnology.lter.metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Times every request from arrival until its response has been written,
+ * suspended ones included, and counts responses by status and exceptions
+ * by type. Requests are labelled with the path template that matched
+ * (/lakeConditions/{lakeId}), not the path, so every lake shares a series;
+ * unmatched requests are labelled "unmatched". Writing the entity is timed
+ * on its own as serialization; for streamed exports that includes reading
+ * MySQL.
+ */
+@Provider
+public class RequestMetrics implements ApplicationEventListener, WriterInterceptor {
+
+	static final String UNMATCHED = "unmatched";
+
+	/* request property holding the labels, for aroundWriteTo */
+	static final String LABELS_PROPERTY = RequestMetrics.class.getName() + ".labels";
+
+	/* Jersey creates this provider, not the component scan: as a Spring bean
+	   jersey-spring3 registers it without its provider contracts. The field
+	   is still injected from the Spring context. */
+	@Autowired
+	private Metrics metrics;
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void onEvent(ApplicationEvent event) {
+	}
+
+	public RequestEventListener onRequest(RequestEvent requestEvent) {
+		return new Listener(System.nanoTime());
+	}
+
+	public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+		long start = System.nanoTime();
+		try {
+			context.proceed();
+		} finally {
+			Object labels = context.getProperty(LABELS_PROPERTY);
+			if (labels != null) {
+				metrics.observe(Metrics.SERIALIZATION_DURATION, (String) labels, System.nanoTime() - start);
+			}
+		}
+	}
+
+	static String endpoint(List<UriTemplate> matchedTemplates) {
+		if (matchedTemplates.isEmpty()) {
+			return UNMATCHED;
+		}
+		StringBuilder endpoint = new StringBuilder();
+		for (int i = matchedTemplates.size() - 1; i >= 0; i--) {
+			String template = matchedTemplates.get(i).getTemplate();
+			if (!template.startsWith("/")) {
+				endpoint.append('/');
+			}
+			endpoint.append(template);
+		}
+		String path = endpoint.toString().replaceAll("/{2,}", "/");
+		return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+	}
+
+	private class Listener implements RequestEventListener {
+
+		private final long start;
+		private String labels;
+
+		Listener(long start) {
+			this.start = start;
+		}
+
+		public void onEvent(RequestEvent event) {
+			switch (event.getType()) {
+			case REQUEST_MATCHED:
+				labels = PrometheusText.labels("method", event.getContainerRequest().getMethod(), "endpoint",
+						endpoint(event.getUriInfo().getMatchedTemplates()));
+				event.getContainerRequest().setProperty(LABELS_PROPERTY, labels);
+				break;
+			case ON_EXCEPTION:
+				metrics.increment(Metrics.EXCEPTIONS,
+						PrometheusText.labels("type", event.getException().getClass().getSimpleName()));
+				break;
+			case FINISHED:
+				if (labels == null) {
+					labels = PrometheusText.labels("method", event.getContainerRequest().getMethod(), "endpoint",
+							UNMATCHED);
+				}
+				metrics.observe(Metrics.REQUEST_DURATION, labels, System.nanoTime() - start);
+				ContainerResponse response = event.getContainerResponse();
+				metrics.increment(Metrics.RESPONSES, PrometheusText.withLabel(labels, "status",
+						response != null ? Integer.toString(response.getStatus()) : "none"));
+				break;
+			default:
+				break;
+			}
+		}
+	}
+}
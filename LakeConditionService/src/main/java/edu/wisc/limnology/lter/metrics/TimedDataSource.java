@@ -0,0 +1,39 @@
+package edu.wisc.limnology.lter.metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * The connection pool, timing how long each borrow waits for a connection
+ * (including the validation query on borrow).
+ */
+public class TimedDataSource extends DelegatingDataSource {
+
+	private Metrics metrics;
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return super.getConnection();
+		} finally {
+			metrics.observe(Metrics.POOL_WAIT, "", System.nanoTime() - start);
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return super.getConnection(username, password);
+		} finally {
+			metrics.observe(Metrics.POOL_WAIT, "", System.nanoTime() - start);
+		}
+	}
+}
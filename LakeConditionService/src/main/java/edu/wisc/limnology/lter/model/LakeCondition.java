@@ -1,146 +1,266 @@
 package edu.wisc.limnology.lter.model;
 
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
+import javax.xml.bind.annotation.XmlAccessOrder;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorOrder;
+import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * The latest buoy reading for one lake. Immutable once built, so a single
+ * instance is shared by the snapshot, the renders and every request that
+ * reads it. MOXy reads the fields directly; dates are copied in and out.
+ */
 @XmlRootElement
-public class LakeCondition {
-
-	private Date sampleDate;
-	private String lakeName;
-	private String lakeId;
-	private Double airTemp;
-	private Double waterTemp;
-	private Double windSpeed;
-	private Integer windDir;
-	private Double secchiEst;
-	private Double phycoMedian;
-	private Date sampleTime;
-	private Double thermoclineDepth;
-	private Date secchiEstTimestamp;
-	private Double windGust;
-
-	SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-	
-	public String getFormatedSampleDate() {
-		return sampleDate != null ? dateFormat.format(sampleDate) : "";
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlAccessorOrder(XmlAccessOrder.ALPHABETICAL)
+public final class LakeCondition {
+
+	private static final FastDateFormat DATE_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss");
+
+	/** No reading: what a lake without a row, or no lake, answers with */
+	public static final LakeCondition EMPTY = new LakeCondition(new Builder());
+
+	private final Date sampleDate;
+	private final String lakeName;
+	private final String lakeId;
+	@XmlElement(nillable = true)
+	private final Double airTemp;
+	@XmlElement(nillable = true)
+	private final Double waterTemp;
+	@XmlElement(nillable = true)
+	private final Double windSpeed;
+	@XmlElement(nillable = true)
+	private final Integer windDir;
+	@XmlElement(nillable = true)
+	private final Double secchiEst;
+	private final Double phycoMedian;
+	private final Date sampleTime;
+	@XmlElement(nillable = true)
+	private final Double thermoclineDepth;
+	private final Date secchiEstTimestamp;
+	private final Double windGust;
+
+	/* derived from sampleDate, never written */
+	@XmlTransient
+	private final String formatedSampleDate;
+
+	/* for JAXB */
+	private LakeCondition() {
+		this(new Builder());
 	}
-	
-	public Date getSampleDate() {
-		return sampleDate;
+
+	private LakeCondition(Builder builder) {
+		this.sampleDate = copy(builder.sampleDate);
+		this.lakeName = builder.lakeName;
+		this.lakeId = builder.lakeId;
+		this.airTemp = builder.airTemp;
+		this.waterTemp = builder.waterTemp;
+		this.windSpeed = builder.windSpeed;
+		this.windDir = builder.windDir;
+		this.secchiEst = builder.secchiEst;
+		this.phycoMedian = builder.phycoMedian;
+		this.sampleTime = copy(builder.sampleTime);
+		this.thermoclineDepth = builder.thermoclineDepth;
+		this.secchiEstTimestamp = copy(builder.secchiEstTimestamp);
+		this.windGust = builder.windGust;
+		this.formatedSampleDate = sampleDate != null ? DATE_FORMAT.format(sampleDate) : "";
 	}
 
-	public void setSampleDate(Date sampleDate) {
-		this.sampleDate = sampleDate;
+	public String getFormatedSampleDate() {
+		return formatedSampleDate;
 	}
 
-	public String getLakeName() {
-		return lakeName;
+	public Date getSampleDate() {
+		return copy(sampleDate);
 	}
 
-	public void setLakeName(String lakeName) {
-		this.lakeName = lakeName;
+	public String getLakeName() {
+		return lakeName;
 	}
 
 	public String getLakeId() {
 		return lakeId;
 	}
 
-	public void setLakeId(String lakeId) {
-		this.lakeId = lakeId;
-	}
-
-	@XmlElement(nillable=true)
 	public Double getAirTemp() {
 		return airTemp;
 	}
 
-	public void setAirTemp(Double airTemp) {
-		this.airTemp = airTemp;
-	}
-
-	@XmlElement(nillable=true)
 	public Double getWaterTemp() {
 		return waterTemp;
 	}
 
-	public void setWaterTemp(Double waterTemp) {
-		this.waterTemp = waterTemp;
-	}
-
-	@XmlElement(nillable=true)
 	public Double getWindSpeed() {
 		return windSpeed;
 	}
 
-	public void setWindSpeed(Double windSpeed) {
-		this.windSpeed = windSpeed;
-	}
-
-	@XmlElement(nillable=true)
 	public Integer getWindDir() {
 		return windDir;
 	}
 
-	public void setWindDir(Integer windDir) {
-		this.windDir = windDir;
-	}
-	@XmlElement(nillable=true)
 	public Double getSecchiEst() {
 		return secchiEst;
 	}
 
-	public void setSecchiEst(Double secchiEst) {
-		this.secchiEst = secchiEst;
-	}
-
-	
 	public Date getSecchiEstTimestamp() {
-		return secchiEstTimestamp;
-	}
-
-	public void setSecchiEstTimestamp(Date secchiEstTimestamp) {
-		this.secchiEstTimestamp = secchiEstTimestamp;
+		return copy(secchiEstTimestamp);
 	}
 
 	public Double getPhycoMedian() {
 		return phycoMedian;
 	}
 
-	public void setPhycoMedian(Double phycoMedian) {
-		this.phycoMedian = phycoMedian;
-	}
-
 	public Date getSampleTime() {
-		return sampleTime;
+		return copy(sampleTime);
 	}
 
-	public void setSampleTime(Date sampleTime) {
-		this.sampleTime = sampleTime;
-	}
-	@XmlElement(nillable=true)
 	public Double getThermoclineDepth() {
 		return thermoclineDepth;
 	}
 
-	public void setThermoclineDepth(Double thermoclineDepth) {
-		this.thermoclineDepth = thermoclineDepth;
+	public Double getWindGust() {
+		return windGust;
 	}
 
-	public void setWindGust(Double windGust){
-		this.windGust = windGust;
+	/* formatedSampleDate follows from sampleDate */
+	@Override
+	public boolean equals(Object obj) {
+		return EqualsBuilder.reflectionEquals(this, obj, "formatedSampleDate");
 	}
 
-	public Double getWindGust(){
-		return this.windGust;
+	@Override
+	public int hashCode() {
+		return HashCodeBuilder.reflectionHashCode(this, "formatedSampleDate");
 	}
 
 	@Override
 	public String toString() {
 		return ReflectionToStringBuilder.toString(this);
 	}
-}
\ No newline at end of file
+
+	private static Date copy(Date date) {
+		return date != null ? new Date(date.getTime()) : null;
+	}
+
+	/**
+	 * Collects the values of a LakeCondition; not thread-safe. Unset values
+	 * stay null.
+	 */
+	public static class Builder {
+
+		private Date sampleDate;
+		private String lakeName;
+		private String lakeId;
+		private Double airTemp;
+		private Double waterTemp;
+		private Double windSpeed;
+		private Integer windDir;
+		private Double secchiEst;
+		private Double phycoMedian;
+		private Date sampleTime;
+		private Double thermoclineDepth;
+		private Date secchiEstTimestamp;
+		private Double windGust;
+
+		public Builder() {
+		}
+
+		/**
+		 * @param lakeCondition the values to start from
+		 */
+		public Builder(LakeCondition lakeCondition) {
+			this.sampleDate = lakeCondition.sampleDate;
+			this.lakeName = lakeCondition.lakeName;
+			this.lakeId = lakeCondition.lakeId;
+			this.airTemp = lakeCondition.airTemp;
+			this.waterTemp = lakeCondition.waterTemp;
+			this.windSpeed = lakeCondition.windSpeed;
+			this.windDir = lakeCondition.windDir;
+			this.secchiEst = lakeCondition.secchiEst;
+			this.phycoMedian = lakeCondition.phycoMedian;
+			this.sampleTime = lakeCondition.sampleTime;
+			this.thermoclineDepth = lakeCondition.thermoclineDepth;
+			this.secchiEstTimestamp = lakeCondition.secchiEstTimestamp;
+			this.windGust = lakeCondition.windGust;
+		}
+
+		public Builder sampleDate(Date sampleDate) {
+			this.sampleDate = sampleDate;
+			return this;
+		}
+
+		public Builder lakeName(String lakeName) {
+			this.lakeName = lakeName;
+			return this;
+		}
+
+		public Builder lakeId(String lakeId) {
+			this.lakeId = lakeId;
+			return this;
+		}
+
+		public Builder airTemp(Double airTemp) {
+			this.airTemp = airTemp;
+			return this;
+		}
+
+		public Builder waterTemp(Double waterTemp) {
+			this.waterTemp = waterTemp;
+			return this;
+		}
+
+		public Builder windSpeed(Double windSpeed) {
+			this.windSpeed = windSpeed;
+			return this;
+		}
+
+		public Builder windDir(Integer windDir) {
+			this.windDir = windDir;
+			return this;
+		}
+
+		public Builder secchiEst(Double secchiEst) {
+			this.secchiEst = secchiEst;
+			return this;
+		}
+
+		public Builder phycoMedian(Double phycoMedian) {
+			this.phycoMedian = phycoMedian;
+			return this;
+		}
+
+		public Builder sampleTime(Date sampleTime) {
+			this.sampleTime = sampleTime;
+			return this;
+		}
+
+		public Builder thermoclineDepth(Double thermoclineDepth) {
+			this.thermoclineDepth = thermoclineDepth;
+			return this;
+		}
+
+		public Builder secchiEstTimestamp(Date secchiEstTimestamp) {
+			this.secchiEstTimestamp = secchiEstTimestamp;
+			return this;
+		}
+
+		public Builder windGust(Double windGust) {
+			this.windGust = windGust;
+			return this;
+		}
+
+		public LakeCondition build() {
+			return new LakeCondition(this);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package edu.wisc.limnology.lter.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * A page of one variable's history for a lake. When next is set there are
+ * more points in the requested range; pass it back as the after parameter
+ * to continue. bucketSeconds is absent for raw samples.
+ */
+@XmlRootElement
+public class LakeSeries {
+
+	private String lakeId;
+	private String variable;
+	private Double depth;
+	private Date from;
+	private Date to;
+	private Integer bucketSeconds;
+	private Date next;
+	private List<SeriesPoint> points = new ArrayList<SeriesPoint>();
+
+	public String getLakeId() {
+		return lakeId;
+	}
+
+	public void setLakeId(String lakeId) {
+		this.lakeId = lakeId;
+	}
+
+	public String getVariable() {
+		return variable;
+	}
+
+	public void setVariable(String variable) {
+		this.variable = variable;
+	}
+
+	public Double getDepth() {
+		return depth;
+	}
+
+	public void setDepth(Double depth) {
+		this.depth = depth;
+	}
+
+	public Date getFrom() {
+		return from;
+	}
+
+	public void setFrom(Date from) {
+		this.from = from;
+	}
+
+	public Date getTo() {
+		return to;
+	}
+
+	public void setTo(Date to) {
+		this.to = to;
+	}
+
+	public Integer getBucketSeconds() {
+		return bucketSeconds;
+	}
+
+	public void setBucketSeconds(Integer bucketSeconds) {
+		this.bucketSeconds = bucketSeconds;
+	}
+
+	public Date getNext() {
+		return next;
+	}
+
+	public void setNext(Date next) {
+		this.next = next;
+	}
+
+	public List<SeriesPoint> getPoints() {
+		return points;
+	}
+
+	public void setPoints(List<SeriesPoint> points) {
+		this.points = points;
+	}
+}
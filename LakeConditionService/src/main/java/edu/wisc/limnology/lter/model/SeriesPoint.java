@@ -0,0 +1,85 @@
+package edu.wisc.limnology.lter.model;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * One point of a LakeSeries: either a single sample (sampleDate and value)
+ * or a bucket starting at sampleDate summarising count samples (min, max
+ * and mean).
+ */
+@XmlRootElement
+public class SeriesPoint {
+
+	private Date sampleDate;
+	private Double value;
+	private Double min;
+	private Double max;
+	private Double mean;
+	private Integer count;
+
+	public SeriesPoint() {
+	}
+
+	public SeriesPoint(Date sampleDate, double value) {
+		this.sampleDate = sampleDate;
+		this.value = value;
+	}
+
+	public SeriesPoint(Date sampleDate, double min, double max, double mean, int count) {
+		this.sampleDate = sampleDate;
+		this.min = min;
+		this.max = max;
+		this.mean = mean;
+		this.count = count;
+	}
+
+	public Date getSampleDate() {
+		return sampleDate;
+	}
+
+	public void setSampleDate(Date sampleDate) {
+		this.sampleDate = sampleDate;
+	}
+
+	public Double getValue() {
+		return value;
+	}
+
+	public void setValue(Double value) {
+		this.value = value;
+	}
+
+	public Double getMin() {
+		return min;
+	}
+
+	public void setMin(Double min) {
+		this.min = min;
+	}
+
+	public Double getMax() {
+		return max;
+	}
+
+	public void setMax(Double max) {
+		this.max = max;
+	}
+
+	public Double getMean() {
+		return mean;
+	}
+
+	public void setMean(Double mean) {
+		this.mean = mean;
+	}
+
+	public Integer getCount() {
+		return count;
+	}
+
+	public void setCount(Integer count) {
+		this.count = count;
+	}
+}
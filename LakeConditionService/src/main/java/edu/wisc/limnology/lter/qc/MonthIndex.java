@@ -0,0 +1,52 @@
+package edu.wisc.limnology.lter.qc;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * The month of sample times in the logger's local time, for picking a
+ * RangeCheck's bounds. Samples come in time order, so the current month's
+ * first and last millisecond are cached and the calendar is only consulted
+ * when a time falls outside them. Not thread-safe.
+ */
+public final class MonthIndex {
+
+	private final Calendar calendar;
+	private long monthStart = Long.MAX_VALUE;
+	private long monthEnd = Long.MIN_VALUE;
+	private int month;
+
+	public MonthIndex() {
+		this(TimeZone.getDefault());
+	}
+
+	public MonthIndex(TimeZone timeZone) {
+		this.calendar = Calendar.getInstance(timeZone);
+	}
+
+	/**
+	 * @return the month of time, 0 for January
+	 */
+	public int monthOf(long time) {
+		if (time < monthStart || time >= monthEnd) {
+			calendar.setTimeInMillis(time);
+			month = calendar.get(Calendar.MONTH);
+			calendar.set(calendar.get(Calendar.YEAR), month, 1, 0, 0, 0);
+			calendar.set(Calendar.MILLISECOND, 0);
+			monthStart = calendar.getTimeInMillis();
+			calendar.add(Calendar.MONTH, 1);
+			monthEnd = calendar.getTimeInMillis();
+		}
+		return month;
+	}
+
+	/**
+	 * Fills months with the month of each of the first size times.
+	 */
+	public void monthsOf(long[] times, int[] months, int size) {
+		for (int i = 0; i < size; i++) {
+			long time = times[i];
+			months[i] = time >= monthStart && time < monthEnd ? month : monthOf(time);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package edu.wisc.limnology.lter.qc;
+
+import java.util.Arrays;
+
+/**
+ * Bounds for one variable, one pair per month, compiled once from fixed
+ * limits or from rows of a RangeCheckTable. A value outside its month's
+ * bounds is flagged H, as the process_latest_*.R scripts flag it; a
+ * missing (NaN) value is flagged C if the check says so, and otherwise
+ * left unflagged like a NaN bound. Immutable and thread-safe.
+ */
+public final class RangeCheck {
+
+	public static final char NO_FLAG = 0;
+	public static final char OUT_OF_RANGE = 'H';
+	public static final char MISSING = 'C';
+
+	private final double[] min;
+	private final double[] max;
+	private final char missingFlag;
+
+	private RangeCheck(double[] min, double[] max, char missingFlag) {
+		if (min.length != 12 || max.length != 12) {
+			throw new IllegalArgumentException("Range checks need a bound for each of 12 months");
+		}
+		this.min = Arrays.copyOf(min, 12);
+		this.max = Arrays.copyOf(max, 12);
+		this.missingFlag = missingFlag;
+	}
+
+	/**
+	 * @return a check with the same bounds all year, NaN for none
+	 */
+	public static RangeCheck between(double min, double max) {
+		double[] mins = new double[12];
+		double[] maxes = new double[12];
+		Arrays.fill(mins, min);
+		Arrays.fill(maxes, max);
+		return new RangeCheck(mins, maxes, NO_FLAG);
+	}
+
+	/**
+	 * @param min bound for each month, January first; NaN for none
+	 * @param max bound for each month, January first; NaN for none
+	 */
+	public static RangeCheck monthly(double[] min, double[] max) {
+		return new RangeCheck(min, max, NO_FLAG);
+	}
+
+	/**
+	 * @return this check, also flagging missing values C
+	 */
+	public RangeCheck flaggingMissing() {
+		return new RangeCheck(min, max, MISSING);
+	}
+
+	public boolean isFlaggingMissing() {
+		return missingFlag == MISSING;
+	}
+
+	/**
+	 * @param month 0 for January
+	 */
+	public double getMin(int month) {
+		return min[month];
+	}
+
+	/**
+	 * @param month 0 for January
+	 */
+	public double getMax(int month) {
+		return max[month];
+	}
+
+	/**
+	 * @param month 0 for January
+	 * @return the value's flag, NO_FLAG if it passes
+	 */
+	public char check(double value, int month) {
+		if (value < min[month] || value > max[month]) {
+			return OUT_OF_RANGE;
+		}
+		return value != value ? missingFlag : NO_FLAG;
+	}
+
+	/**
+	 * Flags the first size values, each against the bounds of its month.
+	 *
+	 * @param months month of each value, 0 for January (see MonthIndex)
+	 * @param flags filled with each value's flag, NO_FLAG if it passes
+	 * @return values flagged
+	 */
+	public int apply(double[] values, int[] months, char[] flags, int size) {
+		double[] min = this.min;
+		double[] max = this.max;
+		char missingFlag = this.missingFlag;
+		int flagged = 0;
+		for (int i = 0; i < size; i++) {
+			double value = values[i];
+			int month = months[i];
+			char flag = value < min[month] || value > max[month] ? OUT_OF_RANGE
+					: value != value ? missingFlag : NO_FLAG;
+			flags[i] = flag;
+			flagged += flag != NO_FLAG ? 1 : 0;
+		}
+		return flagged;
+	}
+
+	@Override
+	public String toString() {
+		return "RangeCheck[min=" + Arrays.toString(min) + ", max=" + Arrays.toString(max)
+				+ (isFlaggingMissing() ? ", missing flagged" : "") + "]";
+	}
+}
@@ -0,0 +1,111 @@
+package edu.wisc.limnology.lter.qc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * range_checks_new.csv: a header line, then one line per bound with its
+ * name in the first column and a value for each month in the next twelve
+ * (month_1 to month_12). The R scripts read it with read.csv and pick
+ * bounds by row number, df.B[250, month + 1]; getBounds(250) is the same
+ * row. A cell that is empty, NA or not a number is NaN, which bounds
+ * nothing.
+ */
+public final class RangeCheckTable {
+
+	private final List<String> names = new ArrayList<String>();
+	private final List<double[]> rows = new ArrayList<double[]>();
+	private final Map<String, Integer> rowsByName = new HashMap<String, Integer>();
+
+	private RangeCheckTable() {
+	}
+
+	public static RangeCheckTable read(Path file) throws IOException {
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			return read(reader);
+		}
+	}
+
+	public static RangeCheckTable read(Reader reader) throws IOException {
+		RangeCheckTable table = new RangeCheckTable();
+		BufferedReader lines = new BufferedReader(reader);
+		String line = lines.readLine();
+		while ((line = lines.readLine()) != null) {
+			String[] cells = line.split(",", -1);
+			double[] months = new double[12];
+			for (int month = 0; month < 12; month++) {
+				months[month] = month + 1 < cells.length ? number(cells[month + 1]) : Double.NaN;
+			}
+			String name = unquote(cells[0]);
+			table.names.add(name);
+			table.rows.add(months);
+			if (!name.isEmpty() && !table.rowsByName.containsKey(name)) {
+				table.rowsByName.put(name, table.rows.size());
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * @return the number of rows below the header
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * @param row 1-based, not counting the header, as in the R scripts
+	 * @return a copy of the row's bound for each month, January first
+	 */
+	public double[] getBounds(int row) {
+		if (row < 1 || row > rows.size()) {
+			throw new IllegalArgumentException("range checks have no row " + row + " of " + rows.size());
+		}
+		double[] months = rows.get(row - 1);
+		return Arrays.copyOf(months, months.length);
+	}
+
+	/**
+	 * @return the first row named name, or null if there is none
+	 */
+	public double[] getBounds(String name) {
+		Integer row = rowsByName.get(name);
+		return row != null ? getBounds(row) : null;
+	}
+
+	/**
+	 * @param row 1-based, not counting the header
+	 */
+	public String getName(int row) {
+		return names.get(row - 1);
+	}
+
+	private static double number(String cell) {
+		String value = unquote(cell);
+		if (value.isEmpty() || "NA".equals(value)) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	private static String unquote(String cell) {
+		String value = cell.trim();
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+			value = value.substring(1, value.length() - 1).trim();
+		}
+		return value;
+	}
+}
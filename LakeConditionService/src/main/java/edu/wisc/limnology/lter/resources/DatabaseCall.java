@@ -0,0 +1,77 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+
+import edu.wisc.limnology.lter.services.DatabaseExecutor;
+
+/**
+ * The part of a suspended request that reads MySQL, run on the
+ * DatabaseExecutor. The request is answered 503 Service Unavailable with
+ * Retry-After when the executor is full, the call takes longer than the
+ * timeout or MySQL is unreachable (a refused connection, a query timeout,
+ * an open circuit breaker); the call's other exceptions go through the usual
+ * mappers.
+ */
+abstract class DatabaseCall implements Runnable {
+
+	private static final Log log = LogFactory.getLog(DatabaseCall.class);
+
+	static final int RETRY_AFTER_SECONDS = 5;
+
+	private final AsyncResponse response;
+
+	DatabaseCall(AsyncResponse response) {
+		this.response = response;
+	}
+
+	/**
+	 * @return the entity or Response to answer with
+	 */
+	abstract Object call();
+
+	void submit(final DatabaseExecutor executor, long timeoutMillis) {
+		response.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		response.setTimeoutHandler(new TimeoutHandler() {
+			public void handleTimeout(AsyncResponse asyncResponse) {
+				executor.timedOut();
+				asyncResponse.resume(unavailable());
+			}
+		});
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			response.resume(unavailable());
+		}
+	}
+
+	public final void run() {
+		/* answered already: timed out while queued */
+		if (response.isDone()) {
+			return;
+		}
+		try {
+			response.resume(call());
+		} catch (TransientDataAccessException | DataAccessResourceFailureException e) {
+			log.warn("MySQL unavailable: " + e.getMessage());
+			response.resume(unavailable());
+		} catch (RuntimeException e) {
+			response.resume(e);
+		}
+	}
+
+	static Response unavailable() {
+		return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+				.header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS).build();
+	}
+}
@@ -0,0 +1,84 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.utils.CborWriter;
+
+/**
+ * application/cbor: the same maps, keys and nulls as the JSON, with numbers
+ * as CBOR floats and integers and dates as epoch seconds (tag 1) rather than
+ * local time strings.
+ */
+public class LakeConditionCbor implements LakeConditionFormat {
+
+	public static final LakeConditionCbor INSTANCE = new LakeConditionCbor();
+
+	public static final MediaType APPLICATION_CBOR_TYPE = new MediaType("application", "cbor");
+
+	public MediaType getMediaType() {
+		return APPLICATION_CBOR_TYPE;
+	}
+
+	public byte[] write(LakeCondition lakeCondition, Set<LakeConditionField> fields) {
+		CborWriter writer = new CborWriter(128);
+		write(lakeCondition, fields, writer);
+		return writer.toByteArray();
+	}
+
+	public byte[] writeList(List<LakeCondition> lakeConditions, Set<LakeConditionField> fields) {
+		CborWriter writer = new CborWriter(128 * lakeConditions.size() + 8);
+		writer.startArray(lakeConditions.size());
+		for (LakeCondition lakeCondition : lakeConditions) {
+			write(lakeCondition, fields, writer);
+		}
+		return writer.toByteArray();
+	}
+
+	public byte[] writeMap(Map<String, LakeCondition> lakeConditions, Set<LakeConditionField> fields) {
+		CborWriter writer = new CborWriter(128 * lakeConditions.size() + 8);
+		writer.startMap(lakeConditions.size());
+		for (Map.Entry<String, LakeCondition> entry : lakeConditions.entrySet()) {
+			writer.writeString(entry.getKey());
+			if (entry.getValue() != null) {
+				write(entry.getValue(), fields, writer);
+			} else {
+				writer.writeNull();
+			}
+		}
+		return writer.toByteArray();
+	}
+
+	private static void write(LakeCondition lakeCondition, Set<LakeConditionField> fields, CborWriter writer) {
+		int entries = 0;
+		for (LakeConditionField field : fields) {
+			if (field.isNillable() || field.get(lakeCondition) != null) {
+				entries++;
+			}
+		}
+		writer.startMap(entries);
+		for (LakeConditionField field : fields) {
+			Object value = field.get(lakeCondition);
+			if (value == null && !field.isNillable()) {
+				continue;
+			}
+			writer.writeString(field.getProperty());
+			if (value == null) {
+				writer.writeNull();
+			} else if (value instanceof Date) {
+				writer.writeEpochSeconds(((Date) value).getTime());
+			} else if (value instanceof String) {
+				writer.writeString((String) value);
+			} else if (value instanceof Integer) {
+				writer.writeLong((Integer) value);
+			} else {
+				writer.writeDouble(((Number) value).doubleValue());
+			}
+		}
+	}
+}
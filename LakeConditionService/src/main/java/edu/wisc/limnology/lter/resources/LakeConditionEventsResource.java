@@ -0,0 +1,237 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.glassfish.jersey.media.sse.SseBroadcaster;
+import org.glassfish.jersey.media.sse.SseFeature;
+import org.glassfish.jersey.server.BroadcasterListener;
+import org.glassfish.jersey.server.ChunkedOutput;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.services.LakeConditionListener;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+import edu.wisc.limnology.lter.services.LakeConditionSnapshot;
+
+/**
+ * Server-Sent Events for one lake, e.g. /lakeConditions/ME/events. A
+ * subscriber gets the current condition straight away, then a
+ * lakeCondition event (the whole LakeCondition, as from
+ * /lakeConditions/{lakeId}) each time the snapshot refresh finds that lake
+ * changed. Every subscriber hangs off the one background refresh, so idle
+ * clients cost no database reads; a comment every events.heartbeatMillis
+ * keeps proxies from timing out the stream and drops closed ones. Event ids
+ * are snapshot versions: a client reconnecting with a Last-Event-ID equal to
+ * the current version is not sent the condition it already has.
+ * <p>
+ * Changes are announced from inside the snapshot install, on the refresh or
+ * ingest thread, so broadcasts, heartbeats and each subscriber's first
+ * event are written by one thread of their own: a slow client never holds
+ * those up, and a stream never gets an older version after a newer one.
+ * Until the first snapshot has loaded a subscriber is answered 503 with
+ * Retry-After rather than waiting on MySQL.
+ */
+@Component
+@Path("/lakeConditions/{lakeId}/events")
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=LakeConditionEventsResource,name=lakeConditionEvents")
+public class LakeConditionEventsResource implements LakeConditionListener {
+
+	static final String EVENT_NAME = "lakeCondition";
+
+	/** Broadcasts waiting for the events thread; more are dropped */
+	static final int QUEUE_CAPACITY = 1000;
+
+	@Autowired
+	private LakeConditionService lakeConditionService;
+
+	private final ConcurrentMap<String, SseBroadcaster> broadcasters = new ConcurrentHashMap<String, SseBroadcaster>();
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+	private final AtomicLong eventsSent = new AtomicLong();
+	private final AtomicLong eventsDropped = new AtomicLong();
+
+	private final ThreadPoolExecutor broadcastExecutor;
+
+	public LakeConditionEventsResource() {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("events-");
+		threadFactory.setDaemon(true);
+		/* one thread, so each stream gets its events in order */
+		broadcastExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY), threadFactory);
+		broadcastExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	@GET
+	@Produces(SseFeature.SERVER_SENT_EVENTS)
+	public EventOutput subscribe(@PathParam("lakeId") String lakeId,
+			@HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId) {
+		LakeConditionSnapshot snapshot = lakeConditionService.peekSnapshot();
+		if (snapshot == null) {
+			throw new WebApplicationException(DatabaseCall.unavailable());
+		}
+		if (snapshot.getLakeCondition(lakeId) == null) {
+			throw new NotFoundException("No lake " + lakeId);
+		}
+		final String id = LakeConditionSnapshot.normalizeLakeId(lakeId);
+		final String lastVersion = lastEventId;
+		final EventOutput output = new EventOutput();
+		/* subscribe before reading the current condition, so no change falls in between */
+		broadcaster(id).add(output);
+		subscribers.incrementAndGet();
+		try {
+			/* behind the broadcasts already queued, which may reach output too */
+			broadcastExecutor.execute(new Runnable() {
+				public void run() {
+					LakeConditionSnapshot current = lakeConditionService.peekSnapshot();
+					if (Long.toString(current.getVersion()).equals(lastVersion)) {
+						return;
+					}
+					LakeCondition lakeCondition = current.getLakeCondition(id);
+					try {
+						output.write(event(current, lakeCondition != null ? lakeCondition : LakeCondition.EMPTY));
+					} catch (IOException e) {
+						closeQuietly(output);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			eventsDropped.incrementAndGet();
+			closeQuietly(output);
+			throw new WebApplicationException(DatabaseCall.unavailable());
+		}
+		return output;
+	}
+
+	public void lakeConditionsChanged(LakeConditionSnapshot snapshot, Set<String> changedLakeIds) {
+		for (String lakeId : changedLakeIds) {
+			SseBroadcaster broadcaster = broadcasters.get(lakeId);
+			if (broadcaster != null) {
+				LakeCondition lakeCondition = snapshot.getLakeCondition(lakeId);
+				if (post(broadcaster,
+						event(snapshot, lakeCondition != null ? lakeCondition : LakeCondition.EMPTY))) {
+					eventsSent.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${events.heartbeatMillis}")
+	public void heartbeat() {
+		OutboundEvent comment = new OutboundEvent.Builder().comment("heartbeat").build();
+		for (SseBroadcaster broadcaster : broadcasters.values()) {
+			post(broadcaster, comment);
+		}
+	}
+
+	/**
+	 * Lets queued broadcasts go out, for up to 10 seconds.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		broadcastExecutor.shutdown();
+		broadcastExecutor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Hands a broadcast to the events thread.
+	 *
+	 * @return false when the queue is full and the event was dropped
+	 */
+	private boolean post(final SseBroadcaster broadcaster, final OutboundEvent event) {
+		try {
+			broadcastExecutor.execute(new Runnable() {
+				public void run() {
+					broadcaster.broadcast(event);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			eventsDropped.incrementAndGet();
+			return false;
+		}
+	}
+
+	private SseBroadcaster broadcaster(String lakeId) {
+		SseBroadcaster broadcaster = broadcasters.get(lakeId);
+		if (broadcaster == null) {
+			SseBroadcaster created = new SseBroadcaster();
+			created.add(new BroadcasterListener<OutboundEvent>() {
+				public void onException(ChunkedOutput<OutboundEvent> chunkedOutput, Exception exception) {
+				}
+
+				public void onClose(ChunkedOutput<OutboundEvent> chunkedOutput) {
+					subscribers.decrementAndGet();
+				}
+			});
+			broadcaster = broadcasters.putIfAbsent(lakeId, created);
+			if (broadcaster == null) {
+				broadcaster = created;
+			}
+		}
+		return broadcaster;
+	}
+
+	/* the broadcaster drops it, and counts the subscriber gone, at its next broadcast or heartbeat */
+	private static void closeQuietly(EventOutput output) {
+		try {
+			output.close();
+		} catch (IOException e) {
+			// nothing more to tell the client
+		}
+	}
+
+	private static OutboundEvent event(LakeConditionSnapshot snapshot, LakeCondition lakeCondition) {
+		return new OutboundEvent.Builder().name(EVENT_NAME).id(Long.toString(snapshot.getVersion()))
+				.mediaType(MediaType.APPLICATION_JSON_TYPE).data(LakeCondition.class, lakeCondition).build();
+	}
+
+	public void setLakeConditionService(LakeConditionService lakeConditionService) {
+		this.lakeConditionService = lakeConditionService;
+	}
+
+	@ManagedAttribute(description = "Open event streams")
+	public int getSubscribers() {
+		return subscribers.get();
+	}
+
+	@ManagedAttribute(description = "Change events broadcast, one per changed lake with subscribers")
+	public long getEventsSent() {
+		return eventsSent.get();
+	}
+
+	@ManagedAttribute(description = "Broadcasts dropped because the events thread's queue was full")
+	public long getEventsDropped() {
+		return eventsDropped.get();
+	}
+
+	@ManagedAttribute(description = "Broadcasts waiting for the events thread")
+	public int getEventsQueued() {
+		return broadcastExecutor.getQueue().size();
+	}
+}
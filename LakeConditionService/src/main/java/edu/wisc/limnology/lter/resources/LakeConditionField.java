@@ -0,0 +1,137 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.ws.rs.BadRequestException;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * The properties MOXy writes for a LakeCondition, in the order it writes
+ * them (alphabetical). Nillable ones are written as null when unset; the
+ * rest are left out.
+ */
+public enum LakeConditionField {
+
+	AIR_TEMP("airTemp", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getAirTemp();
+		}
+	},
+	LAKE_ID("lakeId", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getLakeId();
+		}
+	},
+	LAKE_NAME("lakeName", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getLakeName();
+		}
+	},
+	PHYCO_MEDIAN("phycoMedian", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getPhycoMedian();
+		}
+	},
+	SAMPLE_DATE("sampleDate", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getSampleDate();
+		}
+	},
+	SAMPLE_TIME("sampleTime", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getSampleTime();
+		}
+	},
+	SECCHI_EST("secchiEst", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getSecchiEst();
+		}
+	},
+	SECCHI_EST_TIMESTAMP("secchiEstTimestamp", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getSecchiEstTimestamp();
+		}
+	},
+	THERMOCLINE_DEPTH("thermoclineDepth", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getThermoclineDepth();
+		}
+	},
+	WATER_TEMP("waterTemp", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getWaterTemp();
+		}
+	},
+	WIND_DIR("windDir", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getWindDir();
+		}
+	},
+	WIND_GUST("windGust", false) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getWindGust();
+		}
+	},
+	WIND_SPEED("windSpeed", true) {
+		Object get(LakeCondition lakeCondition) {
+			return lakeCondition.getWindSpeed();
+		}
+	};
+
+	private final String property;
+	private final boolean nillable;
+
+	private LakeConditionField(String property, boolean nillable) {
+		this.property = property;
+		this.nillable = nillable;
+	}
+
+	abstract Object get(LakeCondition lakeCondition);
+
+	public String getProperty() {
+		return property;
+	}
+
+	public boolean isNillable() {
+		return nillable;
+	}
+
+	/**
+	 * @param fields comma-separated property names, e.g. "airTemp,waterTemp"
+	 * @return the fields named, every field when fields is null or empty
+	 */
+	public static Set<LakeConditionField> parse(String fields) {
+		if (fields == null || fields.trim().isEmpty()) {
+			return EnumSet.allOf(LakeConditionField.class);
+		}
+		Set<LakeConditionField> parsed = EnumSet.noneOf(LakeConditionField.class);
+		for (String name : fields.split(",")) {
+			LakeConditionField field = forProperty(name.trim());
+			if (field == null) {
+				throw new BadRequestException("No field " + name.trim() + "; available: " + properties());
+			}
+			parsed.add(field);
+		}
+		return parsed;
+	}
+
+	static LakeConditionField forProperty(String property) {
+		for (LakeConditionField field : values()) {
+			if (field.property.equals(property)) {
+				return field;
+			}
+		}
+		return null;
+	}
+
+	private static String properties() {
+		String[] properties = new String[values().length];
+		for (LakeConditionField field : values()) {
+			properties[field.ordinal()] = field.property;
+		}
+		return Arrays.toString(properties);
+	}
+}
@@ -0,0 +1,28 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * A wire encoding of lake conditions, written with only the requested
+ * fields. Implementations are stateless and thread-safe.
+ */
+public interface LakeConditionFormat {
+
+	public MediaType getMediaType();
+
+	public byte[] write(LakeCondition lakeCondition, Set<LakeConditionField> fields);
+
+	public byte[] writeList(List<LakeCondition> lakeConditions, Set<LakeConditionField> fields);
+
+	/**
+	 * @param lakeConditions conditions by lake id, in the order to write
+	 *        them; a null condition is written as null
+	 */
+	public byte[] writeMap(Map<String, LakeCondition> lakeConditions, Set<LakeConditionField> fields);
+}
@@ -0,0 +1,119 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.ws.rs.core.MediaType;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.utils.TimestampFormat;
+
+/**
+ * Writes LakeCondition JSON by hand, byte for byte what MOXy writes for the
+ * full set of fields, for responses MOXy cannot produce: a subset of fields,
+ * or conditions in a map keyed by lake.
+ */
+public class LakeConditionJson implements LakeConditionFormat {
+
+	public static final LakeConditionJson INSTANCE = new LakeConditionJson();
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public MediaType getMediaType() {
+		return MediaType.APPLICATION_JSON_TYPE;
+	}
+
+	public byte[] write(LakeCondition lakeCondition, Set<LakeConditionField> fields) {
+		StringBuilder sb = new StringBuilder(256);
+		write(lakeCondition, fields, new TimestampFormat(), sb);
+		return sb.toString().getBytes(UTF_8);
+	}
+
+	public byte[] writeList(List<LakeCondition> lakeConditions, Set<LakeConditionField> fields) {
+		TimestampFormat timestampFormat = new TimestampFormat();
+		StringBuilder sb = new StringBuilder(256 * lakeConditions.size() + 2);
+		sb.append('[');
+		for (LakeCondition lakeCondition : lakeConditions) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			write(lakeCondition, fields, timestampFormat, sb);
+		}
+		sb.append(']');
+		return sb.toString().getBytes(UTF_8);
+	}
+
+	public byte[] writeMap(Map<String, LakeCondition> lakeConditions, Set<LakeConditionField> fields) {
+		TimestampFormat timestampFormat = new TimestampFormat();
+		StringBuilder sb = new StringBuilder(256 * lakeConditions.size() + 2);
+		sb.append('{');
+		for (Map.Entry<String, LakeCondition> entry : lakeConditions.entrySet()) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			writeString(entry.getKey(), sb);
+			sb.append(':');
+			if (entry.getValue() != null) {
+				write(entry.getValue(), fields, timestampFormat, sb);
+			} else {
+				sb.append("null");
+			}
+		}
+		sb.append('}');
+		return sb.toString().getBytes(UTF_8);
+	}
+
+	private static void write(LakeCondition lakeCondition, Set<LakeConditionField> fields,
+			TimestampFormat timestampFormat, StringBuilder sb) {
+		sb.append('{');
+		boolean first = true;
+		for (LakeConditionField field : fields) {
+			Object value = field.get(lakeCondition);
+			if (value == null && !field.isNillable()) {
+				continue;
+			}
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			sb.append('"').append(field.getProperty()).append("\":");
+			if (value == null) {
+				sb.append("null");
+			} else if (value instanceof Date) {
+				sb.append('"');
+				timestampFormat.format(((Date) value).getTime(), sb);
+				sb.append('"');
+			} else if (value instanceof String) {
+				writeString((String) value, sb);
+			} else {
+				sb.append(value);
+			}
+		}
+		sb.append('}');
+	}
+
+	static void writeString(String value, StringBuilder sb) {
+		sb.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\n");
+			} else if (c == '\r') {
+				sb.append("\\r");
+			} else if (c == '\t') {
+				sb.append("\\t");
+			} else if (c < 0x20) {
+				sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+			} else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+}
@@ -1,34 +1,191 @@
 package edu.wisc.limnology.lter.resources;
 
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import javax.ws.rs.ext.Providers;
 
-import edu.wisc.limnology.lter.model.LakeCondition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.services.DatabaseExecutor;
 import edu.wisc.limnology.lter.services.LakeConditionService;
+import edu.wisc.limnology.lter.services.LakeConditionSnapshot;
 
-//@Component
+/**
+ * Lake conditions are marshalled once per snapshot and served as cached
+ * bytes (gzipped when the client accepts it). Responses carry a strong ETag
+ * and a Last-Modified of when the snapshot last changed the lakes written
+ * (see LakeConditionSnapshot.getModifiedAt), so polling clients get 304 Not
+ * Modified until the buoy data changes. Requests are answered on the
+ * container thread from the snapshot; only those arriving before the first
+ * snapshot has loaded are suspended and wait for it on the DatabaseExecutor.
+ * <p>
+ * Every method takes fields=airTemp,waterTemp,... to write only those
+ * properties, and answers Accept: application/cbor with CBOR (see
+ * LakeConditionCbor) instead of JSON.
+ * <p>
+ * While MySQL is unreachable the last snapshot is still served, with
+ * Warning: 110 "Response is Stale" once LakeConditionService considers it
+ * stale.
+ */
+@Component
 @Path("/lakeConditions")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({ MediaType.APPLICATION_JSON, "application/cbor" })
 @Consumes(MediaType.APPLICATION_JSON)
 public class LakeConditionResource {
-	
-	//@Autowired
-	private LakeConditionService lakeConditionService = new LakeConditionService();
-	
-	@GET	
-	public List<LakeCondition> getLakeConditions() {
-		return lakeConditionService.getLakeConditions(); 
-	}
-	
+
+	static final int MAX_BATCH_LAKES = 50;
+
+	static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+	static final List<Variant> VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE,
+			LakeConditionCbor.APPLICATION_CBOR_TYPE).build();
+
+	@Autowired
+	private LakeConditionService lakeConditionService;
+
+	@Autowired
+	private DatabaseExecutor databaseExecutor;
+
+	@Value("${async.timeoutMillis}")
+	private long timeoutMillis;
+
+	private volatile RenderedLakeConditions rendered;
+
+	@GET
+	public void getLakeConditions(@Suspended AsyncResponse response, @QueryParam("fields") String fields,
+			@Context Request request, @Context Providers providers,
+			@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+		final Set<LakeConditionField> projection = LakeConditionField.parse(fields);
+		final LakeConditionFormat format = selectFormat(request);
+		respond(response, new Selection() {
+			RenderedEntity select(RenderedLakeConditions rendered) {
+				return rendered.getLakeConditions(projection, format);
+			}
+		}, request, providers, acceptEncoding);
+	}
+
 	@GET
 	@Path("/{lakeId}")
-	public LakeCondition getLakeCondition(@PathParam("lakeId") String lakeId) {
-		return lakeConditionService.getLakeCondition(lakeId); 
+	public void getLakeCondition(@Suspended AsyncResponse response, @PathParam("lakeId") final String lakeId,
+			@QueryParam("fields") String fields, @Context Request request, @Context Providers providers,
+			@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+		final Set<LakeConditionField> projection = LakeConditionField.parse(fields);
+		final LakeConditionFormat format = selectFormat(request);
+		respond(response, new Selection() {
+			RenderedEntity select(RenderedLakeConditions rendered) {
+				return rendered.getLakeCondition(lakeId, projection, format);
+			}
+		}, request, providers, acceptEncoding);
+	}
+
+	/**
+	 * Several lakes in one response, e.g.
+	 * /lakeConditions/batch?lakeIds=ME,TR,SP&amp;fields=airTemp,waterTemp: a
+	 * map from each lake id to its condition (null for an unknown lake).
+	 */
+	@GET
+	@Path("/batch")
+	public void getLakeConditionsBatch(@Suspended AsyncResponse response, @QueryParam("lakeIds") String lakeIds,
+			@QueryParam("fields") String fields, @Context Request request, @Context Providers providers,
+			@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+		final Set<String> batchLakeIds = parseLakeIds(lakeIds);
+		final Set<LakeConditionField> projection = LakeConditionField.parse(fields);
+		final LakeConditionFormat format = selectFormat(request);
+		respond(response, new Selection() {
+			RenderedEntity select(RenderedLakeConditions rendered) {
+				return rendered.getBatch(batchLakeIds, projection, format);
+			}
+		}, request, providers, acceptEncoding);
+	}
+
+	private void respond(AsyncResponse response, final Selection selection, final Request request,
+			final Providers providers, final String acceptEncoding) {
+		LakeConditionSnapshot snapshot = lakeConditionService.peekSnapshot();
+		if (snapshot != null) {
+			response.resume(warnIfStale(selection.select(getRendered(snapshot, providers)).toResponse(request,
+					acceptEncoding)));
+			return;
+		}
+		new DatabaseCall(response) {
+			Object call() {
+				return warnIfStale(selection.select(getRendered(lakeConditionService.getSnapshot(), providers))
+						.toResponse(request, acceptEncoding));
+			}
+		}.submit(databaseExecutor, timeoutMillis);
+	}
+
+	private Response warnIfStale(Response response) {
+		if (!lakeConditionService.isStale()) {
+			return response;
+		}
+		return Response.fromResponse(response).header("Warning", STALE_WARNING).build();
+	}
+
+	private static LakeConditionFormat selectFormat(Request request) {
+		Variant variant = request.selectVariant(VARIANTS);
+		return variant != null && variant.getMediaType().isCompatible(LakeConditionCbor.APPLICATION_CBOR_TYPE)
+				? LakeConditionCbor.INSTANCE : LakeConditionJson.INSTANCE;
+	}
+
+	/* sorted, so the same lakes in any order share one rendered batch */
+	static Set<String> parseLakeIds(String lakeIds) {
+		Set<String> parsed = new TreeSet<String>();
+		if (lakeIds != null) {
+			for (String lakeId : lakeIds.split(",")) {
+				if (!lakeId.trim().isEmpty()) {
+					parsed.add(LakeConditionSnapshot.normalizeLakeId(lakeId));
+				}
+			}
+		}
+		if (parsed.isEmpty()) {
+			throw new BadRequestException("lakeIds is required, e.g. lakeIds=ME,TR");
+		}
+		if (parsed.size() > MAX_BATCH_LAKES) {
+			throw new BadRequestException("At most " + MAX_BATCH_LAKES + " lakeIds per batch");
+		}
+		return parsed;
+	}
+
+	private RenderedLakeConditions getRendered(LakeConditionSnapshot snapshot, Providers providers) {
+		RenderedLakeConditions current = rendered;
+		if (current == null || !current.isRenderedFrom(snapshot)) {
+			synchronized (this) {
+				current = rendered;
+				if (current == null || !current.isRenderedFrom(snapshot)) {
+					current = new RenderedLakeConditions(snapshot, providers);
+					rendered = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	public void setTimeoutMillis(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/** The part of the rendered snapshot one request is answered with. */
+	private abstract static class Selection {
+		abstract RenderedEntity select(RenderedLakeConditions rendered);
 	}
-}
\ No newline at end of file
+}
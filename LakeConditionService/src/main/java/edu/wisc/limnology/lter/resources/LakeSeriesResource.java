@@ -0,0 +1,153 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.LakeSeries;
+import edu.wisc.limnology.lter.services.DatabaseExecutor;
+import edu.wisc.limnology.lter.services.LakeSeriesService;
+
+/**
+ * History of one variable from the hi-res sensor tables, e.g.
+ * /lakeConditions/ME/series?variable=waterTemp&amp;depth=0&amp;from=2016-01-01&amp;to=2017-01-01&amp;points=1000
+ * <p>
+ * Dates are yyyy-MM-dd, yyyy-MM-dd'T'HH:mm:ss or epoch milliseconds, in the
+ * same time zone as sampleDate. Without bucket or points the raw samples
+ * are returned. A response with next set is one page of the range; repeat
+ * the request with after=next for the following page. /export streams the
+ * whole range instead. Pages are read on the DatabaseExecutor while the
+ * request is suspended.
+ */
+@Component
+@Path("/lakeConditions/{lakeId}/series")
+@Produces(MediaType.APPLICATION_JSON)
+public class LakeSeriesResource {
+
+	static final List<Variant> EXPORT_VARIANTS = Variant.mediaTypes(MediaType.APPLICATION_JSON_TYPE,
+			SeriesExport.TEXT_CSV_TYPE).build();
+
+	static final String[] DATE_PATTERNS = { "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm",
+			"yyyy-MM-dd" };
+
+	@Autowired
+	private LakeSeriesService lakeSeriesService;
+
+	@Autowired
+	private DatabaseExecutor databaseExecutor;
+
+	@Value("${async.timeoutMillis}")
+	private long timeoutMillis;
+
+	@GET
+	public void getSeries(@Suspended AsyncResponse response, @PathParam("lakeId") String lakeId,
+			@QueryParam("variable") String variable,
+			@QueryParam("depth") @DefaultValue("0") final double depth, @QueryParam("from") String from,
+			@QueryParam("to") String to, @QueryParam("after") String after,
+			@QueryParam("bucket") @DefaultValue("0") int bucketSeconds,
+			@QueryParam("points") @DefaultValue("0") int points,
+			@QueryParam("limit") @DefaultValue("10000") final int limit) {
+		final SeriesSource source = lookup(lakeId, variable);
+		final Date fromDate = parseFrom(from);
+		final Date toDate = parseTo(fromDate, to);
+		final Date afterDate = parseDate("after", after);
+		if (bucketSeconds < 0 || points < 0 || limit <= 0) {
+			throw new BadRequestException("bucket, points and limit must be positive");
+		}
+		final int bucket = bucketSeconds == 0 && points > 0
+				? LakeSeriesService.bucketSecondsFor(fromDate, toDate, points) : bucketSeconds;
+		new DatabaseCall(response) {
+			LakeSeries call() {
+				return lakeSeriesService.getSeries(source, depth, fromDate, toDate, afterDate, bucket, limit);
+			}
+		}.submit(databaseExecutor, timeoutMillis);
+	}
+
+	/**
+	 * Every raw sample in the range in one chunked response, as JSON or CSV
+	 * (from the Accept header, or format=json|csv), without paging.
+	 */
+	@GET
+	@Path("/export")
+	@Produces({ MediaType.APPLICATION_JSON, "text/csv" })
+	public Response exportSeries(@PathParam("lakeId") String lakeId, @QueryParam("variable") String variable,
+			@QueryParam("depth") @DefaultValue("0") double depth, @QueryParam("from") String from,
+			@QueryParam("to") String to, @QueryParam("format") String format, @Context Request request) {
+		SeriesSource source = lookup(lakeId, variable);
+		Date fromDate = parseFrom(from);
+		Date toDate = parseTo(fromDate, to);
+		MediaType mediaType;
+		if ("csv".equalsIgnoreCase(format)) {
+			mediaType = SeriesExport.TEXT_CSV_TYPE;
+		} else if (format == null || "json".equalsIgnoreCase(format)) {
+			Variant variant = format == null ? request.selectVariant(EXPORT_VARIANTS) : null;
+			mediaType = variant != null ? variant.getMediaType() : MediaType.APPLICATION_JSON_TYPE;
+		} else {
+			throw new BadRequestException("format must be json or csv");
+		}
+		boolean csv = mediaType.isCompatible(SeriesExport.TEXT_CSV_TYPE);
+		return Response.ok(new SeriesExport(lakeSeriesService, source, depth, fromDate, toDate, csv), mediaType)
+				.build();
+	}
+
+	private static SeriesSource lookup(String lakeId, String variable) {
+		SeriesSource source = SeriesSource.lookup(lakeId, variable);
+		if (source == null) {
+			throw new NotFoundException("No series " + variable + " for lake " + lakeId + "; available: "
+					+ SeriesSource.variables(lakeId));
+		}
+		return source;
+	}
+
+	private static Date parseFrom(String from) {
+		Date fromDate = parseDate("from", from);
+		if (fromDate == null) {
+			throw new BadRequestException("from is required");
+		}
+		return fromDate;
+	}
+
+	private static Date parseTo(Date fromDate, String to) {
+		Date toDate = to != null ? parseDate("to", to) : new Date();
+		if (!fromDate.before(toDate)) {
+			throw new BadRequestException("from must be before to");
+		}
+		return toDate;
+	}
+
+	static Date parseDate(String name, String value) {
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+		try {
+			if (value.matches("-?\\d{9,}")) {
+				return new Date(Long.parseLong(value));
+			}
+			return DateUtils.parseDateStrictly(value, DATE_PATTERNS);
+		} catch (ParseException e) {
+			throw new BadRequestException(name + " is not a date: " + value);
+		}
+	}
+}
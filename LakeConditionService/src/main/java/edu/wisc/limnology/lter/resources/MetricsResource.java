@@ -0,0 +1,180 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Response;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.CircuitBreaker;
+import edu.wisc.limnology.lter.database.CircuitBreakingLakeConditionDAO;
+import edu.wisc.limnology.lter.database.ReplicaRoutingDataSource;
+import edu.wisc.limnology.lter.ingest.IngestService;
+import edu.wisc.limnology.lter.metrics.Metrics;
+import edu.wisc.limnology.lter.metrics.PrometheusText;
+import edu.wisc.limnology.lter.services.DatabaseExecutor;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+import edu.wisc.limnology.lter.services.RollupService;
+import edu.wisc.limnology.lter.services.SeriesStoreService;
+
+/**
+ * Request, MySQL and pool metrics in the Prometheus text format, for a
+ * Prometheus server to scrape. Besides what Metrics records, the counters
+ * the services publish over JMX are written here too, read when scraped:
+ * snapshot hits and misses, staleness, executor and pool occupancy, the
+ * MySQL circuit breaker and read replicas, PRN ingestion, and background job
+ * failures. Services missing from the context are left out.
+ */
+@Component
+@Path("/metrics")
+public class MetricsResource {
+
+	@Autowired
+	private Metrics metrics;
+
+	@Autowired(required = false)
+	private LakeConditionService lakeConditionService;
+
+	@Autowired(required = false)
+	private DatabaseExecutor databaseExecutor;
+
+	@Autowired(required = false)
+	private BasicDataSource pool;
+
+	@Autowired(required = false)
+	private CircuitBreakingLakeConditionDAO breakingDAO;
+
+	@Autowired(required = false)
+	private ReplicaRoutingDataSource routingDataSource;
+
+	@Autowired(required = false)
+	private LakeConditionEventsResource eventsResource;
+
+	@Autowired(required = false)
+	private RollupService rollupService;
+
+	@Autowired(required = false)
+	private SeriesStoreService seriesStoreService;
+
+	@Autowired(required = false)
+	private IngestService ingestService;
+
+	@GET
+	@Produces(PrometheusText.CONTENT_TYPE)
+	public Response getMetrics() {
+		PrometheusText out = new PrometheusText();
+		metrics.write(out);
+		if (lakeConditionService != null) {
+			out.family("lakecondition_snapshot_requests_total", "counter",
+					"Lake condition requests by whether the snapshot was loaded (hit) or had to be (miss)");
+			out.sample("lakecondition_snapshot_requests_total", PrometheusText.labels("result", "hit"),
+					lakeConditionService.getHits());
+			out.sample("lakecondition_snapshot_requests_total", PrometheusText.labels("result", "miss"),
+					lakeConditionService.getMisses());
+			counter(out, "lakecondition_snapshot_reloads_total", "Snapshot reloads from MySQL",
+					lakeConditionService.getReloads());
+			counter(out, "lakecondition_snapshot_refresh_failures_total", "Background snapshot refreshes that failed",
+					lakeConditionService.getRefreshFailures());
+			gauge(out, "lakecondition_snapshot_age_seconds", "Age of the snapshot, -1 before the first load",
+					lakeConditionService.getSnapshotAgeMillis() < 0 ? -1
+							: lakeConditionService.getSnapshotAgeMillis() / 1000.0);
+			gauge(out, "lakecondition_snapshot_stale", "1 while no refresh has reached MySQL for cache.staleAfterMillis",
+					lakeConditionService.isStale() ? 1 : 0);
+		}
+		if (databaseExecutor != null) {
+			gauge(out, "lakecondition_executor_active_threads", "DatabaseExecutor threads running a task",
+					databaseExecutor.getActiveThreads());
+			gauge(out, "lakecondition_executor_max_threads", "DatabaseExecutor threads",
+					databaseExecutor.getMaxThreads());
+			gauge(out, "lakecondition_executor_queued", "Suspended requests waiting for a DatabaseExecutor thread",
+					databaseExecutor.getQueued());
+			counter(out, "lakecondition_executor_rejected_total", "Requests answered 503 because the queue was full",
+					databaseExecutor.getRejected());
+			counter(out, "lakecondition_executor_timeouts_total", "Requests answered 503 after async.timeoutMillis",
+					databaseExecutor.getTimeouts());
+		}
+		if (pool != null) {
+			out.family("lakecondition_db_pool_connections", "gauge", "Pooled connections by state");
+			out.sample("lakecondition_db_pool_connections", PrometheusText.labels("state", "active"),
+					pool.getNumActive());
+			out.sample("lakecondition_db_pool_connections", PrometheusText.labels("state", "idle"), pool.getNumIdle());
+			gauge(out, "lakecondition_db_pool_max_connections", "Most connections the pool opens",
+					pool.getMaxTotal());
+		}
+		if (breakingDAO != null) {
+			CircuitBreaker breaker = breakingDAO.getCircuitBreaker();
+			out.family("lakecondition_db_circuit_state", "gauge", "1 for the state the MySQL circuit breaker is in");
+			for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+				out.sample("lakecondition_db_circuit_state", PrometheusText.labels("state", state.name()),
+						breaker.getState() == state ? 1 : 0);
+			}
+			counter(out, "lakecondition_db_circuit_opens_total", "Times the MySQL circuit breaker opened",
+					breaker.getOpens());
+			counter(out, "lakecondition_db_circuit_refused_total", "MySQL calls refused while the breaker was open",
+					breaker.getRefused());
+		}
+		if (routingDataSource != null) {
+			List<ReplicaRoutingDataSource.Replica> replicas = routingDataSource.getReplicas();
+			out.family("lakecondition_db_replica_up", "gauge", "1 while a database lake conditions are read from is up");
+			for (ReplicaRoutingDataSource.Replica replica : replicas) {
+				out.sample("lakecondition_db_replica_up", PrometheusText.labels("database", replica.getName()),
+						replica.isHealthy() ? 1 : 0);
+			}
+			out.family("lakecondition_db_replica_latency_seconds", "gauge",
+					"Moving average of borrow and health check times per database");
+			for (ReplicaRoutingDataSource.Replica replica : replicas) {
+				out.sample("lakecondition_db_replica_latency_seconds",
+						PrometheusText.labels("database", replica.getName()), replica.getLatencyNanos() / 1e9);
+			}
+			counter(out, "lakecondition_db_replica_failovers_total", "Borrows that failed over to another database",
+					routingDataSource.getFailovers());
+		}
+		if (eventsResource != null) {
+			gauge(out, "lakecondition_event_subscribers", "Open event streams", eventsResource.getSubscribers());
+			counter(out, "lakecondition_events_dropped_total",
+					"Broadcasts dropped because the events thread's queue was full", eventsResource.getEventsDropped());
+		}
+		if (rollupService != null) {
+			counter(out, "lakecondition_rollup_failures_total", "Rollup runs that failed", rollupService.getFailures());
+		}
+		if (seriesStoreService != null) {
+			counter(out, "lakecondition_store_sync_failures_total", "Series store syncs that failed",
+					seriesStoreService.getFailures());
+		}
+		if (ingestService != null) {
+			counter(out, "lakecondition_ingest_rows_total", "Rows ingested from the PRN files",
+					ingestService.getRowsIngested());
+			counter(out, "lakecondition_ingest_bytes_total", "Bytes of PRN files ingested",
+					ingestService.getBytesIngested());
+			counter(out, "lakecondition_ingest_seconds_total", "Seconds spent reading, storing and publishing rows",
+					ingestService.getIngestSeconds());
+			counter(out, "lakecondition_ingest_flagged_total", "Values flagged by the range checks",
+					ingestService.getValuesFlagged());
+			counter(out, "lakecondition_hires_rows_written_total", "Hi-res table rows written",
+					ingestService.getTableRowsWritten());
+			counter(out, "lakecondition_hires_duplicates_skipped_total", "Hi-res table rows skipped as already there",
+					ingestService.getDuplicatesSkipped());
+			counter(out, "lakecondition_hires_write_seconds_total", "Seconds spent writing the hi-res tables",
+					ingestService.getWriteSeconds());
+			counter(out, "lakecondition_ingest_failures_total", "File ingests that failed and will be retried",
+					ingestService.getFailures());
+		}
+		CacheControl noCache = new CacheControl();
+		noCache.setNoCache(true);
+		return Response.ok(out.toString()).cacheControl(noCache).build();
+	}
+
+	private static void counter(PrometheusText out, String name, String help, double value) {
+		out.family(name, "counter", help).sample(name, "", value);
+	}
+
+	private static void gauge(PrometheusText out, String name, String help, double value) {
+		out.family(name, "gauge", help).sample(name, "", value);
+	}
+}
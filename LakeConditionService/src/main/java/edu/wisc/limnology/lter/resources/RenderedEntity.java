@@ -0,0 +1,129 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * A response body that has already been marshalled, kept both as is and
+ * gzipped so repeated requests only copy bytes. Each encoding carries its
+ * own strong ETag derived from the content.
+ */
+class RenderedEntity {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final byte[] body;
+	private final byte[] gzippedBody;
+	private final MediaType mediaType;
+	private final EntityTag entityTag;
+	private final EntityTag gzippedEntityTag;
+	private final Date lastModified;
+
+	RenderedEntity(byte[] json, Date lastModified) {
+		this(json, MediaType.APPLICATION_JSON_TYPE, lastModified);
+	}
+
+	RenderedEntity(byte[] body, MediaType mediaType, Date lastModified) {
+		this.body = body;
+		this.gzippedBody = gzip(body);
+		this.mediaType = mediaType;
+		String digest = sha1(body);
+		this.entityTag = new EntityTag(digest);
+		this.gzippedEntityTag = new EntityTag(digest + "-gzip");
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Builds the response for a request, answering 304 Not Modified when the
+	 * client's If-None-Match / If-Modified-Since still match.
+	 */
+	Response toResponse(Request request, String acceptEncoding) {
+		boolean gzip = acceptsGzip(acceptEncoding);
+		EntityTag tag = gzip ? gzippedEntityTag : entityTag;
+
+		ResponseBuilder builder = lastModified != null
+				? request.evaluatePreconditions(lastModified, tag)
+				: request.evaluatePreconditions(tag);
+		if (builder == null) {
+			builder = Response.ok(gzip ? gzippedBody : body, mediaType);
+			if (gzip) {
+				builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+			}
+		}
+		builder.tag(tag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+		if (lastModified != null) {
+			builder.lastModified(lastModified);
+		}
+		return builder.build();
+	}
+
+	byte[] getBody() {
+		return body;
+	}
+
+	byte[] getGzippedBody() {
+		return gzippedBody;
+	}
+
+	MediaType getMediaType() {
+		return mediaType;
+	}
+
+	EntityTag getEntityTag() {
+		return entityTag;
+	}
+
+	Date getLastModified() {
+		return lastModified;
+	}
+
+	static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if ("gzip".equalsIgnoreCase(parts[0].trim())) {
+				return parts.length < 2 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	private static byte[] gzip(byte[] bytes) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+			GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+			gzipOut.write(bytes);
+			gzipOut.close();
+			return out.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String sha1(byte[] bytes) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+			char[] chars = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				chars[2 * i] = HEX[(digest[i] >> 4) & 0xf];
+				chars[2 * i + 1] = HEX[digest[i] & 0xf];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,176 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Providers;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.services.LakeConditionSnapshot;
+
+/**
+ * JSON for every lake in one snapshot, rendered once through the same
+ * MessageBodyWriter Jersey would use so the bytes match an ordinary response.
+ * A reload that changed nothing keeps the snapshot version, and with it
+ * these bytes and their ETags. Anything else (a subset of fields, a batch
+ * of lakes, CBOR) is written by a LakeConditionFormat on first request and
+ * kept for the same version, up to MAX_PROJECTIONS distinct requests.
+ * Last-Modified is when the snapshot last changed the lakes written, not
+ * their sampleDate, which an update in place leaves where it was.
+ */
+class RenderedLakeConditions {
+
+	private static final GenericType<List<LakeCondition>> LAKE_CONDITION_LIST = new GenericType<List<LakeCondition>>() {
+	};
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	static final int MAX_PROJECTIONS = 128;
+
+	private final LakeConditionSnapshot snapshot;
+	private final RenderedEntity lakeConditions;
+	private final Map<String, RenderedEntity> lakeConditionsById;
+	private final RenderedEntity unknownLake;
+	private final ConcurrentMap<String, RenderedEntity> projections = new ConcurrentHashMap<String, RenderedEntity>();
+
+	RenderedLakeConditions(LakeConditionSnapshot snapshot, Providers providers) {
+		this.snapshot = snapshot;
+		this.lakeConditions = new RenderedEntity(
+				render(providers, snapshot.getLakeConditions(), LAKE_CONDITION_LIST.getRawType(), LAKE_CONDITION_LIST.getType()),
+				snapshot.getLastModified());
+
+		Map<String, RenderedEntity> byId = new HashMap<String, RenderedEntity>();
+		for (LakeCondition lakeCondition : snapshot.getLakeConditions()) {
+			if (lakeCondition.getLakeId() != null) {
+				byId.put(lakeCondition.getLakeId(), new RenderedEntity(
+						render(providers, lakeCondition, LakeCondition.class, LakeCondition.class),
+						snapshot.getModifiedAt(lakeCondition.getLakeId())));
+			}
+		}
+		this.lakeConditionsById = byId;
+		this.unknownLake = new RenderedEntity(
+				render(providers, LakeCondition.EMPTY, LakeCondition.class, LakeCondition.class), null);
+	}
+
+	boolean isRenderedFrom(LakeConditionSnapshot snapshot) {
+		return this.snapshot.getVersion() == snapshot.getVersion();
+	}
+
+	RenderedEntity getLakeConditions() {
+		return lakeConditions;
+	}
+
+	RenderedEntity getLakeCondition(String lakeId) {
+		LakeCondition lakeCondition = snapshot.getLakeCondition(lakeId);
+		return lakeCondition != null ? lakeConditionsById.get(lakeCondition.getLakeId()) : unknownLake;
+	}
+
+	/**
+	 * Every lake, with only some fields or in another format than JSON.
+	 */
+	RenderedEntity getLakeConditions(final Set<LakeConditionField> fields, final LakeConditionFormat format) {
+		if (isMoxyOutput(fields, format)) {
+			return lakeConditions;
+		}
+		return getProjection("all", fields, format, new Projection() {
+			RenderedEntity render() {
+				return new RenderedEntity(format.writeList(snapshot.getLakeConditions(), fields),
+						format.getMediaType(), snapshot.getLastModified());
+			}
+		});
+	}
+
+	RenderedEntity getLakeCondition(String lakeId, final Set<LakeConditionField> fields,
+			final LakeConditionFormat format) {
+		if (isMoxyOutput(fields, format)) {
+			return getLakeCondition(lakeId);
+		}
+		final LakeCondition lakeCondition = snapshot.getLakeCondition(lakeId);
+		String key = lakeCondition != null ? lakeCondition.getLakeId() : "";
+		return getProjection("lake " + key, fields, format, new Projection() {
+			RenderedEntity render() {
+				return lakeCondition != null
+						? new RenderedEntity(format.write(lakeCondition, fields), format.getMediaType(),
+								snapshot.getModifiedAt(lakeCondition.getLakeId()))
+						: new RenderedEntity(format.write(LakeCondition.EMPTY, fields), format.getMediaType(), null);
+			}
+		});
+	}
+
+	/**
+	 * @param lakeIds normalized lake ids, in the order to write them
+	 * @return a map from each lake id to its condition, null for a lake that
+	 *         is not in the snapshot
+	 */
+	RenderedEntity getBatch(final Set<String> lakeIds, final Set<LakeConditionField> fields,
+			final LakeConditionFormat format) {
+		return getProjection("batch " + lakeIds, fields, format, new Projection() {
+			RenderedEntity render() {
+				Map<String, LakeCondition> batch = new LinkedHashMap<String, LakeCondition>();
+				Date lastModified = null;
+				for (String lakeId : lakeIds) {
+					LakeCondition lakeCondition = snapshot.getLakeCondition(lakeId);
+					batch.put(lakeId, lakeCondition);
+					/* a lake may be missing because it was removed */
+					Date modifiedAt = lakeCondition != null ? snapshot.getModifiedAt(lakeId)
+							: snapshot.getLastModified();
+					if (lastModified == null || modifiedAt.after(lastModified)) {
+						lastModified = modifiedAt;
+					}
+				}
+				return new RenderedEntity(format.writeMap(batch, fields), format.getMediaType(), lastModified);
+			}
+		});
+	}
+
+	private static boolean isMoxyOutput(Set<LakeConditionField> fields, LakeConditionFormat format) {
+		return format == LakeConditionJson.INSTANCE && fields.size() == LakeConditionField.values().length;
+	}
+
+	private RenderedEntity getProjection(String what, Set<LakeConditionField> fields, LakeConditionFormat format,
+			Projection projection) {
+		String key = what + " " + fields + " " + format.getMediaType();
+		RenderedEntity rendered = projections.get(key);
+		if (rendered == null) {
+			rendered = projection.render();
+			if (projections.size() < MAX_PROJECTIONS) {
+				projections.putIfAbsent(key, rendered);
+			}
+		}
+		return rendered;
+	}
+
+	private abstract static class Projection {
+		abstract RenderedEntity render();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static byte[] render(Providers providers, Object entity, Class<?> type, Type genericType) {
+		MessageBodyWriter writer = providers.getMessageBodyWriter(type, genericType, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE);
+		if (writer == null) {
+			throw new IllegalStateException("No JSON writer for " + genericType);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+		try {
+			writer.writeTo(entity, type, genericType, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+					new MultivaluedHashMap<String, Object>(), out);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toByteArray();
+	}
+}
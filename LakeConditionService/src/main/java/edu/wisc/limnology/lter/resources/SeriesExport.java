@@ -0,0 +1,138 @@
+package edu.wisc.limnology.lter.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.services.LakeSeriesService;
+import edu.wisc.limnology.lter.utils.TimestampFormat;
+
+/**
+ * Writes a whole range of samples to the response as they come off the
+ * database cursor, either as a JSON array of {"sampleDate","value"} objects
+ * (the form LakeSeries points take) or as CSV. Nothing is buffered beyond
+ * the writer's buffer, so a year of 1-minute data costs no more heap than
+ * a day.
+ */
+public class SeriesExport implements StreamingOutput {
+
+	static final MediaType TEXT_CSV_TYPE = new MediaType("text", "csv");
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final LakeSeriesService lakeSeriesService;
+	private final SeriesSource source;
+	private final Double depth;
+	private final Date from;
+	private final Date to;
+	private final boolean csv;
+
+	public SeriesExport(LakeSeriesService lakeSeriesService, SeriesSource source, Double depth, Date from, Date to,
+			boolean csv) {
+		this.lakeSeriesService = lakeSeriesService;
+		this.source = source;
+		this.depth = depth;
+		this.from = from;
+		this.to = to;
+		this.csv = csv;
+	}
+
+	@Override
+	public void write(OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8), BUFFER_SIZE);
+		SampleWriter sampleWriter = csv ? new CsvSampleWriter(writer) : new JsonSampleWriter(writer);
+		sampleWriter.start();
+		lakeSeriesService.streamSeries(source, depth, from, to, sampleWriter);
+		sampleWriter.end();
+		writer.flush();
+	}
+
+	abstract static class SampleWriter implements SampleHandler {
+		final Writer writer;
+		final TimestampFormat timestampFormat = new TimestampFormat();
+		final StringBuilder line = new StringBuilder(64);
+		private char[] chars = new char[64];
+
+		SampleWriter(Writer writer) {
+			this.writer = writer;
+		}
+
+		/* Writer.append(CharSequence) would copy each line into a new String */
+		void writeLine() throws IOException {
+			int length = line.length();
+			if (length > chars.length) {
+				chars = new char[length];
+			}
+			line.getChars(0, length, chars, 0);
+			writer.write(chars, 0, length);
+		}
+
+		abstract void start() throws IOException;
+
+		abstract void end() throws IOException;
+	}
+
+	static class JsonSampleWriter extends SampleWriter {
+		private boolean first = true;
+
+		JsonSampleWriter(Writer writer) {
+			super(writer);
+		}
+
+		@Override
+		void start() throws IOException {
+			writer.write('[');
+		}
+
+		@Override
+		public void sample(long sampleDate, double value) throws IOException {
+			line.setLength(0);
+			if (!first) {
+				line.append(',');
+			}
+			first = false;
+			line.append("{\"sampleDate\":\"");
+			timestampFormat.format(sampleDate, line);
+			line.append("\",\"value\":").append(value).append('}');
+			writeLine();
+		}
+
+		@Override
+		void end() throws IOException {
+			writer.write(']');
+		}
+	}
+
+	static class CsvSampleWriter extends SampleWriter {
+		CsvSampleWriter(Writer writer) {
+			super(writer);
+		}
+
+		@Override
+		void start() throws IOException {
+			writer.write("sampleDate,value\r\n");
+		}
+
+		@Override
+		public void sample(long sampleDate, double value) throws IOException {
+			line.setLength(0);
+			timestampFormat.format(sampleDate, line);
+			line.append(',').append(value).append("\r\n");
+			writeLine();
+		}
+
+		@Override
+		void end() {
+		}
+	}
+}
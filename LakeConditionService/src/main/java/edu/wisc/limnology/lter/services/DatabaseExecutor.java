@@ -0,0 +1,89 @@
+package edu.wisc.limnology.lter.services;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * A fixed pool with a bounded queue for request work that has to wait on
+ * MySQL, so a slow database ties up these threads rather than the
+ * container's. When the pool and queue are full, execute throws
+ * RejectedExecutionException instead of queueing without limit.
+ */
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=DatabaseExecutor,name=databaseExecutor")
+public class DatabaseExecutor implements Executor {
+
+	private final ThreadPoolExecutor pool;
+
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+
+	public DatabaseExecutor(int threads, int queueCapacity) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("database-");
+		threadFactory.setDaemon(true);
+		pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), threadFactory);
+		pool.allowCoreThreadTimeOut(true);
+	}
+
+	public void execute(Runnable task) {
+		try {
+			pool.execute(task);
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Counts a request that gave up waiting for its task.
+	 */
+	public void timedOut() {
+		timeouts.incrementAndGet();
+	}
+
+	/**
+	 * Lets queued and running tasks finish, for up to 10 seconds.
+	 */
+	public void shutdown() throws InterruptedException {
+		pool.shutdown();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	@ManagedAttribute(description = "Threads running a task")
+	public int getActiveThreads() {
+		return pool.getActiveCount();
+	}
+
+	@ManagedAttribute(description = "Most threads the pool may run")
+	public int getMaxThreads() {
+		return pool.getMaximumPoolSize();
+	}
+
+	@ManagedAttribute(description = "Tasks waiting for a thread")
+	public int getQueued() {
+		return pool.getQueue().size();
+	}
+
+	@ManagedAttribute(description = "Tasks completed")
+	public long getCompleted() {
+		return pool.getCompletedTaskCount();
+	}
+
+	@ManagedAttribute(description = "Tasks turned away because the pool and queue were full")
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	@ManagedAttribute(description = "Requests answered 503 because their task took too long")
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+}
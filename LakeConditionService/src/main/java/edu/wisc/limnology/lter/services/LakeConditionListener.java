@@ -0,0 +1,18 @@
+package edu.wisc.limnology.lter.services;
+
+import java.util.Set;
+
+/**
+ * Told by LakeConditionService when a reload changed the conditions of
+ * some lakes. Called on the reloading thread, so implementations should
+ * hand slow work off rather than block it.
+ */
+public interface LakeConditionListener {
+
+	/**
+	 * @param changedLakeIds normalized (trimmed, upper-case) ids of the lakes
+	 *        added, removed or changed; never empty
+	 */
+	public void lakeConditionsChanged(LakeConditionSnapshot snapshot, Set<String> changedLakeIds);
+
+}
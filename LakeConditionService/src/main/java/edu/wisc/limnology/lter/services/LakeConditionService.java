@@ -1,22 +1,370 @@
 package edu.wisc.limnology.lter.services;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.CircuitOpenException;
 import edu.wisc.limnology.lter.database.LakeConditionDAO;
-import edu.wisc.limnology.lter.database.LakeConditionDAOImpl;
+import edu.wisc.limnology.lter.database.ReplicaRoutingDataSource;
 import edu.wisc.limnology.lter.model.LakeCondition;
 
-//@Component
+/**
+ * Serves lake conditions from an in-memory snapshot of buoy_current_conditions.
+ * The table only changes when the R update jobs run, so the snapshot is
+ * refreshed in the background instead of querying MySQL on every request.
+ * Each refresh probes the per-lake change signatures and reloads only when
+ * one moved; a reload that changed anything bumps the snapshot version and
+ * tells the LakeConditionListeners which lakes changed.
+ * <p>
+ * While MySQL is down the last snapshot keeps being served; once no refresh
+ * has reached MySQL for cache.staleAfterMillis it counts as stale, which
+ * LakeConditionResource passes on as a Warning header.
+ * <p>
+ * Conditions derived from the logger files as they are ingested are
+ * published into the snapshot directly. The LakeConditionUpdate that
+ * derived them is kept and applied again over every row read from MySQL,
+ * so they survive reloads while the columns no file feeds (lakename,
+ * thermocline depth) follow MySQL.
+ */
+@Component
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=LakeConditionService,name=snapshotCache")
 public class LakeConditionService {
-	
-	//@Autowired
-	private LakeConditionDAO buoyConditionsDAO = new LakeConditionDAOImpl();
-	
+
+	private static final Log log = LogFactory.getLog(LakeConditionService.class);
+
+	@Autowired
+	private LakeConditionDAO buoyConditionsDAO;
+
+	/* Reload even when the signatures are unchanged, for the columns they
+	   leave out (lakename, a hand-edited row). */
+	@Value("${cache.maxAgeMillis}")
+	private long maxAgeMillis;
+
+	@Value("${cache.staleAfterMillis}")
+	private long staleAfterMillis;
+
+	/* pins each refresh to one database, so the probe and the reload agree */
+	@Autowired(required = false)
+	private ReplicaRoutingDataSource routingDataSource;
+
+	@Autowired(required = false)
+	private List<LakeConditionListener> listeners = Collections.emptyList();
+
+	private volatile LakeConditionSnapshot snapshot;
+
+	/* by normalized lake id; guarded by this */
+	private final Map<String, LakeConditionUpdate> published = new HashMap<String, LakeConditionUpdate>();
+
+	/* MySQL's rows as last read, by normalized lake id; guarded by this */
+	private Map<String, LakeCondition> rows = Collections.emptyMap();
+
+	/* when a probe or reload last reached MySQL */
+	private volatile long verifiedAt;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong refreshChecks = new AtomicLong();
+	private final AtomicLong reloads = new AtomicLong();
+	private final AtomicLong refreshFailures = new AtomicLong();
+	private final AtomicLong publishes = new AtomicLong();
+
 	public List<LakeCondition> getLakeConditions() {
-		return buoyConditionsDAO.getLakeConditions(); 
+		return getSnapshot().getLakeConditions();
 	}
-	
+
 	public LakeCondition getLakeCondition(String lakeId) {
-		return buoyConditionsDAO.getLakeCondition(lakeId); 
+		LakeCondition lakeCondition = getSnapshot().getLakeCondition(lakeId);
+		return lakeCondition != null ? lakeCondition : LakeCondition.EMPTY;
+	}
+
+	/**
+	 * Current snapshot, loading it on first use.
+	 */
+	public LakeConditionSnapshot getSnapshot() {
+		LakeConditionSnapshot current = snapshot;
+		if (current != null) {
+			hits.incrementAndGet();
+			return current;
+		}
+		misses.incrementAndGet();
+		return loadIfAbsent();
+	}
+
+	/**
+	 * Current snapshot without loading it.
+	 *
+	 * @return null until the first load has finished
+	 */
+	public LakeConditionSnapshot peekSnapshot() {
+		LakeConditionSnapshot current = snapshot;
+		if (current != null) {
+			hits.incrementAndGet();
+		}
+		return current;
+	}
+
+	/**
+	 * Probes the change signatures and reloads the snapshot when any moved or
+	 * when the snapshot is older than cache.maxAgeMillis. A failed refresh
+	 * keeps serving the previous snapshot.
+	 */
+	@Scheduled(fixedDelayString = "${cache.refreshIntervalMillis}")
+	public void refresh() {
+		refreshChecks.incrementAndGet();
+		try (ReplicaRoutingDataSource.Pin pin = pinReads()) {
+			LakeConditionSnapshot current = snapshot;
+			if (current == null) {
+				loadIfAbsent();
+				return;
+			}
+			Map<String, String> signatures = probeSignatures();
+			if (!signatures.equals(current.getSignatures())
+					|| System.currentTimeMillis() - current.getLoadedAt() >= maxAgeMillis) {
+				reload(signatures);
+			} else {
+				verifiedAt = System.currentTimeMillis();
+			}
+		} catch (CircuitOpenException e) {
+			refreshFailures.incrementAndGet();
+			log.warn("Could not refresh lake conditions; serving the previous snapshot: " + e.getMessage());
+		} catch (RuntimeException e) {
+			refreshFailures.incrementAndGet();
+			log.error("Could not refresh lake conditions; serving the previous snapshot", e);
+		}
+	}
+
+	@ManagedOperation(description = "Reload buoy_current_conditions now")
+	public synchronized void reload() {
+		try (ReplicaRoutingDataSource.Pin pin = pinReads()) {
+			reload(probeSignatures());
+		}
+	}
+
+	/* null when reads are not routed */
+	private ReplicaRoutingDataSource.Pin pinReads() {
+		return routingDataSource != null ? routingDataSource.pin() : null;
+	}
+
+	/*
+	 * The signatures are probed before the rows are read, so a change landing
+	 * in between shows up as a moved signature next time; that reload then
+	 * finds nothing new and keeps the version.
+	 */
+	private synchronized void reload(Map<String, String> signatures) {
+		List<LakeCondition> read = buoyConditionsDAO.getLakeConditions();
+		Map<String, LakeCondition> byLakeId = new HashMap<String, LakeCondition>();
+		for (LakeCondition lakeCondition : read) {
+			if (lakeCondition.getLakeId() != null) {
+				byLakeId.put(LakeConditionSnapshot.normalizeLakeId(lakeCondition.getLakeId()), lakeCondition);
+			}
+		}
+		rows = byLakeId;
+		List<LakeCondition> lakeConditions = withPublished(read);
+		install(lakeConditions, signatures, System.currentTimeMillis());
+		verifiedAt = snapshot.getLoadedAt();
+		reloads.incrementAndGet();
+	}
+
+	/**
+	 * Replaces one lake's condition with the one update derives from it, in
+	 * one step: no reload or other publish comes in between. The snapshot is
+	 * loaded first if need be. update is applied over the lake's row as read
+	 * from MySQL, replaces any update the lake had, and is applied again
+	 * over the lake's row on every reload.
+	 *
+	 * @return false if update derived nothing newer than MySQL's row, or a
+	 *         condition sampled before the one in the snapshot
+	 */
+	public synchronized boolean publish(String lakeId, LakeConditionUpdate update) {
+		LakeConditionSnapshot current = snapshot != null ? snapshot : loadIfAbsent();
+		String id = LakeConditionSnapshot.normalizeLakeId(lakeId);
+		published.put(id, update);
+		LakeCondition row = rows.get(id);
+		LakeCondition lakeCondition = row != null ? updated(update, row) : update.apply(null);
+		if (lakeCondition == null || lakeCondition == row || lakeCondition.getSampleDate() == null) {
+			return false;
+		}
+		LakeCondition previous = current.getLakeCondition(id);
+		if (previous != null && previous.getSampleDate() != null
+				&& previous.getSampleDate().after(lakeCondition.getSampleDate())) {
+			return false;
+		}
+		List<LakeCondition> lakeConditions = new ArrayList<LakeCondition>(current.getLakeConditions());
+		if (previous != null) {
+			lakeConditions.set(lakeConditions.indexOf(previous), lakeCondition);
+		} else {
+			lakeConditions.add(lakeCondition);
+		}
+		install(lakeConditions, current.getSignatures(), current.getLoadedAt());
+		publishes.incrementAndGet();
+		return true;
+	}
+
+	/* MySQL's rows, with each lake's published update applied over its row */
+	private List<LakeCondition> withPublished(List<LakeCondition> lakeConditions) {
+		if (published.isEmpty()) {
+			return lakeConditions;
+		}
+		Map<String, LakeConditionUpdate> remaining = new HashMap<String, LakeConditionUpdate>(published);
+		List<LakeCondition> merged = new ArrayList<LakeCondition>(lakeConditions.size());
+		for (LakeCondition lakeCondition : lakeConditions) {
+			String lakeId = lakeCondition.getLakeId() != null
+					? LakeConditionSnapshot.normalizeLakeId(lakeCondition.getLakeId()) : null;
+			LakeConditionUpdate update = remaining.remove(lakeId);
+			merged.add(update != null ? updated(update, lakeCondition) : lakeCondition);
+		}
+		/* lakes MySQL has no row for yet */
+		for (LakeConditionUpdate update : remaining.values()) {
+			LakeCondition lakeCondition = update.apply(null);
+			if (lakeCondition != null && lakeCondition.getSampleDate() != null) {
+				merged.add(lakeCondition);
+			}
+		}
+		return merged;
+	}
+
+	/* the row when the update has nothing newer than it */
+	private static LakeCondition updated(LakeConditionUpdate update, LakeCondition row) {
+		LakeCondition lakeCondition = update.apply(row);
+		if (lakeCondition == null || lakeCondition.getSampleDate() == null || (row.getSampleDate() != null
+				&& row.getSampleDate().after(lakeCondition.getSampleDate()))) {
+			return row;
+		}
+		return lakeCondition;
+	}
+
+	private void install(List<LakeCondition> lakeConditions, Map<String, String> signatures, long loadedAt) {
+		Date latestSampleDate = null;
+		for (LakeCondition lakeCondition : lakeConditions) {
+			Date sampleDate = lakeCondition.getSampleDate();
+			if (sampleDate != null && (latestSampleDate == null || sampleDate.after(latestSampleDate))) {
+				latestSampleDate = sampleDate;
+			}
+		}
+		LakeConditionSnapshot previous = snapshot;
+		LakeConditionSnapshot current = new LakeConditionSnapshot(lakeConditions, latestSampleDate, signatures,
+				loadedAt, previous);
+		snapshot = current;
+		if (previous != null && current.getVersion() != previous.getVersion()) {
+			notifyListeners(current);
+		}
+	}
+
+	private Map<String, String> probeSignatures() {
+		Map<String, String> signatures = new HashMap<String, String>();
+		for (Map.Entry<String, String> entry : buoyConditionsDAO.getChangeSignatures().entrySet()) {
+			if (entry.getKey() != null) {
+				signatures.put(LakeConditionSnapshot.normalizeLakeId(entry.getKey()), entry.getValue());
+			}
+		}
+		return signatures;
+	}
+
+	private void notifyListeners(LakeConditionSnapshot current) {
+		for (LakeConditionListener listener : listeners) {
+			try {
+				listener.lakeConditionsChanged(current, current.getChangedLakeIds());
+			} catch (RuntimeException e) {
+				log.error("Lake condition listener " + listener + " failed", e);
+			}
+		}
+	}
+
+	private synchronized LakeConditionSnapshot loadIfAbsent() {
+		if (snapshot == null) {
+			reload();
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return whether a snapshot is loaded but no refresh has reached MySQL
+	 *         for cache.staleAfterMillis
+	 */
+	@ManagedAttribute(description = "Whether no refresh has reached MySQL for cache.staleAfterMillis")
+	public boolean isStale() {
+		return snapshot != null && System.currentTimeMillis() - verifiedAt >= staleAfterMillis;
+	}
+
+	@ManagedAttribute(description = "Milliseconds since a refresh last reached MySQL, -1 if not loaded")
+	public long getVerifiedAgeMillis() {
+		return snapshot != null ? System.currentTimeMillis() - verifiedAt : -1;
+	}
+
+	@ManagedAttribute(description = "Requests answered from the snapshot")
+	public long getHits() {
+		return hits.get();
+	}
+
+	@ManagedAttribute(description = "Requests that had to load the snapshot first")
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@ManagedAttribute(description = "Background change checks run")
+	public long getRefreshChecks() {
+		return refreshChecks.get();
+	}
+
+	@ManagedAttribute(description = "Times the snapshot was reloaded from MySQL")
+	public long getReloads() {
+		return reloads.get();
+	}
+
+	@ManagedAttribute(description = "Background refreshes that failed")
+	public long getRefreshFailures() {
+		return refreshFailures.get();
+	}
+
+	@ManagedAttribute(description = "Conditions published from ingestion")
+	public long getPublishes() {
+		return publishes.get();
+	}
+
+	@ManagedAttribute(description = "Version of the current snapshot, 0 if not loaded")
+	public long getVersion() {
+		LakeConditionSnapshot current = snapshot;
+		return current != null ? current.getVersion() : 0;
+	}
+
+	@ManagedAttribute(description = "Milliseconds since the snapshot was loaded, -1 if not loaded")
+	public long getSnapshotAgeMillis() {
+		LakeConditionSnapshot current = snapshot;
+		return current != null ? System.currentTimeMillis() - current.getLoadedAt() : -1;
+	}
+
+	public void setBuoyConditionsDAO(LakeConditionDAO buoyConditionsDAO) {
+		this.buoyConditionsDAO = buoyConditionsDAO;
+	}
+
+	public void setRoutingDataSource(ReplicaRoutingDataSource routingDataSource) {
+		this.routingDataSource = routingDataSource;
+	}
+
+	public void setListeners(List<LakeConditionListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	public void setMaxAgeMillis(long maxAgeMillis) {
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	public void setStaleAfterMillis(long staleAfterMillis) {
+		this.staleAfterMillis = staleAfterMillis;
 	}
 }
@@ -0,0 +1,149 @@
+package edu.wisc.limnology.lter.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * An immutable copy of buoy_current_conditions as it was at one point in time.
+ * Conditions are indexed by lake id so a single lake is served without a scan.
+ * The version goes up by one from the previous snapshot when any lake was
+ * added, removed or changed, and stays put when a reload found nothing new,
+ * so it can key caches, validators and event ids. The first version is the
+ * load time in milliseconds, so a restarted service does not hand out
+ * versions a client saw before the restart. Each lake also carries the time
+ * a snapshot last changed it, for Last-Modified: an update in place changes
+ * a row without moving its sampleDate. Successive changes are at least a
+ * second apart, the resolution of HTTP dates.
+ */
+public class LakeConditionSnapshot {
+
+	private final List<LakeCondition> lakeConditions;
+	private final Map<String, LakeCondition> lakeConditionsById;
+	private final Date latestSampleDate;
+	private final Map<String, String> signatures;
+	private final long loadedAt;
+	private final long version;
+	private final Set<String> changedLakeIds;
+	private final Map<String, Long> modifiedAt;
+	private final long lastModified;
+
+	/**
+	 * @param signatures change signatures by normalized lake id, as probed
+	 *        before the conditions were read
+	 * @param previous the snapshot this one replaces, null for the first
+	 */
+	public LakeConditionSnapshot(List<LakeCondition> lakeConditions, Date latestSampleDate,
+			Map<String, String> signatures, long loadedAt, LakeConditionSnapshot previous) {
+		Map<String, LakeCondition> byId = new HashMap<String, LakeCondition>();
+		for (LakeCondition lakeCondition : lakeConditions) {
+			if (lakeCondition.getLakeId() != null) {
+				byId.put(normalizeLakeId(lakeCondition.getLakeId()), lakeCondition);
+			}
+		}
+		this.lakeConditions = Collections.unmodifiableList(new ArrayList<LakeCondition>(lakeConditions));
+		this.lakeConditionsById = Collections.unmodifiableMap(byId);
+		this.latestSampleDate = latestSampleDate;
+		this.signatures = Collections.unmodifiableMap(new HashMap<String, String>(signatures));
+		this.loadedAt = loadedAt;
+		Map<String, Long> modified = new HashMap<String, Long>();
+		if (previous == null) {
+			this.changedLakeIds = Collections.unmodifiableSet(new TreeSet<String>(byId.keySet()));
+			this.version = loadedAt;
+			this.lastModified = loadedAt;
+		} else {
+			this.changedLakeIds = Collections.unmodifiableSet(changedLakeIds(previous));
+			this.version = changedLakeIds.isEmpty() ? previous.version : previous.version + 1;
+			this.lastModified = changedLakeIds.isEmpty() ? previous.lastModified
+					: Math.max(System.currentTimeMillis(), previous.lastModified / 1000 * 1000 + 1000);
+		}
+		for (String lakeId : byId.keySet()) {
+			Long previousModifiedAt = previous != null ? previous.modifiedAt.get(lakeId) : null;
+			modified.put(lakeId, previousModifiedAt != null && !changedLakeIds.contains(lakeId)
+					? previousModifiedAt : lastModified);
+		}
+		this.modifiedAt = Collections.unmodifiableMap(modified);
+	}
+
+	public List<LakeCondition> getLakeConditions() {
+		return lakeConditions;
+	}
+
+	/**
+	 * @return the condition for the lake, or null if the lake is not in the snapshot
+	 */
+	public LakeCondition getLakeCondition(String lakeId) {
+		return lakeId != null ? lakeConditionsById.get(normalizeLakeId(lakeId)) : null;
+	}
+
+	/**
+	 * @return the normalized ids of lakes added, removed or changed in any
+	 *         field since the previous snapshot; every lake for the first
+	 */
+	public Set<String> getChangedLakeIds() {
+		return changedLakeIds;
+	}
+
+	private Set<String> changedLakeIds(LakeConditionSnapshot previous) {
+		Set<String> changed = new TreeSet<String>();
+		for (Map.Entry<String, LakeCondition> entry : lakeConditionsById.entrySet()) {
+			if (!entry.getValue().equals(previous.lakeConditionsById.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+		for (String lakeId : previous.lakeConditionsById.keySet()) {
+			if (!lakeConditionsById.containsKey(lakeId)) {
+				changed.add(lakeId);
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return when a snapshot last added or changed the lake, or null if the
+	 *         lake is not in this one
+	 */
+	public Date getModifiedAt(String lakeId) {
+		Long time = lakeId != null ? modifiedAt.get(normalizeLakeId(lakeId)) : null;
+		return time != null ? new Date(time) : null;
+	}
+
+	/**
+	 * @return when a snapshot last added, removed or changed any lake
+	 */
+	public Date getLastModified() {
+		return new Date(lastModified);
+	}
+
+	public Date getLatestSampleDate() {
+		return latestSampleDate;
+	}
+
+	/**
+	 * @return what {@link edu.wisc.limnology.lter.database.LakeConditionDAO#getChangeSignatures()}
+	 *         returned, by normalized lake id, just before this snapshot was read
+	 */
+	public Map<String, String> getSignatures() {
+		return signatures;
+	}
+
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/* lakeid is a padded char column in some copies of the table */
+	public static String normalizeLakeId(String lakeId) {
+		return lakeId.trim().toUpperCase();
+	}
+}
@@ -0,0 +1,22 @@
+package edu.wisc.limnology.lter.services;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * Derives a lake's next condition from its row in MySQL, for
+ * LakeConditionService.publish. Called with the service locked, so no
+ * reload or other publish can come between reading the current condition
+ * and installing the next one; implementations should not block. The
+ * service keeps the update and applies it again over the lake's row after
+ * every reload, so it should only lay over current what is newer than it.
+ */
+public interface LakeConditionUpdate {
+
+	/**
+	 * @param current the lake's row as last read from MySQL, or null if it
+	 *        has none
+	 * @return the condition to install, or null to leave the snapshot as it is
+	 */
+	public LakeCondition apply(LakeCondition current);
+
+}
@@ -0,0 +1,157 @@
+package edu.wisc.limnology.lter.services;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.RollupDAO;
+import edu.wisc.limnology.lter.database.RollupPeriod;
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesBuckets;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.LakeSeries;
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+/**
+ * Pages through hi-res sensor history. Raw pages seek past the last
+ * sampledate returned; downsampled pages cover at most limit buckets of the
+ * range, so a year of 1-minute samples comes back as a few hundred
+ * min/max/mean points from a single query. Buckets that are whole hours or
+ * days are read from the coarsest rollup that fits, with raw samples only
+ * for the ragged start of the range and for what is not yet rolled up.
+ */
+@Component
+public class LakeSeriesService {
+
+	/* Bucket sizes chosen for a requested number of points, in seconds */
+	static final int[] BUCKET_SECONDS = { 60, 120, 300, 600, 900, 1800, 3600, 2 * 3600, 3 * 3600, 6 * 3600,
+			12 * 3600, 86400, 7 * 86400, 30 * 86400 };
+
+	@Autowired
+	private SeriesDAO seriesDAO;
+
+	@Autowired
+	private RollupDAO rollupDAO;
+
+	@Value("${series.maxLimit}")
+	private int maxLimit;
+
+	@Value("${rollup.enabled}")
+	private boolean rollupsEnabled;
+
+	/**
+	 * @param source where the variable is stored
+	 * @param depth the depth for sources recorded by depth, otherwise ignored
+	 * @param from start of the range, inclusive
+	 * @param to end of the range, exclusive
+	 * @param after the next value of a previous page, or null for the first page
+	 * @param bucketSeconds bucket size, or 0 for raw samples
+	 * @param limit the most points to return; capped at series.maxLimit
+	 */
+	public LakeSeries getSeries(SeriesSource source, Double depth, Date from, Date to, Date after, int bucketSeconds,
+			int limit) {
+		limit = Math.min(limit, maxLimit);
+		LakeSeries series = new LakeSeries();
+		series.setLakeId(source.getLakeId());
+		series.setVariable(source.getVariable());
+		series.setDepth(source.isByDepth() ? depth : null);
+		series.setFrom(from);
+		series.setTo(to);
+
+		if (bucketSeconds <= 0) {
+			List<SeriesPoint> points = seriesDAO.getSamples(source, depth, from, after, to, limit);
+			series.setPoints(points);
+			if (points.size() == limit) {
+				series.setNext(points.get(points.size() - 1).getSampleDate());
+			}
+			return series;
+		}
+
+		long bucketMillis = bucketSeconds * 1000L;
+		long start = after != null ? SeriesBuckets.advance(SeriesBuckets.align(after.getTime(), bucketMillis), 1,
+				bucketMillis) : from.getTime();
+		long end = Math.min(to.getTime(),
+				SeriesBuckets.advance(SeriesBuckets.align(start, bucketMillis), limit, bucketMillis));
+		series.setBucketSeconds(bucketSeconds);
+		if (start < end) {
+			series.setPoints(getBuckets(source, depth, start, end, bucketMillis));
+		}
+		if (end < to.getTime()) {
+			series.setNext(new Date(SeriesBuckets.align(end - 1, bucketMillis)));
+		}
+		return series;
+	}
+
+	/**
+	 * Buckets from start (inclusive) to end (exclusive): the periods of the
+	 * coarsest rollup dividing bucketMillis that lie wholly in the range and
+	 * before the rollup watermark, raw samples around them. Falls back to
+	 * raw samples when no such period exists.
+	 */
+	List<SeriesPoint> getBuckets(SeriesSource source, Double depth, long start, long end, long bucketMillis) {
+		RollupPeriod period = rollupsEnabled ? RollupPeriod.coarsestFor(bucketMillis) : null;
+		Date rolledUntil = period != null ? rollupDAO.getRolledUntil(source) : null;
+		long rollupStart = period != null ? period.ceil(start) : 0;
+		long rollupEnd = rolledUntil != null ? period.align(Math.min(end, rolledUntil.getTime())) : 0;
+		if (rollupStart >= rollupEnd) {
+			return seriesDAO.getBuckets(source, depth, new Date(start), new Date(end), bucketMillis);
+		}
+		SeriesBuckets buckets = new SeriesBuckets(bucketMillis);
+		try {
+			if (start < rollupStart) {
+				seriesDAO.streamSamples(source, depth, new Date(start), new Date(rollupStart), buckets);
+			}
+			rollupDAO.addRollups(period, source, depth, new Date(rollupStart), new Date(rollupEnd), buckets);
+			if (rollupEnd < end) {
+				seriesDAO.streamSamples(source, depth, new Date(rollupEnd), new Date(end), buckets);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // SeriesBuckets does no I/O
+		}
+		return buckets.getPoints();
+	}
+
+	/**
+	 * Passes every sample between from (inclusive) and to (exclusive) to
+	 * handler without paging or holding them in memory.
+	 */
+	public void streamSeries(SeriesSource source, Double depth, Date from, Date to, SampleHandler handler)
+			throws IOException {
+		seriesDAO.streamSamples(source, depth, from, to, handler);
+	}
+
+	/**
+	 * @return the smallest standard bucket size giving at most points
+	 *         buckets between from and to
+	 */
+	public static int bucketSecondsFor(Date from, Date to, int points) {
+		long rangeSeconds = (to.getTime() - from.getTime()) / 1000;
+		for (int bucketSeconds : BUCKET_SECONDS) {
+			if (rangeSeconds / bucketSeconds < points) {
+				return bucketSeconds;
+			}
+		}
+		return BUCKET_SECONDS[BUCKET_SECONDS.length - 1];
+	}
+
+	public void setSeriesDAO(SeriesDAO seriesDAO) {
+		this.seriesDAO = seriesDAO;
+	}
+
+	public void setRollupDAO(RollupDAO rollupDAO) {
+		this.rollupDAO = rollupDAO;
+	}
+
+	public void setMaxLimit(int maxLimit) {
+		this.maxLimit = maxLimit;
+	}
+
+	public void setRollupsEnabled(boolean rollupsEnabled) {
+		this.rollupsEnabled = rollupsEnabled;
+	}
+}
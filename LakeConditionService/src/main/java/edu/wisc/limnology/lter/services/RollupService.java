@@ -0,0 +1,163 @@
+package edu.wisc.limnology.lter.services;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.RollupDAO;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+
+/**
+ * Keeps the hourly and daily rollups up with the hi-res tables. Each run
+ * folds in the samples that arrived since the last one, a chunk of
+ * rollup.chunkDays at a time, so the first run back-fills years of history
+ * without one huge transaction. Samples at the newest sampledate wait for
+ * the next run, as the R jobs may still be writing other depths of it.
+ */
+@Component
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=RollupService,name=sensorRollups")
+public class RollupService {
+
+	private static final Log log = LogFactory.getLog(RollupService.class);
+
+	private static final long DAY_MILLIS = 86400000L;
+
+	@Autowired
+	private RollupDAO rollupDAO;
+
+	@Autowired
+	private SeriesDAO seriesDAO;
+
+	@Value("${rollup.enabled}")
+	private boolean enabled;
+
+	@Value("${rollup.chunkDays}")
+	private int chunkDays;
+
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong samplesRolledUp = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long lastRunMillis = -1;
+
+	/**
+	 * Brings every series up to date. A failure for one series is logged
+	 * and retried on the next run; the others carry on.
+	 */
+	@Scheduled(fixedDelayString = "${rollup.intervalMillis}", initialDelayString = "${rollup.initialDelayMillis}")
+	public void update() {
+		if (!enabled) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		for (SeriesSource source : SeriesSource.all()) {
+			try {
+				update(source);
+			} catch (RuntimeException e) {
+				failures.incrementAndGet();
+				log.error("Could not roll up " + source.getLakeId() + " " + source.getVariable(), e);
+			}
+		}
+		runs.incrementAndGet();
+		lastRunMillis = System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * @return the number of samples added to the rollups of source
+	 */
+	public synchronized int update(SeriesSource source) {
+		Date latest = seriesDAO.getLatestSampleDate(source);
+		if (latest == null) {
+			return 0;
+		}
+		Date rolledUntil = rollupDAO.getRolledUntil(source);
+		Date from = rolledUntil != null ? rolledUntil : seriesDAO.getFirstSampleDate(source);
+		int samples = 0;
+		while (from.before(latest)) {
+			Date until = new Date(Math.min(latest.getTime(), from.getTime() + chunkDays * DAY_MILLIS));
+			int added = rollupDAO.rollUp(source, rolledUntil, from, until);
+			samplesRolledUp.addAndGet(added);
+			samples += added;
+			rolledUntil = until;
+			from = until;
+		}
+		return samples;
+	}
+
+	@ManagedOperation(description = "Drop and rebuild the rollups of a series, e.g. after samples were re-flagged")
+	public void rebuild(String lakeId, String variable) {
+		SeriesSource source = SeriesSource.lookup(lakeId, variable);
+		if (source == null) {
+			throw new IllegalArgumentException("No series " + variable + " for lake " + lakeId);
+		}
+		synchronized (this) {
+			rollupDAO.clear(source);
+			update(source);
+		}
+	}
+
+	/**
+	 * Has the next run fold in again the samples of source from the day
+	 * holding from on, e.g. after a backfill wrote samples behind the
+	 * watermark, which update() alone would never read.
+	 *
+	 * @return whether the watermark moved
+	 */
+	public synchronized boolean rewind(SeriesSource source, Date from) {
+		boolean rewound = rollupDAO.rewind(source, from);
+		if (rewound) {
+			log.info("Rolling up " + source.getLakeId() + " " + source.getVariable() + " again from " + from);
+		}
+		return rewound;
+	}
+
+	@ManagedAttribute(description = "Whether the rollups are maintained and used")
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@ManagedAttribute(description = "Update runs completed")
+	public long getRuns() {
+		return runs.get();
+	}
+
+	@ManagedAttribute(description = "Samples added to the rollups")
+	public long getSamplesRolledUp() {
+		return samplesRolledUp.get();
+	}
+
+	@ManagedAttribute(description = "Series updates that failed")
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@ManagedAttribute(description = "Milliseconds the last update run took, -1 if none")
+	public long getLastRunMillis() {
+		return lastRunMillis;
+	}
+
+	public void setRollupDAO(RollupDAO rollupDAO) {
+		this.rollupDAO = rollupDAO;
+	}
+
+	public void setSeriesDAO(SeriesDAO seriesDAO) {
+		this.seriesDAO = seriesDAO;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setChunkDays(int chunkDays) {
+		this.chunkDays = chunkDays;
+	}
+}
@@ -0,0 +1,148 @@
+package edu.wisc.limnology.lter.services;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.store.SeriesStore;
+
+/**
+ * Copies new hi-res samples from MySQL into the SeriesStore, a month per
+ * commit. As with the rollups, samples at the newest sampledate wait for the
+ * next run, and re-flagged or back-filled samples need a resync.
+ */
+@Component
+@ManagedResource(objectName = "edu.wisc.limnology.lter:type=SeriesStoreService,name=seriesStore")
+public class SeriesStoreService {
+
+	private static final Log log = LogFactory.getLog(SeriesStoreService.class);
+
+	@Autowired
+	private SeriesStore seriesStore;
+
+	@Autowired
+	private SeriesDAO seriesDAO;
+
+	private final AtomicLong runs = new AtomicLong();
+	private final AtomicLong samplesCopied = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long lastRunMillis = -1;
+
+	@Scheduled(fixedDelayString = "${store.syncIntervalMillis}", initialDelayString = "${store.initialDelayMillis}")
+	public void sync() {
+		if (!seriesStore.isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		for (SeriesSource source : SeriesSource.all()) {
+			try {
+				sync(source);
+			} catch (IOException | RuntimeException e) {
+				failures.incrementAndGet();
+				log.error("Could not copy " + source.getLakeId() + " " + source.getVariable() + " to the store", e);
+			}
+		}
+		runs.incrementAndGet();
+		lastRunMillis = System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * @return the number of samples copied
+	 */
+	public synchronized int sync(SeriesSource source) throws IOException {
+		Date latest = seriesDAO.getLatestSampleDate(source);
+		if (latest == null) {
+			return 0;
+		}
+		Date syncedUntil = seriesStore.getSyncedUntil(source);
+		Date from = syncedUntil != null ? syncedUntil : seriesDAO.getFirstSampleDate(source);
+		int samples = 0;
+		while (from.before(latest)) {
+			long monthEnd = SeriesStore.nextMonth(SeriesStore.monthStart(from.getTime()));
+			Date until = new Date(Math.min(latest.getTime(), monthEnd));
+			SeriesStore.Appender appender = seriesStore.append(source);
+			seriesDAO.streamAllDepths(source, from, until, appender);
+			appender.commit(until);
+			samplesCopied.addAndGet(appender.getAppended());
+			samples += appender.getAppended();
+			from = until;
+		}
+		return samples;
+	}
+
+	@ManagedOperation(description = "Drop and copy again one series, e.g. after samples were re-flagged")
+	public void resync(String lakeId, String variable) throws IOException {
+		SeriesSource source = SeriesSource.lookup(lakeId, variable);
+		if (source == null) {
+			throw new IllegalArgumentException("No series " + variable + " for lake " + lakeId);
+		}
+		synchronized (this) {
+			seriesStore.clear(source);
+			sync(source);
+		}
+	}
+
+	/**
+	 * Has the next sync copy again the months of source from the one
+	 * holding from on, e.g. after a backfill wrote samples behind
+	 * synced-until.
+	 *
+	 * @return whether synced-until moved
+	 */
+	public synchronized boolean rewind(SeriesSource source, Date from) throws IOException {
+		boolean rewound = seriesStore.rewind(source, from);
+		if (rewound) {
+			log.info("Copying " + source.getLakeId() + " " + source.getVariable() + " to the store again from "
+					+ from);
+		}
+		return rewound;
+	}
+
+	@ManagedAttribute(description = "Bytes of segment files in the store")
+	public long getSizeOnDisk() throws IOException {
+		long size = 0;
+		for (SeriesSource source : SeriesSource.all()) {
+			size += seriesStore.sizeOnDisk(source);
+		}
+		return size;
+	}
+
+	@ManagedAttribute(description = "Sync runs completed")
+	public long getRuns() {
+		return runs.get();
+	}
+
+	@ManagedAttribute(description = "Samples copied into the store")
+	public long getSamplesCopied() {
+		return samplesCopied.get();
+	}
+
+	@ManagedAttribute(description = "Series syncs that failed")
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@ManagedAttribute(description = "Milliseconds the last sync run took, -1 if none")
+	public long getLastRunMillis() {
+		return lastRunMillis;
+	}
+
+	public void setSeriesStore(SeriesStore seriesStore) {
+		this.seriesStore = seriesStore;
+	}
+
+	public void setSeriesDAO(SeriesDAO seriesDAO) {
+		this.seriesDAO = seriesDAO;
+	}
+}
@@ -0,0 +1,78 @@
+package edu.wisc.limnology.lter.stats;
+
+/**
+ * Maximum or minimum of the readings in a time window, in O(1) a reading
+ * amortized. Only the readings that could still become the extreme are
+ * kept, in a deque ordered by both time and value: a new reading drops the
+ * ones before it that it beats, since they will leave the window first,
+ * and the extreme is at the head until that reading leaves.
+ */
+public final class RollingExtreme extends RollingWindow {
+
+	private final boolean max;
+	/* the deque, a ring of sequence numbers with their values */
+	private long[] sequences = new long[16];
+	private double[] values = new double[16];
+	private int head;
+	private int count;
+
+	private RollingExtreme(long windowMillis, boolean max) {
+		super(windowMillis);
+		this.max = max;
+	}
+
+	public static RollingExtreme max(long windowMillis) {
+		return new RollingExtreme(windowMillis, true);
+	}
+
+	public static RollingExtreme min(long windowMillis) {
+		return new RollingExtreme(windowMillis, false);
+	}
+
+	/**
+	 * @return the maximum or minimum, NaN when the window is empty
+	 */
+	public double get() {
+		return count > 0 ? values[head] : Double.NaN;
+	}
+
+	protected void added(long sequence, double value) {
+		while (count > 0 && !beats(values[index(count - 1)], value)) {
+			count--;
+		}
+		if (count == sequences.length) {
+			grow();
+		}
+		int tail = index(count++);
+		sequences[tail] = sequence;
+		values[tail] = value;
+	}
+
+	protected void removed(long sequence, double value) {
+		if (count > 0 && sequences[head] == sequence) {
+			head = index(1);
+			count--;
+		}
+	}
+
+	/* whether kept stays ahead of a newer value; ties go to the newer, which is kept longer */
+	private boolean beats(double kept, double value) {
+		return max ? kept > value : kept < value;
+	}
+
+	private int index(int i) {
+		return (head + i) & (sequences.length - 1);
+	}
+
+	private void grow() {
+		long[] newSequences = new long[sequences.length * 2];
+		double[] newValues = new double[values.length * 2];
+		for (int i = 0; i < count; i++) {
+			newSequences[i] = sequences[index(i)];
+			newValues[i] = values[index(i)];
+		}
+		sequences = newSequences;
+		values = newValues;
+		head = 0;
+	}
+}
@@ -0,0 +1,197 @@
+package edu.wisc.limnology.lter.stats;
+
+import java.util.Arrays;
+
+/**
+ * Median of the readings in a time window, in O(log n) a reading. The
+ * lower half of the window is kept in a max-heap and the upper half in a
+ * min-heap, so the median is at their tops. Readings leave the window
+ * oldest first, so a reading that has left is known by its sequence number
+ * alone; it stays in its heap until it reaches the top or the heap is
+ * compacted, and only the live readings of each heap are counted when the
+ * halves are balanced.
+ */
+public final class RollingMedian extends RollingWindow {
+
+	/* heaps of sequence numbers, with the values alongside */
+	private final Heap lower = new Heap(true);
+	private final Heap upper = new Heap(false);
+	/* whether each reading in the window went to upper, by sequence number */
+	private boolean[] inUpper = new boolean[16];
+
+	public RollingMedian(long windowMillis) {
+		super(windowMillis);
+	}
+
+	/**
+	 * @return the median, the mean of the middle two for an even count as
+	 *         R's median(); NaN when the window is empty
+	 */
+	public double median() {
+		if (isEmpty()) {
+			return Double.NaN;
+		}
+		return lower.live > upper.live ? lower.topValue() : (lower.topValue() + upper.topValue()) / 2;
+	}
+
+	protected void added(long sequence, double value) {
+		if (size() > inUpper.length) {
+			growInUpper(sequence);
+		}
+		boolean toUpper = lower.live > 0 && value > lower.topValue();
+		(toUpper ? upper : lower).push(sequence, value);
+		inUpper[(int) sequence & (inUpper.length - 1)] = toUpper;
+		balance();
+	}
+
+	protected void removed(long sequence, double value) {
+		if (inUpper[(int) sequence & (inUpper.length - 1)]) {
+			upper.live--;
+		} else {
+			lower.live--;
+		}
+		balance();
+	}
+
+	/* at most one reading more in lower than in upper, with live readings at both tops */
+	private void balance() {
+		long first = firstSequence();
+		lower.prune(first);
+		upper.prune(first);
+		if (lower.live > upper.live + 1) {
+			move(lower, upper, true);
+		} else if (upper.live > lower.live) {
+			move(upper, lower, false);
+		}
+		lower.prune(first);
+		upper.prune(first);
+	}
+
+	private void move(Heap from, Heap to, boolean toUpper) {
+		long sequence = from.topSequence();
+		double value = from.topValue();
+		from.pop();
+		to.push(sequence, value);
+		inUpper[(int) sequence & (inUpper.length - 1)] = toUpper;
+	}
+
+	private void growInUpper(long latest) {
+		boolean[] grown = new boolean[inUpper.length * 2];
+		for (long sequence = firstSequence(); sequence < latest; sequence++) {
+			grown[(int) sequence & (grown.length - 1)] = inUpper[(int) sequence & (inUpper.length - 1)];
+		}
+		inUpper = grown;
+	}
+
+	/*
+	 * A binary heap of readings; live counts those still in the window,
+	 * which readings that have left and not yet been dropped do not
+	 */
+	private static final class Heap {
+
+		private final boolean max;
+		private long[] sequences = new long[16];
+		private double[] values = new double[16];
+		private int size;
+		int live;
+
+		Heap(boolean max) {
+			this.max = max;
+		}
+
+		long topSequence() {
+			return sequences[0];
+		}
+
+		double topValue() {
+			return values[0];
+		}
+
+		void push(long sequence, double value) {
+			if (size == sequences.length) {
+				sequences = Arrays.copyOf(sequences, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			sequences[size] = sequence;
+			values[size] = value;
+			siftUp(size++);
+			live++;
+		}
+
+		void pop() {
+			live--;
+			removeTop();
+		}
+
+		/*
+		 * Drops readings numbered before first from the top, and from the
+		 * whole heap once they are most of it
+		 */
+		void prune(long first) {
+			if (size > 2 * live + 16) {
+				int kept = 0;
+				for (int i = 0; i < size; i++) {
+					if (sequences[i] >= first) {
+						sequences[kept] = sequences[i];
+						values[kept++] = values[i];
+					}
+				}
+				size = kept;
+				for (int i = size / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+			}
+			while (size > 0 && sequences[0] < first) {
+				removeTop();
+			}
+		}
+
+		private void removeTop() {
+			size--;
+			sequences[0] = sequences[size];
+			values[0] = values[size];
+			siftDown(0);
+		}
+
+		private boolean above(int i, int j) {
+			return max ? values[i] > values[j] : values[i] < values[j];
+		}
+
+		private void siftUp(int i) {
+			while (i > 0) {
+				int parent = (i - 1) / 2;
+				if (!above(i, parent)) {
+					return;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void siftDown(int i) {
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					return;
+				}
+				if (child + 1 < size && above(child + 1, child)) {
+					child++;
+				}
+				if (!above(child, i)) {
+					return;
+				}
+				swap(i, child);
+				i = child;
+			}
+		}
+
+		private void swap(int i, int j) {
+			long sequence = sequences[i];
+			sequences[i] = sequences[j];
+			sequences[j] = sequence;
+			double value = values[i];
+			values[i] = values[j];
+			values[j] = value;
+		}
+	}
+}
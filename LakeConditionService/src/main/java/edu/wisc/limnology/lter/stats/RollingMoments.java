@@ -0,0 +1,78 @@
+package edu.wisc.limnology.lter.stats;
+
+/**
+ * Mean and variance of the readings in a time window, updated by Welford's
+ * method as each reading comes and goes, which does not lose the variance
+ * to cancellation as running sums of squares do. The removals still carry
+ * rounding error along, so the moments are computed over again from the
+ * window every RECOMPUTE_EVERY readings.
+ */
+public final class RollingMoments extends RollingWindow {
+
+	static final int RECOMPUTE_EVERY = 1 << 16;
+
+	private double mean;
+	/* sum of squared differences from the mean */
+	private double squares;
+	private int sinceRecompute;
+
+	public RollingMoments(long windowMillis) {
+		super(windowMillis);
+	}
+
+	/**
+	 * @return NaN when the window is empty
+	 */
+	public double getMean() {
+		return isEmpty() ? Double.NaN : mean;
+	}
+
+	/**
+	 * @return the sample variance, over n - 1 as R's var(); NaN for fewer
+	 *         than two readings
+	 */
+	public double getVariance() {
+		return size() < 2 ? Double.NaN : Math.max(0, squares / (size() - 1));
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	protected void added(long sequence, double value) {
+		int n = size();
+		double delta = value - mean;
+		mean += delta / n;
+		squares += delta * (value - mean);
+		if (++sinceRecompute == RECOMPUTE_EVERY) {
+			recompute();
+		}
+	}
+
+	protected void removed(long sequence, double value) {
+		int n = size();
+		if (n == 0) {
+			mean = 0;
+			squares = 0;
+			return;
+		}
+		double delta = value - mean;
+		mean -= delta / n;
+		squares -= delta * (value - mean);
+	}
+
+	private void recompute() {
+		long end = firstSequence() + size();
+		double sum = 0;
+		for (long sequence = firstSequence(); sequence < end; sequence++) {
+			sum += value(sequence);
+		}
+		mean = sum / size();
+		squares = 0;
+		for (long sequence = firstSequence(); sequence < end; sequence++) {
+			double delta = value(sequence) - mean;
+			squares += delta * delta;
+		}
+		sinceRecompute = 0;
+	}
+}
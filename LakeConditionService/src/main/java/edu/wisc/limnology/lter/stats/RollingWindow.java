@@ -0,0 +1,133 @@
+package edu.wisc.limnology.lter.stats;
+
+/**
+ * Readings of the last windowMillis, in arrival order, for statistics kept
+ * up to date as readings come and go rather than computed again over the
+ * whole window. A reading is in the window while its time is after the
+ * latest time less windowMillis. Readings must come in time order; NaN
+ * and older readings are left out. Each reading has a sequence number,
+ * counting from 0, by which subclasses can tell it from equal values.
+ * Not thread-safe.
+ */
+public abstract class RollingWindow {
+
+	private final long windowMillis;
+	/* a ring indexed by sequence number, its length a power of two */
+	private long[] times = new long[16];
+	private double[] values = new double[16];
+	private long first;
+	private long next;
+	private long latestTime = Long.MIN_VALUE;
+
+	protected RollingWindow(long windowMillis) {
+		if (windowMillis <= 0) {
+			throw new IllegalArgumentException("windowMillis must be positive, not " + windowMillis);
+		}
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * Drops the readings that have left the window by time, then adds this
+	 * one.
+	 *
+	 * @return false if value is NaN or time is before the latest reading's
+	 */
+	public final boolean add(long time, double value) {
+		if (Double.isNaN(value) || time < latestTime) {
+			return false;
+		}
+		advanceTo(time);
+		if (next - first == times.length) {
+			grow();
+		}
+		int index = (int) next & (times.length - 1);
+		times[index] = time;
+		values[index] = value;
+		latestTime = time;
+		added(next++, value);
+		return true;
+	}
+
+	/**
+	 * Drops the readings that would have left the window by time, for
+	 * statistics of the time up to now rather than up to the last reading.
+	 */
+	public final void advanceTo(long time) {
+		while (first < next && times[(int) first & (times.length - 1)] <= time - windowMillis) {
+			double value = values[(int) first & (times.length - 1)];
+			removed(first++, value);
+		}
+	}
+
+	public final long getWindowMillis() {
+		return windowMillis;
+	}
+
+	public final int size() {
+		return (int) (next - first);
+	}
+
+	public final boolean isEmpty() {
+		return first == next;
+	}
+
+	/**
+	 * @return the time of the latest reading added, Long.MIN_VALUE if none
+	 *         has been; it stays after the reading has left the window
+	 */
+	public final long getLatestTime() {
+		return latestTime;
+	}
+
+	/**
+	 * @return the time of the oldest reading in the window
+	 * @throws IllegalStateException if the window is empty
+	 */
+	public final long getOldestTime() {
+		if (isEmpty()) {
+			throw new IllegalStateException("No readings in the window");
+		}
+		return times[(int) first & (times.length - 1)];
+	}
+
+	/**
+	 * @return the sequence number of the oldest reading in the window;
+	 *         readings numbered before it have left
+	 */
+	protected final long firstSequence() {
+		return first;
+	}
+
+	/**
+	 * @param sequence of a reading in the window, from firstSequence() to
+	 *            firstSequence() + size() - 1
+	 */
+	protected final double value(long sequence) {
+		if (sequence < first || sequence >= next) {
+			throw new IllegalArgumentException("Reading " + sequence + " is not in the window");
+		}
+		return values[(int) sequence & (values.length - 1)];
+	}
+
+	/**
+	 * Called once a reading is in the window, with size() counting it.
+	 */
+	protected abstract void added(long sequence, double value);
+
+	/**
+	 * Called once the oldest reading has left the window, with size() and
+	 * firstSequence() no longer counting it.
+	 */
+	protected abstract void removed(long sequence, double value);
+
+	private void grow() {
+		long[] newTimes = new long[times.length * 2];
+		double[] newValues = new double[values.length * 2];
+		for (long sequence = first; sequence < next; sequence++) {
+			newTimes[(int) sequence & (newTimes.length - 1)] = times[(int) sequence & (times.length - 1)];
+			newValues[(int) sequence & (newValues.length - 1)] = values[(int) sequence & (values.length - 1)];
+		}
+		times = newTimes;
+		values = newValues;
+	}
+}
@@ -0,0 +1,43 @@
+package edu.wisc.limnology.lter.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits written by BitOutput from a buffer, typically a mapped segment
+ * file, starting at its position. Reads past the limit return zeros.
+ */
+class BitInput {
+
+	private final ByteBuffer bytes;
+	private int next;
+
+	private long buffer;
+	private int available;
+
+	BitInput(ByteBuffer bytes) {
+		this.bytes = bytes;
+		this.next = bytes.position();
+	}
+
+	boolean readBit() {
+		return readBits(1) != 0;
+	}
+
+	/**
+	 * @return the next bits bits, 0 &lt;= bits &lt;= 64, as the low bits
+	 */
+	long readBits(int bits) {
+		if (bits > 32) {
+			long high = readBits(bits - 32);
+			return (high << 32) | readBits(32);
+		}
+		while (available < bits) {
+			int b = next < bytes.limit() ? bytes.get(next) & 0xff : 0;
+			next++;
+			buffer = (buffer << 8) | b;
+			available += 8;
+		}
+		available -= bits;
+		return bits == 0 ? 0 : (buffer >>> available) & (-1L >>> (64 - bits));
+	}
+}
@@ -0,0 +1,57 @@
+package edu.wisc.limnology.lter.store;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer written most significant bit first.
+ */
+class BitOutput {
+
+	private byte[] bytes;
+	private int size;
+
+	/* bits not yet written to bytes, in the low pending bits of buffer */
+	private long buffer;
+	private int pending;
+
+	BitOutput(int initialCapacity) {
+		bytes = new byte[Math.max(initialCapacity, 16)];
+	}
+
+	void writeBit(boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Writes the low bits of value, 0 &lt;= bits &lt;= 64.
+	 */
+	void writeBits(long value, int bits) {
+		if (bits > 32) {
+			writeBits(value >>> 32, bits - 32);
+			bits = 32;
+		}
+		if (bits == 0) {
+			return;
+		}
+		buffer = (buffer << bits) | (value & (-1L >>> (64 - bits)));
+		pending += bits;
+		while (pending >= 8) {
+			pending -= 8;
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, size * 2);
+			}
+			bytes[size++] = (byte) (buffer >>> pending);
+		}
+	}
+
+	/**
+	 * @return the bits written, zero-padded to a whole byte
+	 */
+	byte[] toByteArray() {
+		byte[] out = Arrays.copyOf(bytes, size + (pending > 0 ? 1 : 0));
+		if (pending > 0) {
+			out[size] = (byte) (buffer << (8 - pending));
+		}
+		return out;
+	}
+}
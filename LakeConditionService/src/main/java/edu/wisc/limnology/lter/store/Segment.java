@@ -0,0 +1,145 @@
+package edu.wisc.limnology.lter.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped segment file: the samples of one series, depth and month.
+ * <p>
+ * Layout: int magic "LCS1", int count, long first and last sampledate in
+ * epoch seconds, then the bit stream of SegmentEncoder. The first value is
+ * stored as 64 raw bits; every later sample is a delta-of-delta time code
+ * followed by an XOR value code.
+ */
+class Segment {
+
+	static final int MAGIC = 0x4c435331;
+	static final int HEADER_BYTES = 24;
+
+	private final ByteBuffer buffer;
+	private final int count;
+	private final long firstSeconds;
+	private final long lastSeconds;
+
+	private Segment(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a series segment");
+		}
+		this.buffer = buffer;
+		this.count = buffer.getInt(4);
+		this.firstSeconds = buffer.getLong(8);
+		this.lastSeconds = buffer.getLong(16);
+	}
+
+	/**
+	 * Maps path read-only. The mapping outlives the channel, and a segment
+	 * replaced by SegmentEncoder.writeTo stays readable until unmapped.
+	 */
+	static Segment map(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new Segment(buffer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	static Segment wrap(byte[] bytes) throws IOException {
+		return new Segment(ByteBuffer.wrap(bytes));
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	long getFirstSeconds() {
+		return firstSeconds;
+	}
+
+	long getLastSeconds() {
+		return lastSeconds;
+	}
+
+	Cursor cursor() {
+		ByteBuffer bits = buffer.duplicate();
+		bits.position(HEADER_BYTES);
+		return new Cursor(new BitInput(bits));
+	}
+
+	/**
+	 * Decodes the samples in order; not thread-safe.
+	 */
+	class Cursor {
+		private final BitInput in;
+		private int read;
+		private long seconds;
+		private long delta;
+		private long bits;
+		private int leading;
+		private int trailing;
+
+		Cursor(BitInput in) {
+			this.in = in;
+		}
+
+		/**
+		 * @return whether there was another sample
+		 */
+		boolean next() {
+			if (read == count) {
+				return false;
+			}
+			if (read == 0) {
+				seconds = firstSeconds;
+				bits = in.readBits(64);
+			} else {
+				delta += readDeltaOfDelta();
+				seconds += delta;
+				readXor();
+			}
+			read++;
+			return true;
+		}
+
+		long seconds() {
+			return seconds;
+		}
+
+		double value() {
+			return Double.longBitsToDouble(bits);
+		}
+
+		private long readDeltaOfDelta() {
+			if (!in.readBit()) {
+				return 0;
+			} else if (!in.readBit()) {
+				return in.readBits(7) - 63;
+			} else if (!in.readBit()) {
+				return in.readBits(9) - 255;
+			} else if (!in.readBit()) {
+				return in.readBits(12) - 2047;
+			}
+			return (int) in.readBits(32);
+		}
+
+		private void readXor() {
+			if (!in.readBit()) {
+				return;
+			}
+			if (in.readBit()) {
+				leading = (int) in.readBits(5);
+				int length = (int) in.readBits(6);
+				if (length == 0) {
+					length = 64;
+				}
+				trailing = 64 - leading - length;
+			}
+			bits ^= in.readBits(64 - leading - trailing) << trailing;
+		}
+	}
+}
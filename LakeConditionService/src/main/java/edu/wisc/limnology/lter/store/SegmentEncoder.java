@@ -0,0 +1,118 @@
+package edu.wisc.limnology.lter.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compresses one series segment as in Facebook's Gorilla: timestamps as
+ * delta-of-delta, values as the XOR with the previous value. Regular
+ * 1-minute samples cost one bit of time, and an unchanged reading one bit of
+ * value; see Segment for the layout.
+ */
+class SegmentEncoder {
+
+	private final BitOutput out = new BitOutput(4096);
+
+	private int count;
+	private long firstSeconds;
+	private long lastSeconds;
+	private long previousDelta;
+	private long previousBits;
+	private int previousLeading = -1;
+	private int previousTrailing;
+
+	/**
+	 * Appends a sample later than the last one; earlier or repeated times are
+	 * ignored, which makes re-appending the tail of a segment harmless.
+	 *
+	 * @return whether the sample was added
+	 */
+	boolean append(long seconds, double value) {
+		long bits = Double.doubleToLongBits(value);
+		if (count == 0) {
+			firstSeconds = seconds;
+			out.writeBits(bits, 64);
+		} else if (seconds <= lastSeconds) {
+			return false;
+		} else {
+			long delta = seconds - lastSeconds;
+			writeDeltaOfDelta(delta - previousDelta);
+			previousDelta = delta;
+			writeXor(bits ^ previousBits);
+		}
+		lastSeconds = seconds;
+		previousBits = bits;
+		count++;
+		return true;
+	}
+
+	/* '0' for no change, then 7, 9 and 12-bit ranges, else 32 bits */
+	private void writeDeltaOfDelta(long dod) {
+		if (dod == 0) {
+			out.writeBit(false);
+		} else if (dod >= -63 && dod <= 64) {
+			out.writeBits(0x2, 2);
+			out.writeBits(dod + 63, 7);
+		} else if (dod >= -255 && dod <= 256) {
+			out.writeBits(0x6, 3);
+			out.writeBits(dod + 255, 9);
+		} else if (dod >= -2047 && dod <= 2048) {
+			out.writeBits(0xe, 4);
+			out.writeBits(dod + 2047, 12);
+		} else {
+			out.writeBits(0xf, 4);
+			out.writeBits(dod, 32);
+		}
+	}
+
+	/* '0' for the same value; '10' and the meaningful bits when they fit in
+	   the previous window; else '11', 5 bits of leading zeros, 6 of length */
+	private void writeXor(long xor) {
+		if (xor == 0) {
+			out.writeBit(false);
+			return;
+		}
+		out.writeBit(true);
+		int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+		int trailing = Long.numberOfTrailingZeros(xor);
+		if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+			out.writeBit(false);
+			out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+		} else {
+			int length = 64 - leading - trailing;
+			out.writeBit(true);
+			out.writeBits(leading, 5);
+			out.writeBits(length, 6); // 64 is written as 0
+			out.writeBits(xor >>> trailing, length);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	long getLastSeconds() {
+		return lastSeconds;
+	}
+
+	/**
+	 * Writes the segment to a temporary file beside path and renames it over
+	 * path, so readers see either the old or the new segment.
+	 */
+	void writeTo(Path path) throws IOException {
+		byte[] bits = out.toByteArray();
+		ByteBuffer header = ByteBuffer.allocate(Segment.HEADER_BYTES);
+		header.putInt(Segment.MAGIC).putInt(count).putLong(firstSeconds).putLong(lastSeconds);
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		byte[] file = new byte[Segment.HEADER_BYTES + bits.length];
+		System.arraycopy(header.array(), 0, file, 0, Segment.HEADER_BYTES);
+		System.arraycopy(bits, 0, file, Segment.HEADER_BYTES, bits.length);
+		Files.write(temp, file);
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
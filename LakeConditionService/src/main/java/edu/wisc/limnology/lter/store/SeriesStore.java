@@ -0,0 +1,340 @@
+package edu.wisc.limnology.lter.store;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+
+import edu.wisc.limnology.lter.database.DepthSampleHandler;
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesSource;
+
+/**
+ * A local columnar copy of the hi-res series: one compressed segment file
+ * per lake, variable, depth and month, under
+ * directory/ME/waterTemp/0.25/2016-08.seg. Each series directory records in
+ * synced-until how far it mirrors MySQL; everything before that is in the
+ * segments. Sampledates are kept to the second, as in MySQL's datetime.
+ * <p>
+ * One process writes a store (SeriesStoreService); reads may run
+ * concurrently and see whole segments only.
+ */
+public class SeriesStore {
+
+	static final String SYNCED_UNTIL = "synced-until";
+
+	private static final FastDateFormat MONTH_FORMAT = FastDateFormat.getInstance("yyyy-MM");
+
+	private Path directory;
+	private boolean enabled;
+
+	private final ConcurrentMap<SeriesSource, Date> syncedUntil = new ConcurrentHashMap<SeriesSource, Date>();
+
+	public void setDirectory(String directory) {
+		this.directory = Paths.get(directory);
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the sampledate before which source is mirrored, or null if it
+	 *         is not (or the store is disabled)
+	 */
+	public Date getSyncedUntil(SeriesSource source) throws IOException {
+		if (!enabled) {
+			return null;
+		}
+		Date until = syncedUntil.get(source);
+		if (until == null) {
+			Path file = seriesDirectory(source).resolve(SYNCED_UNTIL);
+			if (!Files.exists(file)) {
+				return null;
+			}
+			until = new Date(Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim()));
+			syncedUntil.putIfAbsent(source, until);
+		}
+		return until;
+	}
+
+	/**
+	 * @return a handler that adds samples to the segments of source; call
+	 *         Appender.commit once the samples up to a sampledate are in
+	 */
+	public Appender append(SeriesSource source) {
+		return new Appender(source);
+	}
+
+	/**
+	 * Hands up to limit samples with from &lt;= sampledate &lt; to to
+	 * handler, in order.
+	 *
+	 * @param depth ignored for sources not recorded by depth
+	 * @return the number of samples handled
+	 */
+	public int read(SeriesSource source, Double depth, long from, long to, int limit, SampleHandler handler)
+			throws IOException {
+		Path depthDirectory = seriesDirectory(source).resolve(depthName(source.isByDepth() ? depth : 0.0));
+		int handled = 0;
+		for (long month = monthStart(from); month < to; month = nextMonth(month)) {
+			Path path = depthDirectory.resolve(segmentName(month));
+			if (!Files.exists(path)) {
+				continue;
+			}
+			Segment segment = Segment.map(path);
+			if (segment.getLastSeconds() * 1000 < from) {
+				continue;
+			}
+			Segment.Cursor cursor = segment.cursor();
+			while (cursor.next()) {
+				long time = cursor.seconds() * 1000;
+				if (time < from) {
+					continue;
+				} else if (time >= to) {
+					return handled;
+				}
+				handler.sample(time, cursor.value());
+				if (++handled == limit) {
+					return handled;
+				}
+			}
+		}
+		return handled;
+	}
+
+	/**
+	 * @return bytes of segment files held for source
+	 */
+	public long sizeOnDisk(SeriesSource source) throws IOException {
+		final long[] size = { 0 };
+		Path series = seriesDirectory(source);
+		if (Files.exists(series)) {
+			walk(series, new FileVisitor() {
+				public void visit(Path file) throws IOException {
+					if (file.getFileName().toString().endsWith(".seg")) {
+						size[0] += Files.size(file);
+					}
+				}
+			});
+		}
+		return size[0];
+	}
+
+	/**
+	 * Deletes everything held for source, so that the next sync copies it
+	 * again.
+	 */
+	public void clear(SeriesSource source) throws IOException {
+		syncedUntil.remove(source);
+		Path series = seriesDirectory(source);
+		if (Files.exists(series)) {
+			Files.deleteIfExists(series.resolve(SYNCED_UNTIL));
+			walk(series, new FileVisitor() {
+				public void visit(Path file) throws IOException {
+					Files.delete(file);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Deletes the segments of source from the month holding from on and
+	 * moves synced-until back to the start of that month, if from is at or
+	 * behind synced-until, so the next sync copies those months again, e.g.
+	 * after a backfill wrote samples behind synced-until. Appending skips
+	 * samples before a segment's last, so the months are rewritten whole.
+	 *
+	 * @return whether synced-until moved
+	 */
+	public boolean rewind(SeriesSource source, Date from) throws IOException {
+		Date until = getSyncedUntil(source);
+		final long month = monthStart(from.getTime());
+		/* samples after synced-until are copied anyway */
+		if (until == null || until.before(from)) {
+			return false;
+		}
+		/* moved first, so readers go to MySQL for the months being deleted */
+		Path series = seriesDirectory(source);
+		Path temp = series.resolve(SYNCED_UNTIL + ".tmp");
+		Files.write(temp, Long.toString(month).getBytes(StandardCharsets.US_ASCII));
+		Files.move(temp, series.resolve(SYNCED_UNTIL), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		syncedUntil.put(source, new Date(month));
+		final String first = segmentName(month);
+		walk(series, new FileVisitor() {
+			public void visit(Path file) throws IOException {
+				if (file.getFileName().toString().compareTo(first) >= 0) {
+					Files.delete(file);
+				}
+			}
+		});
+		return true;
+	}
+
+	private Path seriesDirectory(SeriesSource source) {
+		return directory.resolve(source.getLakeId()).resolve(source.getVariable());
+	}
+
+	/* "0.25", "12" */
+	static String depthName(double depth) {
+		return depth == Math.rint(depth) ? Long.toString((long) depth)
+				: BigDecimal.valueOf(depth).stripTrailingZeros().toPlainString();
+	}
+
+	static String segmentName(long monthStart) {
+		return MONTH_FORMAT.format(monthStart) + ".seg";
+	}
+
+	/**
+	 * @return local midnight on the first of the month holding time
+	 */
+	public static long monthStart(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		calendar.set(Calendar.DAY_OF_MONTH, 1);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		return calendar.getTimeInMillis();
+	}
+
+	public static long nextMonth(long monthStart) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(monthStart);
+		calendar.add(Calendar.MONTH, 1);
+		return calendar.getTimeInMillis();
+	}
+
+	private interface FileVisitor {
+		void visit(Path file) throws IOException;
+	}
+
+	/* files one level below each depth directory */
+	private static void walk(Path series, FileVisitor visitor) throws IOException {
+		DirectoryStream<Path> depths = Files.newDirectoryStream(series);
+		try {
+			for (Path depth : depths) {
+				if (!Files.isDirectory(depth)) {
+					continue;
+				}
+				DirectoryStream<Path> files = Files.newDirectoryStream(depth);
+				try {
+					for (Path file : files) {
+						visitor.visit(file);
+					}
+				} finally {
+					files.close();
+				}
+			}
+		} finally {
+			depths.close();
+		}
+	}
+
+	/**
+	 * Adds samples, in sampledate order, to the segments of one series. The
+	 * open month's segments are re-encoded in memory and rewritten when the
+	 * samples move to the next month or on commit. Samples already in a
+	 * segment are skipped, so repeating a sync after a crash is harmless.
+	 */
+	public class Appender implements DepthSampleHandler {
+
+		private final SeriesSource source;
+		private final Map<Double, SegmentEncoder> encoders = new HashMap<Double, SegmentEncoder>();
+		private long monthStart = Long.MAX_VALUE;
+		private long monthEnd = Long.MIN_VALUE;
+		private int appended;
+
+		Appender(SeriesSource source) {
+			this.source = source;
+		}
+
+		public void sample(double depth, long sampleDate, double value) throws IOException {
+			if (sampleDate < monthStart || sampleDate >= monthEnd) {
+				flush();
+				monthStart = monthStart(sampleDate);
+				monthEnd = nextMonth(monthStart);
+			}
+			SegmentEncoder encoder = encoders.get(depth);
+			if (encoder == null) {
+				encoder = open(depth);
+				encoders.put(depth, encoder);
+			}
+			if (encoder.append(floorDiv(sampleDate, 1000), value)) {
+				appended++;
+			}
+		}
+
+		/**
+		 * Writes the open segments and records that source is mirrored up
+		 * to until.
+		 */
+		public void commit(Date until) throws IOException {
+			flush();
+			Path series = seriesDirectory(source);
+			Files.createDirectories(series);
+			Path file = series.resolve(SYNCED_UNTIL);
+			Path temp = series.resolve(SYNCED_UNTIL + ".tmp");
+			Files.write(temp, Long.toString(until.getTime()).getBytes(StandardCharsets.US_ASCII));
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			syncedUntil.put(source, until);
+		}
+
+		/**
+		 * @return samples added so far
+		 */
+		public int getAppended() {
+			return appended;
+		}
+
+		private SegmentEncoder open(double depth) throws IOException {
+			SegmentEncoder encoder = new SegmentEncoder();
+			Path path = segmentPath(depth);
+			if (Files.exists(path)) {
+				Segment.Cursor cursor = Segment.map(path).cursor();
+				while (cursor.next()) {
+					encoder.append(cursor.seconds(), cursor.value());
+				}
+			}
+			return encoder;
+		}
+
+		private void flush() throws IOException {
+			for (Map.Entry<Double, SegmentEncoder> entry : encoders.entrySet()) {
+				if (entry.getValue().getCount() > 0) {
+					Path path = segmentPath(entry.getKey());
+					Files.createDirectories(path.getParent());
+					entry.getValue().writeTo(path);
+				}
+			}
+			encoders.clear();
+		}
+
+		private Path segmentPath(double depth) {
+			return seriesDirectory(source).resolve(depthName(depth)).resolve(segmentName(monthStart));
+		}
+	}
+
+	private static long floorDiv(long x, long y) {
+		long div = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? div - 1 : div;
+	}
+}
@@ -0,0 +1,106 @@
+package edu.wisc.limnology.lter.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import edu.wisc.limnology.lter.database.DepthSampleHandler;
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesBuckets;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+/**
+ * Reads series from the SeriesStore where it mirrors MySQL, and from the
+ * delegate (SeriesDAOImpl) for samples newer than the store's synced-until,
+ * so results are the same whichever holds them. With the store disabled
+ * every call goes to the delegate.
+ */
+public class SeriesStoreDAO implements SeriesDAO {
+
+	private SeriesDAO delegate;
+	private SeriesStore store;
+
+	public void setDelegate(SeriesDAO delegate) {
+		this.delegate = delegate;
+	}
+
+	public void setStore(SeriesStore store) {
+		this.store = store;
+	}
+
+	public List<SeriesPoint> getSamples(SeriesSource source, Double depth, Date from, Date after, Date to, int limit) {
+		long split = split(source, from, to);
+		long lower = after != null ? after.getTime() + 1 : from.getTime();
+		final List<SeriesPoint> points = new ArrayList<SeriesPoint>();
+		if (lower < split) {
+			try {
+				store.read(source, depth, lower, split, limit, new SampleHandler() {
+					public void sample(long sampleDate, double value) {
+						points.add(new SeriesPoint(new Date(sampleDate), value));
+					}
+				});
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not read the series store", e);
+			}
+		}
+		if (points.size() < limit && split < to.getTime()) {
+			Date splitDate = new Date(split);
+			boolean afterSplit = after != null && !after.before(splitDate);
+			points.addAll(delegate.getSamples(source, depth, afterSplit ? from : splitDate,
+					afterSplit ? after : null, to, limit - points.size()));
+		}
+		return points;
+	}
+
+	public List<SeriesPoint> getBuckets(SeriesSource source, Double depth, Date from, Date to, long bucketMillis) {
+		SeriesBuckets buckets = new SeriesBuckets(bucketMillis);
+		try {
+			streamSamples(source, depth, from, to, buckets);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the series store", e);
+		}
+		return buckets.getPoints();
+	}
+
+	public void streamSamples(SeriesSource source, Double depth, Date from, Date to, SampleHandler handler)
+			throws IOException {
+		long split = split(source, from, to);
+		if (from.getTime() < split) {
+			store.read(source, depth, from.getTime(), split, Integer.MAX_VALUE, handler);
+		}
+		if (split < to.getTime()) {
+			delegate.streamSamples(source, depth, new Date(split), to, handler);
+		}
+	}
+
+	/* The sync reads MySQL, never the store. */
+	public void streamAllDepths(SeriesSource source, Date from, Date to, DepthSampleHandler handler)
+			throws IOException {
+		delegate.streamAllDepths(source, from, to, handler);
+	}
+
+	public Date getFirstSampleDate(SeriesSource source) {
+		return delegate.getFirstSampleDate(source);
+	}
+
+	public Date getLatestSampleDate(SeriesSource source) {
+		return delegate.getLatestSampleDate(source);
+	}
+
+	/* Samples before the returned time come from the store, the rest from MySQL. */
+	private long split(SeriesSource source, Date from, Date to) {
+		Date syncedUntil;
+		try {
+			syncedUntil = store.getSyncedUntil(source);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the series store", e);
+		}
+		if (syncedUntil == null) {
+			return from.getTime();
+		}
+		return Math.max(from.getTime(), Math.min(to.getTime(), syncedUntil.getTime()));
+	}
+}
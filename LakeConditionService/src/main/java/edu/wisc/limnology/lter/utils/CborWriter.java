@@ -0,0 +1,142 @@
+package edu.wisc.limnology.lter.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The parts of CBOR (RFC 7049) the service writes: definite-length maps and
+ * arrays, text strings, integers, null, floats in the shortest of half,
+ * single or double precision that holds the value exactly, and timestamps
+ * as epoch seconds (tag 1). Not thread-safe; use one instance per response.
+ */
+public class CborWriter {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final int UNSIGNED = 0;
+	private static final int NEGATIVE = 1;
+	private static final int TEXT = 3;
+	private static final int ARRAY = 4;
+	private static final int MAP = 5;
+	private static final int TAG = 6;
+
+	private static final int TAG_EPOCH = 1;
+	private static final int NULL = 0xf6;
+	private static final int HALF = 0xf9;
+	private static final int SINGLE = 0xfa;
+	private static final int DOUBLE = 0xfb;
+
+	private final ByteArrayOutputStream out;
+
+	public CborWriter(int initialSize) {
+		out = new ByteArrayOutputStream(initialSize);
+	}
+
+	public CborWriter startMap(int entries) {
+		writeHead(MAP, entries);
+		return this;
+	}
+
+	public CborWriter startArray(int items) {
+		writeHead(ARRAY, items);
+		return this;
+	}
+
+	public CborWriter writeString(String value) {
+		byte[] bytes = value.getBytes(UTF_8);
+		writeHead(TEXT, bytes.length);
+		out.write(bytes, 0, bytes.length);
+		return this;
+	}
+
+	public CborWriter writeLong(long value) {
+		if (value >= 0) {
+			writeHead(UNSIGNED, value);
+		} else {
+			writeHead(NEGATIVE, -1 - value);
+		}
+		return this;
+	}
+
+	public CborWriter writeDouble(double value) {
+		float single = (float) value;
+		if (single == value || Double.isNaN(value)) {
+			int half = halfBits(single);
+			if (half >= 0) {
+				out.write(HALF);
+				writeBytes(half, 2);
+			} else {
+				out.write(SINGLE);
+				writeBytes(Float.floatToIntBits(single), 4);
+			}
+		} else {
+			out.write(DOUBLE);
+			writeBytes(Double.doubleToLongBits(value), 8);
+		}
+		return this;
+	}
+
+	/**
+	 * @param time milliseconds since the epoch; sub-second parts are dropped
+	 */
+	public CborWriter writeEpochSeconds(long time) {
+		writeHead(TAG, TAG_EPOCH);
+		return writeLong(time >= 0 ? time / 1000 : -((-time + 999) / 1000));
+	}
+
+	public CborWriter writeNull() {
+		out.write(NULL);
+		return this;
+	}
+
+	public byte[] toByteArray() {
+		return out.toByteArray();
+	}
+
+	private void writeHead(int majorType, long value) {
+		int type = majorType << 5;
+		if (value < 24) {
+			out.write(type | (int) value);
+		} else if (value < 0x100) {
+			out.write(type | 24);
+			writeBytes(value, 1);
+		} else if (value < 0x10000) {
+			out.write(type | 25);
+			writeBytes(value, 2);
+		} else if (value < 0x100000000L) {
+			out.write(type | 26);
+			writeBytes(value, 4);
+		} else {
+			out.write(type | 27);
+			writeBytes(value, 8);
+		}
+	}
+
+	private void writeBytes(long value, int count) {
+		for (int shift = (count - 1) * 8; shift >= 0; shift -= 8) {
+			out.write((int) (value >>> shift));
+		}
+	}
+
+	/**
+	 * @return the half-precision bits for f, or -1 if half precision does not
+	 *         hold it exactly (subnormal halves are not used)
+	 */
+	static int halfBits(float f) {
+		int bits = Float.floatToIntBits(f);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xff;
+		int mantissa = bits & 0x7fffff;
+		if (exponent == 0 && mantissa == 0) {
+			return sign;
+		}
+		if (exponent == 0xff) {
+			return mantissa == 0 ? sign | 0x7c00 : 0x7e00;
+		}
+		int halfExponent = exponent - 127 + 15;
+		if (halfExponent < 1 || halfExponent > 30 || (mantissa & 0x1fff) != 0) {
+			return -1;
+		}
+		return sign | (halfExponent << 10) | (mantissa >>> 13);
+	}
+}
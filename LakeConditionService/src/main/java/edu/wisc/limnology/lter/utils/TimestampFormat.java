@@ -0,0 +1,52 @@
+package edu.wisc.limnology.lter.utils;
+
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.time.FastDateFormat;
+
+/**
+ * Writes timestamps as yyyy-MM-dd'T'HH:mm:ss in the server's time zone, the
+ * form MOXy gives java.util.Date properties. Consecutive samples share the
+ * same date and hour, so that prefix is formatted once per local hour and
+ * only minutes and seconds are appended per call. Not thread-safe; use one
+ * instance per response.
+ */
+public class TimestampFormat {
+
+	private static final long HOUR_MILLIS = 3600000L;
+
+	private final TimeZone timeZone = TimeZone.getDefault();
+	private final FastDateFormat hourFormat = FastDateFormat.getInstance("yyyy-MM-dd'T'HH:", timeZone);
+
+	private long cachedLocalHour = Long.MIN_VALUE;
+	private String cachedPrefix;
+
+	public void format(long time, StringBuilder sb) {
+		long local = time + timeZone.getOffset(time);
+		long localHour = floorDiv(local, HOUR_MILLIS);
+		if (localHour != cachedLocalHour) {
+			cachedPrefix = hourFormat.format(time);
+			cachedLocalHour = localHour;
+		}
+		int secondOfHour = (int) ((local - localHour * HOUR_MILLIS) / 1000);
+		sb.append(cachedPrefix);
+		appendTwoDigits(sb, secondOfHour / 60);
+		sb.append(':');
+		appendTwoDigits(sb, secondOfHour % 60);
+	}
+
+	public String format(long time) {
+		StringBuilder sb = new StringBuilder(19);
+		format(time, sb);
+		return sb.toString();
+	}
+
+	private static void appendTwoDigits(StringBuilder sb, int value) {
+		sb.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	private static long floorDiv(long x, long y) {
+		long div = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? div - 1 : div;
+	}
+}
@@ -0,0 +1,38 @@
+-- Hourly and daily aggregates of the hi-res sensor series, maintained by
+-- RollupService. One row per lake, variable (SeriesSource name), depth and
+-- period; depth is 0 for variables not recorded by depth. Periods start on
+-- the local hour / at local midnight, like sampledate. sum_value and
+-- sample_count rather than a mean so that partial periods can be merged.
+-- Run once against dbmaker before deploying with rollup.enabled=true.
+
+create table if not exists sensor_rollup_hourly (
+  lakeid varchar(2) not null,
+  variable varchar(32) not null,
+  depth decimal(5,2) not null,
+  period_start datetime not null,
+  min_value double not null,
+  max_value double not null,
+  sum_value double not null,
+  sample_count int not null,
+  primary key (lakeid, variable, depth, period_start)
+);
+
+create table if not exists sensor_rollup_daily (
+  lakeid varchar(2) not null,
+  variable varchar(32) not null,
+  depth decimal(5,2) not null,
+  period_start datetime not null,
+  min_value double not null,
+  max_value double not null,
+  sum_value double not null,
+  sample_count int not null,
+  primary key (lakeid, variable, depth, period_start)
+);
+
+-- Samples with sampledate < rolled_until are in the rollups
+create table if not exists sensor_rollup_watermark (
+  lakeid varchar(2) not null,
+  variable varchar(32) not null,
+  rolled_until datetime not null,
+  primary key (lakeid, variable)
+);
@@ -0,0 +1,79 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * In-memory buoy_current_conditions rows for benchmarks that should not pay
+ * for a database round trip. Columns follow LakeConditionMapper.COLUMNS.
+ */
+public class BuoyRows {
+
+	static final String[] COLUMN_NAMES = { "sampledate", "lakename", "lakeid", "airtemp", "watertemp", "windspeed",
+			"winddir", "thermocline_depth", "secchi_est", "secchi_timestamp", "windgust", "phyco_median" };
+	static final int[] COLUMN_TYPES = { Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.DECIMAL, Types.DECIMAL,
+			Types.DECIMAL, Types.INTEGER, Types.DECIMAL, Types.DECIMAL, Types.TIMESTAMP, Types.DECIMAL, Types.DECIMAL };
+
+	static final String[] LAKE_IDS = { "ME", "TR", "SP" };
+	static final String[] LAKE_NAMES = { "Lake Mendota", "Trout Lake", "Sparkling Lake" };
+
+	/**
+	 * @return a scrollable result set holding rowCount rows cycling through ME, TR and SP
+	 */
+	public static CachedRowSet create(int rowCount) throws SQLException {
+		RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+		metaData.setColumnCount(COLUMN_NAMES.length);
+		for (int i = 0; i < COLUMN_NAMES.length; i++) {
+			metaData.setColumnName(i + 1, COLUMN_NAMES[i]);
+			metaData.setColumnLabel(i + 1, COLUMN_NAMES[i]);
+			metaData.setColumnType(i + 1, COLUMN_TYPES[i]);
+			metaData.setNullable(i + 1, RowSetMetaDataImpl.columnNullable);
+		}
+
+		CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+		rowSet.setMetaData(metaData);
+
+		Random random = new Random(42);
+		long sampleDate = 1432239555000L;
+		for (int row = 0; row < rowCount; row++) {
+			int lake = row % LAKE_IDS.length;
+			boolean mendota = lake == 0;
+			rowSet.moveToInsertRow();
+			rowSet.updateTimestamp(1, new Timestamp(sampleDate + row * 60000L));
+			rowSet.updateString(2, LAKE_NAMES[lake]);
+			rowSet.updateString(3, LAKE_IDS[lake]);
+			rowSet.updateBigDecimal(4, decimal(10 + random.nextDouble() * 20, 1));
+			rowSet.updateBigDecimal(5, decimal(5 + random.nextDouble() * 20, 1));
+			rowSet.updateBigDecimal(6, decimal(random.nextDouble() * 10, 1));
+			rowSet.updateInt(7, random.nextInt(360));
+			rowSet.updateBigDecimal(8, decimal(2 + random.nextDouble() * 10, 1));
+			if (mendota) {
+				double phyco = 200 + random.nextDouble() * 1500;
+				rowSet.updateBigDecimal(9, decimal(1 / (0.282 + 0.0004275 * phyco), 2));
+				rowSet.updateTimestamp(10, new Timestamp(sampleDate + row * 60000L));
+				rowSet.updateBigDecimal(11, decimal(random.nextDouble() * 15, 1));
+				rowSet.updateBigDecimal(12, decimal(phyco, 1));
+			} else {
+				rowSet.updateNull(9);
+				rowSet.updateNull(10);
+				rowSet.updateNull(11);
+				rowSet.updateNull(12);
+			}
+			rowSet.insertRow();
+			rowSet.moveToCurrentRow();
+		}
+		rowSet.beforeFirst();
+		return rowSet;
+	}
+
+	static BigDecimal decimal(double value, int scale) {
+		return BigDecimal.valueOf(value).setScale(scale, BigDecimal.ROUND_HALF_UP);
+	}
+}
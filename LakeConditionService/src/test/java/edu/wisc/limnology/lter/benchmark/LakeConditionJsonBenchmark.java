@@ -0,0 +1,100 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.glassfish.jersey.message.MessageBodyWorkers;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import edu.wisc.limnology.lter.database.LakeConditionMapper;
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * Cost of marshalling lists of LakeCondition through the MOXy JSON writer
+ * Jersey selects for the resource. Three rows is today's /lakeConditions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LakeConditionJsonBenchmark {
+
+	static final GenericType<List<LakeCondition>> LAKE_CONDITION_LIST = new GenericType<List<LakeCondition>>() {
+	};
+	static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	@Param({ "3", "1000" })
+	int size;
+
+	List<LakeCondition> lakeConditions;
+	@SuppressWarnings("rawtypes")
+	MessageBodyWriter<List> writer;
+	CountingOutputStream out;
+
+	@Setup
+	public void setUp() throws SQLException {
+		CachedRowSet rows = BuoyRows.create(size);
+		LakeConditionMapper mapper = new LakeConditionMapper();
+		lakeConditions = new ArrayList<LakeCondition>(size);
+		while (rows.next()) {
+			lakeConditions.add(mapper.mapRow(rows, lakeConditions.size()));
+		}
+
+		/* an empty context keeps jersey-spring3 from loading applicationContext.xml */
+		StaticApplicationContext noBeans = new StaticApplicationContext();
+		noBeans.refresh();
+		ApplicationHandler handler = new ApplicationHandler(new ResourceConfig().property("contextConfig", noBeans));
+		MessageBodyWorkers workers = handler.getServiceLocator().getService(MessageBodyWorkers.class);
+		writer = workers.getMessageBodyWriter(List.class, LAKE_CONDITION_LIST.getType(), NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE);
+		out = new CountingOutputStream();
+	}
+
+	@Benchmark
+	public long marshalList() throws IOException {
+		out.count = 0;
+		writer.writeTo(lakeConditions, List.class, LAKE_CONDITION_LIST.getType(), NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, Object>(), out);
+		return out.count;
+	}
+
+	static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
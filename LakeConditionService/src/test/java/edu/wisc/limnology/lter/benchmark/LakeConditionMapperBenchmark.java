@@ -0,0 +1,102 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wisc.limnology.lter.database.LakeConditionMapper;
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.utils.DbUtil;
+
+/**
+ * Per-row cost of mapping buoy_current_conditions, comparing the original
+ * by-name mapping (including its println of every lake id) with
+ * LakeConditionMapper's positional reads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LakeConditionMapperBenchmark {
+
+	static final int ROWS = 3000;
+
+	CachedRowSet rows;
+	LakeConditionMapper mapper;
+	PrintStream discard;
+
+	@Setup
+	public void setUp() throws SQLException {
+		rows = BuoyRows.create(ROWS);
+		mapper = new LakeConditionMapper();
+		discard = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		});
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void byColumnName(Blackhole blackhole) throws SQLException {
+		rows.beforeFirst();
+		while (rows.next()) {
+			blackhole.consume(mapByName(rows, discard));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void byColumnIndex(Blackhole blackhole) throws SQLException {
+		rows.beforeFirst();
+		int rowNum = 0;
+		while (rows.next()) {
+			blackhole.consume(mapper.mapRow(rows, rowNum++));
+		}
+	}
+
+	/* The mapping LakeConditionDAOImpl used before LakeConditionMapper */
+	static LakeCondition mapByName(ResultSet rs, PrintStream out) throws SQLException {
+		LakeCondition.Builder lakeCondition = new LakeCondition.Builder();
+		lakeCondition.sampleDate(DbUtil.toDate(rs.getTimestamp("sampledate")));
+		lakeCondition.lakeName(rs.getString("Lakename"));
+		lakeCondition.lakeId(rs.getString("lakeid"));
+		lakeCondition.airTemp(DbUtil.toDouble(rs.getBigDecimal("airtemp")));
+		lakeCondition.waterTemp(DbUtil.toDouble(rs.getBigDecimal("watertemp")));
+		lakeCondition.windSpeed(DbUtil.toDouble(rs.getBigDecimal("windspeed")));
+		lakeCondition.windDir((Integer) rs.getObject("winddir"));
+		lakeCondition.thermoclineDepth(DbUtil.toDouble(rs.getBigDecimal("thermocline_depth")));
+		String lakeId = rs.getString("lakeid");
+		out.println("Lake Id" + lakeId);
+		if ("ME".equals(lakeId.trim())) {
+			lakeCondition.secchiEst(DbUtil.toDouble(rs.getBigDecimal("secchi_est")));
+			lakeCondition.secchiEstTimestamp(DbUtil.toDate(rs.getTimestamp("secchi_timestamp")));
+			lakeCondition.windGust(DbUtil.toDouble(rs.getBigDecimal("windgust")));
+			lakeCondition.phycoMedian(DbUtil.toDouble(rs.getBigDecimal("phyco_median")));
+		}
+		return lakeCondition.build();
+	}
+}
@@ -0,0 +1,97 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+import edu.wisc.limnology.lter.database.LakeConditionDAO;
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+/**
+ * Requests through the full application (Spring context, connection pool,
+ * DAO, snapshot cache and Jersey) against the embedded buoy database. The
+ * dao* benchmarks bypass the cache to track the cost of one database read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LakeConditionServiceBenchmark {
+
+	ClassPathXmlApplicationContext context;
+	LakeConditionDAO dao;
+	ApplicationHandler handler;
+	String etag;
+
+	@Setup
+	public void setUp() throws Exception {
+		context = EmbeddedBuoyDatabase.createContext();
+		dao = context.getBean(LakeConditionDAO.class);
+		handler = new ApplicationHandler(new ResourceConfig().packages("edu.wisc.limnology.lter")
+				.property("contextConfig", context));
+		etag = get("lakeConditions", null).getHeaderString("ETag");
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+
+	@Benchmark
+	public List<LakeCondition> daoGetLakeConditions() {
+		return dao.getLakeConditions();
+	}
+
+	@Benchmark
+	public LakeCondition daoGetLakeCondition() {
+		return dao.getLakeCondition("ME");
+	}
+
+	@Benchmark
+	public ContainerResponse getLakeConditions() throws Exception {
+		return get("lakeConditions", null);
+	}
+
+	@Benchmark
+	public ContainerResponse getLakeCondition() throws Exception {
+		return get("lakeConditions/ME", null);
+	}
+
+	@Benchmark
+	public ContainerResponse getLakeConditionsNotModified() throws Exception {
+		return get("lakeConditions", etag);
+	}
+
+	ContainerResponse get(String path, String ifNoneMatch) throws InterruptedException, ExecutionException {
+		ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"),
+				URI.create("http://localhost/" + path), "GET", null, new MapPropertiesDelegate());
+		request.header("Accept", "application/json");
+		if (ifNoneMatch != null) {
+			request.header("If-None-Match", ifNoneMatch);
+		}
+		return handler.apply(request).get();
+	}
+}
@@ -0,0 +1,131 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+import org.glassfish.jersey.message.MessageBodyWorkers;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.StaticApplicationContext;
+
+import edu.wisc.limnology.lter.database.LakeConditionMapper;
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.resources.LakeConditionCbor;
+import edu.wisc.limnology.lter.resources.LakeConditionField;
+import edu.wisc.limnology.lter.resources.LakeConditionJson;
+
+/**
+ * Marshalling a list of LakeCondition through MOXy against the hand-written
+ * JSON and CBOR formats, all fields and the four the phone shows for most
+ * lakes. Setup prints the payload size of each, plain and gzipped.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LakeConditionWireFormatBenchmark {
+
+	static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	@Param({ "3", "1000" })
+	int size;
+
+	List<LakeCondition> lakeConditions;
+	Set<LakeConditionField> allFields;
+	Set<LakeConditionField> phoneFields;
+	@SuppressWarnings("rawtypes")
+	MessageBodyWriter<List> moxy;
+	LakeConditionJsonBenchmark.CountingOutputStream out;
+
+	@Setup
+	public void setUp() throws SQLException, IOException {
+		CachedRowSet rows = BuoyRows.create(size);
+		LakeConditionMapper mapper = new LakeConditionMapper();
+		lakeConditions = new ArrayList<LakeCondition>(size);
+		while (rows.next()) {
+			lakeConditions.add(mapper.mapRow(rows, lakeConditions.size()));
+		}
+		allFields = LakeConditionField.parse(null);
+		phoneFields = LakeConditionField.parse("lakeId,sampleDate,airTemp,waterTemp");
+
+		/* an empty context keeps jersey-spring3 from loading applicationContext.xml */
+		StaticApplicationContext noBeans = new StaticApplicationContext();
+		noBeans.refresh();
+		ApplicationHandler handler = new ApplicationHandler(new ResourceConfig().property("contextConfig", noBeans));
+		MessageBodyWorkers workers = handler.getServiceLocator().getService(MessageBodyWorkers.class);
+		moxy = workers.getMessageBodyWriter(List.class, LakeConditionJsonBenchmark.LAKE_CONDITION_LIST.getType(),
+				NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE);
+		out = new LakeConditionJsonBenchmark.CountingOutputStream();
+
+		ByteArrayOutputStream moxyBytes = new ByteArrayOutputStream();
+		moxy.writeTo(lakeConditions, List.class, LakeConditionJsonBenchmark.LAKE_CONDITION_LIST.getType(),
+				NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, Object>(), moxyBytes);
+		System.out.printf("%n%d conditions, bytes (gzipped):%n", size);
+		printSize("MOXy JSON", moxyBytes.toByteArray());
+		printSize("JSON", LakeConditionJson.INSTANCE.writeList(lakeConditions, allFields));
+		printSize("JSON, 4 fields", LakeConditionJson.INSTANCE.writeList(lakeConditions, phoneFields));
+		printSize("CBOR", LakeConditionCbor.INSTANCE.writeList(lakeConditions, allFields));
+		printSize("CBOR, 4 fields", LakeConditionCbor.INSTANCE.writeList(lakeConditions, phoneFields));
+	}
+
+	@Benchmark
+	public long moxyJson() throws IOException {
+		out.count = 0;
+		moxy.writeTo(lakeConditions, List.class, LakeConditionJsonBenchmark.LAKE_CONDITION_LIST.getType(),
+				NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, Object>(), out);
+		return out.count;
+	}
+
+	@Benchmark
+	public byte[] json() {
+		return LakeConditionJson.INSTANCE.writeList(lakeConditions, allFields);
+	}
+
+	@Benchmark
+	public byte[] jsonProjected() {
+		return LakeConditionJson.INSTANCE.writeList(lakeConditions, phoneFields);
+	}
+
+	@Benchmark
+	public byte[] cbor() {
+		return LakeConditionCbor.INSTANCE.writeList(lakeConditions, allFields);
+	}
+
+	@Benchmark
+	public byte[] cborProjected() {
+		return LakeConditionCbor.INSTANCE.writeList(lakeConditions, phoneFields);
+	}
+
+	static void printSize(String format, byte[] bytes) throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+		gzip.write(bytes);
+		gzip.close();
+		System.out.printf("  %-16s %8d (%d)%n", format, bytes.length, gzipped.size());
+	}
+}
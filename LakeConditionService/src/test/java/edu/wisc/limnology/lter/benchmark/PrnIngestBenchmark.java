@@ -0,0 +1,115 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wisc.limnology.lter.ingest.PrnBatch;
+import edu.wisc.limnology.lter.ingest.PrnLayout;
+import edu.wisc.limnology.lter.ingest.PrnParser;
+import edu.wisc.limnology.lter.ingest.PrnTailer;
+
+/**
+ * Rows per second read from a week of 1-minute SP_LATEST_0.PRN lines,
+ * through PrnTailer's mapped chunks and byte parser, against reading the
+ * same file a line at a time with String.split, SimpleDateFormat and
+ * Double.parseDouble. Neither touches the database.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrnIngestBenchmark {
+
+	static final int ROWS = 7 * 1440;
+
+	PrnLayout layout;
+	Path directory;
+	Path file;
+	PrnBatch batch;
+
+	@Setup
+	public void setUp() throws IOException {
+		layout = PrnLayout.lookup("SP_MET");
+		directory = Files.createTempDirectory("prn-benchmark");
+		file = directory.resolve("SP_LATEST_0.PRN");
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.AUGUST, 1);
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+			for (int row = 0; row < ROWS; row++) {
+				writer.write('"' + format.format(calendar.getTime()) + "\"," + row);
+				for (int field = 2; field <= 41; field++) {
+					writer.write(field == 33 && row % 97 == 0 ? ",\"NAN\"" : "," + (field * 1.25 + row % 60 * 0.013));
+				}
+				writer.write("\r\n");
+				calendar.add(Calendar.MINUTE, 1);
+			}
+		}
+		batch = new PrnBatch(layout, 5000);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file);
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public long tailer() throws IOException {
+		PrnTailer tailer = new PrnTailer(file, directory.resolve("none.offset"), new PrnParser(layout), 16 << 20);
+		long checksum = 0;
+		while (tailer.read(batch) > 0) {
+			for (int row = 0; row < batch.size(); row++) {
+				checksum += batch.getTime(row) + (long) batch.getValue(0, row);
+			}
+		}
+		return checksum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void splitLines(Blackhole blackhole) throws IOException, ParseException {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		List<PrnLayout.Field> fields = layout.getFields();
+		double[] values = new double[fields.size()];
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] split = line.split(",");
+				blackhole.consume(format.parse(split[0].replace("\"", "")).getTime());
+				for (int i = 0; i < values.length; i++) {
+					String value = split[fields.get(i).getIndex()].replace("\"", "");
+					values[i] = "NAN".equals(value) ? Double.NaN : Double.parseDouble(value);
+				}
+				blackhole.consume(values);
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.wisc.limnology.lter.qc.MonthIndex;
+import edu.wisc.limnology.lter.qc.RangeCheck;
+
+/**
+ * Range checking a year of 1-minute readings of the eight variables
+ * process_latest_SP.R checks: compiled RangeChecks applied a column at a
+ * time, against the script's way of a calendar lookup and an if-chain per
+ * row, with the bounds already read out of the table as the script does.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RangeCheckBenchmark {
+
+	static final int ROWS = 366 * 1440;
+	static final int VARIABLES = 8;
+
+	long[] times;
+	double[][] values;
+	double[][] mins;
+	double[][] maxes;
+	RangeCheck[] checks;
+	int[] months;
+	char[][] flags;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		Calendar calendar = Calendar.getInstance();
+		calendar.clear();
+		calendar.set(2016, Calendar.JANUARY, 1);
+		times = new long[ROWS];
+		for (int row = 0; row < ROWS; row++) {
+			times[row] = calendar.getTimeInMillis();
+			calendar.add(Calendar.MINUTE, 1);
+		}
+		values = new double[VARIABLES][ROWS];
+		mins = new double[VARIABLES][12];
+		maxes = new double[VARIABLES][12];
+		checks = new RangeCheck[VARIABLES];
+		flags = new char[VARIABLES][ROWS];
+		for (int variable = 0; variable < VARIABLES; variable++) {
+			for (int month = 0; month < 12; month++) {
+				mins[variable][month] = month;
+				maxes[variable][month] = 20 + month;
+			}
+			checks[variable] = RangeCheck.monthly(mins[variable], maxes[variable]);
+			for (int row = 0; row < ROWS; row++) {
+				/* about 1% out of range and 1% missing */
+				int kind = random.nextInt(100);
+				values[variable][row] = kind == 0 ? Double.NaN : kind == 1 ? 99 : 12 + random.nextGaussian();
+			}
+		}
+		months = new int[ROWS];
+	}
+
+	@Benchmark
+	public char[][] compiled() {
+		new MonthIndex().monthsOf(times, months, ROWS);
+		for (int variable = 0; variable < VARIABLES; variable++) {
+			checks[variable].apply(values[variable], months, flags[variable], ROWS);
+		}
+		return flags;
+	}
+
+	@Benchmark
+	public void perRow(Blackhole blackhole) {
+		Calendar calendar = Calendar.getInstance();
+		String[] rowFlags = new String[VARIABLES];
+		for (int row = 0; row < ROWS; row++) {
+			calendar.setTimeInMillis(times[row]);
+			int month = calendar.get(Calendar.MONTH);
+			for (int variable = 0; variable < VARIABLES; variable++) {
+				double value = values[variable][row];
+				rowFlags[variable] = "";
+				if (!Double.isNaN(value)) {
+					if (value < mins[variable][month] || value > maxes[variable][month]) {
+						rowFlags[variable] = "H";
+					}
+				}
+			}
+			blackhole.consume(rowFlags);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wisc.limnology.lter.stats.RollingExtreme;
+import edu.wisc.limnology.lter.stats.RollingMedian;
+import edu.wisc.limnology.lter.stats.RollingMoments;
+
+/**
+ * One 1-minute reading added to a full window of an hour, a day or a week,
+ * and the statistic read back: the rolling statistics against get_phyco.R's
+ * way of sorting the whole window for each median, and a scan of it for
+ * the maximum.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RollingWindowBenchmark {
+
+	static final long MINUTE = 60000;
+
+	@Param({ "60", "1440", "10080" })
+	int windowMinutes;
+
+	double[] readings;
+	int next;
+	long time;
+	RollingMedian median;
+	RollingMoments moments;
+	RollingExtreme max;
+	/* the window for the recomputing benchmarks, oldest at head */
+	double[] window;
+	double[] sorted;
+	int head;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		readings = new double[1 << 16];
+		for (int i = 0; i < readings.length; i++) {
+			readings[i] = 420 + 150 * Math.sin(i / 120.0) + 20 * random.nextGaussian();
+		}
+		long windowMillis = windowMinutes * MINUTE;
+		median = new RollingMedian(windowMillis);
+		moments = new RollingMoments(windowMillis);
+		max = RollingExtreme.max(windowMillis);
+		window = new double[windowMinutes];
+		sorted = new double[windowMinutes];
+		for (int i = 0; i < windowMinutes; i++) {
+			double reading = nextReading();
+			median.add(time, reading);
+			moments.add(time, reading);
+			max.add(time, reading);
+			window[i] = reading;
+		}
+	}
+
+	private double nextReading() {
+		time += MINUTE;
+		return readings[next++ & (readings.length - 1)];
+	}
+
+	@Benchmark
+	public double rollingMedian() {
+		double reading = nextReading();
+		median.add(time, reading);
+		return median.median();
+	}
+
+	@Benchmark
+	public double sortedMedian() {
+		window[head] = nextReading();
+		head = (head + 1) % window.length;
+		System.arraycopy(window, 0, sorted, 0, window.length);
+		Arrays.sort(sorted);
+		int middle = sorted.length / 2;
+		return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+	}
+
+	@Benchmark
+	public double rollingMoments() {
+		double reading = nextReading();
+		moments.add(time, reading);
+		return moments.getVariance();
+	}
+
+	@Benchmark
+	public double rollingMax() {
+		double reading = nextReading();
+		max.add(time, reading);
+		return max.get();
+	}
+
+	@Benchmark
+	public double scannedMax() {
+		window[head] = nextReading();
+		head = (head + 1) % window.length;
+		double top = Double.NEGATIVE_INFINITY;
+		for (double reading : window) {
+			top = Math.max(top, reading);
+		}
+		return top;
+	}
+}
@@ -0,0 +1,173 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.wisc.limnology.lter.benchmark.LakeConditionJsonBenchmark.CountingOutputStream;
+import edu.wisc.limnology.lter.database.SeriesDAOImpl;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.resources.SeriesExport;
+import edu.wisc.limnology.lter.services.LakeSeriesService;
+
+/**
+ * Exports of 10M samples through SeriesDAOImpl, JdbcTemplate and the
+ * streaming JSON/CSV writers, in a fork limited to a 48 MB heap: a
+ * materialized List of that many points would need several hundred MB.
+ * The JDBC driver is a stand-in whose result set produces rows on demand,
+ * as Connector/J does with fetchSize Integer.MIN_VALUE. After each
+ * iteration the peak old-generation occupancy is printed; it stays flat
+ * as rows grows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx48m")
+public class SeriesExportBenchmark {
+
+	@Param({ "1000000", "10000000" })
+	int rows;
+
+	@Param({ "json", "csv" })
+	String format;
+
+	LakeSeriesService lakeSeriesService;
+	SeriesSource source;
+	CountingOutputStream out;
+
+	@Setup
+	public void setUp() {
+		SeriesDAOImpl seriesDAO = new SeriesDAOImpl();
+		seriesDAO.setDataSource(syntheticDataSource(rows));
+		lakeSeriesService = new LakeSeriesService();
+		lakeSeriesService.setSeriesDAO(seriesDAO);
+		source = SeriesSource.lookup("TR", SeriesSource.AIR_TEMP);
+		out = new CountingOutputStream();
+	}
+
+	@Setup(Level.Iteration)
+	public void resetPeaks() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+	}
+
+	@TearDown(Level.Iteration)
+	public void printPeaks() {
+		long oldGenPeak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP
+					&& (pool.getName().contains("Old") || pool.getName().contains("Tenured"))) {
+				oldGenPeak += pool.getPeakUsage().getUsed();
+			}
+		}
+		System.out.printf("%n%d rows as %s: %d bytes written, peak old gen %.1f MB of %.1f MB max heap%n", rows,
+				format, out.count, oldGenPeak / 1048576.0, Runtime.getRuntime().maxMemory() / 1048576.0);
+	}
+
+	@Benchmark
+	public long export() throws IOException {
+		out.count = 0;
+		StreamingOutput export = new SeriesExport(lakeSeriesService, source, null, new Date(0),
+				new Date(Long.MAX_VALUE / 2), "csv".equals(format));
+		export.write(out);
+		return out.count;
+	}
+
+	/* A DataSource whose result sets yield rowCount (sampledate, value) rows without storing them */
+	static DataSource syntheticDataSource(final int rowCount) {
+		return proxy(DataSource.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getConnection")) {
+					return proxy(Connection.class, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("prepareStatement")) {
+								return proxy(PreparedStatement.class, new StatementHandler(rowCount));
+							}
+							return defaultValue(method);
+						}
+					});
+				}
+				return defaultValue(method);
+			}
+		});
+	}
+
+	static class StatementHandler implements InvocationHandler {
+		final int rowCount;
+
+		StatementHandler(int rowCount) {
+			this.rowCount = rowCount;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("executeQuery")) {
+				return proxy(ResultSet.class, new InvocationHandler() {
+					final long start = 1262304000000L;
+					int row = -1;
+
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						String name = method.getName();
+						if (name.equals("next")) {
+							return ++row < rowCount;
+						} else if (name.equals("getTimestamp")) {
+							return new Timestamp(start + row * 60000L);
+						} else if (name.equals("getDouble")) {
+							return Math.round(100 * (15 + 10 * Math.sin(row / 720.0))) / 100.0;
+						}
+						return defaultValue(method);
+					}
+				});
+			}
+			return defaultValue(method);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(SeriesExportBenchmark.class.getClassLoader(), new Class<?>[] { type },
+				handler);
+	}
+
+	static Object defaultValue(Method method) {
+		Class<?> type = method.getReturnType();
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,135 @@
+package edu.wisc.limnology.lter.benchmark;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.services.SeriesStoreService;
+import edu.wisc.limnology.lter.store.SeriesStore;
+
+/**
+ * Scanning every depth of a day of water temperatures (21 depths x 1440
+ * samples) from the hi-res table through SeriesDAOImpl, against the same
+ * samples from the columnar store. Runs against the embedded database, or
+ * against dbmaker when -DconnectionUrl, -DuserName and -Dpassword are set
+ * (with -Dbenchmark.from and -Dbenchmark.to, yyyy-MM-dd, for a longer
+ * range). Setup prints bytes on disk for both; MySQL's figure is the whole
+ * table from information_schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesStoreBenchmark {
+
+	@Param({ "ME" })
+	String lakeId;
+
+	ClassPathXmlApplicationContext context;
+	boolean embedded;
+	SeriesDAO mysqlSeriesDAO;
+	SeriesStore seriesStore;
+	SeriesSource source;
+	List<Double> depths;
+	Date from;
+	Date to;
+
+	@Setup
+	public void setUp() throws Exception {
+		embedded = System.getProperty("connectionUrl") == null;
+		if (embedded) {
+			context = EmbeddedBuoyDatabase.createContext();
+		} else {
+			System.setProperty("store.directory",
+					System.getProperty("java.io.tmpdir") + "/series-store-benchmark");
+			context = new ClassPathXmlApplicationContext("applicationContext.xml");
+		}
+		mysqlSeriesDAO = context.getBean("mysqlSeriesDAO", SeriesDAO.class);
+		seriesStore = context.getBean(SeriesStore.class);
+		source = SeriesSource.lookup(lakeId, SeriesSource.WATER_TEMP);
+		from = DateUtils.parseDate(System.getProperty("benchmark.from", "2016-08-04"), "yyyy-MM-dd");
+		to = DateUtils.parseDate(System.getProperty("benchmark.to", "2016-08-05"), "yyyy-MM-dd");
+
+		context.getBean(SeriesStoreService.class).sync(source);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		depths = jdbcTemplate.queryForList("select distinct depth from " + source.getTable()
+				+ " where sampledate >= ? and sampledate < ? order by depth", Double.class, from, to);
+
+		CountingHandler counter = new CountingHandler();
+		for (Double depth : depths) {
+			seriesStore.read(source, depth, from.getTime(), to.getTime(), Integer.MAX_VALUE, counter);
+		}
+		System.out.printf("%n%s: %d samples at %d depths; store %d bytes (%.2f bytes/sample)%n",
+				source.getTable(), counter.count, depths.size(), seriesStore.sizeOnDisk(source),
+				seriesStore.sizeOnDisk(source) / (double) counter.count);
+		if (!embedded) {
+			Map<String, Object> size = jdbcTemplate.queryForMap("select table_rows, data_length, index_length"
+					+ " from information_schema.tables where table_schema = database() and table_name = ?",
+					source.getTable());
+			System.out.printf("MySQL: %s rows, %s data bytes, %s index bytes%n", size.get("table_rows"),
+					size.get("data_length"), size.get("index_length"));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		context.close();
+		if (embedded) {
+			EmbeddedBuoyDatabase.uninstall();
+		}
+	}
+
+	@Benchmark
+	public long scanMySQL() throws IOException {
+		CountingHandler counter = new CountingHandler();
+		for (Double depth : depths) {
+			mysqlSeriesDAO.streamSamples(source, depth, from, to, counter);
+		}
+		return counter.count;
+	}
+
+	@Benchmark
+	public long scanStore() throws IOException {
+		CountingHandler counter = new CountingHandler();
+		for (Double depth : depths) {
+			seriesStore.read(source, depth, from.getTime(), to.getTime(), Integer.MAX_VALUE, counter);
+		}
+		return counter.count;
+	}
+
+	static class CountingHandler implements SampleHandler {
+		long count;
+		double sum;
+
+		public void sample(long sampleDate, double value) {
+			count++;
+			sum += value;
+		}
+	}
+}
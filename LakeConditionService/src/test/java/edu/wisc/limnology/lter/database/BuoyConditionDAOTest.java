@@ -1,23 +1,39 @@
 package edu.wisc.limnology.lter.database;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
 import java.util.List;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import edu.wisc.limnology.lter.model.LakeCondition;
 
 public class BuoyConditionDAOTest {
 	
+	ClassPathXmlApplicationContext context;
 	LakeConditionDAO buoyConditionDAO;
 	
 	@Before
-	public void init(){
-		buoyConditionDAO = new LakeConditionDAOImpl();
+	public void init() throws SQLException{
+		context = EmbeddedBuoyDatabase.createContext();
+		buoyConditionDAO = context.getBean(LakeConditionDAO.class);
+	}
+	
+	@After
+	public void destroy(){
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
 	}
 	
 	@Test
@@ -30,12 +46,22 @@ public class BuoyConditionDAOTest {
 		assertEquals("2015-05-21 15:19:15", buoyCondition.getFormatedSampleDate());
 		assertEquals("Trout Lake", buoyCondition.getLakeName());
 		assertEquals("TR",buoyCondition.getLakeId());
-		assertTrue(15.01 == buoyCondition.getAirTemp());
+		assertTrue(15.00 == buoyCondition.getAirTemp());
 		assertTrue(16.10 == buoyCondition.getWaterTemp());
 		assertTrue(5.1 == buoyCondition.getWindSpeed());
 		assertTrue(180 == buoyCondition.getWindDir());
 	}
 	
+	@Test
+	public void registersThePoolUnderItsJmxName() throws Exception {
+		buoyConditionDAO.getLakeConditions();
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName pool = new ObjectName("edu.wisc.limnology.lter:type=ConnectionPool,name=dataSource");
+		assertTrue(server.isRegistered(pool));
+		context.close();
+		assertFalse(server.isRegistered(pool));
+	}
+
 	@Test
 	public void getBuoyCondition() {
 		LakeCondition buoyCondition = buoyConditionDAO.getLakeCondition("TR");
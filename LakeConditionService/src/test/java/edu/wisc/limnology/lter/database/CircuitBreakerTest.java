@@ -0,0 +1,114 @@
+package edu.wisc.limnology.lter.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+public class CircuitBreakerTest {
+
+	FailingDAO mysql;
+	CircuitBreakingLakeConditionDAO dao;
+
+	@Before
+	public void init() {
+		mysql = new FailingDAO();
+		dao = new CircuitBreakingLakeConditionDAO(2, 50);
+		dao.setDelegate(mysql);
+	}
+
+	@Test
+	public void opensAfterConsecutiveFailures() {
+		mysql.failing = true;
+		assertFails(CannotGetJdbcConnectionException.class);
+		assertEquals("CLOSED", dao.getState());
+		assertFails(CannotGetJdbcConnectionException.class);
+		assertEquals("OPEN", dao.getState());
+
+		assertFails(CircuitOpenException.class);
+		assertEquals(2, mysql.calls);
+		assertEquals(1, dao.getOpens());
+		assertEquals(1, dao.getRefused());
+	}
+
+	@Test
+	public void successResetsFailureCount() {
+		mysql.failing = true;
+		assertFails(CannotGetJdbcConnectionException.class);
+		mysql.failing = false;
+		dao.getChangeSignatures();
+		mysql.failing = true;
+		assertFails(CannotGetJdbcConnectionException.class);
+		assertEquals("CLOSED", dao.getState());
+	}
+
+	@Test
+	public void probesOnceOpenIntervalHasPassed() throws InterruptedException {
+		mysql.failing = true;
+		assertFails(CannotGetJdbcConnectionException.class);
+		assertFails(CannotGetJdbcConnectionException.class);
+
+		Thread.sleep(60);
+		assertFails(CannotGetJdbcConnectionException.class);
+		assertEquals("OPEN", dao.getState());
+		assertEquals(2, dao.getOpens());
+		assertFails(CircuitOpenException.class);
+
+		Thread.sleep(60);
+		mysql.failing = false;
+		dao.getChangeSignatures();
+		assertEquals("CLOSED", dao.getState());
+		assertEquals(4, mysql.calls);
+	}
+
+	@Test
+	public void otherExceptionsDoNotCountAsFailures() {
+		for (int i = 0; i < 3; i++) {
+			try {
+				dao.getLakeCondition("ME");
+				fail();
+			} catch (UnsupportedOperationException e) {
+			}
+		}
+		assertEquals("CLOSED", dao.getState());
+	}
+
+	void assertFails(Class<? extends RuntimeException> expected) {
+		try {
+			dao.getChangeSignatures();
+			fail("expected " + expected.getSimpleName());
+		} catch (RuntimeException e) {
+			assertEquals(expected, e.getClass());
+		}
+	}
+
+	static class FailingDAO implements LakeConditionDAO {
+		boolean failing;
+		int calls;
+
+		public List<LakeCondition> getLakeConditions() {
+			return Collections.emptyList();
+		}
+
+		public LakeCondition getLakeCondition(String lakeId) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Map<String, String> getChangeSignatures() {
+			calls++;
+			if (failing) {
+				throw new CannotGetJdbcConnectionException("stub", new SQLException("Connection refused"));
+			}
+			return Collections.emptyMap();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package edu.wisc.limnology.lter.database;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+/**
+ * An in-memory H2 database in MySQL mode standing in for dbmaker on
+ * thalassa. The connection settings are passed as system properties, which
+ * take precedence over db.properties in applicationContext.xml.
+ */
+public class EmbeddedBuoyDatabase {
+
+	public static final String URL = "jdbc:h2:mem:dbmaker;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+	static final String CURRENT_CONDITIONS_SCRIPT = "sql/buoy_current_conditions.sql";
+
+	/* the hi-res day takes several seconds to insert, so it is seeded once per JVM */
+	static final String HI_RES_SCRIPT = "sql/sensor_hi_res.sql";
+
+	/* the production DDL, from src/main/resources */
+	static final String ROLLUP_SCRIPT = "sql/sensor_rollups.sql";
+
+	private static boolean hiResSeeded;
+
+	private static Path storeDirectory;
+
+	/**
+	 * Creates (or resets) buoy_current_conditions and the empty rollup
+	 * tables, seeds the hi-res sensor tables on first use and points the
+	 * dataSource bean at them. The series store gets an empty temporary
+	 * directory.
+	 */
+	public static synchronized void install() throws SQLException {
+		Connection conn = DriverManager.getConnection(URL, "sa", "");
+		try {
+			Statement stmt = conn.createStatement();
+			stmt.execute("runscript from 'classpath:" + CURRENT_CONDITIONS_SCRIPT + "'");
+			if (!hiResSeeded) {
+				stmt.execute("runscript from 'classpath:" + HI_RES_SCRIPT + "'");
+				hiResSeeded = true;
+			}
+			stmt.execute("runscript from 'classpath:" + ROLLUP_SCRIPT + "'");
+			stmt.execute("delete from sensor_rollup_watermark");
+			stmt.execute("delete from sensor_rollup_hourly");
+			stmt.execute("delete from sensor_rollup_daily");
+			stmt.close();
+		} finally {
+			conn.close();
+		}
+		System.setProperty("dbDriver", "org.h2.Driver");
+		System.setProperty("connectionUrl", URL);
+		System.setProperty("userName", "sa");
+		System.setProperty("password", "");
+		System.setProperty("series.fetchSize", "1000");
+		if (storeDirectory != null) {
+			deleteRecursively(storeDirectory);
+		}
+		try {
+			storeDirectory = Files.createTempDirectory("series-store");
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		System.setProperty("store.directory", storeDirectory.toString());
+	}
+
+	public static void uninstall() {
+		System.clearProperty("dbDriver");
+		System.clearProperty("connectionUrl");
+		System.clearProperty("userName");
+		System.clearProperty("password");
+		System.clearProperty("series.fetchSize");
+		System.clearProperty("store.directory");
+		if (storeDirectory != null) {
+			deleteRecursively(storeDirectory);
+			storeDirectory = null;
+		}
+	}
+
+	/**
+	 * @return the webapp's application context wired to the embedded database
+	 */
+	public static ClassPathXmlApplicationContext createContext() throws SQLException {
+		install();
+		return new ClassPathXmlApplicationContext("applicationContext.xml");
+	}
+
+	static void deleteRecursively(Path directory) {
+		try {
+			Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					Files.delete(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+					Files.delete(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
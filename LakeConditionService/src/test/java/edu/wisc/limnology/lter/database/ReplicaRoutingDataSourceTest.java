@@ -0,0 +1,130 @@
+package edu.wisc.limnology.lter.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.wisc.limnology.lter.database.ReplicaRoutingDataSource.Replica;
+
+public class ReplicaRoutingDataSourceTest {
+
+	static final String PRIMARY_URL = "jdbc:h2:mem:routingPrimary;DB_CLOSE_DELAY=-1";
+	/* refused until the test creates it */
+	static final String REPLICA_URL = "jdbc:h2:mem:routingReplica;IFEXISTS=TRUE";
+
+	BasicDataSource primary;
+	ReplicaRoutingDataSource routing;
+	Connection replicaDatabase;
+
+	@Before
+	public void init() {
+		primary = new BasicDataSource();
+		primary.setDriverClassName("org.h2.Driver");
+		primary.setUrl(PRIMARY_URL);
+		primary.setUsername("sa");
+		primary.setPassword("");
+		primary.setMaxWaitMillis(1000);
+		primary.setValidationQuery("select 1");
+		primary.setTestOnBorrow(true);
+
+		routing = new ReplicaRoutingDataSource();
+		routing.setPrimary(primary);
+		routing.setReplicaUrls(" " + REPLICA_URL + ", ");
+		routing.init();
+	}
+
+	@After
+	public void destroy() throws SQLException {
+		routing.close();
+		primary.close();
+		if (replicaDatabase != null) {
+			replicaDatabase.close();
+		}
+	}
+
+	@Test
+	public void failsOverAndRecoversOnHealthCheck() throws SQLException {
+		Replica replica = routing.getReplicas().get(1);
+		assertEquals("jdbc:h2:mem:routingPrimary;DB_CLOSE_DELAY=-1", routing.getReplicas().get(0).dataSource.getUrl());
+		assertEquals("jdbc:h2:mem:routingReplica;IFEXISTS=TRUE", replica.getName());
+		/* so the replica is picked first */
+		routing.getReplicas().get(0).observe(5000000);
+		replica.observe(1000000);
+
+		for (int i = 0; i < 4; i++) {
+			Connection connection = routing.getConnection();
+			try {
+				assertTrue(connection.getMetaData().getURL().contains("routingPrimary"));
+			} finally {
+				connection.close();
+			}
+		}
+		assertFalse(replica.isHealthy());
+		assertEquals(1, routing.getFailovers());
+
+		replicaDatabase = DriverManager.getConnection("jdbc:h2:mem:routingReplica", "sa", "");
+		routing.checkHealth();
+		assertTrue(replica.isHealthy());
+		assertTrue(replica.getLatencyNanos() > 0);
+	}
+
+	@Test
+	public void prefersLowerLatency() throws SQLException {
+		replicaDatabase = DriverManager.getConnection("jdbc:h2:mem:routingReplica", "sa", "");
+		Replica primaryReplica = routing.getReplicas().get(0);
+		Replica replica = routing.getReplicas().get(1);
+		primaryReplica.observe(5000000);
+		replica.observe(1000000);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(replica, routing.candidates().get(0));
+		}
+
+		replica.markDown();
+		assertEquals(primaryReplica, routing.candidates().get(0));
+		assertEquals(replica, routing.candidates().get(1));
+	}
+
+	@Test
+	public void keepsPinnedReadsOnOneDatabase() throws SQLException {
+		replicaDatabase = DriverManager.getConnection("jdbc:h2:mem:routingReplica", "sa", "");
+		Replica replica = routing.getReplicas().get(1);
+		routing.getReplicas().get(0).observe(5000000);
+		replica.observe(1000000);
+
+		try (ReplicaRoutingDataSource.Pin pin = routing.pin()) {
+			assertTrue(url().contains("routingReplica"));
+			assertEquals(replica.getName(), pin.getDatabase());
+			/* would send the next borrow to the primary unpinned */
+			replica.markDown();
+			try (ReplicaRoutingDataSource.Pin nested = routing.pin()) {
+				assertTrue(url().contains("routingReplica"));
+			}
+			assertTrue(url().contains("routingReplica"));
+		}
+		assertTrue(url().contains("routingPrimary"));
+	}
+
+	private String url() throws SQLException {
+		Connection connection = routing.getConnection();
+		try {
+			return connection.getMetaData().getURL();
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void namesReplicasWithoutParameters() {
+		assertEquals("jdbc:mysql://dbmaker-replica.limnology.wisc.edu:3306/dbmaker", ReplicaRoutingDataSource
+				.name("jdbc:mysql://dbmaker-replica.limnology.wisc.edu:3306/dbmaker?useServerPrepStmts=true"));
+	}
+}
@@ -0,0 +1,77 @@
+package edu.wisc.limnology.lter.database;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+public class SeriesBucketsTest {
+
+	static final long HOUR = 3600000L;
+	static final long DAY = 86400000L;
+
+	TimeZone defaultTimeZone;
+
+	@Before
+	public void init() {
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+	}
+
+	@After
+	public void destroy() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void alignsDaysToLocalMidnightAcrossDaylightSavingChanges() throws ParseException {
+		/* 2016-03-13 is 23 hours long, 2016-11-06 25 */
+		for (String day : new String[] { "2016-03-12", "2016-03-13", "2016-03-14", "2016-11-06" }) {
+			long midnight = time(day + " 00:00:00");
+			long next = SeriesBuckets.align(midnight + DAY + 12 * HOUR, DAY);
+			for (long sample = midnight; sample < next; sample += 15 * 60000L) {
+				assertEquals(day + " " + sample, midnight, SeriesBuckets.align(sample, DAY));
+			}
+			assertEquals(next, SeriesBuckets.advance(midnight, 1, DAY));
+		}
+		assertEquals(time("2016-03-14 00:00:00"), SeriesBuckets.advance(time("2016-03-12 00:00:00"), 2, DAY));
+
+		/* hours stay an hour long, the repeated 01:00 included */
+		long hour = time("2016-11-06 00:00:00");
+		for (int i = 0; i < 4; i++) {
+			assertEquals(hour, SeriesBuckets.align(hour + 30 * 60000L, HOUR));
+			assertEquals(hour + HOUR, SeriesBuckets.advance(hour, 1, HOUR));
+			hour += HOUR;
+		}
+	}
+
+	@Test
+	public void bucketsEachLocalDayOnce() throws ParseException {
+		SeriesBuckets daily = new SeriesBuckets(DAY);
+		long start = time("2016-03-12 00:00:00");
+		long end = time("2016-03-15 00:00:00");
+		for (long sample = start; sample < end; sample += HOUR) {
+			daily.sample(sample, 1.0);
+		}
+		List<SeriesPoint> days = daily.getPoints();
+		assertEquals(3, days.size());
+		assertEquals(start, days.get(0).getSampleDate().getTime());
+		assertEquals(time("2016-03-13 00:00:00"), days.get(1).getSampleDate().getTime());
+		assertEquals(time("2016-03-14 00:00:00"), days.get(2).getSampleDate().getTime());
+		assertEquals(24, days.get(0).getCount().intValue());
+		assertEquals(23, days.get(1).getCount().intValue());
+		assertEquals(24, days.get(2).getCount().intValue());
+	}
+
+	static long time(String timestamp) throws ParseException {
+		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(timestamp).getTime();
+	}
+}
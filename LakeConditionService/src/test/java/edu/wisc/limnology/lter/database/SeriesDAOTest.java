@@ -0,0 +1,81 @@
+package edu.wisc.limnology.lter.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+public class SeriesDAOTest {
+
+	ClassPathXmlApplicationContext context;
+	SeriesDAO seriesDAO;
+
+	@Before
+	public void init() throws SQLException {
+		context = EmbeddedBuoyDatabase.createContext();
+		seriesDAO = context.getBean(SeriesDAO.class);
+	}
+
+	@After
+	public void destroy() {
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+
+	@Test
+	public void pagesSamplesByKeyset() throws ParseException {
+		SeriesSource airTemp = SeriesSource.lookup("ME", SeriesSource.AIR_TEMP);
+		Date from = date("2016-08-04 00:00:00");
+		Date to = date("2016-08-05 00:00:00");
+
+		List<SeriesPoint> first = seriesDAO.getSamples(airTemp, null, from, null, to, 100);
+		assertEquals(100, first.size());
+		assertEquals(from, first.get(0).getSampleDate());
+		assertNotNull(first.get(0).getValue());
+		assertNull(first.get(0).getCount());
+
+		Date after = first.get(99).getSampleDate();
+		List<SeriesPoint> second = seriesDAO.getSamples(airTemp, null, from, after, to, 100);
+		assertEquals(new Date(after.getTime() + 60000), second.get(0).getSampleDate());
+
+		List<SeriesPoint> last = seriesDAO.getSamples(airTemp, null, from, date("2016-08-04 23:58:00"), to, 100);
+		assertEquals(1, last.size());
+	}
+
+	@Test
+	public void bucketsWaterTempAtDepth() throws ParseException {
+		SeriesSource waterTemp = SeriesSource.lookup("me", SeriesSource.WATER_TEMP);
+		Date from = date("2016-08-04 00:00:00");
+		Date to = date("2016-08-05 00:00:00");
+
+		List<SeriesPoint> hourly = seriesDAO.getBuckets(waterTemp, 0.0, from, to, 3600000L);
+		assertEquals(24, hourly.size());
+		SeriesPoint first = hourly.get(0);
+		assertEquals(from, first.getSampleDate());
+		assertEquals(60, first.getCount().intValue());
+		assertTrue(first.getMin() <= first.getMean() && first.getMean() <= first.getMax());
+		assertNull(first.getValue());
+
+		List<SeriesPoint> deep = seriesDAO.getBuckets(waterTemp, 20.0, from, to, 86400000L);
+		assertEquals(1, deep.size());
+		assertEquals(1440, deep.get(0).getCount().intValue());
+		assertTrue(deep.get(0).getMax() < hourly.get(0).getMin());
+	}
+
+	static Date date(String value) throws ParseException {
+		return DateUtils.parseDate(value, "yyyy-MM-dd HH:mm:ss");
+	}
+}
@@ -0,0 +1,312 @@
+package edu.wisc.limnology.lter.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+import edu.wisc.limnology.lter.database.HiResDAOImpl;
+import edu.wisc.limnology.lter.database.RollupDAO;
+import edu.wisc.limnology.lter.database.RollupPeriod;
+import edu.wisc.limnology.lter.database.SampleHandler;
+import edu.wisc.limnology.lter.database.SeriesBuckets;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+import edu.wisc.limnology.lter.services.RollupService;
+import edu.wisc.limnology.lter.services.SeriesStoreService;
+import edu.wisc.limnology.lter.store.SeriesStore;
+
+public class IngestServiceTest {
+
+	ClassPathXmlApplicationContext context;
+	IngestService ingestService;
+	JdbcTemplate jdbcTemplate;
+	Path directory;
+	Path met;
+	Path wtemp;
+
+	@Before
+	public void init() throws Exception {
+		/* several statements per batch */
+		System.setProperty("hires.rowsPerStatement", "2");
+		context = EmbeddedBuoyDatabase.createContext();
+		jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		directory = Files.createTempDirectory("ingest");
+		met = directory.resolve("SP_LATEST_0.PRN");
+		wtemp = directory.resolve("SP_LATEST_WTEMP.PRN");
+		ingestService = context.getBean(IngestService.class);
+		ingestService.setCheckpointDirectory(directory.resolve("checkpoints").toString());
+		ingestService.setFiles("SP_MET=" + met + ", SP_WTEMP=" + wtemp);
+	}
+
+	@After
+	public void destroy() throws SQLException {
+		jdbcTemplate.update("delete from sensor_sparkling_lake_met_hi_res where sampledate >= '2016-08-06'");
+		jdbcTemplate.update("delete from sensor_sparkling_lake_watertemp_hi_res where sampledate >= '2016-08-06'");
+		jdbcTemplate.update("delete from sensor_mendota_lake_met_hi_res where sampledate >= '2016-08-06'");
+		jdbcTemplate.update("delete from sensor_sparkling_lake_met_hi_res where second(sampledate) = 30");
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+		System.clearProperty("hires.rowsPerStatement");
+	}
+
+	@Test
+	public void storesRowsAndPublishesLatestConditions() throws Exception {
+		PrnParserTest.append(met, metLine("2016-08-06 10:00:00", "21.5", "25.0", "180") + "\n"
+				+ metLine("2016-08-06 10:01:00", "21.7", "NAN", "190") + "\n");
+		PrnParserTest.append(wtemp, PrnParserTest.profileLine("2016-08-06 10:00:00", "NAN") + "\n");
+		ingestService.ingest();
+
+		assertEquals(3, ingestService.getRowsIngested());
+		/* 25 m/s over the fixed 20, and the NAN surface temperature */
+		assertEquals(2, ingestService.getValuesFlagged());
+		assertEquals("H", jdbcTemplate.queryForObject("select flag_wind_speed_2m from"
+				+ " sensor_sparkling_lake_met_hi_res where sampledate = '2016-08-06 10:00:00'", String.class));
+		Map<String, Object> row = jdbcTemplate.queryForMap("select year4, month, daynum, sampletime, air_temp,"
+				+ " wind_speed_2m, flag_wind_speed_2m, flag_opt_wtemp, wind_dir from sensor_sparkling_lake_met_hi_res"
+				+ " where sampledate = '2016-08-06 10:01:00'");
+		assertEquals(2016, ((Number) row.get("year4")).intValue());
+		assertEquals(219, ((Number) row.get("daynum")).intValue());
+		assertEquals("10:01:00", row.get("sampletime"));
+		assertEquals(21.7, ((Number) row.get("air_temp")).doubleValue(), 1e-9);
+		assertNull(row.get("wind_speed_2m"));
+		assertNull(row.get("flag_wind_speed_2m"));
+		assertNull(row.get("flag_opt_wtemp"));
+		assertEquals(25, jdbcTemplate.queryForObject("select count(*) from sensor_sparkling_lake_watertemp_hi_res"
+				+ " where sampledate = '2016-08-06 10:00:00'", Integer.class).intValue());
+		assertEquals("C", jdbcTemplate.queryForObject("select flag_wtemp from sensor_sparkling_lake_watertemp_hi_res"
+				+ " where sampledate = '2016-08-06 10:00:00' and depth = 0", String.class));
+
+		LakeCondition sp = context.getBean(LakeConditionService.class).getLakeCondition("SP");
+		assertEquals(PrnParserTest.time("2016-08-06 10:01:00"), sp.getSampleDate().getTime());
+		assertEquals(21.7, sp.getAirTemp(), 0);
+		/* the flagged 25 m/s is not published; MySQL's stays */
+		assertEquals(3.0, sp.getWindSpeed(), 0);
+		assertEquals(190, sp.getWindDir().intValue());
+		assertEquals(18.0, sp.getWaterTemp(), 0);
+		assertEquals("Sparkling Lake", sp.getLakeName());
+
+		/* only the new line is read; the reload keeps the newer ingested condition */
+		PrnParserTest.append(met, metLine("2016-08-06 10:02:00", "21.9", "3.0", "200") + "\n");
+		ingestService.ingest();
+		assertEquals(4, ingestService.getRowsIngested());
+		context.getBean(LakeConditionService.class).reload();
+		assertEquals(21.9, context.getBean(LakeConditionService.class).getLakeCondition("SP").getAirTemp(), 0);
+		assertEquals(3.0, context.getBean(LakeConditionService.class).getLakeCondition("SP").getWindGust(), 0);
+		assertEquals(3, jdbcTemplate.queryForObject("select count(*) from sensor_sparkling_lake_met_hi_res"
+				+ " where sampledate >= '2016-08-06'", Integer.class).intValue());
+	}
+
+	@Test
+	public void flagsValuesOutsideTheMonthsRangeChecks() throws Exception {
+		/* row 256 bounds opt_wtemp from above, 257 from below; August is the 9th column */
+		StringBuilder csv = new StringBuilder("variable");
+		for (int month = 1; month <= 12; month++) {
+			csv.append(",month_").append(month);
+		}
+		for (int row = 1; row <= 263; row++) {
+			csv.append('\n').append("check_").append(row);
+			for (int month = 1; month <= 12; month++) {
+				csv.append(',').append(row == 256 ? "30" : row == 257 ? (month == 8 ? "10" : "0") : "NA");
+			}
+		}
+		Path rangeChecks = directory.resolve("range_checks_new.csv");
+		PrnParserTest.append(rangeChecks, csv.toString());
+		ingestService.setRangeChecksFile(rangeChecks.toString());
+
+		PrnParserTest.append(met, metLine("2016-08-06 10:00:00", "21.5", "3.2", "180") + "\n");
+		ingestService.ingest();
+		assertEquals(1, ingestService.getValuesFlagged());
+		assertEquals("H", jdbcTemplate.queryForObject("select flag_opt_wtemp from sensor_sparkling_lake_met_hi_res"
+				+ " where sampledate = '2016-08-06 10:00:00'", String.class));
+	}
+
+	@Test
+	public void skipsOrReplacesRowsAlreadyWritten() throws Exception {
+		PrnParserTest.append(met, metLine("2016-08-06 10:00:00", "21.5", "3.2", "180") + "\n"
+				+ metLine("2016-08-06 10:01:00", "21.7", "3.3", "190") + "\n"
+				+ metLine("2016-08-06 10:02:00", "21.9", "3.4", "200") + "\n");
+		ingestService.ingest();
+		assertEquals(3, ingestService.getTableRowsWritten());
+
+		Path backfill = directory.resolve("SP_BACKFILL.PRN");
+		PrnParserTest.append(backfill, new String(Files.readAllBytes(met), "US-ASCII")
+				+ metLine("2016-08-06 10:03:00", "22.0", "3.5", "210") + "\n");
+		assertEquals(4, ingestService.backfill("SP_MET", backfill.toString()));
+		assertEquals(4, ingestService.getTableRowsWritten());
+		assertEquals(3, ingestService.getDuplicatesSkipped());
+		assertEquals(4, jdbcTemplate.queryForObject("select count(*) from sensor_sparkling_lake_met_hi_res"
+				+ " where sampledate >= '2016-08-06'", Integer.class).intValue());
+
+		/* replaced with the values read again */
+		HiResDAOImpl replacing = new HiResDAOImpl();
+		replacing.setDataSource(context.getBean("pooledDataSource", DataSource.class));
+		replacing.setReplaceDuplicates(true);
+		PrnLayout layout = PrnLayout.lookup("SP_MET");
+		PrnBatch batch = new PrnBatch(layout, 2);
+		new PrnParser(layout).parse(ByteBuffer.wrap((metLine("2016-08-06 10:03:00", "19.5", "3.5", "210") + "\n"
+				+ metLine("2016-08-06 10:04:00", "19.6", "3.5", "210") + "\n").getBytes("US-ASCII")), batch);
+		assertEquals(2, replacing.insert(batch));
+		assertEquals(19.5, jdbcTemplate.queryForObject("select air_temp from sensor_sparkling_lake_met_hi_res"
+				+ " where sampledate = '2016-08-06 10:03:00'", Double.class), 1e-9);
+	}
+
+	@Test
+	public void publishesThePhycocyaninMedianOfTheDailyFile() throws Exception {
+		SimpleDateFormat utc = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+		long first = utc.parse("2016-09-01 00:00:00").getTime();
+		/* read from the table to fill the window; the older one is outside it */
+		insertPhyco(first - 2 * 3600000L, 300);
+		insertPhyco(first - 25 * 3600000L, 100);
+
+		String pattern = directory.resolve("{yyyy}").resolve("MendotaBuoy_limnodata_{yyyyMMdd}.dat").toString();
+		Path limno = Paths.get(IngestService.formatDates(pattern, PrnLayout.lookup("ME_LIMNO"), new Date()));
+		Files.createDirectories(limno.getParent());
+		/* 6000 is outside get_phyco.R's (0, 5000) */
+		PrnParserTest.append(limno, limnoLine("2016-09-01 00:00:00", "400") + "\n"
+				+ limnoLine("2016-09-01 00:01:00", "6000") + "\n" + limnoLine("2016-09-01 00:02:00", "500") + "\n");
+		ingestService.setFiles("ME_LIMNO=" + pattern);
+		ingestService.ingest();
+
+		assertEquals(3, ingestService.getRowsIngested());
+		assertEquals(0, ingestService.getTableRowsWritten());
+		LakeCondition me = context.getBean(LakeConditionService.class).getLakeCondition("ME");
+		assertEquals(400, me.getPhycoMedian(), 0);
+		assertEquals(1 / (0.282 + 0.0004275 * 400), me.getSecchiEst(), 1e-9);
+		assertEquals(first + 120000, me.getSecchiEstTimestamp().getTime());
+		/* the met readings are no newer */
+		assertEquals("2015-05-21 15:20", me.getFormatedSampleDate().substring(0, 16));
+		assertEquals(18.3, me.getAirTemp(), 0);
+		assertEquals("Lake Mendota", me.getLakeName());
+	}
+
+	@Test
+	public void keepsTheDerivedConditionOverReloadedRows() throws Exception {
+		Path limno = directory.resolve("MendotaBuoy_limnodata.dat");
+		PrnParserTest.append(limno, limnoLine("2016-09-01 00:00:00", "400") + "\n");
+		ingestService.setFiles("ME_LIMNO=" + limno);
+		ingestService.ingest();
+		LakeConditionService service = context.getBean(LakeConditionService.class);
+		long version = service.getVersion();
+
+		/* the reload derives the same condition again, so nothing changed */
+		service.reload();
+		assertEquals(version, service.getVersion());
+		assertEquals(400, service.getLakeCondition("ME").getPhycoMedian(), 0);
+
+		/* columns no file feeds follow MySQL; get_phyco.R's older median does not come back */
+		jdbcTemplate.update("update buoy_current_conditions set thermocline_depth = 8.5, phyco_median = 300"
+				+ " where lakeid = 'ME'");
+		service.reload();
+		LakeCondition me = service.getLakeCondition("ME");
+		assertEquals(8.5, me.getThermoclineDepth(), 0);
+		assertEquals(400, me.getPhycoMedian(), 0);
+
+		/* a newer median from get_phyco.R wins */
+		jdbcTemplate.update("update buoy_current_conditions set phyco_median = 300, secchi_timestamp ="
+				+ " '2016-09-02 00:00:00' where lakeid = 'ME'");
+		service.reload();
+		assertEquals(300, service.getLakeCondition("ME").getPhycoMedian(), 0);
+	}
+
+	private void insertPhyco(long time, double phycocyanin) {
+		jdbcTemplate.update("insert into sensor_mendota_lake_met_hi_res (sampledate, phycocyanin) values (?, ?)",
+				new Timestamp(time), phycocyanin);
+	}
+
+	@Test
+	public void leavesTheWatermarkForRowsAfterIt() throws Exception {
+		SeriesSource airTemp = SeriesSource.lookup("SP", SeriesSource.AIR_TEMP);
+		context.getBean(RollupService.class).update(airTemp);
+		context.getBean(SeriesStoreService.class).sync(airTemp);
+		RollupDAO rollupDAO = context.getBean(RollupDAO.class);
+		SeriesStore seriesStore = context.getBean(SeriesStore.class);
+		Date rolledUntil = rollupDAO.getRolledUntil(airTemp);
+		Date syncedUntil = seriesStore.getSyncedUntil(airTemp);
+
+		/* just past the last seeded minute, same day and month, as tailing writes them */
+		Path latest = directory.resolve("SP_LATEST.PRN");
+		PrnParserTest.append(latest, metLine("2016-08-04 23:59:30", "22.0", "3.2", "180") + "\n");
+		assertEquals(1, ingestService.backfill("SP_MET", latest.toString()));
+		assertEquals(rolledUntil, rollupDAO.getRolledUntil(airTemp));
+		assertEquals(syncedUntil, seriesStore.getSyncedUntil(airTemp));
+		assertEquals(0, ingestService.getRewinds());
+	}
+
+	@Test
+	public void rollsUpAndStoresRowsBackfilledBehindTheWatermark() throws Exception {
+		SeriesSource airTemp = SeriesSource.lookup("SP", SeriesSource.AIR_TEMP);
+		RollupService rollupService = context.getBean(RollupService.class);
+		SeriesStoreService seriesStoreService = context.getBean(SeriesStoreService.class);
+		SeriesStore seriesStore = context.getBean(SeriesStore.class);
+		rollupService.update(airTemp);
+		seriesStoreService.sync(airTemp);
+		RollupDAO rollupDAO = context.getBean(RollupDAO.class);
+		assertEquals(PrnParserTest.time("2016-08-04 23:59:00"), rollupDAO.getRolledUntil(airTemp).getTime());
+
+		/* between the seeded minutes, so new rows */
+		Path backfill = directory.resolve("SP_BACKFILL.PRN");
+		PrnParserTest.append(backfill, metLine("2016-08-04 10:00:30", "40.0", "3.2", "180") + "\n"
+				+ metLine("2016-08-04 10:01:30", "41.0", "3.2", "180") + "\n");
+		assertEquals(2, ingestService.backfill("SP_MET", backfill.toString()));
+		assertEquals(PrnParserTest.time("2016-08-04 00:00:00"), rollupDAO.getRolledUntil(airTemp).getTime());
+		assertEquals(SeriesStore.monthStart(PrnParserTest.time("2016-08-04 00:00:00")),
+				seriesStore.getSyncedUntil(airTemp).getTime());
+
+		rollupService.update(airTemp);
+		seriesStoreService.sync(airTemp);
+		long hour = PrnParserTest.time("2016-08-04 10:00:00");
+		SeriesBuckets hourly = new SeriesBuckets(3600000L);
+		rollupDAO.addRollups(RollupPeriod.HOUR, airTemp, null, new Date(hour), new Date(hour + 3600000L), hourly);
+		assertEquals(62, hourly.getPoints().get(0).getCount().intValue());
+		assertEquals(41.0, hourly.getPoints().get(0).getMax(), 1e-9);
+		final List<Double> stored = new ArrayList<Double>();
+		seriesStore.read(airTemp, null, hour, hour + 120000, 10, new SampleHandler() {
+			public void sample(long sampleDate, double value) {
+				stored.add(value);
+			}
+		});
+		assertEquals(4, stored.size());
+		assertEquals(40.0, stored.get(1), 1e-9);
+	}
+
+	/* fields 0-31 of MendotaBuoy_limnodata, as get_phyco.R reads them */
+	static String limnoLine(String timestamp, String phycocyanin) {
+		StringBuilder line = new StringBuilder("\"" + timestamp + "\",1207");
+		for (int field = 2; field <= 31; field++) {
+			line.append(',').append(field == 31 ? phycocyanin : "1.0");
+		}
+		return line.toString();
+	}
+
+	/* fields 0-41 of SP_LATEST_0.PRN, as process_latest_SP.R reads them */
+	static String metLine(String timestamp, String airTemp, String windSpeed, String windDir) {
+		StringBuilder line = new StringBuilder("\"" + timestamp + "\",48954," + airTemp);
+		for (int field = 3; field <= 41; field++) {
+			line.append(',').append(field == 35 ? windSpeed : field == 36 ? windDir : field == 37 ? "960" : "1.0");
+		}
+		return line.toString();
+	}
+}
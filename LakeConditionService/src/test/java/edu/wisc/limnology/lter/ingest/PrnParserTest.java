@@ -0,0 +1,126 @@
+package edu.wisc.limnology.lter.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+
+public class PrnParserTest {
+
+	static final PrnLayout SP_WTEMP = PrnLayout.lookup("SP_WTEMP");
+
+	@Test
+	public void parsesProfileLines() throws Exception {
+		PrnParser parser = new PrnParser(SP_WTEMP);
+		PrnBatch batch = new PrnBatch(SP_WTEMP, 10);
+		String text = profileLine("2016-08-05 13:03:00", "23.125") + "\r\n"
+				+ "garbage\n"
+				+ "\"2016-08-05 13:04:00\",7,1.5\n"
+				+ profileLine("2016-08-05 13:05:00", "\"NAN\"") + "\n"
+				+ profileLine("2016-08-05 13:06:00", "-1.5e1");
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+
+		int consumed = parser.parse(buffer, batch);
+		assertEquals(text.lastIndexOf('\n') + 1, consumed);
+		assertEquals(2, batch.size());
+		assertEquals(2, parser.getSkippedLines());
+		assertEquals(time("2016-08-05 13:03:00"), batch.getTime(0));
+		assertEquals(23.125, batch.getValue(0, 0), 0);
+		assertEquals(18.0, batch.getValue(24, 0), 0);
+		assertTrue(Double.isNaN(batch.getValue(0, 1)));
+	}
+
+	@Test
+	public void readsDecimalsExactly() {
+		for (String number : new String[] { "17.900", "-0.125", "963.1", "0.000", "+4", "123456.789012345" }) {
+			assertEquals(number, Double.parseDouble(number), parse(number), 0);
+		}
+		assertEquals(1.5e-3, parse("1.5E-3"), 0);
+		assertTrue(Double.isNaN(parse("")));
+		assertTrue(Double.isNaN(parse("INF")));
+		assertTrue(Double.isNaN(parse("1.2.3")));
+	}
+
+	@Test
+	public void dropsCumulativePrecipitationFromTheOverflowOn() throws Exception {
+		PrnLayout spMet = PrnLayout.lookup("SP_MET");
+		int precipitation = spMet.getFields().size() - 1;
+		assertEquals("cumulative_precipitation", spMet.getFields().get(precipitation).getColumn());
+		PrnParser parser = new PrnParser(spMet);
+		PrnBatch batch = new PrnBatch(spMet, 10);
+		String line = IngestServiceTest.metLine("2016-08-05 13:03:00", "21.5", "3.2", "180");
+		String text = line + "\n" + line.replaceFirst("1\\.0$", "7999") + "\n"
+				+ line.replaceFirst("1\\.0$", "7998.9") + "\n";
+
+		parser.parse(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), batch);
+		assertEquals(3, batch.size());
+		assertEquals(1.0, batch.getValue(precipitation, 0), 0);
+		assertTrue(Double.isNaN(batch.getValue(precipitation, 1)));
+		assertEquals(7998.9, batch.getValue(precipitation, 2), 0);
+	}
+
+	@Test
+	public void tailsAppendedLinesFromCheckpoint() throws Exception {
+		Path directory = Files.createTempDirectory("prn");
+		Path file = directory.resolve("SP_LATEST_WTEMP.PRN");
+		Path checkpoint = directory.resolve("checkpoints/SP_WTEMP.offset");
+		PrnBatch batch = new PrnBatch(SP_WTEMP, 10);
+
+		append(file, profileLine("2016-08-05 13:03:00", "23.1") + "\n" + profileLine("2016-08-05 13:04:00", "23.2"));
+		PrnTailer tailer = new PrnTailer(file, checkpoint, new PrnParser(SP_WTEMP), 1 << 20);
+		tailer.read(batch);
+		assertEquals(1, batch.size());
+		tailer.commit();
+
+		/* the partial line completes, another follows; a new tailer resumes from the checkpoint */
+		append(file, "\n" + profileLine("2016-08-05 13:05:00", "23.3") + "\n");
+		tailer = new PrnTailer(file, checkpoint, new PrnParser(SP_WTEMP), 1 << 20);
+		tailer.read(batch);
+		assertEquals(2, batch.size());
+		assertEquals(23.2, batch.getValue(0, 0), 0);
+		tailer.rollback();
+		tailer.read(batch);
+		assertEquals(2, batch.size());
+		tailer.commit();
+		assertEquals(0, tailer.read(batch));
+
+		/* replaced by a new file at least as long: read from the start */
+		Files.delete(file);
+		append(file, profileLine("2016-08-06 00:00:00", "20.0") + "\n" + profileLine("2016-08-06 00:01:00", "20.1")
+				+ "\n" + profileLine("2016-08-06 00:02:00", "20.2") + "\n");
+		tailer.read(batch);
+		assertEquals(3, batch.size());
+		assertEquals(time("2016-08-06 00:00:00"), batch.getTime(0));
+		tailer.commit();
+	}
+
+	static String profileLine(String timestamp, String surface) {
+		StringBuilder line = new StringBuilder("\"" + timestamp + "\",48954," + surface);
+		for (int depth = 1; depth < 25; depth++) {
+			line.append(',').append(18 + depth * 0.0);
+		}
+		return line.toString();
+	}
+
+	static long time(String timestamp) throws Exception {
+		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse(timestamp).getTime();
+	}
+
+	static double parse(String number) {
+		return PrnParser.parseDouble(ByteBuffer.wrap(number.getBytes(StandardCharsets.US_ASCII)), 0,
+				number.length());
+	}
+
+	static void append(Path file, String text) throws IOException {
+		Files.write(file, text.getBytes(StandardCharsets.US_ASCII), StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND);
+	}
+}
@@ -0,0 +1,69 @@
+package edu.wisc.limnology.lter.loadtest;
+
+import java.net.URI;
+import java.sql.SQLException;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+
+/**
+ * The webapp served over HTTP by an in-process Grizzly server, wired to the
+ * embedded buoy database. Resources are mounted under /webapi/ as in
+ * web.xml; the Grizzly container does not route multi-segment context paths,
+ * so the /LakeConditionService context of a deployed instance is left off.
+ */
+public class EmbeddedLakeConditionServer {
+
+	public static final String CONTEXT_PATH = "/webapi/";
+
+	private final ClassPathXmlApplicationContext context;
+	private final HttpServer server;
+	private final URI baseUri;
+
+	private EmbeddedLakeConditionServer(ClassPathXmlApplicationContext context, HttpServer server, URI baseUri) {
+		this.context = context;
+		this.server = server;
+		this.baseUri = baseUri;
+	}
+
+	/**
+	 * @param port the port to listen on, 0 for any free port
+	 */
+	public static EmbeddedLakeConditionServer start(int port) throws SQLException {
+		ClassPathXmlApplicationContext context = EmbeddedBuoyDatabase.createContext();
+		try {
+			ResourceConfig config = new ResourceConfig().packages("edu.wisc.limnology.lter")
+					.property("contextConfig", context);
+			HttpServer server = GrizzlyHttpServerFactory.createHttpServer(
+					URI.create("http://localhost:" + port + CONTEXT_PATH), config);
+			int boundPort = server.getListener("grizzly").getPort();
+			return new EmbeddedLakeConditionServer(context, server,
+					URI.create("http://localhost:" + boundPort + CONTEXT_PATH));
+		} catch (RuntimeException e) {
+			context.close();
+			EmbeddedBuoyDatabase.uninstall();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the base URI resources are served under, ending in "/"
+	 */
+	public URI getBaseUri() {
+		return baseUri;
+	}
+
+	public ClassPathXmlApplicationContext getContext() {
+		return context;
+	}
+
+	public void stop() {
+		server.shutdownNow();
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+}
@@ -0,0 +1,262 @@
+package edu.wisc.limnology.lter.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Closed-loop HTTP load against /lakeConditions: each of concurrency threads
+ * issues its next request as soon as the previous one completes, picking the
+ * list resource with probability listRatio and otherwise a random lake.
+ * Requests completed during the warmup are discarded.
+ * <p>
+ * Configured with system properties:
+ * <ul>
+ * <li>loadtest.url - base URI of a deployed instance; when absent the app is
+ * started in-process over the embedded database</li>
+ * <li>loadtest.concurrency (8), loadtest.warmupSeconds (5),
+ * loadtest.durationSeconds (30)</li>
+ * <li>loadtest.listRatio (0.2), loadtest.lakeIds (ME,TR,SP)</li>
+ * <li>loadtest.gzip (false) - send Accept-Encoding: gzip</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+	final URI baseUri;
+	final int concurrency;
+	final long warmupMillis;
+	final long durationMillis;
+	final double listRatio;
+	final String[] lakeIds;
+	final boolean gzip;
+
+	public LoadGenerator(URI baseUri, int concurrency, long warmupMillis, long durationMillis, double listRatio,
+			String[] lakeIds, boolean gzip) {
+		this.baseUri = baseUri;
+		this.concurrency = concurrency;
+		this.warmupMillis = warmupMillis;
+		this.durationMillis = durationMillis;
+		this.listRatio = listRatio;
+		this.lakeIds = lakeIds;
+		this.gzip = gzip;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String url = System.getProperty("loadtest.url");
+		EmbeddedLakeConditionServer server = null;
+		URI baseUri;
+		if (url == null || url.isEmpty()) {
+			server = EmbeddedLakeConditionServer.start(Integer.getInteger("loadtest.port", 0));
+			baseUri = server.getBaseUri();
+		} else {
+			baseUri = URI.create(url.endsWith("/") ? url : url + "/");
+		}
+		try {
+			LoadGenerator generator = new LoadGenerator(baseUri, Integer.getInteger("loadtest.concurrency", 8),
+					Long.getLong("loadtest.warmupSeconds", 5) * 1000, Long.getLong("loadtest.durationSeconds", 30) * 1000,
+					Double.parseDouble(System.getProperty("loadtest.listRatio", "0.2")),
+					System.getProperty("loadtest.lakeIds", "ME,TR,SP").split(","),
+					Boolean.getBoolean("loadtest.gzip"));
+			System.out.println(generator.run());
+		} finally {
+			if (server != null) {
+				server.stop();
+			}
+		}
+	}
+
+	public Report run() throws InterruptedException {
+		long start = System.nanoTime();
+		long measureFrom = start + warmupMillis * 1000000L;
+		long measureUntil = measureFrom + durationMillis * 1000000L;
+
+		CountDownLatch done = new CountDownLatch(concurrency);
+		List<Worker> workers = new ArrayList<Worker>(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			Worker worker = new Worker(i, measureFrom, measureUntil, done);
+			workers.add(worker);
+			Thread thread = new Thread(worker, "loadtest-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		done.await();
+
+		Report report = new Report(concurrency, durationMillis);
+		for (Worker worker : workers) {
+			report.add(worker);
+		}
+		report.finish();
+		return report;
+	}
+
+	class Worker implements Runnable {
+		final Random random;
+		final long measureFrom;
+		final long measureUntil;
+		final CountDownLatch done;
+		final byte[] buffer = new byte[8192];
+
+		long[] latencies = new long[1024];
+		int count;
+		long listRequests;
+		long lakeRequests;
+		long notModified;
+		long errors;
+		String lastError;
+
+		Worker(int seed, long measureFrom, long measureUntil, CountDownLatch done) {
+			this.random = new Random(seed);
+			this.measureFrom = measureFrom;
+			this.measureUntil = measureUntil;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long now;
+				while ((now = System.nanoTime()) < measureUntil) {
+					boolean list = random.nextDouble() < listRatio;
+					String path = list ? "lakeConditions" : "lakeConditions/" + lakeIds[random.nextInt(lakeIds.length)];
+					int status;
+					try {
+						status = get(baseUri.resolve(path).toURL());
+					} catch (IOException e) {
+						status = -1;
+						lastError = e.toString();
+					}
+					long end = System.nanoTime();
+					if (now < measureFrom) {
+						continue;
+					}
+					if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+						record(end - now);
+						if (list) {
+							listRequests++;
+						} else {
+							lakeRequests++;
+						}
+						if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+							notModified++;
+						}
+					} else {
+						errors++;
+						if (status > 0) {
+							lastError = "HTTP " + status + " for " + path;
+						}
+					}
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		/* reads the whole body so that the connection goes back to the keep-alive cache */
+		int get(URL url) throws IOException {
+			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			conn.setRequestProperty("Accept", "application/json");
+			if (gzip) {
+				conn.setRequestProperty("Accept-Encoding", "gzip");
+			}
+			int status = conn.getResponseCode();
+			InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+			if (in != null) {
+				try {
+					while (in.read(buffer) != -1) {
+					}
+				} finally {
+					in.close();
+				}
+			}
+			return status;
+		}
+
+		void record(long nanos) {
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = nanos;
+		}
+	}
+
+	/**
+	 * Throughput and latency percentiles over the measured window.
+	 */
+	public static class Report {
+		final int concurrency;
+		final long durationMillis;
+		long[] latencies = new long[0];
+		long listRequests;
+		long lakeRequests;
+		long notModified;
+		long errors;
+		String lastError;
+
+		Report(int concurrency, long durationMillis) {
+			this.concurrency = concurrency;
+			this.durationMillis = durationMillis;
+		}
+
+		void add(Worker worker) {
+			int offset = latencies.length;
+			latencies = Arrays.copyOf(latencies, offset + worker.count);
+			System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+			listRequests += worker.listRequests;
+			lakeRequests += worker.lakeRequests;
+			notModified += worker.notModified;
+			errors += worker.errors;
+			if (worker.lastError != null) {
+				lastError = worker.lastError;
+			}
+		}
+
+		void finish() {
+			Arrays.sort(latencies);
+		}
+
+		public long getRequests() {
+			return latencies.length;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getThroughput() {
+			return latencies.length * 1000.0 / durationMillis;
+		}
+
+		/**
+		 * @param percentile between 0 and 100
+		 * @return the latency in milliseconds, or NaN if nothing was measured
+		 */
+		public double getLatencyMillis(double percentile) {
+			if (latencies.length == 0) {
+				return Double.NaN;
+			}
+			int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("concurrency %d, %d s: %d requests (%d list, %d per-lake, %d not modified), %d errors%n",
+					concurrency, durationMillis / 1000, getRequests(), listRequests, lakeRequests, notModified, errors));
+			sb.append(String.format("throughput %.1f req/s%n", getThroughput()));
+			sb.append(String.format("latency ms p50 %.3f  p90 %.3f  p99 %.3f  max %.3f", getLatencyMillis(50),
+					getLatencyMillis(90), getLatencyMillis(99), getLatencyMillis(100)));
+			if (lastError != null) {
+				sb.append(String.format("%nlast error: %s", lastError));
+			}
+			return sb.toString();
+		}
+	}
+}
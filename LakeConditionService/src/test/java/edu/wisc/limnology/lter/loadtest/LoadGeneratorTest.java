@@ -0,0 +1,33 @@
+package edu.wisc.limnology.lter.loadtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LoadGeneratorTest {
+
+	EmbeddedLakeConditionServer server;
+
+	@Before
+	public void init() throws Exception {
+		server = EmbeddedLakeConditionServer.start(0);
+	}
+
+	@After
+	public void destroy() {
+		server.stop();
+	}
+
+	@Test
+	public void servesListAndPerLakeRequestsOverHttp() throws Exception {
+		LoadGenerator generator = new LoadGenerator(server.getBaseUri(), 2, 0, 1000, 0.5,
+				new String[] { "ME", "TR", "SP" }, true);
+		LoadGenerator.Report report = generator.run();
+		assertEquals(report.toString(), 0, report.getErrors());
+		assertTrue(report.getRequests() > 0);
+		assertTrue(report.getLatencyMillis(50) <= report.getLatencyMillis(99));
+	}
+}
@@ -0,0 +1,66 @@
+package edu.wisc.limnology.lter.qc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class RangeCheckTest {
+
+	static final String CSV = "\"variable\",\"month_1\",\"month_2\",\"month_3\",\"month_4\",\"month_5\",\"month_6\","
+			+ "\"month_7\",\"month_8\",\"month_9\",\"month_10\",\"month_11\",\"month_12\"\n"
+			+ "\"dOptoTempMax\",5,5,8,12,20,25,30,31,28,20,10,6\n"
+			+ "\"dOptoTempMin\",0,0,0,1,4,10,15,16,12,6,1,0\n"
+			+ "\"unused\",NA,,x,1,1,1,1,1,1,1,1\n";
+
+	@Test
+	public void readsBoundsByRowAsTheScriptsDo() throws IOException {
+		RangeCheckTable table = RangeCheckTable.read(new StringReader(CSV));
+		assertEquals(3, table.size());
+		assertEquals("dOptoTempMin", table.getName(2));
+		assertEquals(31, table.getBounds(1)[7], 0);
+		assertArrayEquals(table.getBounds(2), table.getBounds("dOptoTempMin"), 0);
+		assertNull(table.getBounds("dOptoPPMMax"));
+		double[] unused = table.getBounds(3);
+		assertTrue(Double.isNaN(unused[0]) && Double.isNaN(unused[1]) && Double.isNaN(unused[2]));
+		assertTrue(Double.isNaN(unused[11]));
+	}
+
+	@Test
+	public void flagsEachValueAgainstItsMonth() throws IOException {
+		RangeCheckTable table = RangeCheckTable.read(new StringReader(CSV));
+		RangeCheck check = RangeCheck.monthly(table.getBounds(2), table.getBounds(1));
+		TimeZone chicago = TimeZone.getTimeZone("America/Chicago");
+		long[] times = { time(chicago, 2016, Calendar.JULY, 31, 23, 59), time(chicago, 2016, Calendar.AUGUST, 1, 0, 0),
+				time(chicago, 2016, Calendar.AUGUST, 1, 0, 1), time(chicago, 2016, Calendar.AUGUST, 1, 0, 2),
+				time(chicago, 2017, Calendar.JANUARY, 1, 0, 0) };
+		double[] values = { 30.5, 30.5, Double.NaN, 15.9, 5 };
+		int[] months = new int[times.length];
+		new MonthIndex(chicago).monthsOf(times, months, times.length);
+		assertArrayEquals(new int[] { 6, 7, 7, 7, 0 }, months);
+
+		char[] flags = new char[times.length];
+		assertEquals(2, check.apply(values, months, flags, times.length));
+		assertArrayEquals(new char[] { 'H', RangeCheck.NO_FLAG, RangeCheck.NO_FLAG, 'H', RangeCheck.NO_FLAG },
+				flags);
+
+		assertEquals(3, check.flaggingMissing().apply(values, months, flags, times.length));
+		assertEquals(RangeCheck.MISSING, flags[2]);
+		assertEquals(RangeCheck.OUT_OF_RANGE, RangeCheck.between(0, 20).check(20.1, 4));
+		assertEquals(RangeCheck.NO_FLAG, RangeCheck.between(Double.NaN, 20).check(-1, 4));
+	}
+
+	static long time(TimeZone timeZone, int year, int month, int day, int hour, int minute) {
+		Calendar calendar = Calendar.getInstance(timeZone);
+		calendar.clear();
+		calendar.set(year, month, day, hour, minute);
+		return calendar.getTimeInMillis();
+	}
+}
@@ -0,0 +1,106 @@
+package edu.wisc.limnology.lter.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+
+import javax.sql.DataSource;
+import javax.ws.rs.WebApplicationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.wisc.limnology.lter.loadtest.EmbeddedLakeConditionServer;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+
+public class LakeConditionEventsResourceTest {
+
+	EmbeddedLakeConditionServer server;
+	LakeConditionService lakeConditionService;
+	JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void init() throws Exception {
+		server = EmbeddedLakeConditionServer.start(0);
+		lakeConditionService = server.getContext().getBean(LakeConditionService.class);
+		jdbcTemplate = new JdbcTemplate(server.getContext().getBean(DataSource.class));
+		/* subscribers are turned away until the first load */
+		lakeConditionService.getSnapshot();
+	}
+
+	@After
+	public void destroy() {
+		server.stop();
+	}
+
+	@Test
+	public void pushesOnlyChangesToTheSubscribedLake() throws IOException {
+		HttpURLConnection connection = open("lakeConditions/me/events");
+		assertEquals(200, connection.getResponseCode());
+		assertTrue(connection.getContentType().startsWith("text/event-stream"));
+		BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+		try {
+			String data = nextData(reader);
+			assertTrue(data, data.contains("\"lakeId\":\"ME\""));
+			assertTrue(data, data.contains("\"waterTemp\":14.2"));
+
+			jdbcTemplate.update("update buoy_current_conditions set watertemp = 17.0,"
+					+ " sampledate = '2015-05-21 15:30:00' where lakeid = 'TR'");
+			lakeConditionService.reload();
+			jdbcTemplate.update("update buoy_current_conditions set watertemp = 21.7,"
+					+ " sampledate = '2015-05-21 15:31:00' where lakeid = 'ME'");
+			lakeConditionService.reload();
+
+			data = nextData(reader);
+			assertTrue(data, data.contains("\"lakeId\":\"ME\""));
+			assertTrue(data, data.contains("\"waterTemp\":21.7"));
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Test
+	public void rejectsUnknownLake() throws IOException {
+		assertEquals(404, open("lakeConditions/XX/events").getResponseCode());
+	}
+
+	@Test
+	public void turnsSubscribersAwayUntilTheFirstLoad() throws Exception {
+		LakeConditionEventsResource resource = new LakeConditionEventsResource();
+		resource.setLakeConditionService(new LakeConditionService());
+		try {
+			resource.subscribe("ME", null);
+			fail("Subscribed without a snapshot");
+		} catch (WebApplicationException e) {
+			assertEquals(503, e.getResponse().getStatus());
+			assertEquals("5", e.getResponse().getHeaderString("Retry-After"));
+		} finally {
+			resource.shutdown();
+		}
+	}
+
+	HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) server.getBaseUri().resolve(path).toURL()
+				.openConnection();
+		connection.setRequestProperty("Accept", "text/event-stream");
+		connection.setReadTimeout(10000);
+		return connection;
+	}
+
+	static String nextData(BufferedReader reader) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null) {
+			if (line.startsWith("data:")) {
+				return line;
+			}
+		}
+		throw new IOException("Stream ended");
+	}
+}
@@ -0,0 +1,333 @@
+package edu.wisc.limnology.lter.resources;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+
+import edu.wisc.limnology.lter.database.LakeConditionDAO;
+import edu.wisc.limnology.lter.model.LakeCondition;
+import edu.wisc.limnology.lter.services.DatabaseExecutor;
+import edu.wisc.limnology.lter.services.LakeConditionService;
+import edu.wisc.limnology.lter.utils.TimestampFormat;
+
+public class LakeConditionResourceTest {
+
+	AnnotationConfigApplicationContext context;
+	ApplicationHandler handler;
+	static final String LOCAL_SAMPLE_DATE = new TimestampFormat().format(1432239555000L);
+
+	StubDAO dao;
+	DatabaseExecutor databaseExecutor;
+
+	@Before
+	public void init() {
+		dao = new StubDAO();
+		dao.add("ME", "Lake Mendota", 1432239555000L, 21.5);
+		dao.add("TR", "Trout Lake", 1432239600000L, 15.0);
+
+		Properties properties = new Properties();
+		properties.setProperty("cache.maxAgeMillis", "300000");
+		properties.setProperty("cache.refreshIntervalMillis", "30000");
+		properties.setProperty("cache.staleAfterMillis", "90000");
+		properties.setProperty("async.timeoutMillis", "30000");
+		PropertySourcesPlaceholderConfigurer placeholders = new PropertySourcesPlaceholderConfigurer();
+		placeholders.setProperties(properties);
+
+		context = new AnnotationConfigApplicationContext();
+		context.addBeanFactoryPostProcessor(placeholders);
+		context.getBeanFactory().registerSingleton("lakeConditionDAO", dao);
+		databaseExecutor = new DatabaseExecutor(1, 1);
+		context.getBeanFactory().registerSingleton("databaseExecutor", databaseExecutor);
+		context.register(LakeConditionService.class, LakeConditionResource.class);
+		context.refresh();
+
+		handler = new ApplicationHandler(new ResourceConfig(LakeConditionResource.class)
+				.property("contextConfig", context));
+	}
+
+	@After
+	public void destroy() throws InterruptedException {
+		dao.firstLoad.countDown();
+		context.close();
+		databaseExecutor.shutdown();
+	}
+
+	@Test
+	public void rendersJsonOnce() throws Exception {
+		ContainerResponse first = get("lakeConditions/ME", null, null);
+		assertEquals(200, first.getStatus());
+		String json = new String((byte[]) first.getEntity(), "UTF-8");
+		assertTrue(json, json.contains("\"lakeId\":\"ME\""));
+		assertNotNull(first.getEntityTag());
+		assertNotNull(first.getLastModified());
+
+		ContainerResponse second = get("lakeConditions/ME", null, null);
+		assertTrue(first.getEntity() == second.getEntity());
+		assertEquals(1, dao.loads);
+	}
+
+	@Test
+	public void keepsRenderingWhileVersionHolds() throws Exception {
+		ContainerResponse first = get("lakeConditions/ME", null, null);
+		LakeConditionService service = context.getBean(LakeConditionService.class);
+		service.reload();
+		assertTrue(first.getEntity() == get("lakeConditions/ME", null, null).getEntity());
+
+		dao.lakeConditions.remove(0);
+		dao.add("ME", "Lake Mendota", 1432239555000L, 22.0);
+		service.reload();
+		ContainerResponse changed = get("lakeConditions/ME", first.getHeaderString("ETag"), null);
+		assertEquals(200, changed.getStatus());
+		assertEquals(3, dao.loads);
+	}
+
+	@Test
+	public void movesLastModifiedOnUpdatesInPlace() throws Exception {
+		ContainerResponse first = get("lakeConditions/ME", null, null);
+		ContainerRequest unmodified = request("lakeConditions/ME", null, null);
+		unmodified.header("If-Modified-Since", first.getHeaderString("Last-Modified"));
+		assertEquals(304, handler.apply(unmodified).get().getStatus());
+
+		/* same sampleDate, another reading */
+		dao.lakeConditions.set(0, new LakeCondition.Builder(dao.lakeConditions.get(0)).windDir(225).build());
+		context.getBean(LakeConditionService.class).reload();
+		ContainerRequest modified = request("lakeConditions/ME", null, null);
+		modified.header("If-Modified-Since", first.getHeaderString("Last-Modified"));
+		ContainerResponse changed = handler.apply(modified).get();
+		assertEquals(200, changed.getStatus());
+		assertTrue(changed.getLastModified().getTime() / 1000 > first.getLastModified().getTime() / 1000);
+	}
+
+	@Test
+	public void answersUnavailableWhileFirstLoadHangs() throws Exception {
+		dao.firstLoad = new CountDownLatch(1);
+		context.getBean(LakeConditionResource.class).setTimeoutMillis(500);
+		Future<ContainerResponse> waiting = handler.apply(request("lakeConditions/ME", null, null));
+		/* the one executor thread is stuck in the load, the queue holds one more */
+		Future<ContainerResponse> queued = handler.apply(request("lakeConditions", null, null));
+		ContainerResponse rejected = get("lakeConditions/TR", null, null);
+		assertEquals(503, rejected.getStatus());
+		assertEquals("5", rejected.getHeaderString("Retry-After"));
+
+		assertEquals(503, waiting.get().getStatus());
+		assertEquals(503, queued.get().getStatus());
+		assertEquals(2, databaseExecutor.getTimeouts());
+		assertEquals(1, databaseExecutor.getRejected());
+
+		dao.firstLoad.countDown();
+		context.getBean(LakeConditionService.class).getSnapshot();
+		assertEquals(200, get("lakeConditions/ME", null, null).getStatus());
+	}
+
+	@Test
+	public void servesLastSnapshotFlaggedStaleWhileDatabaseFails() throws Exception {
+		ContainerResponse fresh = get("lakeConditions/ME", null, null);
+		assertNull(fresh.getHeaderString("Warning"));
+
+		LakeConditionService service = context.getBean(LakeConditionService.class);
+		dao.failing = true;
+		service.refresh();
+		assertEquals(1, service.getRefreshFailures());
+		service.setStaleAfterMillis(0);
+		ContainerResponse stale = get("lakeConditions/ME", null, null);
+		assertEquals(200, stale.getStatus());
+		assertEquals(LakeConditionResource.STALE_WARNING, stale.getHeaderString("Warning"));
+		assertTrue(fresh.getEntity() == stale.getEntity());
+
+		dao.failing = false;
+		service.setStaleAfterMillis(90000);
+		service.refresh();
+		assertNull(get("lakeConditions/ME", null, null).getHeaderString("Warning"));
+	}
+
+	@Test
+	public void batchMatchesSingleLakeJson() throws Exception {
+		dao.lakeConditions.set(0, new LakeCondition.Builder(dao.lakeConditions.get(0)).windDir(225).phycoMedian(420.5)
+				.secchiEstTimestamp(new Date(1432238400000L)).build());
+		dao.lakeConditions.set(1, new LakeCondition.Builder(dao.lakeConditions.get(1)).lakeName("Trout \"Lake\"\\")
+				.build());
+		String me = new String((byte[]) get("lakeConditions/ME", null, null).getEntity(), "UTF-8");
+		String tr = new String((byte[]) get("lakeConditions/TR", null, null).getEntity(), "UTF-8");
+
+		ContainerResponse batch = get("lakeConditions/batch?lakeIds=tr,ME,XX", null, null);
+		assertEquals(200, batch.getStatus());
+		assertEquals("{\"ME\":" + me + ",\"TR\":" + tr + ",\"XX\":null}",
+				new String((byte[]) batch.getEntity(), "UTF-8"));
+		assertEquals(context.getBean(LakeConditionService.class).getSnapshot().getLastModified(),
+				batch.getLastModified());
+		assertTrue(batch.getEntity() == get("lakeConditions/batch?lakeIds=XX,TR,ME", null, null).getEntity());
+	}
+
+	@Test
+	public void batchProjectsFields() throws Exception {
+		ContainerResponse batch = get("lakeConditions/batch?lakeIds=ME,TR&fields=waterTemp,airTemp,lakeName", null,
+				null);
+		assertEquals("{\"ME\":{\"airTemp\":21.5,\"lakeName\":\"Lake Mendota\",\"waterTemp\":null},"
+				+ "\"TR\":{\"airTemp\":15.0,\"lakeName\":\"Trout Lake\",\"waterTemp\":null}}",
+				new String((byte[]) batch.getEntity(), "UTF-8"));
+
+		assertEquals(400, get("lakeConditions/batch?lakeIds=ME&fields=depth", null, null).getStatus());
+		assertEquals(400, get("lakeConditions/batch", null, null).getStatus());
+		assertEquals(400, get("lakeConditions/batch?lakeIds=,", null, null).getStatus());
+	}
+
+	@Test
+	public void projectsFieldsOfOneOrAllLakes() throws Exception {
+		assertEquals("{\"airTemp\":21.5,\"sampleDate\":\"" + LOCAL_SAMPLE_DATE + "\"}",
+				new String((byte[]) get("lakeConditions/ME?fields=sampleDate,airTemp", null, null).getEntity(),
+						"UTF-8"));
+		assertEquals("[{\"lakeId\":\"ME\"},{\"lakeId\":\"TR\"}]",
+				new String((byte[]) get("lakeConditions?fields=lakeId", null, null).getEntity(), "UTF-8"));
+		assertEquals(400, get("lakeConditions?fields=formatedSampleDate", null, null).getStatus());
+
+		/* every field is the MOXy rendering */
+		String all = "airTemp,lakeId,lakeName,phycoMedian,sampleDate,sampleTime,secchiEst,secchiEstTimestamp,"
+				+ "thermoclineDepth,waterTemp,windDir,windGust,windSpeed";
+		assertTrue(get("lakeConditions?fields=" + all, null, null).getEntity() == get("lakeConditions", null, null)
+				.getEntity());
+	}
+
+	@Test
+	public void negotiatesCbor() throws Exception {
+		ContainerRequest request = request("lakeConditions/ME?fields=airTemp,lakeId,sampleDate", null, null);
+		request.header("Accept", "application/cbor");
+		ContainerResponse response = handler.apply(request).get();
+		assertEquals(200, response.getStatus());
+		assertEquals("application/cbor", response.getMediaType().toString());
+		assertTrue(response.getHeaderString("Vary").contains("Accept"));
+		/* {"airTemp": 21.5 (half float), "lakeId": "ME", "sampleDate": 1(1432239555)} */
+		assertEquals("a36761697254656d70f94d60666c616b654964624d456a73616d706c6544617465c11a555e3dc3",
+				hex((byte[]) response.getEntity()));
+
+		request = request("lakeConditions/batch?lakeIds=ME,XX&fields=lakeId", null, null);
+		request.header("Accept", "application/cbor, application/json;q=0.5");
+		/* {"ME": {"lakeId": "ME"}, "XX": null} */
+		assertEquals("a2624d45a1666c616b654964624d45625858f6",
+				hex((byte[]) handler.apply(request).get().getEntity()));
+	}
+
+	@Test
+	public void answersConditionalRequestsWithNotModified() throws Exception {
+		ContainerResponse first = get("lakeConditions", null, null);
+		String etag = first.getHeaderString("ETag");
+
+		ContainerResponse second = get("lakeConditions", etag, null);
+		assertEquals(304, second.getStatus());
+		assertNull(second.getEntity());
+		assertEquals(etag, second.getHeaderString("ETag"));
+
+		ContainerResponse otherLake = get("lakeConditions/TR", etag, null);
+		assertEquals(200, otherLake.getStatus());
+	}
+
+	@Test
+	public void servesGzipVariantWithItsOwnTag() throws Exception {
+		ContainerResponse plain = get("lakeConditions", null, null);
+		ContainerResponse gzipped = get("lakeConditions", null, "gzip, deflate");
+
+		assertEquals("gzip", gzipped.getHeaderString("Content-Encoding"));
+		assertFalse(plain.getHeaderString("ETag").equals(gzipped.getHeaderString("ETag")));
+		assertArrayEquals((byte[]) plain.getEntity(), gunzip((byte[]) gzipped.getEntity()));
+
+		assertEquals(304, get("lakeConditions", gzipped.getHeaderString("ETag"), "gzip").getStatus());
+		assertNull(get("lakeConditions", null, "gzip;q=0").getHeaderString("Content-Encoding"));
+	}
+
+	ContainerResponse get(String path, String ifNoneMatch, String acceptEncoding) throws Exception {
+		return handler.apply(request(path, ifNoneMatch, acceptEncoding)).get();
+	}
+
+	static ContainerRequest request(String path, String ifNoneMatch, String acceptEncoding) {
+		ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"),
+				URI.create("http://localhost/" + path), "GET", null, new MapPropertiesDelegate());
+		if (ifNoneMatch != null) {
+			request.header("If-None-Match", ifNoneMatch);
+		}
+		if (acceptEncoding != null) {
+			request.header("Accept-Encoding", acceptEncoding);
+		}
+		return request;
+	}
+
+	static String hex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+	static byte[] gunzip(byte[] bytes) throws IOException {
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[512];
+		for (int n; (n = in.read(buffer)) > 0;) {
+			out.write(buffer, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	static class StubDAO implements LakeConditionDAO {
+		List<LakeCondition> lakeConditions = new ArrayList<LakeCondition>();
+		CountDownLatch firstLoad = new CountDownLatch(0);
+		volatile boolean failing;
+		int loads;
+
+		void add(String lakeId, String lakeName, long sampleDate, double airTemp) {
+			lakeConditions.add(new LakeCondition.Builder().lakeId(lakeId).lakeName(lakeName)
+					.sampleDate(new Date(sampleDate)).airTemp(airTemp).build());
+		}
+
+		public List<LakeCondition> getLakeConditions() {
+			try {
+				firstLoad.await();
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			loads++;
+			return lakeConditions;
+		}
+
+		public LakeCondition getLakeCondition(String lakeId) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Map<String, String> getChangeSignatures() {
+			if (failing) {
+				throw new CannotGetJdbcConnectionException("stub", new SQLException("Connection refused"));
+			}
+			return Collections.singletonMap("ME", "2015-05-21 15:19:15.0");
+		}
+	}
+}
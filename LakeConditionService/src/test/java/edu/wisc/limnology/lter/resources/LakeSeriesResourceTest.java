@@ -0,0 +1,109 @@
+package edu.wisc.limnology.lter.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+
+public class LakeSeriesResourceTest {
+
+	ClassPathXmlApplicationContext context;
+	ApplicationHandler handler;
+
+	@Before
+	public void init() throws Exception {
+		context = EmbeddedBuoyDatabase.createContext();
+		handler = new ApplicationHandler(new ResourceConfig(LakeSeriesResource.class)
+				.property("contextConfig", context));
+	}
+
+	@After
+	public void destroy() {
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+
+	@Test
+	public void downsamplesToRequestedPoints() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContainerResponse response = get("lakeConditions/ME/series?variable=waterTemp&depth=0"
+				+ "&from=2016-08-04&to=2016-08-05&points=100", out);
+		assertEquals(200, response.getStatus());
+		String json = out.toString("UTF-8");
+		assertTrue(json, json.contains("\"bucketSeconds\":900"));
+		assertTrue(json, json.contains("\"count\":15"));
+		assertFalse(json, json.contains("\"next\""));
+	}
+
+	@Test
+	public void pagesRawSamples() throws Exception {
+		String json = getJson("lakeConditions/TR/series?variable=airTemp&from=2016-08-04&to=2016-08-05&limit=10");
+		assertTrue(json, json.contains("\"next\":\"2016-08-04T00:09:00"));
+
+		json = getJson("lakeConditions/TR/series?variable=airTemp&from=2016-08-04&to=2016-08-05&limit=10"
+				+ "&after=2016-08-04T00:09:00");
+		assertTrue(json, json.contains("\"sampleDate\":\"2016-08-04T00:10:00"));
+		assertFalse(json, json.contains("\"sampleDate\":\"2016-08-04T00:09:00"));
+	}
+
+	@Test
+	public void rejectsUnknownSeriesAndBadDates() throws Exception {
+		assertEquals(404, get("lakeConditions/TR/series?variable=phycocyanin&from=2016-08-04", new ByteArrayOutputStream())
+				.getStatus());
+		assertEquals(400, get("lakeConditions/ME/series?variable=airTemp&from=yesterday", new ByteArrayOutputStream())
+				.getStatus());
+		assertEquals(400, get("lakeConditions/ME/series?variable=airTemp", new ByteArrayOutputStream()).getStatus());
+	}
+
+	@Test
+	public void exportsWholeRangeAsCsv() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ContainerResponse response = get("lakeConditions/SP/series/export?variable=waterTemp&depth=0.25"
+				+ "&from=2016-08-04&to=2016-08-05&format=csv", out);
+		assertEquals(200, response.getStatus());
+		assertEquals("text/csv", response.getMediaType().toString());
+		String[] lines = out.toString("UTF-8").split("\r\n");
+		assertEquals(1441, lines.length);
+		assertEquals("sampleDate,value", lines[0]);
+		assertTrue(lines[1], lines[1].startsWith("2016-08-04T00:00:00,"));
+		assertTrue(lines[1440], lines[1440].startsWith("2016-08-04T23:59:00,"));
+	}
+
+	@Test
+	public void exportsJsonInSeriesPointForm() throws Exception {
+		String json = getJson("lakeConditions/ME/series/export?variable=airTemp&from=2016-08-04T12:00:00"
+				+ "&to=2016-08-04T12:03:00");
+		String paged = getJson("lakeConditions/ME/series?variable=airTemp&from=2016-08-04T12:00:00"
+				+ "&to=2016-08-04T12:03:00");
+		assertTrue(json, json.startsWith("[{\"sampleDate\":\"2016-08-04T12:00:00\",\"value\":"));
+		assertTrue(paged, paged.contains(json.substring(1, json.indexOf('}') + 1)));
+	}
+
+	ContainerResponse get(String path, OutputStream out) throws Exception {
+		ContainerRequest request = new ContainerRequest(URI.create("http://localhost/"),
+				URI.create("http://localhost/" + path), "GET", null, new MapPropertiesDelegate());
+		request.header("Accept", "application/json");
+		return handler.apply(request, out).get();
+	}
+
+	String getJson(String path) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(200, get(path, out).getStatus());
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,82 @@
+package edu.wisc.limnology.lter.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Scanner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.wisc.limnology.lter.loadtest.EmbeddedLakeConditionServer;
+
+public class MetricsResourceTest {
+
+	EmbeddedLakeConditionServer server;
+
+	@Before
+	public void init() throws Exception {
+		server = EmbeddedLakeConditionServer.start(0);
+	}
+
+	@After
+	public void destroy() {
+		server.stop();
+	}
+
+	@Test
+	public void countsRequestsByEndpointTemplate() throws IOException {
+		assertEquals(200, open("lakeConditions/ME").getResponseCode());
+		assertEquals(200, open("lakeConditions/tr").getResponseCode());
+		assertEquals(400, open("lakeConditions/ME?fields=depth").getResponseCode());
+		assertEquals(404, open("nowhere").getResponseCode());
+
+		HttpURLConnection connection = open("metrics");
+		assertEquals(200, connection.getResponseCode());
+		String contentType = connection.getContentType();
+		assertTrue(contentType, contentType.startsWith("text/plain") && contentType.contains("version=0.0.4"));
+		String metrics = read(connection.getInputStream());
+
+		String lake = "method=\"GET\",endpoint=\"/lakeConditions/{lakeId}\"";
+		assertContains(metrics, "lakecondition_http_responses_total{" + lake + ",status=\"200\"} 2");
+		assertContains(metrics, "lakecondition_http_responses_total{" + lake + ",status=\"400\"} 1");
+		assertContains(metrics,
+				"lakecondition_http_responses_total{method=\"GET\",endpoint=\"unmatched\",status=\"404\"} 1");
+		assertContains(metrics, "lakecondition_http_request_duration_seconds_count{" + lake + "} 3");
+		assertContains(metrics, "lakecondition_http_request_duration_seconds_bucket{" + lake + ",le=\"+Inf\"} 3");
+		assertContains(metrics, "lakecondition_http_serialization_duration_seconds_count{" + lake + "}");
+		assertContains(metrics, "lakecondition_http_exceptions_total{type=\"BadRequestException\"} 1");
+		assertContains(metrics,
+				"lakecondition_db_call_duration_seconds_count{operation=\"LakeConditionDAO.getLakeConditions\"}");
+		assertContains(metrics, "lakecondition_db_pool_wait_seconds_count ");
+		assertContains(metrics, "lakecondition_snapshot_requests_total{result=\"hit\"}");
+		assertContains(metrics, "# TYPE lakecondition_db_pool_connections gauge");
+		assertContains(metrics, "lakecondition_db_circuit_state{state=\"CLOSED\"} 1");
+		assertContains(metrics, "lakecondition_snapshot_stale 0");
+		assertContains(metrics, "lakecondition_db_replica_up{database=\"primary\"} 1");
+	}
+
+	HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) server.getBaseUri().resolve(path).toURL()
+				.openConnection();
+		connection.setReadTimeout(10000);
+		return connection;
+	}
+
+	static String read(InputStream in) throws IOException {
+		Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+		try {
+			return scanner.hasNext() ? scanner.next() : "";
+		} finally {
+			scanner.close();
+		}
+	}
+
+	static void assertContains(String metrics, String line) {
+		assertTrue(line + " in\n" + metrics, metrics.contains(line));
+	}
+}
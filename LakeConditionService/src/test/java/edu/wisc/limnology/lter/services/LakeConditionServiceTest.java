@@ -0,0 +1,135 @@
+package edu.wisc.limnology.lter.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.wisc.limnology.lter.database.LakeConditionDAO;
+import edu.wisc.limnology.lter.model.LakeCondition;
+
+public class LakeConditionServiceTest {
+
+	CountingDAO dao;
+	LakeConditionService service;
+
+	@Before
+	public void init() {
+		dao = new CountingDAO();
+		dao.lakeConditions.add(lakeCondition("ME", 1000L));
+		dao.lakeConditions.add(lakeCondition("TR ", 2000L));
+
+		service = new LakeConditionService();
+		service.setBuoyConditionsDAO(dao);
+		service.setMaxAgeMillis(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void servesRepeatedRequestsFromOneLoad() {
+		assertEquals(2, service.getLakeConditions().size());
+		assertEquals("ME", service.getLakeCondition("ME").getLakeId());
+		assertEquals("TR ", service.getLakeCondition("tr").getLakeId());
+		assertNull(service.getLakeCondition("XX").getLakeId());
+
+		assertEquals(1, dao.loads);
+		assertEquals(1, service.getMisses());
+		assertEquals(3, service.getHits());
+	}
+
+	@Test
+	public void reloadsOnlyWhenASignatureMoves() {
+		LakeConditionSnapshot first = service.getSnapshot();
+
+		service.refresh();
+		assertSame(first, service.getSnapshot());
+		assertEquals(1, dao.loads);
+
+		/* an older sampledate on one lake leaves max(sampledate) where it was */
+		dao.lakeConditions.set(0, lakeCondition("ME", 1500L));
+		service.refresh();
+		assertEquals(2, dao.loads);
+		assertEquals(1500L, service.getLakeCondition("ME").getSampleDate().getTime());
+		assertEquals(first.getVersion() + 1, service.getSnapshot().getVersion());
+	}
+
+	@Test
+	public void keepsVersionWhenReloadFindsNothingNew() {
+		long version = service.getSnapshot().getVersion();
+		service.reload();
+		service.setMaxAgeMillis(0);
+		service.refresh();
+		assertEquals(3, dao.loads);
+		assertEquals(version, service.getSnapshot().getVersion());
+		assertEquals(version, service.getVersion());
+	}
+
+	@Test
+	public void tellsListenersWhichLakesChanged() {
+		final List<Set<String>> changes = new ArrayList<Set<String>>();
+		service.setListeners(Collections.<LakeConditionListener> singletonList(new LakeConditionListener() {
+			public void lakeConditionsChanged(LakeConditionSnapshot snapshot, Set<String> changedLakeIds) {
+				changes.add(changedLakeIds);
+			}
+		}));
+		service.getSnapshot();
+		service.reload();
+		assertEquals(0, changes.size());
+
+		dao.lakeConditions.set(1, lakeCondition("TR", 3000L));
+		dao.lakeConditions.add(lakeCondition("SP", 3000L));
+		service.reload();
+		assertEquals(Arrays.asList(new TreeSet<String>(Arrays.asList("SP", "TR"))), changes);
+	}
+
+	@Test
+	public void keepsPreviousSnapshotWhenRefreshFails() {
+		LakeConditionSnapshot first = service.getSnapshot();
+		dao.fail = true;
+
+		service.refresh();
+		assertSame(first, service.getSnapshot());
+		assertEquals(1, service.getRefreshFailures());
+	}
+
+	static LakeCondition lakeCondition(String lakeId, long sampleDate) {
+		return new LakeCondition.Builder().lakeId(lakeId).sampleDate(new Date(sampleDate)).build();
+	}
+
+	static class CountingDAO implements LakeConditionDAO {
+		List<LakeCondition> lakeConditions = new ArrayList<LakeCondition>();
+		int loads;
+		boolean fail;
+
+		public List<LakeCondition> getLakeConditions() {
+			loads++;
+			return new ArrayList<LakeCondition>(lakeConditions);
+		}
+
+		public LakeCondition getLakeCondition(String lakeId) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Map<String, String> getChangeSignatures() {
+			if (fail) {
+				throw new RuntimeException("database unavailable");
+			}
+			Map<String, String> signatures = new HashMap<String, String>();
+			for (LakeCondition lakeCondition : lakeConditions) {
+				signatures.put(lakeCondition.getLakeId(), String.valueOf(lakeCondition.getSampleDate().getTime()));
+			}
+			return signatures;
+		}
+	}
+}
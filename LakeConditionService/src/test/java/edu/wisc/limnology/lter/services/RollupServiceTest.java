@@ -0,0 +1,181 @@
+package edu.wisc.limnology.lter.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.h2.util.DateTimeUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+import edu.wisc.limnology.lter.database.RollupDAO;
+import edu.wisc.limnology.lter.database.RollupPeriod;
+import edu.wisc.limnology.lter.database.SeriesBuckets;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.SeriesPoint;
+
+public class RollupServiceTest {
+
+	static final long HOUR = 3600000L;
+	static final long DAY = 86400000L;
+
+	ClassPathXmlApplicationContext context;
+	RollupService rollupService;
+	RollupDAO rollupDAO;
+	SeriesDAO seriesDAO;
+	LakeSeriesService lakeSeriesService;
+	JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void init() throws SQLException {
+		context = EmbeddedBuoyDatabase.createContext();
+		rollupService = context.getBean(RollupService.class);
+		rollupDAO = context.getBean(RollupDAO.class);
+		seriesDAO = context.getBean(SeriesDAO.class);
+		lakeSeriesService = context.getBean(LakeSeriesService.class);
+		jdbcTemplate = new JdbcTemplate(context.getBean(javax.sql.DataSource.class));
+	}
+
+	@After
+	public void destroy() throws ParseException {
+		jdbcTemplate.update("delete from sensor_mendota_lake_met_hi_res where sampledate >= ?",
+				new Timestamp(date("2016-08-05 00:00:00").getTime()));
+		jdbcTemplate.update("delete from sensor_mendota_lake_met_hi_res where sampledate < ?",
+				new Timestamp(date("2016-08-01 00:00:00").getTime()));
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+
+	@Test
+	public void rollupsMatchRawBuckets() throws ParseException {
+		SeriesSource waterTemp = SeriesSource.lookup("ME", SeriesSource.WATER_TEMP);
+		assertEquals(21 * 1439, rollupService.update(waterTemp));
+		/* the newest sampledate waits for the next run */
+		assertEquals(date("2016-08-04 23:59:00"), rollupDAO.getRolledUntil(waterTemp));
+
+		long from = date("2016-08-04 00:00:00").getTime();
+		for (double depth : new double[] { 0, 20 }) {
+			SeriesBuckets hourly = new SeriesBuckets(HOUR);
+			rollupDAO.addRollups(RollupPeriod.HOUR, waterTemp, depth, new Date(from), new Date(from + DAY), hourly);
+			List<SeriesPoint> expected = seriesDAO.getBuckets(waterTemp, depth, new Date(from),
+					new Date(from + 23 * HOUR), HOUR);
+			assertEquals(24, hourly.getPoints().size());
+			assertPointsEqual(expected, hourly.getPoints().subList(0, 23));
+			assertEquals(59, hourly.getPoints().get(23).getCount().intValue());
+		}
+	}
+
+	@Test
+	public void plannerMergesRollupsWithRawEdges() throws ParseException {
+		SeriesSource waterTemp = SeriesSource.lookup("ME", SeriesSource.WATER_TEMP);
+		rollupService.update(waterTemp);
+
+		/* a ragged start, hourly rollups, and the last hour (not rolled up yet) from raw samples */
+		long start = date("2016-08-04 00:30:00").getTime();
+		long end = date("2016-08-05 00:00:00").getTime();
+		for (long bucket : new long[] { HOUR, 3 * HOUR, DAY }) {
+			assertPointsEqual(seriesDAO.getBuckets(waterTemp, 5.0, new Date(start), new Date(end), bucket),
+					lakeSeriesService.getBuckets(waterTemp, 5.0, start, end, bucket));
+		}
+
+		/* 10-minute buckets have no rollup; the answer is the same either way */
+		assertNull(RollupPeriod.coarsestFor(600000L));
+		assertPointsEqual(seriesDAO.getBuckets(waterTemp, 5.0, new Date(start), new Date(end), 600000L),
+				lakeSeriesService.getBuckets(waterTemp, 5.0, start, end, 600000L));
+	}
+
+	@Test
+	public void addsNewSamplesOnce() throws ParseException {
+		SeriesSource airTemp = SeriesSource.lookup("ME", SeriesSource.AIR_TEMP);
+		Date day = date("2016-08-04 00:00:00");
+		assertEquals(1439, rollupService.update(airTemp));
+		assertEquals(0, rollupService.update(airTemp));
+
+		Date next = date("2016-08-05 00:00:00");
+		for (int minute = 0; minute <= 60; minute++) {
+			jdbcTemplate.update("insert into sensor_mendota_lake_met_hi_res (sampledate, air_temp) values (?, ?)",
+					new Timestamp(next.getTime() + minute * 60000L), 20.0 + minute / 10.0);
+		}
+		/* 23:59 on the 4th and the first hour of the 5th */
+		assertEquals(61, rollupService.update(airTemp));
+
+		SeriesBuckets daily = new SeriesBuckets(DAY);
+		rollupDAO.addRollups(RollupPeriod.DAY, airTemp, null, day, new Date(next.getTime() + DAY), daily);
+		List<SeriesPoint> days = daily.getPoints();
+		assertEquals(2, days.size());
+		assertEquals(1440, days.get(0).getCount().intValue());
+		assertEquals(60, days.get(1).getCount().intValue());
+		assertEquals(20.0, days.get(1).getMin(), 0);
+		assertEquals(25.9, days.get(1).getMax(), 1e-9);
+		assertPointsEqual(seriesDAO.getBuckets(airTemp, null, day, next, DAY), days.subList(0, 1));
+	}
+
+	@Test
+	public void rollsUpLocalDaysAcrossDaylightSavingChange() throws ParseException {
+		TimeZone defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+		DateTimeUtils.resetCalendar();
+		try {
+			SeriesSource airTemp = SeriesSource.lookup("ME", SeriesSource.AIR_TEMP);
+			/* hourly on the 12th to the 14th; the 13th is 23 hours long and its samples are 10 degrees warmer */
+			Date first = date("2016-03-12 00:00:00");
+			Date end = date("2016-03-15 00:00:00");
+			Date changeDay = date("2016-03-13 00:00:00");
+			Date nextDay = date("2016-03-14 00:00:00");
+			for (long time = first.getTime(); time < end.getTime(); time += HOUR) {
+				boolean warm = time >= changeDay.getTime() && time < nextDay.getTime();
+				jdbcTemplate.update("insert into sensor_mendota_lake_met_hi_res (sampledate, air_temp) values (?, ?)",
+						new Timestamp(time), (warm ? 10.0 : 0.0) + time % DAY / (double) DAY);
+			}
+			rollupService.update(airTemp);
+
+			SeriesBuckets daily = new SeriesBuckets(DAY);
+			rollupDAO.addRollups(RollupPeriod.DAY, airTemp, null, first, end, daily);
+			List<SeriesPoint> days = daily.getPoints();
+			assertEquals(3, days.size());
+			assertEquals(changeDay, days.get(1).getSampleDate());
+			assertEquals(nextDay, days.get(2).getSampleDate());
+			assertEquals(23, days.get(1).getCount().intValue());
+			assertTrue(days.get(0).getMax() < 10 && days.get(1).getMin() >= 10 && days.get(2).getMax() < 10);
+			assertPointsEqual(seriesDAO.getBuckets(airTemp, null, first, end, DAY), days);
+
+			/* a ragged start: raw samples up to the 13th, daily rollups after */
+			Date ragged = new Date(first.getTime() + HOUR);
+			assertPointsEqual(seriesDAO.getBuckets(airTemp, null, ragged, end, DAY),
+					lakeSeriesService.getBuckets(airTemp, null, ragged.getTime(), end.getTime(), DAY));
+		} finally {
+			TimeZone.setDefault(defaultTimeZone);
+			DateTimeUtils.resetCalendar();
+		}
+	}
+
+	static void assertPointsEqual(List<SeriesPoint> expected, List<SeriesPoint> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			SeriesPoint e = expected.get(i);
+			SeriesPoint a = actual.get(i);
+			assertEquals(e.getSampleDate(), a.getSampleDate());
+			assertEquals(e.getCount(), a.getCount());
+			assertEquals(e.getMin(), a.getMin(), 0);
+			assertEquals(e.getMax(), a.getMax(), 0);
+			assertEquals(e.getMean(), a.getMean(), 1e-9);
+		}
+	}
+
+	static Date date(String value) throws ParseException {
+		return DateUtils.parseDate(value, "yyyy-MM-dd HH:mm:ss");
+	}
+}
@@ -0,0 +1,104 @@
+package edu.wisc.limnology.lter.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RollingWindowTest {
+
+	@Test
+	public void keepsTheStatisticsOfTheWindowAsReadingsComeAndGo() {
+		long window = 60 * 60000L;
+		RollingMedian median = new RollingMedian(window);
+		RollingMoments moments = new RollingMoments(window);
+		RollingExtreme max = RollingExtreme.max(window);
+		RollingExtreme min = RollingExtreme.min(window);
+		List<Long> times = new ArrayList<Long>();
+		List<Double> values = new ArrayList<Double>();
+		Random random = new Random(7);
+		long time = 0;
+		for (int i = 0; i < 5000; i++) {
+			/* gaps from none to ten minutes, so the window holds from a few readings to a few hundred */
+			time += random.nextInt(i % 1000 < 500 ? 20000 : 600000);
+			/* whole numbers so ties and duplicates are common */
+			double value = random.nextInt(50);
+			median.add(time, value);
+			moments.add(time, value);
+			max.add(time, value);
+			min.add(time, value);
+			times.add(time);
+			values.add(value);
+
+			double[] expected = inWindow(times, values, time - window);
+			assertEquals(expected.length, median.size());
+			Arrays.sort(expected);
+			int middle = expected.length / 2;
+			double expectedMedian = expected.length % 2 == 1 ? expected[middle]
+					: (expected[middle - 1] + expected[middle]) / 2;
+			assertEquals(expectedMedian, median.median(), 0);
+			assertEquals(expected[expected.length - 1], max.get(), 0);
+			assertEquals(expected[0], min.get(), 0);
+			double mean = 0;
+			for (double inWindow : expected) {
+				mean += inWindow / expected.length;
+			}
+			assertEquals(mean, moments.getMean(), 1e-9);
+			if (expected.length > 1) {
+				double squares = 0;
+				for (double inWindow : expected) {
+					squares += (inWindow - mean) * (inWindow - mean);
+				}
+				assertEquals(squares / (expected.length - 1), moments.getVariance(), 1e-6);
+			}
+		}
+	}
+
+	@Test
+	public void leavesOutOlderAndMissingReadings() {
+		RollingMedian median = new RollingMedian(10);
+		assertTrue(Double.isNaN(median.median()));
+		assertTrue(median.add(100, 3));
+		assertFalse(median.add(99, 1));
+		assertFalse(median.add(101, Double.NaN));
+		assertTrue(median.add(101, 5));
+		assertEquals(4, median.median(), 0);
+		assertEquals(100, median.getOldestTime());
+
+		/* 100 leaves at 110, 101 at 111 */
+		median.advanceTo(110);
+		assertEquals(1, median.size());
+		assertEquals(5, median.median(), 0);
+		median.advanceTo(111);
+		assertTrue(median.isEmpty());
+		assertEquals(101, median.getLatestTime());
+
+		RollingMoments moments = new RollingMoments(10);
+		moments.add(0, 1e9 + 4);
+		moments.add(1, 1e9 + 7);
+		moments.add(2, 1e9 + 13);
+		moments.add(3, 1e9 + 16);
+		assertEquals(30, moments.getVariance(), 1e-6);
+		moments.advanceTo(12);
+		assertEquals(1e9 + 16, moments.getMean(), 0);
+		assertTrue(Double.isNaN(moments.getVariance()));
+	}
+
+	private static double[] inWindow(List<Long> times, List<Double> values, long after) {
+		int first = times.size();
+		while (first > 0 && times.get(first - 1) > after) {
+			first--;
+		}
+		double[] window = new double[times.size() - first];
+		for (int i = first; i < times.size(); i++) {
+			window[i - first] = values.get(i);
+		}
+		return window;
+	}
+}
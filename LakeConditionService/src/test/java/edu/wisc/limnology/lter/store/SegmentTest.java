@@ -0,0 +1,93 @@
+package edu.wisc.limnology.lter.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SegmentTest {
+
+	@Test
+	public void roundTripsIrregularTimesAndValues() throws IOException {
+		Random random = new Random(42);
+		int count = 50000;
+		long[] times = new long[count];
+		double[] values = new double[count];
+		long time = 1470286800L;
+		double value = 23.45;
+		for (int i = 0; i < count; i++) {
+			int kind = random.nextInt(20);
+			/* mostly 60 s apart, with jitter, resets and outages of days */
+			time += kind == 0 ? 1 + random.nextInt(3000) : kind == 1 ? 86400L * (1 + random.nextInt(30)) : 60;
+			value = kind < 10 ? value : kind < 17 ? Math.round((value + random.nextGaussian()) * 100) / 100.0
+					: special(random.nextInt(6));
+			times[i] = time;
+			values[i] = value;
+		}
+
+		SegmentEncoder encoder = new SegmentEncoder();
+		for (int i = 0; i < count; i++) {
+			assertTrue(encoder.append(times[i], values[i]));
+		}
+		assertFalse(encoder.append(times[count - 1], 1.0));
+
+		Path file = Files.createTempFile("segment", ".seg");
+		try {
+			encoder.writeTo(file);
+			Segment segment = Segment.map(file);
+			assertEquals(count, segment.getCount());
+			assertEquals(times[0], segment.getFirstSeconds());
+			assertEquals(times[count - 1], segment.getLastSeconds());
+			Segment.Cursor cursor = segment.cursor();
+			for (int i = 0; i < count; i++) {
+				assertTrue(cursor.next());
+				assertEquals(times[i], cursor.seconds());
+				assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(cursor.value()));
+			}
+			assertFalse(cursor.next());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void regularSamplesCompressWell() throws IOException {
+		SegmentEncoder encoder = new SegmentEncoder();
+		long time = 1470286800L;
+		for (int i = 0; i < 44640; i++) {
+			/* a month of 1-minute water temperatures to 0.01 degree, changing slowly */
+			encoder.append(time + i * 60L, Math.round(2000 + 300 * Math.sin(i / 1440.0)) / 100.0);
+		}
+		Path file = Files.createTempFile("segment", ".seg");
+		try {
+			encoder.writeTo(file);
+			/* 16 bytes a sample uncompressed */
+			assertTrue(Files.size(file) < 44640 * 4);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	static double special(int which) {
+		switch (which) {
+		case 0:
+			return 0.0;
+		case 1:
+			return -0.0;
+		case 2:
+			return Double.MAX_VALUE;
+		case 3:
+			return -Double.MIN_VALUE;
+		case 4:
+			return 1e-300;
+		default:
+			return -9999.0;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package edu.wisc.limnology.lter.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.wisc.limnology.lter.database.EmbeddedBuoyDatabase;
+import edu.wisc.limnology.lter.database.SeriesDAO;
+import edu.wisc.limnology.lter.database.SeriesSource;
+import edu.wisc.limnology.lter.model.SeriesPoint;
+import edu.wisc.limnology.lter.services.SeriesStoreService;
+
+public class SeriesStoreTest {
+
+	ClassPathXmlApplicationContext context;
+	SeriesStoreService seriesStoreService;
+	SeriesStore seriesStore;
+	SeriesDAO seriesDAO;
+	SeriesDAO mysqlSeriesDAO;
+	JdbcTemplate jdbcTemplate;
+
+	@Before
+	public void init() throws SQLException {
+		context = EmbeddedBuoyDatabase.createContext();
+		seriesStoreService = context.getBean(SeriesStoreService.class);
+		seriesStore = context.getBean(SeriesStore.class);
+		seriesDAO = context.getBean(SeriesDAO.class);
+		mysqlSeriesDAO = context.getBean("mysqlSeriesDAO", SeriesDAO.class);
+		jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+	}
+
+	@After
+	public void destroy() throws ParseException {
+		jdbcTemplate.update("delete from sensor_trout_lake_russ_watertemp_hi_res where sampledate >= ?",
+				new Timestamp(date("2016-08-05 00:00:00").getTime()));
+		context.close();
+		EmbeddedBuoyDatabase.uninstall();
+	}
+
+	@Test
+	public void servesTheSameSamplesAsMySQL() throws IOException, ParseException {
+		SeriesSource waterTemp = SeriesSource.lookup("SP", SeriesSource.WATER_TEMP);
+		SeriesSource airTemp = SeriesSource.lookup("SP", SeriesSource.AIR_TEMP);
+		assertEquals(25 * 1439, seriesStoreService.sync(waterTemp));
+		assertEquals(1439, seriesStoreService.sync(airTemp));
+		assertEquals(0, seriesStoreService.sync(airTemp));
+		assertTrue(seriesStore.sizeOnDisk(waterTemp) < 25 * 1439 * 4);
+
+		Date from = date("2016-08-04 00:00:00");
+		Date to = date("2016-08-05 00:00:00");
+		for (double depth : new double[] { 0.25, 7, 18 }) {
+			assertPointsEqual(mysqlSeriesDAO.getBuckets(waterTemp, depth, from, to, 600000L),
+					seriesDAO.getBuckets(waterTemp, depth, from, to, 600000L));
+		}
+		assertPointsEqual(mysqlSeriesDAO.getBuckets(airTemp, null, from, to, 3600000L),
+				seriesDAO.getBuckets(airTemp, null, from, to, 3600000L));
+
+		/* a page that starts in the store and finishes in MySQL (23:59 is not synced yet) */
+		Date after = date("2016-08-04 23:50:00");
+		List<SeriesPoint> page = seriesDAO.getSamples(waterTemp, 0.25, from, after, to, 100);
+		assertPointsEqual(mysqlSeriesDAO.getSamples(waterTemp, 0.25, from, after, to, 100), page);
+		assertEquals(9, page.size());
+	}
+
+	@Test
+	public void appendsAcrossMonthsAndResyncs() throws IOException, ParseException {
+		SeriesSource waterTemp = SeriesSource.lookup("TR", SeriesSource.WATER_TEMP);
+		assertEquals(26 * 1439, seriesStoreService.sync(waterTemp));
+
+		/* new samples running into September */
+		Date start = date("2016-08-31 23:00:00");
+		for (int minute = 0; minute <= 120; minute++) {
+			jdbcTemplate.update("insert into sensor_trout_lake_russ_watertemp_hi_res (sampledate, depth, wtemp)"
+					+ " values (?, 0, ?)", new Timestamp(start.getTime() + minute * 60000L), 21.5 + minute / 100.0);
+		}
+		/* 23:59 on the 4th at every depth, and all but the newest new sample */
+		assertEquals(26 + 120, seriesStoreService.sync(waterTemp));
+		assertEquals(date("2016-08-31 23:00:00").getTime() + 120 * 60000L,
+				seriesStore.getSyncedUntil(waterTemp).getTime());
+
+		Date from = date("2016-08-04 00:00:00");
+		Date to = date("2016-09-02 00:00:00");
+		List<SeriesPoint> expected = mysqlSeriesDAO.getBuckets(waterTemp, 0.0, from, to, 3600000L);
+		assertPointsEqual(expected, seriesDAO.getBuckets(waterTemp, 0.0, from, to, 3600000L));
+
+		seriesStoreService.resync("TR", SeriesSource.WATER_TEMP);
+		assertPointsEqual(expected, seriesDAO.getBuckets(waterTemp, 0.0, from, to, 3600000L));
+	}
+
+	static void assertPointsEqual(List<SeriesPoint> expected, List<SeriesPoint> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			SeriesPoint e = expected.get(i);
+			SeriesPoint a = actual.get(i);
+			assertEquals(e.getSampleDate(), a.getSampleDate());
+			assertEquals(e.getValue(), a.getValue());
+			assertEquals(e.getCount(), a.getCount());
+			assertEquals(e.getMin(), a.getMin());
+			assertEquals(e.getMax(), a.getMax());
+			assertEquals(e.getMean(), a.getMean());
+		}
+	}
+
+	static Date date(String value) throws ParseException {
+		return DateUtils.parseDate(value, "yyyy-MM-dd HH:mm:ss");
+	}
+}
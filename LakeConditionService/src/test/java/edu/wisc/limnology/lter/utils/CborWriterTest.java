@@ -0,0 +1,47 @@
+package edu.wisc.limnology.lter.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class CborWriterTest {
+
+	@Test
+	public void writesRfcExamples() {
+		assertEquals("00", hex(new CborWriter(8).writeLong(0)));
+		assertEquals("17", hex(new CborWriter(8).writeLong(23)));
+		assertEquals("1818", hex(new CborWriter(8).writeLong(24)));
+		assertEquals("1903e8", hex(new CborWriter(8).writeLong(1000)));
+		assertEquals("1a000f4240", hex(new CborWriter(8).writeLong(1000000)));
+		assertEquals("1b000000e8d4a51000", hex(new CborWriter(8).writeLong(1000000000000L)));
+		assertEquals("3863", hex(new CborWriter(8).writeLong(-100)));
+		assertEquals("f6", hex(new CborWriter(8).writeNull()));
+		assertEquals("6449455446", hex(new CborWriter(8).writeString("IETF")));
+		assertEquals("c11a514b67b0", hex(new CborWriter(8).writeEpochSeconds(1363896240000L)));
+		assertEquals("a201020304", hex(new CborWriter(8).startMap(2).writeLong(1).writeLong(2).writeLong(3)
+				.writeLong(4)));
+		assertEquals("83010203", hex(new CborWriter(8).startArray(3).writeLong(1).writeLong(2).writeLong(3)));
+	}
+
+	@Test
+	public void writesShortestExactFloat() {
+		assertEquals("f90000", hex(new CborWriter(8).writeDouble(0.0)));
+		assertEquals("f98000", hex(new CborWriter(8).writeDouble(-0.0)));
+		assertEquals("f93c00", hex(new CborWriter(8).writeDouble(1.0)));
+		assertEquals("f93e00", hex(new CborWriter(8).writeDouble(1.5)));
+		assertEquals("f97bff", hex(new CborWriter(8).writeDouble(65504.0)));
+		assertEquals("f97c00", hex(new CborWriter(8).writeDouble(Double.POSITIVE_INFINITY)));
+		assertEquals("f97e00", hex(new CborWriter(8).writeDouble(Double.NaN)));
+		assertEquals("fa47c35000", hex(new CborWriter(8).writeDouble(100000.0)));
+		assertEquals("fb3ff199999999999a", hex(new CborWriter(8).writeDouble(1.1)));
+		assertEquals("fb7e37e43c8800759c", hex(new CborWriter(8).writeDouble(1.0e300)));
+	}
+
+	static String hex(CborWriter writer) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : writer.toByteArray()) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+}
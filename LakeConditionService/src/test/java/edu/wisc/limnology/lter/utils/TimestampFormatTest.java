@@ -0,0 +1,40 @@
+package edu.wisc.limnology.lter.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimestampFormatTest {
+
+	TimeZone defaultTimeZone;
+
+	@Before
+	public void init() {
+		defaultTimeZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/Chicago"));
+	}
+
+	@After
+	public void destroy() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void matchesSimpleDateFormatAcrossDaylightSavingChanges() {
+		SimpleDateFormat expected = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+		TimestampFormat format = new TimestampFormat();
+		/* 2016-03-13 and 2016-11-06 are the spring and fall changes in Chicago */
+		long[] days = { 1457827200000L, 1478390400000L, 1470268800000L };
+		for (long day : days) {
+			for (long time = day; time < day + 86400000L; time += 15000L) {
+				assertEquals(expected.format(new Date(time)), format.format(time));
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+-- buoy_current_conditions as maintained by the update_current_*.R jobs,
+-- seeded with one row per buoy.
+
+create table if not exists buoy_current_conditions (
+  sampledate datetime,
+  lakeid varchar(2) not null,
+  lakename varchar(50),
+  airtemp decimal(5,1),
+  watertemp decimal(5,1),
+  windspeed decimal(5,1),
+  windgust decimal(5,1),
+  winddir int,
+  thermocline_depth decimal(5,1),
+  secchi_est decimal(6,2),
+  secchi_timestamp datetime,
+  phyco_median decimal(8,1),
+  primary key (lakeid)
+);
+
+delete from buoy_current_conditions;
+
+insert into buoy_current_conditions
+  (sampledate, lakeid, lakename, airtemp, watertemp, windspeed, windgust, winddir, thermocline_depth, secchi_est, secchi_timestamp, phyco_median)
+values
+  ('2015-05-21 15:19:15', 'TR', 'Trout Lake', 15.0, 16.1, 5.1, 7.2, 180, 6.5, null, null, null),
+  ('2015-05-21 15:20:00', 'ME', 'Lake Mendota', 18.3, 14.2, 4.4, 6.9, 225, 9.0, 2.61, '2015-05-21 15:00:00', 420.5),
+  ('2015-05-21 15:18:00', 'SP', 'Sparkling Lake', 16.2, 15.8, 3.0, null, 200, 7.5, null, null, null);
@@ -0,0 +1,215 @@
+-- Hi-res sensor tables written by the update_latest_*.R and
+-- update_ME_*_hires_byday.R jobs, seeded with one synthetic day of
+-- 1-minute samples (2016-08-04, Central time). H2 syntax (system_range, table()).
+
+create table if not exists sensor_mendota_lake_met_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sample_time int,
+  sampletime varchar(8),
+  data_freq int,
+  air_temp decimal(6,1),
+  flag_air_temp varchar(2),
+  rel_hum decimal(6,2),
+  flag_rel_hum varchar(2),
+  wind_speed decimal(6,2),
+  flag_wind_speed varchar(2),
+  wind_dir decimal(6,1),
+  flag_wind_dir varchar(2),
+  chlor decimal(8,0),
+  flag_chlor varchar(2),
+  phycocyanin decimal(8,1),
+  flag_phycocyanin varchar(2),
+  opt_wtemp decimal(6,2),
+  flag_opt_wtemp varchar(2),
+  opt_dosat_raw decimal(6,2),
+  flag_opt_dosat_raw varchar(2),
+  opt_do_raw decimal(6,2),
+  flag_opt_do_raw varchar(2),
+  pco2_ppm decimal(8,1),
+  flag_pco2_ppm varchar(2),
+  par decimal(8,1),
+  flag_par varchar(2),
+  par_below decimal(8,1),
+  flag_par_below varchar(2),
+  hr int,
+  primary key (sampledate)
+);
+
+create table if not exists sensor_mendota_lake_watertemp_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sampletime varchar(8),
+  depth decimal(5,2) not null,
+  wtemp decimal(6,3),
+  flag_wtemp varchar(2),
+  primary key (sampledate, depth)
+);
+
+create table if not exists sensor_sparkling_lake_met_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sampletime varchar(8),
+  air_temp decimal(7,3),
+  flag_air_temp varchar(2),
+  rel_hum decimal(6,1),
+  flag_rel_hum varchar(2),
+  wind_speed_2m decimal(7,3),
+  flag_wind_speed_2m varchar(2),
+  sat_vapor_pres decimal(7,3),
+  flag_sat_vapor_pres varchar(2),
+  vapor_pres decimal(7,3),
+  flag_vapor_pres varchar(2),
+  par decimal(8,3),
+  flag_par varchar(2),
+  opt_wtemp decimal(6,2),
+  flag_opt_wtemp varchar(2),
+  opt_dosat_raw decimal(6,2),
+  flag_opt_dosat_raw varchar(2),
+  opt_do_raw decimal(6,2),
+  flag_opt_do_raw varchar(2),
+  wind_dir decimal(6,2),
+  flag_wind_dir varchar(2),
+  barom_pres_mbar decimal(6,0),
+  flag_barom_pres_mbar varchar(2),
+  cumulative_precipitation decimal(7,2),
+  battery_logger decimal(6,3),
+  battery_radio decimal(6,3),
+  data_freq int,
+  primary key (sampledate)
+);
+
+create table if not exists sensor_sparkling_lake_watertemp_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sampletime varchar(8),
+  depth decimal(5,2) not null,
+  wtemp decimal(6,3),
+  flag_wtemp varchar(2),
+  primary key (sampledate, depth)
+);
+
+create table if not exists sensor_trout_lake_russ_met_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sampletime varchar(8),
+  data_freq int,
+  air_temp decimal(7,3),
+  flag_air_temp varchar(2),
+  rel_hum decimal(6,1),
+  flag_rel_hum varchar(2),
+  wind_speed decimal(7,3),
+  flag_wind_speed varchar(2),
+  wind_dir decimal(6,1),
+  flag_wind_dir varchar(2),
+  barom_pres_mbar decimal(6,1),
+  flag_barom_pres_mbar varchar(2),
+  par decimal(8,1),
+  flag_par varchar(2),
+  ysi_wtemp decimal(6,2),
+  flag_ysi_wtemp varchar(2),
+  ysi_spcond decimal(8,2),
+  flag_ysi_spcond varchar(2),
+  ysi_dosat decimal(6,1),
+  flag_ysi_dosat varchar(2),
+  ysi_do decimal(6,2),
+  flag_ysi_do varchar(2),
+  cumulative_precipitation decimal(7,2),
+  primary key (sampledate)
+);
+
+create table if not exists sensor_trout_lake_russ_watertemp_hi_res (
+  sampledate datetime not null,
+  year4 int,
+  month int,
+  daynum int,
+  sampletime varchar(8),
+  depth decimal(5,2) not null,
+  wtemp decimal(6,3),
+  flag_wtemp varchar(2),
+  primary key (sampledate, depth)
+);
+
+delete from sensor_mendota_lake_met_hi_res;
+
+delete from sensor_mendota_lake_watertemp_hi_res;
+
+delete from sensor_sparkling_lake_met_hi_res;
+
+delete from sensor_sparkling_lake_watertemp_hi_res;
+
+delete from sensor_trout_lake_russ_met_hi_res;
+
+delete from sensor_trout_lake_russ_watertemp_hi_res;
+
+
+insert into sensor_mendota_lake_met_hi_res
+  (sampledate, year4, month, daynum, sampletime, sample_time, data_freq, air_temp, rel_hum, wind_speed, wind_dir,
+   chlor, phycocyanin, opt_wtemp, opt_dosat_raw, opt_do_raw, par, hr)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms, hour(m.ts) * 100 + minute(m.ts), 1,
+  24 + 4 * sin(2 * pi() * (m.x - 480) / 1440), 70 - 15 * sin(2 * pi() * (m.x - 480) / 1440), 4 + 2 * sin(m.x / 37.0), mod(200 + m.x / 8, 360),
+  1200 + 300 * sin(m.x / 90.0), 420 + 150 * sin(m.x / 120.0), 24.5 + sin(2 * pi() * (m.x - 480) / 1440), 98 + 6 * sin(2 * pi() * (m.x - 480) / 1440), 8.2 + 0.5 * sin(2 * pi() * (m.x - 480) / 1440),
+  greatest(0, 1800 * sin(2 * pi() * (m.x - 480) / 1440)), hour(m.ts) * 100
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m;
+
+insert into sensor_sparkling_lake_met_hi_res
+  (sampledate, year4, month, daynum, sampletime, air_temp, rel_hum, wind_speed_2m, wind_dir, barom_pres_mbar,
+   par, opt_wtemp, opt_dosat_raw, opt_do_raw, data_freq)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms,
+  22 + 5 * sin(2 * pi() * (m.x - 480) / 1440), 75 - 15 * sin(2 * pi() * (m.x - 480) / 1440), 2.5 + 1.5 * sin(m.x / 41.0), mod(225 + m.x / 6, 360), 953,
+  greatest(0, 1700 * sin(2 * pi() * (m.x - 480) / 1440)), 24.4 + 0.5 * sin(2 * pi() * (m.x - 480) / 1440), 98 + 4 * sin(2 * pi() * (m.x - 480) / 1440), 8.2 + 0.3 * sin(2 * pi() * (m.x - 480) / 1440), 1
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m;
+
+insert into sensor_trout_lake_russ_met_hi_res
+  (sampledate, year4, month, daynum, sampletime, data_freq, air_temp, rel_hum, wind_speed, wind_dir, barom_pres_mbar,
+   par, ysi_wtemp, ysi_dosat, ysi_do)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms, 1,
+  21 + 5 * sin(2 * pi() * (m.x - 480) / 1440), 78 - 15 * sin(2 * pi() * (m.x - 480) / 1440), 3 + 2 * sin(m.x / 29.0), mod(180 + m.x / 5, 360), 957.5,
+  greatest(0, 1750 * sin(2 * pi() * (m.x - 480) / 1440)), 23.6 + 0.4 * sin(2 * pi() * (m.x - 480) / 1440), 109 + 3 * sin(2 * pi() * (m.x - 480) / 1440), 9.2 + 0.3 * sin(2 * pi() * (m.x - 480) / 1440)
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m;
+
+insert into sensor_mendota_lake_watertemp_hi_res
+  (sampledate, year4, month, daynum, sampletime, depth, wtemp)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms, d.depth,
+  case when d.depth <= 9 then 24.5 + 0.3 * sin(2 * pi() * (m.x - 480) / 1440) - 0.02 * d.depth
+       else greatest(11, 24.5 - 1.1 * (d.depth - 9)) end
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m,
+  table(depth decimal(5,2) = (0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20)) d;
+
+insert into sensor_sparkling_lake_watertemp_hi_res
+  (sampledate, year4, month, daynum, sampletime, depth, wtemp)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms, d.depth,
+  case when d.depth <= 7 then 24.4 + 0.3 * sin(2 * pi() * (m.x - 480) / 1440) - 0.02 * d.depth
+       else greatest(6, 24.4 - 1.1 * (d.depth - 7)) end
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m,
+  table(depth decimal(5,2) = (0, 0.25, 0.5, 0.75, 1, 1.25, 1.5, 2, 2.5, 3, 3.5, 4, 4.5, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 16, 18)) d;
+
+insert into sensor_trout_lake_russ_watertemp_hi_res
+  (sampledate, year4, month, daynum, sampletime, depth, wtemp)
+select m.ts, year(m.ts), month(m.ts), day_of_year(m.ts), m.hms, d.depth,
+  case when d.depth <= 8 then 23.6 + 0.3 * sin(2 * pi() * (m.x - 480) / 1440) - 0.02 * d.depth
+       else greatest(8, 23.6 - 1.1 * (d.depth - 8)) end
+from (select dateadd('MINUTE', x, timestamp '2016-08-04 00:00:00') ts, x,
+       lpad(x / 60, 2, '0') || ':' || lpad(mod(x, 60), 2, '0') || ':00' hms
+     from system_range(0, 1439)) m,
+  table(depth decimal(5,2) = (0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 22, 24, 26, 28, 30)) d;